@@ -0,0 +1,41 @@
+package com.deahtstroke.rivenbot.cache;
+
+import java.time.Duration;
+import reactor.core.publisher.Mono;
+
+/**
+ * Storage for leases that are shared by every instance of the application. A lease is held by
+ * whoever set its token and expires on its own if it's not extended, so a lease whose holder died
+ * is eventually taken by somebody else
+ */
+public interface LeaseStore {
+
+  /**
+   * Take a lease if nobody holds it
+   *
+   * @param key   The key of the lease
+   * @param token The token that identifies the holder
+   * @param ttl   The time after which the lease expires if it's not extended
+   * @return true if the lease was taken, false if somebody else holds it
+   */
+  Mono<Boolean> acquire(String key, String token, Duration ttl);
+
+  /**
+   * Extend a lease, only if it's still held with the given token
+   *
+   * @param key   The key of the lease
+   * @param token The token that identifies the holder
+   * @param ttl   The time after which the lease expires if it's not extended again
+   * @return true if the lease was extended, false if it's no longer held with the token
+   */
+  Mono<Boolean> extend(String key, String token, Duration ttl);
+
+  /**
+   * Release a lease, only if it's still held with the given token
+   *
+   * @param key   The key of the lease
+   * @param token The token that identifies the holder
+   * @return empty Mono once the lease was released
+   */
+  Mono<Void> release(String key, String token);
+}
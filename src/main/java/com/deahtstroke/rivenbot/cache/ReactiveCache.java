@@ -0,0 +1,154 @@
+package com.deahtstroke.rivenbot.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Caching layer for reactive methods. Unlike {@link org.springframework.cache.annotation.Cacheable}
+ * this caches the value a {@link Mono} resolves to and not the {@link Mono} itself.
+ * <p>
+ * Values are looked up in a local near-cache first, then in the shared cache (Redis) and only then
+ * the loader is subscribed to. Concurrent misses for the same key are coalesced so that the loader
+ * is only subscribed to once, every other caller waits for the same result.
+ */
+@Slf4j
+public class ReactiveCache {
+
+  private static final long MAX_LOCAL_ENTRIES = 10_000L;
+  private static final String METRIC_NAME = "rivenbot.cache.gets";
+
+  private final CacheManager sharedCacheManager;
+  private final Map<String, Long> expirations;
+  private final MeterRegistry meterRegistry;
+
+  private final Map<String, Cache<Object, Object>> localCaches = new ConcurrentHashMap<>();
+  private final Map<CacheKey, Mono<Object>> inFlight = new ConcurrentHashMap<>();
+
+  public ReactiveCache(CacheManager sharedCacheManager, Map<String, Long> expirations,
+      MeterRegistry meterRegistry) {
+    this.sharedCacheManager = sharedCacheManager;
+    this.expirations = expirations;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Get a value from the cache or load it and store it if it's not present. Empty results and
+   * errors from the loader are never cached.
+   *
+   * @param cacheName The name of the cache, TTLs are taken from the 'cache.expirations' property
+   * @param key       The key of the value
+   * @param loader    Supplier of the Mono that resolves the value when it's not cached
+   * @param <T>       The type of the value
+   * @return Mono with the cached or the freshly loaded value
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Mono<T> get(String cacheName, Object key, Supplier<Mono<T>> loader) {
+    return Mono.defer(() -> {
+      Cache<Object, Object> localCache = localCache(cacheName);
+      Object localValue = localCache.getIfPresent(key);
+      if (Objects.nonNull(localValue)) {
+        counter(cacheName, "hit", "local").increment();
+        return Mono.just((T) localValue);
+      }
+      CacheKey cacheKey = new CacheKey(cacheName, key);
+      return (Mono<T>) inFlight.computeIfAbsent(cacheKey, k ->
+          lookupOrLoad(cacheName, key, localCache, (Supplier<Mono<Object>>) (Supplier<?>) loader)
+              .doFinally(signal -> inFlight.remove(k))
+              .cache());
+    });
+  }
+
+  /**
+   * Removes a value from both the local and the shared cache
+   *
+   * @param cacheName The name of the cache
+   * @param key       The key of the value
+   * @return Empty Mono that completes once the value was evicted
+   */
+  public Mono<Void> evict(String cacheName, Object key) {
+    return Mono.fromRunnable(() -> {
+          localCache(cacheName).invalidate(key);
+          var sharedCache = sharedCacheManager.getCache(cacheName);
+          if (Objects.nonNull(sharedCache)) {
+            sharedCache.evict(key);
+          }
+        })
+        .subscribeOn(Schedulers.boundedElastic())
+        .then();
+  }
+
+  private Mono<Object> lookupOrLoad(String cacheName, Object key,
+      Cache<Object, Object> localCache, Supplier<Mono<Object>> loader) {
+    var sharedCache = sharedCacheManager.getCache(cacheName);
+    if (Objects.isNull(sharedCache)) {
+      return load(cacheName, key, localCache, null, loader);
+    }
+    return Mono.fromCallable(() -> sharedCache.get(key))
+        .subscribeOn(Schedulers.boundedElastic())
+        .onErrorResume(err -> {
+          log.warn("Unable to read key [{}] from cache [{}]", key, cacheName, err);
+          return Mono.empty();
+        })
+        .filter(wrapper -> Objects.nonNull(wrapper.get()))
+        .map(wrapper -> {
+          counter(cacheName, "hit", "shared").increment();
+          localCache.put(key, wrapper.get());
+          return wrapper.get();
+        })
+        .switchIfEmpty(Mono.defer(() -> load(cacheName, key, localCache, sharedCache, loader)));
+  }
+
+  private Mono<Object> load(String cacheName, Object key, Cache<Object, Object> localCache,
+      org.springframework.cache.Cache sharedCache, Supplier<Mono<Object>> loader) {
+    counter(cacheName, "miss", "none").increment();
+    return loader.get()
+        .flatMap(value -> {
+          localCache.put(key, value);
+          if (Objects.isNull(sharedCache)) {
+            return Mono.just(value);
+          }
+          return Mono.fromRunnable(() -> sharedCache.put(key, value))
+              .subscribeOn(Schedulers.boundedElastic())
+              .onErrorResume(err -> {
+                log.warn("Unable to write key [{}] to cache [{}]", key, cacheName, err);
+                return Mono.empty();
+              })
+              .thenReturn(value);
+        });
+  }
+
+  private Cache<Object, Object> localCache(String cacheName) {
+    return localCaches.computeIfAbsent(cacheName, name -> {
+      Caffeine<Object, Object> builder = Caffeine.newBuilder().maximumSize(MAX_LOCAL_ENTRIES);
+      Long expiration = expirations.get(name);
+      if (Objects.nonNull(expiration)) {
+        builder.expireAfterWrite(Duration.ofMinutes(expiration));
+      }
+      return builder.build();
+    });
+  }
+
+  private Counter counter(String cacheName, String result, String tier) {
+    return Counter.builder(METRIC_NAME)
+        .description("Amount of lookups made to reactive caches")
+        .tag("cache", cacheName)
+        .tag("result", result)
+        .tag("tier", tier)
+        .register(meterRegistry);
+  }
+
+  private record CacheKey(String cacheName, Object key) {
+
+  }
+}
@@ -0,0 +1,46 @@
+package com.deahtstroke.rivenbot.cache;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+/**
+ * Leases stored in Redis. Leases are taken with SET NX PX, extending and releasing them compares
+ * the token first in a Lua script so that a holder never touches a lease somebody else took after
+ * theirs expired
+ */
+public class RedisLeaseStore implements LeaseStore {
+
+  private static final RedisScript<Long> EXTEND_LEASE_SCRIPT = RedisScript.of(
+      new ClassPathResource("scripts/extend_lease.lua"), Long.class);
+  private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = RedisScript.of(
+      new ClassPathResource("scripts/release_lease.lua"), Long.class);
+
+  private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+  public RedisLeaseStore(ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+    this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+  }
+
+  @Override
+  public Mono<Boolean> acquire(String key, String token, Duration ttl) {
+    return reactiveStringRedisTemplate.opsForValue().setIfAbsent(key, token, ttl);
+  }
+
+  @Override
+  public Mono<Boolean> extend(String key, String token, Duration ttl) {
+    return reactiveStringRedisTemplate.execute(EXTEND_LEASE_SCRIPT, List.of(key),
+            List.of(token, String.valueOf(ttl.toMillis())))
+        .next()
+        .map(extended -> extended == 1L);
+  }
+
+  @Override
+  public Mono<Void> release(String key, String token) {
+    return reactiveStringRedisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(key), List.of(token))
+        .then();
+  }
+}
@@ -0,0 +1,125 @@
+package com.deahtstroke.rivenbot.cache;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalesces concurrent executions of the same work so that it only runs once at a time.
+ * <p>
+ * Within an instance the first caller for a key becomes the leader and subscribes to the work,
+ * every other caller subscribes to the leader's execution and completes when it does. Callers can
+ * also share state with the execution, e.g., its progress, see {@link #join}. Across
+ * instances the leader holds a lease in the {@link LeaseStore} while the work runs, leaders of
+ * other instances wait for the lease to be released before running the work themselves. If the
+ * lease store is unavailable, or the lease is not released within the max wait, the work runs
+ * without it.
+ */
+@Slf4j
+public class SingleFlight {
+
+  private static final String LEASE_PREFIX = "rivenbot:lease:";
+
+  private final LeaseStore leaseStore;
+  private final Duration leaseTime;
+  private final Duration pollInterval;
+  private final Duration maxWait;
+
+  private final Map<String, Flight<?>> inFlight = new ConcurrentHashMap<>();
+
+  public SingleFlight(LeaseStore leaseStore, Duration leaseTime, Duration pollInterval,
+      Duration maxWait) {
+    this.leaseStore = leaseStore;
+    this.leaseTime = leaseTime;
+    this.pollInterval = pollInterval;
+    this.maxWait = maxWait;
+  }
+
+  /**
+   * Run the work of a key, or wait for it if it's already running
+   *
+   * @param key  The key of the work
+   * @param work Supplier of the Mono that runs the work, only called by the leader
+   * @return empty Mono that completes, or fails, with the execution of the leader
+   */
+  public Mono<Void> execute(String key, Supplier<Mono<Void>> work) {
+    return Mono.defer(() -> join(key, () -> null, state -> work.get()).execution());
+  }
+
+  /**
+   * Join the execution of a key, becoming its leader if it's not running. Every caller of the same
+   * execution gets the same state, which the work can publish to while it runs, e.g., its
+   * progress. The execution only starts once it is subscribed to
+   *
+   * @param key   The key of the work, every execution of a key must have the same type of state
+   * @param state Supplier of the state of the execution, only called by the leader
+   * @param work  Function from the state to the Mono that runs the work, only called by the leader
+   * @param <S>   The type of the state
+   * @return the execution of the key
+   */
+  @SuppressWarnings("unchecked")
+  public <S> Flight<S> join(String key, Supplier<S> state, Function<S, Mono<Void>> work) {
+    return (Flight<S>) inFlight.computeIfAbsent(key, k -> {
+      S shared = state.get();
+      return new Flight<>(shared, lead(k, () -> work.apply(shared))
+          .doFinally(signal -> inFlight.remove(k))
+          .cache());
+    });
+  }
+
+  private Mono<Void> lead(String key, Supplier<Mono<Void>> work) {
+    String leaseKey = LEASE_PREFIX + key;
+    String token = UUID.randomUUID().toString();
+    return Mono.usingWhen(acquire(leaseKey, token),
+        held -> Boolean.TRUE.equals(held) ?
+            Mono.firstWithSignal(work.get(), extendWhileRunning(leaseKey, token)) :
+            work.get(),
+        held -> Boolean.TRUE.equals(held) ? release(leaseKey, token) : Mono.empty());
+  }
+
+  private Mono<Boolean> acquire(String leaseKey, String token) {
+    return leaseStore.acquire(leaseKey, token, leaseTime)
+        .filter(Boolean::booleanValue)
+        .repeatWhenEmpty(attempts -> attempts.delayElements(pollInterval))
+        .timeout(maxWait)
+        .onErrorResume(err -> {
+          log.warn("Unable to acquire lease [{}], running without it", leaseKey, err);
+          return Mono.just(false);
+        });
+  }
+
+  private Mono<Void> extendWhileRunning(String leaseKey, String token) {
+    return Flux.interval(leaseTime.dividedBy(3))
+        .concatMap(tick -> leaseStore.extend(leaseKey, token, leaseTime))
+        .onErrorResume(err -> {
+          log.warn("Unable to extend lease [{}]", leaseKey, err);
+          return Mono.empty();
+        })
+        .then(Mono.never());
+  }
+
+  private Mono<Void> release(String leaseKey, String token) {
+    return leaseStore.release(leaseKey, token)
+        .onErrorResume(err -> {
+          log.warn("Unable to release lease [{}], it will expire on its own", leaseKey, err);
+          return Mono.empty();
+        });
+  }
+
+  /**
+   * An execution of a key
+   *
+   * @param state     The state shared by every caller of the execution
+   * @param execution Empty Mono that completes, or fails, with the execution of the leader
+   * @param <S>       The type of the state
+   */
+  public record Flight<S>(S state, Mono<Void> execution) {
+
+  }
+}
@@ -1,6 +1,7 @@
 package com.deahtstroke.rivenbot.client;
 
 import com.deahtstroke.rivenbot.dto.destiny.ActivitiesResponse;
+import com.deahtstroke.rivenbot.dto.destiny.AggregateActivitiesResponse;
 import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
 import com.deahtstroke.rivenbot.dto.destiny.ExactUserSearchRequest;
 import com.deahtstroke.rivenbot.dto.destiny.ExactUserSearchResponse;
@@ -8,6 +9,7 @@ import com.deahtstroke.rivenbot.dto.destiny.MemberGroupResponse;
 import com.deahtstroke.rivenbot.dto.destiny.MembershipResponse;
 import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
 import com.deahtstroke.rivenbot.dto.destiny.characters.CharactersResponse;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DestinyManifest;
 import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
 import com.deahtstroke.rivenbot.dto.destiny.milestone.MilestoneEntry;
 import com.deahtstroke.rivenbot.enums.ManifestEntity;
@@ -47,6 +49,14 @@ public interface BungieClient {
   Mono<BungieResponse<ManifestResponseFields>> getManifestEntity(
       @PathVariable String entityType, @PathVariable Long hashIdentifier);
 
+  /**
+   * Get the current version of the Manifest along with the paths to download each of its tables
+   *
+   * @return {@link Mono} of {@link DestinyManifest}
+   */
+  @GetExchange("/Destiny2/Manifest/")
+  Mono<BungieResponse<DestinyManifest>> getManifest();
+
   /**
    * Get public Milestones
    *
@@ -100,6 +110,20 @@ public interface BungieClient {
       @PathVariable String destinyMembershipId, @PathVariable String characterId,
       @RequestParam Integer count, @RequestParam Integer mode, @RequestParam Integer page);
 
+  /**
+   * Get the aggregated stats of every activity a character has played, e.g., completions, kills,
+   * deaths and fastest completion, all in a single call
+   *
+   * @param membershipType      the user's membershipType
+   * @param destinyMembershipId the user's membershipId
+   * @param characterId         the ID of the character
+   * @return {@link AggregateActivitiesResponse}
+   */
+  @GetExchange("/Destiny2/{membershipType}/Account/{destinyMembershipId}/Character/{characterId}/Stats/AggregateActivityStats/")
+  Mono<BungieResponse<AggregateActivitiesResponse>> getAggregateActivityStats(
+      @PathVariable Integer membershipType, @PathVariable String destinyMembershipId,
+      @PathVariable String characterId);
+
   /**
    * Get a Post Game Carnage Report (PGCR)
    *
@@ -1,16 +1,20 @@
 package com.deahtstroke.rivenbot.config;
 
 import com.deahtstroke.rivenbot.client.BungieClient;
-import io.github.resilience4j.ratelimiter.RateLimiter;
-import io.github.resilience4j.ratelimiter.RateLimiterConfig;
-import java.time.Duration;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.ratelimit.ApiKeyPool;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 import lombok.Data;
+import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.support.WebClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
@@ -22,24 +26,15 @@ import reactor.netty.http.client.HttpClient;
 public class BungieConfiguration {
 
   /**
-   * Global Rate Limiter for Bungie.net API calls
-   */
-  public static final RateLimiter PGCR_RATE_LIMITER = RateLimiter.of("pgcr-rate-limiter",
-      RateLimiterConfig.custom()
-          .limitForPeriod(23)
-          .limitRefreshPeriod(Duration.ofMillis(1500))
-          .timeoutDuration(Duration.ofSeconds(30))
-          .writableStackTraceEnabled(true)
-          .build());
-  /**
-   * The name of the Bungie API key header
+   * API key provided by Bungie when registering an application in their portal
    */
-  private static final String API_KEY_HEADER_NAME = "x-api-key";
+  private String key;
 
   /**
-   * API key provided by Bungie when registering an application in their portal
+   * Every API key the application can use to call Bungie, calls are spread across all of them. If
+   * empty only 'key' is used
    */
-  private String key;
+  private List<String> keys = new ArrayList<>();
 
   /**
    * Bungie clientId
@@ -61,6 +56,11 @@ public class BungieConfiguration {
    */
   private String statsBaseUrl;
 
+  /**
+   * Base URL for static content such as the Manifest tables
+   */
+  private String contentBaseUrl;
+
   /**
    * Url for Bungie Token endpoint
    */
@@ -79,17 +79,20 @@ public class BungieConfiguration {
   /**
    * Default bungie client used to make general API calls to Bungie.net
    *
-   * @param builder The default WebClient.Builder defined in the main application
+   * @param builder              The default WebClient.Builder defined in the main application
+   * @param bungieRateController Adaptive concurrency limit for Bungie.net calls
+   * @param bungieApiKeyPool     Pool of API keys the calls are spread across
    * @return {@link BungieClient}
    */
   @Bean("defaultBungieClient")
-  public BungieClient defaultBungieClient(WebClient.Builder builder) {
+  public BungieClient defaultBungieClient(WebClient.Builder builder,
+      AdaptiveRateController bungieRateController, ApiKeyPool bungieApiKeyPool) {
     HttpClient httpClient = HttpClient.create()
         .keepAlive(false);
     var webClient = builder
         .baseUrl(this.baseUrl)
         .clientConnector(new ReactorClientHttpConnector(httpClient))
-        .defaultHeader(API_KEY_HEADER_NAME, this.key)
+        .filters(bungieFilters(bungieApiKeyPool, bungieRateController))
         .codecs(clientCodecConfigurer -> clientCodecConfigurer.defaultCodecs()
             .maxInMemorySize(1024 * 512))
         .build();
@@ -102,30 +105,75 @@ public class BungieConfiguration {
   /**
    * Bungie client used to make API calls to the stats.bungie.net domain
    *
-   * @param builder The default WebClient.Builder defined in the main application
+   * @param builder              The default WebClient.Builder defined in the main application
+   * @param bungieRateController Adaptive concurrency limit for Bungie.net calls
+   * @param bungieApiKeyPool     Pool of API keys the calls are spread across
    * @return {@link BungieClient}
    */
   @Bean
-  public WebClient pgcrWebClient(WebClient.Builder builder) {
+  public WebClient pgcrWebClient(WebClient.Builder builder,
+      AdaptiveRateController bungieRateController, ApiKeyPool bungieApiKeyPool) {
     // Don't keep alive connections with Bungie.net
     HttpClient httpClient = HttpClient.create()
         .keepAlive(false);
     return builder
         .baseUrl(this.statsBaseUrl)
         .clientConnector(new ReactorClientHttpConnector(httpClient))
-        .defaultHeader(API_KEY_HEADER_NAME, this.key)
         .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
         .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+        .filters(bungieFilters(bungieApiKeyPool, bungieRateController))
         .codecs(clientCodecConfigurer -> clientCodecConfigurer.defaultCodecs()
             .maxInMemorySize(1024 * 1024 * 10))
         .build();
   }
 
+  /**
+   * Web client used to download Manifest tables from Bungie's content servers. Manifest tables can
+   * weigh tens of megabytes, so the responses are meant to be streamed instead of being buffered
+   * in memory
+   *
+   * @param builder The default WebClient.Builder defined in the main application
+   * @return {@link WebClient}
+   */
+  @Bean
+  public WebClient manifestWebClient(WebClient.Builder builder) {
+    return builder.clone()
+        .baseUrl(this.contentBaseUrl)
+        .build();
+  }
+
+  /**
+   * Get every API key available to call Bungie
+   *
+   * @return the configured list of keys, or the single configured key if there is no list
+   */
+  public List<String> apiKeys() {
+    return CollectionUtils.isEmpty(this.keys) ? List.of(this.key) : List.copyOf(this.keys);
+  }
+
+  /**
+   * Filters of every web client that calls Bungie.net. A call first waits for a permit of an API
+   * key and only then for a concurrency slot, so calls waiting on the rate limit of a key do not
+   * hold slots that calls with a permit could use
+   *
+   * @param bungieApiKeyPool     Pool of API keys the calls are spread across
+   * @param bungieRateController Adaptive concurrency limit for Bungie.net calls
+   * @return consumer that adds the filters in order
+   */
+  private static Consumer<List<ExchangeFilterFunction>> bungieFilters(ApiKeyPool bungieApiKeyPool,
+      AdaptiveRateController bungieRateController) {
+    return filters -> {
+      filters.add(bungieApiKeyPool);
+      filters.add(bungieRateController);
+    };
+  }
+
   @Bean(name = "defaultBungieWebClient")
-  WebClient defaultBungieWebClient(WebClient.Builder builder) {
+  WebClient defaultBungieWebClient(WebClient.Builder builder,
+      AdaptiveRateController bungieRateController, ApiKeyPool bungieApiKeyPool) {
     return builder
         .baseUrl(this.baseUrl)
-        .defaultHeader(API_KEY_HEADER_NAME, this.key)
+        .filters(bungieFilters(bungieApiKeyPool, bungieRateController))
         .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
         .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
         .build();
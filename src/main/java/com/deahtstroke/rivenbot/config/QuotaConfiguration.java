@@ -0,0 +1,75 @@
+package com.deahtstroke.rivenbot.config;
+
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.handler.CommandQuotas;
+import com.deahtstroke.rivenbot.ratelimit.LocalTokenBucketStore;
+import com.deahtstroke.rivenbot.ratelimit.RedisTokenBucketStore;
+import com.deahtstroke.rivenbot.ratelimit.TokenBucketStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "application.quotas")
+public class QuotaConfiguration {
+
+  /**
+   * Whether quotas are shared by every instance of the application through Redis, otherwise each
+   * instance enforces them on its own
+   */
+  private boolean shared = true;
+
+  /**
+   * Quotas of the slash commands that are expensive to serve, commands without a quota are never
+   * limited
+   */
+  private Map<SlashCommand, Quota> commands = new EnumMap<>(SlashCommand.class);
+
+  @Data
+  public static class Quota {
+
+    /**
+     * Amount of times a Discord user can use the command every period
+     */
+    private Integer perUser;
+
+    /**
+     * Amount of times the members of a guild can use the command every period, all together
+     */
+    private Integer perGuild;
+
+    /**
+     * Period in which the quotas are refilled
+     */
+    private Duration period;
+  }
+
+  /**
+   * Per-guild and per-user quotas of the slash commands that are expensive to serve
+   *
+   * @param reactiveStringRedisTemplate Template used to run the token bucket script in Redis
+   * @param meterRegistry               Registry used to publish rejected commands
+   * @return {@link CommandQuotas}
+   */
+  @Bean
+  public CommandQuotas commandQuotas(ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+      MeterRegistry meterRegistry) {
+    Duration longestPeriod = this.commands.values().stream()
+        .map(Quota::getPeriod)
+        .filter(Objects::nonNull)
+        .max(Duration::compareTo)
+        .orElse(Duration.ofMinutes(1));
+    TokenBucketStore localStore = new LocalTokenBucketStore(longestPeriod);
+    TokenBucketStore sharedStore = this.shared ?
+        new RedisTokenBucketStore(reactiveStringRedisTemplate) : localStore;
+    return new CommandQuotas(this.commands, sharedStore, localStore, meterRegistry);
+  }
+}
@@ -0,0 +1,141 @@
+package com.deahtstroke.rivenbot.config;
+
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.ratelimit.ApiKeyPool;
+import com.deahtstroke.rivenbot.ratelimit.DistributedRateLimiter;
+import com.deahtstroke.rivenbot.ratelimit.RedisTokenBucketStore;
+import com.deahtstroke.rivenbot.ratelimit.RequestPriority;
+import com.deahtstroke.rivenbot.ratelimit.TokenBucketStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+
+@Data
+@Configuration
+@ConfigurationProperties(prefix = "bungie.api.rate-limiter")
+public class RateLimiterConfiguration {
+
+  /**
+   * Amount of calls to Bungie.net allowed for each API key every refresh period when the
+   * application starts, across all instances
+   */
+  private Integer limitForPeriod;
+
+  /**
+   * Lowest amount of calls per refresh period the adaptive controller can back off to, defaults to
+   * the initial limit
+   */
+  private Integer minLimitForPeriod;
+
+  /**
+   * Highest amount of calls per refresh period the adaptive controller can grow to, defaults to
+   * the initial limit
+   */
+  private Integer maxLimitForPeriod;
+
+  /**
+   * Period in which the limit of calls is refilled
+   */
+  private Duration limitRefreshPeriod;
+
+  /**
+   * Max time to wait for a permit before failing
+   */
+  private Duration timeout;
+
+  /**
+   * Amount of permits each instance takes at once from Redis
+   */
+  private Integer prefetch;
+
+  /**
+   * Amount of permits of each API key that only calls made for an interaction a user is waiting on
+   * can take, so that bulk work can never leave them waiting for a permit
+   */
+  private Integer interactiveReserve = 0;
+
+  /**
+   * Concurrency limit for Bungie.net calls when the application starts
+   */
+  private Integer initialConcurrency;
+
+  /**
+   * Lowest concurrency limit the adaptive controller can back off to
+   */
+  private Integer minConcurrency;
+
+  /**
+   * Highest concurrency limit the adaptive controller can grow to
+   */
+  private Integer maxConcurrency;
+
+  /**
+   * Ratio by which the concurrency limit is multiplied whenever Bungie.net throttles calls
+   */
+  private Double backoffRatio;
+
+  /**
+   * Calls slower than this do not grow the concurrency limit
+   */
+  private Duration latencyThreshold;
+
+  /**
+   * Max time calls of a priority wait for a slot or a permit before going ahead of higher
+   * priorities, priorities without a max wait always yield to higher ones
+   */
+  private Map<RequestPriority, Duration> maxWait = new EnumMap<>(RequestPriority.class);
+
+  /**
+   * Weight of each requester, e.g., the id of a Discord user or 'anonymous' for calls not made on
+   * behalf of a user. Waiting calls of the same priority are served in proportion to the weight of
+   * their requester, requesters without a weight have a weight of 1
+   */
+  private Map<String, Double> requesterWeights = new HashMap<>();
+
+  /**
+   * Pool of Bungie.net API keys shared by every web client that calls Bungie, each key gets its
+   * own rate limiter shared by every instance of the application
+   *
+   * @param bungieConfiguration         Configuration with the Bungie.net API keys
+   * @param reactiveStringRedisTemplate Template used to run the token bucket script in Redis
+   * @param bungieRateController        Controller whose rate limit the keys follow
+   * @param meterRegistry               Registry used to publish per-key metrics
+   * @return {@link ApiKeyPool}
+   */
+  @Bean
+  public ApiKeyPool bungieApiKeyPool(BungieConfiguration bungieConfiguration,
+      ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+      AdaptiveRateController bungieRateController, MeterRegistry meterRegistry) {
+    TokenBucketStore tokenBucketStore = new RedisTokenBucketStore(reactiveStringRedisTemplate);
+    return new ApiKeyPool(bungieConfiguration.apiKeys(),
+        alias -> new DistributedRateLimiter("bungie:" + alias, tokenBucketStore,
+            bungieRateController::getLimitForPeriod, this.limitRefreshPeriod, this.timeout,
+            this.prefetch, this.interactiveReserve, this.maxWait, this.requesterWeights,
+            meterRegistry),
+        meterRegistry);
+  }
+
+  /**
+   * Adaptive concurrency and rate limits shared by every web client that calls Bungie.net
+   *
+   * @param meterRegistry Registry used to publish the current limits
+   * @return {@link AdaptiveRateController}
+   */
+  @Bean
+  public AdaptiveRateController bungieRateController(MeterRegistry meterRegistry) {
+    return new AdaptiveRateController(this.initialConcurrency, this.minConcurrency,
+        this.maxConcurrency, this.limitForPeriod,
+        Objects.requireNonNullElse(this.minLimitForPeriod, this.limitForPeriod),
+        Objects.requireNonNullElse(this.maxLimitForPeriod, this.limitForPeriod),
+        this.backoffRatio, this.latencyThreshold, this.maxWait, this.requesterWeights,
+        meterRegistry);
+  }
+}
@@ -2,11 +2,16 @@ package com.deahtstroke.rivenbot.config;
 
 import static org.springframework.data.redis.serializer.RedisSerializationContext.SerializationPair.fromSerializer;
 
+import com.deahtstroke.rivenbot.cache.ReactiveCache;
+import com.deahtstroke.rivenbot.cache.RedisLeaseStore;
+import com.deahtstroke.rivenbot.cache.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.Duration;
 import java.util.AbstractMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -14,6 +19,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -39,6 +45,39 @@ public class RedisConfiguration {
         .build();
   }
 
+  /**
+   * Cache for reactive methods that stores resolved values in memory and in Redis, using the same
+   * expirations as the Redis cache manager
+   *
+   * @param redisCacheManager The Redis cache manager used as the shared cache
+   * @param meterRegistry     Registry used to publish hit/miss metrics
+   * @return {@link ReactiveCache}
+   */
+  @Bean
+  ReactiveCache reactiveCache(RedisCacheManager redisCacheManager, MeterRegistry meterRegistry) {
+    return new ReactiveCache(redisCacheManager, this.expirations, meterRegistry);
+  }
+
+  /**
+   * Coalesces concurrent executions of the same work, within an instance and across instances
+   * through leases stored in Redis
+   *
+   * @param reactiveStringRedisTemplate Template used to take and release leases in Redis
+   * @param leaseTime                   Time after which a lease expires if its holder died
+   * @param pollInterval                Interval in which a taken lease is checked for release
+   * @param maxWait                     Max time to wait for a taken lease before running
+   *                                    without it
+   * @return {@link SingleFlight}
+   */
+  @Bean
+  SingleFlight singleFlight(ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+      @Value("${application.singleFlight.leaseTime:PT1M}") Duration leaseTime,
+      @Value("${application.singleFlight.pollInterval:PT1S}") Duration pollInterval,
+      @Value("${application.singleFlight.maxWait:PT5M}") Duration maxWait) {
+    return new SingleFlight(new RedisLeaseStore(reactiveStringRedisTemplate), leaseTime,
+        pollInterval, maxWait);
+  }
+
   private RedisCacheConfiguration createConfiguration(Long timeToLive) {
     return RedisCacheConfiguration.defaultCacheConfig()
         .entryTtl(Duration.ofMinutes(timeToLive))
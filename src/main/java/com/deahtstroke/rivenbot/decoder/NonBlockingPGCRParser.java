@@ -0,0 +1,76 @@
+package com.deahtstroke.rivenbot.decoder;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import java.io.IOException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+/**
+ * Incremental parser for Post Game Carnage Reports. Every {@link DataBuffer} of the response body
+ * is handed to a non-blocking Jackson parser as soon as it arrives and released right after its
+ * tokens have been fed to a {@link PGCRDecoder}, so decoding never blocks the thread it runs on and
+ * the body is never copied into a single array.
+ * <p>
+ * An instance must only be used for a single report and closed afterward.
+ */
+public final class NonBlockingPGCRParser implements AutoCloseable {
+
+  private final JsonParser parser;
+  private final ByteBufferFeeder feeder;
+  private final PGCRDecoder decoder = new PGCRDecoder();
+
+  public NonBlockingPGCRParser(JsonFactory jsonFactory) throws IOException {
+    this.parser = jsonFactory.createNonBlockingByteBufferParser();
+    this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+  }
+
+  /**
+   * Feed the next chunk of the response body, the buffer is always released by this method
+   *
+   * @param dataBuffer The chunk of the response body
+   * @throws IOException if the chunk is not valid JSON
+   */
+  public void feed(DataBuffer dataBuffer) throws IOException {
+    try (DataBuffer.ByteBufferIterator iterator = dataBuffer.readableByteBuffers()) {
+      while (iterator.hasNext()) {
+        feeder.feedInput(iterator.next());
+        drain();
+      }
+    } finally {
+      DataBufferUtils.release(dataBuffer);
+    }
+  }
+
+  /**
+   * Signal that the whole body was received and get the decoded report
+   *
+   * @return {@link BungieResponse} with the decoded {@link PostGameCarnageReport}
+   * @throws IOException if the body ended before the report was complete
+   */
+  public BungieResponse<PostGameCarnageReport> finish() throws IOException {
+    feeder.endOfInput();
+    drain();
+    if (!decoder.isComplete()) {
+      throw new JsonParseException(parser, "Unexpected end of input while decoding a PGCR");
+    }
+    return decoder.result();
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+
+  private void drain() throws IOException {
+    JsonToken token;
+    while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+      decoder.accept(token, parser);
+    }
+  }
+}
@@ -0,0 +1,234 @@
+package com.deahtstroke.rivenbot.decoder;
+
+import com.deahtstroke.rivenbot.dto.destiny.Basic;
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.DestinyUserInfo;
+import com.deahtstroke.rivenbot.dto.destiny.PGCREntry;
+import com.deahtstroke.rivenbot.dto.destiny.PlayerPGCREntry;
+import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
+import com.deahtstroke.rivenbot.dto.destiny.ValueEntry;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Streaming decoder for Post Game Carnage Reports. Instead of binding the whole report, this
+ * decoder is fed one JSON token at a time and only keeps the fields needed to build a
+ * {@link com.deahtstroke.rivenbot.entity.PGCRDetails}, that is, whether the activity was started
+ * from the beginning and the identity, kills and deaths of every player. Every other object or
+ * array is skipped by counting its depth, so the memory used does not depend on the size of the
+ * report.
+ * <p>
+ * Since the decoder is push-based it works with both blocking and non-blocking parsers. An
+ * instance must only be used for a single report.
+ */
+public final class PGCRDecoder {
+
+  private static final int MAX_TRACKED_DEPTH = 7;
+  private static final int NOT_SKIPPING = -1;
+  private static final String ARRAY_ELEMENT = "*";
+
+  private static final int ROOT = 0;
+  private static final int RESPONSE = 1;
+  private static final int ENTRIES = 2;
+  private static final int ENTRY = 3;
+  private static final int ENTRY_FIELD = 4;
+  private static final int ENTRY_SUBFIELD = 5;
+  private static final int BASIC = 6;
+
+  private final String[] path = new String[MAX_TRACKED_DEPTH];
+  private final boolean[] arrays = new boolean[MAX_TRACKED_DEPTH];
+  private int depth = 0;
+  private int skipDepth = NOT_SKIPPING;
+  private String fieldName;
+  private boolean complete = false;
+
+  private boolean hasResponse = false;
+  private Boolean activityWasStartedFromBeginning;
+  private Integer errorCode;
+  private Integer throttleSeconds;
+  private final List<PGCREntry> entries = new ArrayList<>();
+
+  private DestinyUserInfo currentUserInfo;
+  private double currentKills;
+  private double currentDeaths;
+
+  /**
+   * Feed the next token of the report to the decoder. Values of the token, e.g., the current name
+   * or the current number, are read from the parser, so the parser must still be positioned at
+   * this token
+   *
+   * @param token  The current token
+   * @param parser The parser that produced the token
+   * @throws IOException if the value of the token can not be read
+   */
+  public void accept(JsonToken token, JsonParser parser) throws IOException {
+    switch (token) {
+      case FIELD_NAME -> fieldName = parser.currentName();
+      case START_OBJECT, START_ARRAY -> enter(token == JsonToken.START_ARRAY);
+      case END_OBJECT, END_ARRAY -> exit();
+      case NOT_AVAILABLE -> {
+        // more input is needed before the next token is available
+      }
+      default -> {
+        if (skipDepth == NOT_SKIPPING) {
+          value(token, parser);
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the whole report has been decoded
+   *
+   * @return true if the root JSON object was closed
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Get the decoded report
+   *
+   * @return {@link BungieResponse} with the decoded {@link PostGameCarnageReport}, the response
+   * is null when the report did not have a 'Response' object, e.g., for error responses
+   */
+  public BungieResponse<PostGameCarnageReport> result() {
+    PostGameCarnageReport report = hasResponse ? new PostGameCarnageReport(null,
+        Boolean.TRUE.equals(activityWasStartedFromBeginning), List.copyOf(entries)) : null;
+    return new BungieResponse<>(report, errorCode, throttleSeconds);
+  }
+
+  /**
+   * Get the 'ThrottleSeconds' sent by Bungie alongside the report
+   *
+   * @return the throttle seconds or null if they were not present
+   */
+  public Integer getThrottleSeconds() {
+    return throttleSeconds;
+  }
+
+  private void enter(boolean isArray) {
+    if (skipDepth != NOT_SKIPPING) {
+      depth++;
+      return;
+    }
+    int index = depth;
+    String key = index == ROOT ? "" : arrays[index - 1] ? ARRAY_ELEMENT : fieldName;
+    if (index >= MAX_TRACKED_DEPTH || !isTracked(index, key)) {
+      skipDepth = depth;
+      depth++;
+      return;
+    }
+    path[index] = key;
+    arrays[index] = isArray;
+    depth++;
+    if (index == RESPONSE) {
+      hasResponse = true;
+    } else if (index == ENTRY) {
+      currentUserInfo = new DestinyUserInfo();
+      currentKills = 0.0;
+      currentDeaths = 0.0;
+    }
+  }
+
+  private void exit() {
+    depth--;
+    if (skipDepth != NOT_SKIPPING) {
+      if (skipDepth == depth) {
+        skipDepth = NOT_SKIPPING;
+      }
+      return;
+    }
+    if (depth == ENTRY) {
+      entries.add(buildEntry());
+    } else if (depth == ROOT) {
+      complete = true;
+    }
+  }
+
+  private boolean isTracked(int index, String key) {
+    return switch (index) {
+      case ROOT -> true;
+      case RESPONSE -> Objects.equals(key, "Response");
+      case ENTRIES -> Objects.equals(key, "entries");
+      case ENTRY -> Objects.equals(key, ARRAY_ELEMENT);
+      case ENTRY_FIELD -> Objects.equals(key, "player") || Objects.equals(key, "values");
+      case ENTRY_SUBFIELD -> Objects.equals(path[ENTRY_FIELD], "player") ?
+          Objects.equals(key, "destinyUserInfo") :
+          Objects.equals(key, "kills") || Objects.equals(key, "deaths");
+      case BASIC -> Objects.equals(path[ENTRY_FIELD], "values") && Objects.equals(key, "basic");
+      default -> false;
+    };
+  }
+
+  private void value(JsonToken token, JsonParser parser) throws IOException {
+    int container = depth - 1;
+    if (container < 0 || Objects.isNull(fieldName) || arrays[container]) {
+      return;
+    }
+    switch (container) {
+      case ROOT -> {
+        if (fieldName.equals("ErrorCode")) {
+          errorCode = parser.getValueAsInt();
+        } else if (fieldName.equals("ThrottleSeconds")) {
+          throttleSeconds = parser.getValueAsInt();
+        }
+      }
+      case RESPONSE -> {
+        if (fieldName.equals("activityWasStartedFromBeginning")) {
+          activityWasStartedFromBeginning = token == JsonToken.VALUE_TRUE;
+        }
+      }
+      case ENTRY_SUBFIELD -> {
+        if (Objects.equals(path[ENTRY_SUBFIELD], "destinyUserInfo")) {
+          userInfoValue(token, parser);
+        }
+      }
+      case BASIC -> {
+        if (fieldName.equals("value")) {
+          if (Objects.equals(path[ENTRY_SUBFIELD], "kills")) {
+            currentKills = parser.getValueAsDouble();
+          } else {
+            currentDeaths = parser.getValueAsDouble();
+          }
+        }
+      }
+      default -> {
+        // every other value is not needed
+      }
+    }
+  }
+
+  private void userInfoValue(JsonToken token, JsonParser parser) throws IOException {
+    if (token == JsonToken.VALUE_NULL) {
+      return;
+    }
+    switch (fieldName) {
+      case "iconPath" -> currentUserInfo.setIconPath(parser.getText());
+      case "membershipType" -> currentUserInfo.setMembershipType(parser.getValueAsInt());
+      case "membershipId" -> currentUserInfo.setMembershipId(parser.getValueAsLong());
+      case "displayName" -> currentUserInfo.setDisplayName(parser.getText());
+      case "bungieGlobalDisplayName" ->
+          currentUserInfo.setBungieGlobalDisplayName(parser.getText());
+      case "bungieGlobalDisplayNameCode" ->
+          currentUserInfo.setBungieGlobalDisplayNameCode(parser.getValueAsInt());
+      default -> {
+        // every other value is not needed
+      }
+    }
+  }
+
+  private PGCREntry buildEntry() {
+    Map<String, ValueEntry> values = Map.of(
+        "kills", new ValueEntry("kills", new Basic(currentKills, null)),
+        "deaths", new ValueEntry("deaths", new Basic(currentDeaths, null)));
+    PlayerPGCREntry player = new PlayerPGCREntry(currentUserInfo, null, null);
+    currentUserInfo = null;
+    return new PGCREntry(null, player, values);
+  }
+}
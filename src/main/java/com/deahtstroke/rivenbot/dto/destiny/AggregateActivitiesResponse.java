@@ -0,0 +1,14 @@
+package com.deahtstroke.rivenbot.dto.destiny;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AggregateActivitiesResponse {
+
+  private List<AggregateActivity> activities;
+}
@@ -0,0 +1,20 @@
+package com.deahtstroke.rivenbot.dto.destiny;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The stats a character has accumulated in an activity over all the times it was played, e.g.,
+ * 'activityCompletions', 'activityKills', 'activityDeaths' and 'fastestCompletionMsForActivity'
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AggregateActivity {
+
+  private Long activityHash;
+
+  private Map<String, ValueEntry> values;
+}
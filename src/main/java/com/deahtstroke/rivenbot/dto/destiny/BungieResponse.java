@@ -23,6 +23,15 @@ public class BungieResponse<T> {
   @JsonAlias("ErrorCode")
   private Integer errorCode;
 
+  @JsonAlias("ThrottleSeconds")
+  @Nullable
+  private Integer throttleSeconds;
+
+  public BungieResponse(@Nullable T response, Integer errorCode) {
+    this.response = response;
+    this.errorCode = errorCode;
+  }
+
   /**
    * Static constructor to make a Bungie Response
    *
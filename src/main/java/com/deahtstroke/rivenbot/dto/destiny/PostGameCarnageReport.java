@@ -14,7 +14,7 @@ import lombok.NoArgsConstructor;
 public class PostGameCarnageReport {
 
   /**
-   * Fall back Post Game Carnage Report for empty responses or for big responses (> 16KB)
+   * Fall back Post Game Carnage Report for empty responses
    */
   public static final PostGameCarnageReport EMPTY_RESPONSE = new PostGameCarnageReport(
       Instant.now(Clock.systemUTC()), false, Collections.emptyList());
@@ -0,0 +1,23 @@
+package com.deahtstroke.rivenbot.dto.destiny.manifest;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DestinyManifest {
+
+  /**
+   * The current version of the manifest, changes every time Bungie publishes new content
+   */
+  private String version;
+
+  /**
+   * Relative paths to each manifest table in JSON format, keyed by locale and then by the name of
+   * the definition, e.g., "en" -> "DestinyActivityDefinition" -> "/common/destiny2_content/..."
+   */
+  private Map<String, Map<String, String>> jsonWorldComponentContentPaths;
+}
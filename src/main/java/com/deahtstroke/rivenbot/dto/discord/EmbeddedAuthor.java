@@ -1,11 +1,13 @@
 package com.deahtstroke.rivenbot.dto.discord;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 import lombok.Data;
 
 @Data
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public class EmbeddedAuthor {
 
   /**
@@ -44,6 +44,12 @@ public class Interaction implements Serializable {
    */
   private Member member;
 
+  /**
+   * The Id of the guild the interaction was sent from, absent for direct messages
+   */
+  @JsonAlias("guild_id")
+  private String guildId;
+
   /**
    * Continuation token
    */
@@ -0,0 +1,28 @@
+package com.deahtstroke.rivenbot.entity;
+
+import java.time.Instant;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The newest raid that is known for a character. The activity history of a character is sorted
+ * from newest to oldest, so syncing the new raids of a character stops at its watermark
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CharacterWatermark {
+
+  /**
+   * The instanceId of the newest known raid, null if only the time is known
+   */
+  private Long instanceId;
+
+  /**
+   * When the newest known raid was played
+   */
+  private Instant period;
+}
@@ -0,0 +1,39 @@
+package com.deahtstroke.rivenbot.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How far the raids of a single character have been ingested. Pages of the activity history of a
+ * character are saved in order, so every page before {@link #nextPage} is already saved
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class IngestionCheckpoint {
+
+  /**
+   * The page of the activity history to continue from
+   */
+  private Integer nextPage;
+
+  /**
+   * The instanceId of the last activity of the last saved page. New raids push older activities to
+   * later pages, so when a job resumes the activities of the next page up to this one were already
+   * saved and are skipped
+   */
+  private Long lastInstanceId;
+
+  /**
+   * Whether every page of the activity history of the character was saved
+   */
+  private Boolean completed;
+
+  /**
+   * The newest raid saved for the character, saved as its watermark once the job completes
+   */
+  private CharacterWatermark watermark;
+}
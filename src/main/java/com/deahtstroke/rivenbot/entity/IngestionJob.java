@@ -0,0 +1,97 @@
+package com.deahtstroke.rivenbot.entity;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.collections4.MapUtils;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The ingestion of the raids of a user, either because the user was just seen for the first time
+ * or because their new raids are being added. The job is saved before any raid is and checkpointed
+ * after every page of raids, so an ingestion that fails or is interrupted by a restart resumes
+ * where it left off the next time the user is requested.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "ingestion_jobs")
+public class IngestionJob {
+
+  /**
+   * The membershipId of the user, a user only has one job at a time
+   */
+  @Id
+  private String id;
+
+  /**
+   * The username portion of the user
+   */
+  private String username;
+
+  /**
+   * The userTag portion of the user
+   */
+  private String userTag;
+
+  /**
+   * When the job was started, saved as the last time the user was requested once it completes
+   */
+  private Instant startedAt;
+
+  /**
+   * Only raids played after this instant are ingested, null to ingest every raid
+   */
+  private Instant until;
+
+  /**
+   * Checkpoints keyed by the characterId they belong to
+   */
+  private Map<String, IngestionCheckpoint> checkpoints;
+
+  /**
+   * The last time the job made progress, jobs that stop making progress eventually expire
+   */
+  private Instant checkpointedAt;
+
+  /**
+   * Creates a job that has not ingested anything yet
+   *
+   * @param membershipId The membershipId of the user
+   * @param username     The username of the user
+   * @param userTag      The userTag of the user
+   * @param startedAt    When the job was started
+   * @param until        Only raids played after this instant are ingested, null for every raid
+   * @return {@link IngestionJob}
+   */
+  public static IngestionJob start(String membershipId, String username, String userTag,
+      Instant startedAt, Instant until) {
+    return new IngestionJob(membershipId, username, userTag, startedAt, until, new HashMap<>(),
+        startedAt);
+  }
+
+  /**
+   * Whether the job made progress before it was interrupted
+   *
+   * @return true if the job has at least one checkpoint
+   */
+  public boolean isResumed() {
+    return MapUtils.isNotEmpty(checkpoints);
+  }
+
+  /**
+   * Get the checkpoint of a character
+   *
+   * @param characterId The characterId
+   * @return {@link IngestionCheckpoint} or null if the character has no checkpoint yet
+   */
+  public IngestionCheckpoint checkpoint(String characterId) {
+    return MapUtils.isEmpty(checkpoints) ? null : checkpoints.get(characterId);
+  }
+}
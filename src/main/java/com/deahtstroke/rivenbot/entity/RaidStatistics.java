@@ -1,6 +1,6 @@
 package com.deahtstroke.rivenbot.entity;
 
-import java.util.Set;
+import java.util.Objects;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,10 +11,6 @@ import org.springframework.data.annotation.Id;
 @NoArgsConstructor
 public class RaidStatistics {
 
-  private static final Set<String> RAIDS_WITH_MASTER_MODE = Set.of(
-      "Vault of Glass", "Vow of the Disciple", "King's Fall", "Root of Nightmares", "Crota's End"
-  );
-
   /**
    * The name of the raid, should be the _id of the aggregation once the grouping happens
    */
@@ -69,8 +65,9 @@ public class RaidStatistics {
    */
   public String toDiscordField() {
     StringBuilder fastestRaidDuration = new StringBuilder();
-    int hours = (fastestTime / 3600) % 24;
-    int minutes = (fastestTime / 60) % 60;
+    int fastest = Objects.isNull(fastestTime) ? 0 : fastestTime;
+    int hours = (fastest / 3600) % 24;
+    int minutes = (fastest / 60) % 60;
     if (hours > 0) {
       fastestRaidDuration.append(hours).append("hr(s)").append(" ");
     }
@@ -88,13 +85,17 @@ public class RaidStatistics {
     }
     raidTemplate.append(":bar_chart: ").append("Total Clears: ").append(this.totalClears)
         .append("\n");
-    raidTemplate.append(":trophy: ").append("Full Clears: ").append(this.fullClears)
-        .append("\n");
-    if (RAIDS_WITH_MASTER_MODE.contains(this.raidName) && normalClears != 0) {
+    // Full clears are not known when the statistics are only a summary
+    if (Objects.nonNull(fullClears)) {
+      raidTemplate.append(":trophy: ").append("Full Clears: ").append(this.fullClears)
+          .append("\n");
+    }
+    // Normal and master clears are only counted for raids that have a master mode
+    if (Objects.nonNull(normalClears) && normalClears != 0) {
       raidTemplate.append(":regional_indicator_n: ").append("Normal Clears: ")
           .append(this.normalClears).append("\n");
     }
-    if (RAIDS_WITH_MASTER_MODE.contains(this.raidName) && masterClears != 0) {
+    if (Objects.nonNull(masterClears) && masterClears != 0) {
       raidTemplate.append(":regional_indicator_m: ").append("Master Clears: ")
           .append(this.masterClears).append("\n");
     }
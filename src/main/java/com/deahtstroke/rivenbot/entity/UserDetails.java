@@ -3,6 +3,7 @@ package com.deahtstroke.rivenbot.entity;
 import java.io.Serializable;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -41,7 +42,28 @@ public class UserDetails implements Serializable {
   private Instant lastRequestDateTime;
 
   /**
-   * Collection of user raid data
+   * Collection of user raid data. Only set for users saved before raids were moved to their own
+   * collection, see {@link UserRaidInstance}
    */
   private Collection<UserRaidDetails> userRaidDetails;
+
+  /**
+   * Whether the materialized raid statistics of this user include all of their raid details. Users
+   * saved before statistics were materialized need them rebuilt once before they can be updated
+   * incrementally
+   */
+  private Boolean raidStatisticsMaterialized;
+
+  /**
+   * The Bungie membershipId of this player. Unlike the username and userTag it never changes, so it
+   * is the key users are looked up by. Only missing for users saved before it was stored, it is
+   * set the next time they are updated
+   */
+  private String membershipId;
+
+  /**
+   * The newest known raid of each character, keyed by characterId. Only the raids played after it
+   * are synced when this user is updated
+   */
+  private Map<String, CharacterWatermark> characterWatermarks;
 }
@@ -2,6 +2,7 @@ package com.deahtstroke.rivenbot.entity;
 
 import com.deahtstroke.rivenbot.enums.RaidDifficulty;
 import java.io.Serializable;
+import java.time.Instant;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -64,4 +65,9 @@ public class UserRaidDetails implements Serializable {
    * information.
    */
   private Long instanceId;
+
+  /**
+   * When the raid was played
+   */
+  private Instant period;
 }
@@ -0,0 +1,78 @@
+package com.deahtstroke.rivenbot.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Unwrapped;
+
+/**
+ * A single raid played by a user. Raids are stored one document per user and activity instance
+ * rather than embedded in {@link UserDetails}, so saving new raids never rewrites the ones that
+ * were already saved and users are not bound by the max size of a document.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "user_raid_details")
+public class UserRaidInstance {
+
+  /**
+   * Made up of the user and the activity instanceId, so the same raid is never saved twice for a
+   * user
+   */
+  @Id
+  private String id;
+
+  /**
+   * The username portion of the player that played the raid
+   */
+  private String username;
+
+  /**
+   * The userTag portion of the player that played the raid
+   */
+  private String userTag;
+
+  /**
+   * The details of the raid, stored as top-level fields of the document
+   */
+  @Unwrapped.Nullable
+  private UserRaidDetails raidDetails;
+
+  /**
+   * Whether the raid was added to the materialized statistics of the user. Raids are saved before
+   * their statistics are, so raids that are not recorded after their ingestion ended mean that the
+   * statistics of the user missed them
+   */
+  private Boolean statisticsRecorded;
+
+  /**
+   * Creates the document of a raid played by a user that was not recorded in their statistics yet
+   *
+   * @param username    The username of the player
+   * @param userTag     The userTag of the player
+   * @param raidDetails The details of the raid
+   * @return {@link UserRaidInstance}
+   */
+  public static UserRaidInstance of(String username, String userTag,
+      UserRaidDetails raidDetails) {
+    return new UserRaidInstance(id(username, userTag, raidDetails.getInstanceId()), username,
+        userTag, raidDetails, false);
+  }
+
+  /**
+   * The id of a raid played by a user
+   *
+   * @param username   The username of the player
+   * @param userTag    The userTag of the player
+   * @param instanceId The activity instanceId of the raid
+   * @return the id of the document
+   */
+  public static String id(String username, String userTag, Long instanceId) {
+    return username + "#" + userTag + ":" + instanceId;
+  }
+}
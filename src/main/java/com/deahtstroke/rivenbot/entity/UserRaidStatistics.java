@@ -0,0 +1,100 @@
+package com.deahtstroke.rivenbot.entity;
+
+import java.util.Objects;
+import java.util.Set;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Raid statistics of a user for a single raid. These documents are kept up to date with atomic
+ * increments whenever new {@link UserRaidDetails} are saved, so reading the statistics of a user
+ * does not depend on how many raids they have played.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "user_raid_statistics")
+public class UserRaidStatistics {
+
+  @Id
+  private String id;
+
+  /**
+   * The username portion of the player these statistics belong to
+   */
+  private String username;
+
+  /**
+   * The userTag portion of the player these statistics belong to
+   */
+  private String userTag;
+
+  /**
+   * The name of the raid
+   */
+  private String raidName;
+
+  /**
+   * Total amount of kills done in the raid
+   */
+  private Integer totalKills;
+
+  /**
+   * Total amount of deaths done in the raid
+   */
+  private Integer totalDeaths;
+
+  /**
+   * The fastest full clear of the raid in seconds, null if the raid was never fully cleared
+   */
+  private Integer fastestTime;
+
+  /**
+   * The total amount of clears of the raid
+   */
+  private Integer totalClears;
+
+  /**
+   * The total amount of clears that started from the beginning of the raid
+   */
+  private Integer fullClears;
+
+  /**
+   * The total amount of clears that did not start from the beginning of the raid
+   */
+  private Integer partialClears;
+
+  /**
+   * The total amount of normal-mode clears, regardless of whether the raid has a master mode
+   */
+  private Integer normalClears;
+
+  /**
+   * The total amount of master-mode clears
+   */
+  private Integer masterClears;
+
+  /**
+   * Convert to the statistics shown to users. Normal and master clears are only shown for raids
+   * that have a master mode, which may change as new Manifest versions come out, so they are
+   * filtered here rather than when they are counted
+   *
+   * @param raidsWithMasterMode Names of the raids that have a master mode
+   * @return {@link RaidStatistics}
+   */
+  public RaidStatistics toRaidStatistics(Set<String> raidsWithMasterMode) {
+    boolean hasMasterMode = raidsWithMasterMode.contains(raidName);
+    return new RaidStatistics(raidName, valueOf(totalKills), valueOf(totalDeaths),
+        valueOf(fastestTime), valueOf(partialClears), valueOf(totalClears), valueOf(fullClears),
+        hasMasterMode ? valueOf(masterClears) : 0, hasMasterMode ? valueOf(normalClears) : 0);
+  }
+
+  private static Integer valueOf(Integer value) {
+    return Objects.isNull(value) ? 0 : value;
+  }
+}
@@ -0,0 +1,15 @@
+package com.deahtstroke.rivenbot.exception;
+
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import java.io.Serial;
+
+public class IngestionInterruptedException extends BaseDiscordChatException {
+
+  @Serial
+  private static final long serialVersionUID = -3388171290546021763L;
+
+  public IngestionInterruptedException(String message,
+      InteractionResponseData interactionResponseData) {
+    super(message, interactionResponseData);
+  }
+}
@@ -0,0 +1,14 @@
+package com.deahtstroke.rivenbot.exception;
+
+import java.io.Serial;
+import org.springframework.http.HttpStatus;
+
+public class RateLimitExceededException extends BaseException {
+
+  @Serial
+  private static final long serialVersionUID = 2905810324377129432L;
+
+  public RateLimitExceededException(String message) {
+    super(message, HttpStatus.TOO_MANY_REQUESTS);
+  }
+}
@@ -0,0 +1,111 @@
+package com.deahtstroke.rivenbot.handler;
+
+import com.deahtstroke.rivenbot.dto.discord.Interaction;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Lets slash commands that defer their work answer inline when their result is ready quickly, so
+ * that they do not need a deferred response followed by a second call to Discord to edit it. The
+ * result of a command is raced against a latency budget, if it arrives in time it is sent as the
+ * response of the interaction, otherwise it is cancelled and the command falls back to its
+ * deferred response, whose work follows it up by editing the original response.
+ * <p>
+ * Discord expects the response of an interaction within 3 seconds of its creation, so the budget
+ * is counted from when the interaction was created rather than from when it reached this instance,
+ * and has to leave enough time for the deferred response to be built and sent. A budget of zero
+ * always defers.
+ */
+@Slf4j
+@Component
+public class AdaptiveDefer {
+
+  private static final long DISCORD_EPOCH_MILLIS = 1420070400000L;
+  private static final int SNOWFLAKE_TIMESTAMP_SHIFT = 22;
+
+  private final MeterRegistry meterRegistry;
+  private final Duration budget;
+
+  public AdaptiveDefer(
+      MeterRegistry meterRegistry,
+      @Value("${application.adaptiveDefer.budget:PT1S}") Duration budget) {
+    this.meterRegistry = meterRegistry;
+    this.budget = budget;
+  }
+
+  /**
+   * Get when an interaction was created from the timestamp in its snowflake ID
+   *
+   * @param interaction The interaction
+   * @return the instant the interaction was created, or now if it has no ID
+   */
+  static Instant createdAt(Interaction interaction) {
+    if (Objects.isNull(interaction.getId())) {
+      return Instant.now();
+    }
+    return Instant.ofEpochMilli(
+        (interaction.getId() >> SNOWFLAKE_TIMESTAMP_SHIFT) + DISCORD_EPOCH_MILLIS);
+  }
+
+  /**
+   * Answer a slash command inline if its result arrives within the budget, otherwise defer it
+   *
+   * @param command     The slash command
+   * @param interaction The interaction of the command, the budget is counted from its creation
+   * @param result      The result of the command, empty if it can not be answered inline
+   * @param deferred    Supplier of the deferred response of the command
+   * @return the result as a channel message if it arrived in time, otherwise the deferred response
+   */
+  public Mono<InteractionResponse> serve(SlashCommand command, Interaction interaction,
+      Mono<InteractionResponseData> result, Supplier<Mono<InteractionResponse>> deferred) {
+    if (!budget.isPositive()) {
+      return Mono.defer(deferred);
+    }
+    return Mono.defer(() -> {
+      Timer.Sample sample = Timer.start(meterRegistry);
+      Duration remaining = budget.minus(
+          Duration.between(createdAt(interaction), Instant.now()));
+      if (!remaining.isPositive()) {
+        sample.stop(latency(command, "deferred"));
+        return deferred.get();
+      }
+      return result
+          .timeout(remaining, Mono.empty())
+          .onErrorResume(err -> {
+            log.warn("Unable to answer [{}] inline, deferring it", command.getCommandName(), err);
+            return Mono.empty();
+          })
+          .map(data -> {
+            sample.stop(latency(command, "inline"));
+            return InteractionResponse.builder()
+                .type(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType())
+                .data(data)
+                .build();
+          })
+          .switchIfEmpty(Mono.defer(() -> {
+            sample.stop(latency(command, "deferred"));
+            return deferred.get();
+          }));
+    });
+  }
+
+  private Timer latency(SlashCommand command, String outcome) {
+    return Timer.builder("rivenbot.adaptive.defer")
+        .description("Time spent waiting for the result of slash commands before answering them")
+        .tag("command", command.getCommandName())
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+}
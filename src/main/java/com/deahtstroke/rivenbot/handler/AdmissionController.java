@@ -0,0 +1,139 @@
+package com.deahtstroke.rivenbot.handler;
+
+import com.deahtstroke.rivenbot.config.BungieConfiguration;
+import com.deahtstroke.rivenbot.config.RateLimiterConfiguration;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.processor.RaidStatsJobQueue;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.util.MessageUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Decides whether a slash command that defers its work is accepted, so that no interaction is
+ * answered with a deferred response that can not be followed up before its token expires. The time
+ * a new job would take to complete is estimated from the amount of jobs queued ahead of it, the
+ * calls to Bungie.net a job takes on average and the rate of calls Bungie.net currently allows,
+ * i.e., the lowest of the rate the adaptive concurrency limit allows and the adaptive rate limit
+ * of the API keys. Commands whose estimate
+ * goes over the budget are shed with a message telling the user when to try again.
+ * <p>
+ * The estimate fails open, if the queue can not be read every command is accepted.
+ */
+@Slf4j
+@Component
+public class AdmissionController {
+
+  private static final String BUSY_MESSAGE = """
+      Riven is busy crunching the raids of other guardians right now, please try again in %s \
+      minute(s).""";
+
+  private final RaidStatsJobQueue raidStatsJobQueue;
+  private final AdaptiveRateController bungieRateController;
+  private final MeterRegistry meterRegistry;
+  private final int keys;
+  private final long limitRefreshPeriodMillis;
+  private final int callsPerJob;
+  private final Duration budget;
+  private final AtomicLong lastEstimateMillis = new AtomicLong();
+
+  public AdmissionController(
+      RaidStatsJobQueue raidStatsJobQueue,
+      AdaptiveRateController bungieRateController,
+      RateLimiterConfiguration rateLimiterConfiguration,
+      BungieConfiguration bungieConfiguration,
+      MeterRegistry meterRegistry,
+      @Value("${application.admission.callsPerJob:40}") int callsPerJob,
+      @Value("${application.admission.budget:PT10M}") Duration budget) {
+    this.raidStatsJobQueue = raidStatsJobQueue;
+    this.bungieRateController = bungieRateController;
+    this.meterRegistry = meterRegistry;
+    this.keys = bungieConfiguration.apiKeys().size();
+    Duration limitRefreshPeriod = rateLimiterConfiguration.getLimitRefreshPeriod();
+    this.limitRefreshPeriodMillis = Objects.isNull(limitRefreshPeriod) ? 0L :
+        limitRefreshPeriod.toMillis();
+    this.callsPerJob = callsPerJob;
+    this.budget = budget;
+    TimeGauge.builder("rivenbot.admission.estimate", lastEstimateMillis, TimeUnit.MILLISECONDS,
+            AtomicLong::get)
+        .description("Last estimated time for a new deferred job to complete")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Build the response sent to users whose command was shed
+   *
+   * @param retryAfter The time after which the command is likely to be accepted
+   * @return an ephemeral message asking the user to try again later
+   */
+  public static InteractionResponse busyResponse(Duration retryAfter) {
+    long minutes = Math.max(1L, (retryAfter.toSeconds() + 59) / 60);
+    return InteractionResponse.builder()
+        .type(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType())
+        .data(InteractionResponseData.builder()
+            .content(BUSY_MESSAGE.formatted(minutes))
+            .flags(MessageUtils.EPHEMERAL_BYTE)
+            .build())
+        .build();
+  }
+
+  private double keysRateLimit() {
+    if (limitRefreshPeriodMillis <= 0) {
+      return Double.POSITIVE_INFINITY;
+    }
+    return bungieRateController.getLimitForPeriod() * keys * 1000.0 / limitRefreshPeriodMillis;
+  }
+
+  /**
+   * Decide whether to accept a slash command that defers its work
+   *
+   * @param command The slash command
+   * @return empty Mono if the command is accepted, otherwise the time after which it is likely to
+   * be accepted
+   */
+  public Mono<Duration> shed(SlashCommand command) {
+    return raidStatsJobQueue.backlog()
+        .map(backlog -> {
+          Duration estimate = estimate(backlog);
+          lastEstimateMillis.set(estimate.toMillis());
+          return estimate.minus(budget);
+        })
+        .onErrorResume(err -> {
+          log.warn("Unable to estimate the completion time of [{}], accepting it",
+              command.getCommandName(), err);
+          return Mono.just(Duration.ZERO);
+        })
+        .doOnNext(excess -> decisions(command, excess.isPositive() ? "shed" : "admitted")
+            .increment())
+        .filter(Duration::isPositive);
+  }
+
+  private Duration estimate(long backlog) {
+    double callsPerSecond = Math.min(bungieRateController.getRateLimit(), keysRateLimit());
+    if (callsPerSecond <= 0) {
+      return Duration.ZERO;
+    }
+    double seconds = (backlog + 1) * callsPerJob / callsPerSecond;
+    return Duration.ofMillis((long) (seconds * 1000));
+  }
+
+  private Counter decisions(SlashCommand command, String decision) {
+    return Counter.builder("rivenbot.admission.decisions")
+        .description("Admission decisions taken for slash commands that defer their work")
+        .tag("command", command.getCommandName())
+        .tag("decision", decision)
+        .register(meterRegistry);
+  }
+}
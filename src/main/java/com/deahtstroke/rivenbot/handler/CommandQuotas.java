@@ -0,0 +1,212 @@
+package com.deahtstroke.rivenbot.handler;
+
+import com.deahtstroke.rivenbot.config.QuotaConfiguration.Quota;
+import com.deahtstroke.rivenbot.dto.discord.Interaction;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import com.deahtstroke.rivenbot.ratelimit.TokenBucketStore;
+import com.deahtstroke.rivenbot.util.MessageUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Per-guild and per-user quotas of the slash commands that are expensive to serve, so that a single
+ * guild or user can not spend the whole Bungie.net budget on their own. Quotas are token buckets
+ * refilled continuously over their period, which behaves like a sliding window over the last
+ * period, and are checked before the command reaches its handler. Every use takes a token from the
+ * bucket of the user and then from the bucket of the guild, the command is rejected as soon as one
+ * of them is empty. A use rejected by the guild gives the token of the user back, so only uses that
+ * reach the handler count against the user, and handlers give both tokens back when they can not
+ * serve a command they were allowed to (see {@link #refund}).
+ * <p>
+ * Buckets are shared by every instance of the application through Redis, if Redis can not be
+ * reached every instance falls back to buckets of its own.
+ */
+@Slf4j
+public class CommandQuotas {
+
+  private static final String KEY_PREFIX = "rivenbot:quota:";
+  private static final String USER_SCOPE = "user";
+  private static final String GUILD_SCOPE = "guild";
+  private static final String USER_QUOTA_MESSAGE = """
+      You have used /%s too many times lately guardian, you can use it again <t:%s:R>.""";
+  private static final String GUILD_QUOTA_MESSAGE = """
+      This server has used /%s too many times lately, it can be used again <t:%s:R>.""";
+
+  private final Map<SlashCommand, Quota> quotas;
+  private final TokenBucketStore sharedStore;
+  private final TokenBucketStore localStore;
+  private final MeterRegistry meterRegistry;
+
+  public CommandQuotas(Map<SlashCommand, Quota> quotas, TokenBucketStore sharedStore,
+      TokenBucketStore localStore, MeterRegistry meterRegistry) {
+    this.quotas = quotas;
+    this.sharedStore = sharedStore;
+    this.localStore = localStore;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Build the response sent to users whose command went over a quota
+   *
+   * @param command The slash command
+   * @param scope   The scope of the quota, either 'user' or 'guild'
+   * @param retryAt The instant after which the command can be used again
+   * @return an ephemeral message telling the user when to try again
+   */
+  public static InteractionResponse quotaExceededResponse(SlashCommand command, String scope,
+      Instant retryAt) {
+    String message = Objects.equals(scope, GUILD_SCOPE) ? GUILD_QUOTA_MESSAGE : USER_QUOTA_MESSAGE;
+    long retryEpochSecond = retryAt.getEpochSecond() + (retryAt.getNano() > 0 ? 1 : 0);
+    return InteractionResponse.builder()
+        .type(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType())
+        .data(InteractionResponseData.builder()
+            .content(message.formatted(command.getCommandName(), retryEpochSecond))
+            .flags(MessageUtils.EPHEMERAL_BYTE)
+            .build())
+        .build();
+  }
+
+  /**
+   * Take a use of a slash command from the quotas of the user and guild that sent it
+   *
+   * @param command     The slash command
+   * @param interaction The interaction of the command
+   * @return empty Mono if the command is within its quotas, otherwise the response telling the user
+   * when to try again
+   */
+  public Mono<InteractionResponse> enforce(SlashCommand command, Interaction interaction) {
+    Quota quota = quotas.get(command);
+    if (Objects.isNull(quota) || Objects.isNull(quota.getPeriod())) {
+      return Mono.empty();
+    }
+    Bucket user = userBucket(command, quota, interaction);
+    Bucket guild = guildBucket(command, quota, interaction);
+    return take(user)
+        .flatMap(userToken -> userToken.rejected() ? Mono.just(reject(user, userToken)) :
+            take(guild).flatMap(guildToken -> guildToken.rejected() ?
+                refund(user, userToken).thenReturn(reject(guild, guildToken)) :
+                Mono.empty()));
+  }
+
+  /**
+   * Give back a use of a slash command taken by {@link #enforce} to the quotas of the user and
+   * guild that sent it, for commands that were within their quotas but could not be served
+   *
+   * @param command     The slash command
+   * @param interaction The interaction of the command
+   * @return empty Mono once the use was given back
+   */
+  public Mono<Void> refund(SlashCommand command, Interaction interaction) {
+    Quota quota = quotas.get(command);
+    if (Objects.isNull(quota) || Objects.isNull(quota.getPeriod())) {
+      return Mono.empty();
+    }
+    return Mono.when(giveBack(userBucket(command, quota, interaction)),
+        giveBack(guildBucket(command, quota, interaction)));
+  }
+
+  @Nullable
+  private static Bucket userBucket(SlashCommand command, Quota quota, Interaction interaction) {
+    String requester = BungieRequestContext.requester(interaction);
+    String userId = Objects.equals(requester, BungieRequestContext.ANONYMOUS) ? null : requester;
+    return Bucket.of(command, USER_SCOPE, userId, quota.getPerUser(), quota.getPeriod());
+  }
+
+  @Nullable
+  private static Bucket guildBucket(SlashCommand command, Quota quota, Interaction interaction) {
+    return Bucket.of(command, GUILD_SCOPE, interaction.getGuildId(), quota.getPerGuild(),
+        quota.getPeriod());
+  }
+
+  private Mono<Token> take(@Nullable Bucket bucket) {
+    if (Objects.isNull(bucket)) {
+      return Mono.just(Token.NONE);
+    }
+    return sharedStore.acquire(bucket.key(), bucket.limit(), bucket.periodMillis(), 1)
+        .map(result -> new Token(sharedStore, result))
+        .onErrorResume(err -> {
+          log.warn("Unable to read quota [{}] from Redis, using the local quota", bucket.key(),
+              err);
+          return localStore.acquire(bucket.key(), bucket.limit(), bucket.periodMillis(), 1)
+              .map(result -> new Token(localStore, result));
+        });
+  }
+
+  private Mono<Void> refund(@Nullable Bucket bucket, Token token) {
+    if (Objects.isNull(bucket) || Objects.isNull(token.store())) {
+      return Mono.empty();
+    }
+    return token.store().refund(bucket.key(), bucket.limit(), bucket.periodMillis(), 1)
+        .onErrorResume(err -> {
+          log.warn("Unable to give back the token of quota [{}]", bucket.key(), err);
+          return Mono.empty();
+        });
+  }
+
+  private Mono<Void> giveBack(@Nullable Bucket bucket) {
+    if (Objects.isNull(bucket)) {
+      return Mono.empty();
+    }
+    return sharedStore.refund(bucket.key(), bucket.limit(), bucket.periodMillis(), 1)
+        .onErrorResume(err -> {
+          log.warn("Unable to give back the token of quota [{}] to Redis, using the local quota",
+              bucket.key(), err);
+          return localStore.refund(bucket.key(), bucket.limit(), bucket.periodMillis(), 1);
+        });
+  }
+
+  private InteractionResponse reject(Bucket bucket, Token token) {
+    rejected(bucket.command(), bucket.scope()).increment();
+    return quotaExceededResponse(bucket.command(), bucket.scope(),
+        Instant.now().plusMillis(-token.result()));
+  }
+
+  private Counter rejected(SlashCommand command, String scope) {
+    return Counter.builder("rivenbot.quotas.rejected")
+        .description("Slash commands rejected for going over a per-guild or per-user quota")
+        .tag("command", command.getCommandName())
+        .tag("scope", scope)
+        .register(meterRegistry);
+  }
+
+  /**
+   * The bucket of a quota of a user or guild
+   */
+  private record Bucket(SlashCommand command, String scope, String key, int limit,
+      long periodMillis) {
+
+    @Nullable
+    static Bucket of(SlashCommand command, String scope, @Nullable String id,
+        @Nullable Integer limit, Duration period) {
+      if (Objects.isNull(id) || Objects.isNull(limit)) {
+        return null;
+      }
+      String key = KEY_PREFIX + command.getCommandName() + ":" + scope + ":" + id;
+      return new Bucket(command, scope, key, limit, period.toMillis());
+    }
+  }
+
+  /**
+   * The result of taking a token from a bucket, see {@link TokenBucketStore#acquire}, along with
+   * the store it was taken from so that it can be given back there
+   */
+  private record Token(@Nullable TokenBucketStore store, long result) {
+
+    private static final Token NONE = new Token(null, 1L);
+
+    boolean rejected() {
+      return result < 0;
+    }
+  }
+}
@@ -21,6 +21,7 @@ public class InteractionFactory {
   private final List<SlashCommandHandler> slashCommandHandlers;
   private final List<MessageComponentHandler> messageComponentHandlers;
   private final List<AutocompleteHandler> autocompleteHandlers;
+  private final CommandQuotas commandQuotas;
 
   private final EnumMap<SlashCommand, SlashCommandHandler> slashCommandFactory =
       new EnumMap<>(SlashCommand.class);
@@ -32,10 +33,12 @@ public class InteractionFactory {
   public InteractionFactory(
       List<SlashCommandHandler> slashCommandHandlers,
       List<MessageComponentHandler> messageComponentHandlers,
-      List<AutocompleteHandler> autocompleteHandlers) {
+      List<AutocompleteHandler> autocompleteHandlers,
+      CommandQuotas commandQuotas) {
     this.slashCommandHandlers = slashCommandHandlers;
     this.messageComponentHandlers = messageComponentHandlers;
     this.autocompleteHandlers = autocompleteHandlers;
+    this.commandQuotas = commandQuotas;
   }
 
   @PostConstruct
@@ -56,7 +59,10 @@ public class InteractionFactory {
   /**
    * This method returns and routes a given Discord interaction to the correct {@link Handler} class
    * that contains all the business logic. It takes into account interaction type, slash-command,
-   * and message component ID if given
+   * and message component ID if given. Slash commands are rejected when they go over the quotas of
+   * the user or guild that sent them (see {@link CommandQuotas}), except for the ones that defer
+   * their work, which only go through the {@link AdmissionController} and their quotas once they
+   * fall back to their deferred response
    *
    * @param interaction the Discord interaction
    * @return the correct {@link Handler} for the given interaction
@@ -87,6 +93,12 @@ public class InteractionFactory {
           interaction);
       throw new NoSuchHandlerException("No handler found");
     }
+    if (handler instanceof SlashCommandHandler slashCommandHandler &&
+        Objects.equals(interactionType, InteractionType.APPLICATION_COMMAND) &&
+        !slashCommandHandler.isDeferred()) {
+      return commandQuotas.enforce(slashCommandHandler.getSlashCommand(), interaction)
+          .switchIfEmpty(Mono.defer(() -> handler.serve(interaction)));
+    }
     return handler.serve(interaction);
   }
 }
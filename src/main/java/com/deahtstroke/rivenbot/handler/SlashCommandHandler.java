@@ -10,4 +10,14 @@ public interface SlashCommandHandler extends Handler {
    * @return {@link SlashCommand}
    */
   SlashCommand getSlashCommand();
+
+  /**
+   * Whether this handler can answer with a deferred response and follow it up later, such handlers
+   * run the {@link AdmissionController} and {@link CommandQuotas} themselves before deferring
+   *
+   * @return true if the work of the command is deferred
+   */
+  default boolean isDeferred() {
+    return false;
+  }
 }
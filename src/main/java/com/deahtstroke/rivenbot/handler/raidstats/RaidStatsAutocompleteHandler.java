@@ -1,7 +1,6 @@
 package com.deahtstroke.rivenbot.handler.raidstats;
 
 import com.deahtstroke.rivenbot.client.BungieClient;
-import com.deahtstroke.rivenbot.config.BungieConfiguration;
 import com.deahtstroke.rivenbot.dto.destiny.MemberGroupResponse;
 import com.deahtstroke.rivenbot.dto.destiny.UserGlobalSearchBody;
 import com.deahtstroke.rivenbot.dto.destiny.UserSearchResult;
@@ -13,9 +12,11 @@ import com.deahtstroke.rivenbot.dto.discord.Option;
 import com.deahtstroke.rivenbot.enums.InteractionResponseType;
 import com.deahtstroke.rivenbot.enums.SlashCommand;
 import com.deahtstroke.rivenbot.handler.AutocompleteHandler;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import com.deahtstroke.rivenbot.ratelimit.RequestPriority;
 import com.deahtstroke.rivenbot.service.BungieAPIService;
 import com.deahtstroke.rivenbot.util.NumberUtils;
-import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
 import java.util.Objects;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.text.similarity.LevenshteinDistance;
@@ -38,12 +39,15 @@ public class RaidStatsAutocompleteHandler implements AutocompleteHandler {
 
   private final BungieClient defaultBungieClient;
   private final BungieAPIService bungieAPIService;
+  private final AdaptiveRateController bungieRateController;
 
   public RaidStatsAutocompleteHandler(
       BungieClient defaultBungieClient,
-      BungieAPIService bungieAPIService) {
+      BungieAPIService bungieAPIService,
+      AdaptiveRateController bungieRateController) {
     this.defaultBungieClient = defaultBungieClient;
     this.bungieAPIService = bungieAPIService;
+    this.bungieRateController = bungieRateController;
   }
 
   @Override
@@ -73,7 +77,6 @@ public class RaidStatsAutocompleteHandler implements AutocompleteHandler {
     return Flux.range(0, MAX_NUMBER_OF_USER_PAGES)
         .flatMapSequential(pageNumber -> bungieAPIService.retrievePlayers(
             new UserGlobalSearchBody(username), pageNumber))
-        .transformDeferred(RateLimiterOperator.of(BungieConfiguration.PGCR_RATE_LIMITER))
         .takeWhile(response -> !Objects.equals(response.getErrorCode(), NO_USERS_FOUND_ERROR_CODE))
         .flatMapIterable(response -> response.getResponse().getSearchResults())
         .filter(result -> CollectionUtils.isNotEmpty(result.getDestinyMemberships()))
@@ -85,7 +88,9 @@ public class RaidStatsAutocompleteHandler implements AutocompleteHandler {
             InteractionResponseType.APPLICATION_COMMAND_AUTOCOMPLETE_RESULT.getType(),
             InteractionResponseData.builder().choices(choices)
                 .build()
-        ));
+        ))
+        .contextWrite(BungieRequestContext.forInteraction(interaction,
+            RequestPriority.AUTOCOMPLETE));
   }
 
   private boolean levenshteinFilter(String tag, UserSearchResult result) {
@@ -113,6 +118,7 @@ public class RaidStatsAutocompleteHandler implements AutocompleteHandler {
     Integer membershipType = result.getDestinyMemberships().get(0).getMembershipType();
     return defaultBungieClient.getGroupsForMember(membershipType, membershipId,
             CLAN_SIZE_FILTER, CLAN_GROUP_TYPE)
+        .doOnNext(bungieRateController::observe)
         .map(clanResponse -> {
           String choiceName = name(result, clanResponse.getResponse());
           String choiceValue = value(result);
@@ -3,38 +3,85 @@ package com.deahtstroke.rivenbot.handler.raidstats;
 import com.deahtstroke.rivenbot.dto.discord.Interaction;
 import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
 import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
 import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.handler.AdaptiveDefer;
+import com.deahtstroke.rivenbot.handler.AdmissionController;
+import com.deahtstroke.rivenbot.handler.CommandQuotas;
 import com.deahtstroke.rivenbot.handler.SlashCommandHandler;
 import com.deahtstroke.rivenbot.processor.AsyncRaidsProcessor;
+import com.deahtstroke.rivenbot.processor.RaidStatsJob;
+import com.deahtstroke.rivenbot.processor.RaidStatsJobQueue;
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import java.time.Duration;
+import java.time.Instant;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 @Component
 public class RaidStatsCommandHandler implements SlashCommandHandler {
 
   private static final String HASHTAG = "#";
 
+  private final RaidStatsJobQueue raidStatsJobQueue;
   private final AsyncRaidsProcessor asyncRaidsProcessor;
+  private final AdaptiveDefer adaptiveDefer;
+  private final AdmissionController admissionController;
+  private final CommandQuotas commandQuotas;
 
-  public RaidStatsCommandHandler(AsyncRaidsProcessor asyncRaidsProcessor) {
+  public RaidStatsCommandHandler(RaidStatsJobQueue raidStatsJobQueue,
+      AsyncRaidsProcessor asyncRaidsProcessor, AdaptiveDefer adaptiveDefer,
+      AdmissionController admissionController, CommandQuotas commandQuotas) {
+    this.raidStatsJobQueue = raidStatsJobQueue;
     this.asyncRaidsProcessor = asyncRaidsProcessor;
+    this.adaptiveDefer = adaptiveDefer;
+    this.admissionController = admissionController;
+    this.commandQuotas = commandQuotas;
   }
 
+  /**
+   * Raid stats of users synced moments ago are read from the database and answered inline within
+   * the budget of {@link AdaptiveDefer}, otherwise a job is queued to follow up a deferred
+   * response. Only the jobs go through the {@link AdmissionController} and the
+   * {@link CommandQuotas}, since answering inline does not call Bungie.net
+   */
   @Override
   public Mono<InteractionResponse> serve(Interaction interaction) {
-    return Mono.just(InteractionResponse.builder()
-            .type(5)
-            .data(new InteractionResponseData())
-            .build())
-        .publishOn(Schedulers.boundedElastic())
-        .doOnSubscribe(subscription -> {
-          Object optionValue = interaction.getData().getOptions().get(0).getValue();
-          String[] values = ((String) optionValue).split(HASHTAG);
-          String username = values[0];
-          String userTag = values[1];
-          asyncRaidsProcessor.processRaidsAsync(username, userTag, interaction.getToken())
-              .subscribe();
+    return Mono.defer(() -> {
+      Object optionValue = interaction.getData().getOptions().get(0).getValue();
+      String[] values = ((String) optionValue).split(HASHTAG);
+      RaidStatsJob job = new RaidStatsJob(values[0], values[1], interaction.getToken(),
+          BungieRequestContext.requester(interaction), Instant.now());
+      return adaptiveDefer.serve(getSlashCommand(), interaction,
+          asyncRaidsProcessor.raidStats(job.username(), job.userTag()),
+          () -> defer(job, interaction));
+    });
+  }
+
+  private Mono<InteractionResponse> defer(RaidStatsJob job, Interaction interaction) {
+    return admissionController.shed(getSlashCommand())
+        .map(AdmissionController::busyResponse)
+        .switchIfEmpty(Mono.defer(() -> commandQuotas.enforce(getSlashCommand(), interaction)))
+        .switchIfEmpty(Mono.defer(() -> enqueue(job, interaction)));
+  }
+
+  /**
+   * Queue the job of a command that was within its quotas, the quotas are given back if the job is
+   * not accepted since its raid stats will not be served
+   */
+  private Mono<InteractionResponse> enqueue(RaidStatsJob job, Interaction interaction) {
+    return raidStatsJobQueue.enqueue(job)
+        .onErrorResume(err -> commandQuotas.refund(getSlashCommand(), interaction)
+            .then(Mono.error(err)))
+        .flatMap(accepted -> {
+          if (Boolean.FALSE.equals(accepted)) {
+            return commandQuotas.refund(getSlashCommand(), interaction)
+                .thenReturn(AdmissionController.busyResponse(Duration.ZERO));
+          }
+          return Mono.just(InteractionResponse.builder()
+              .type(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType())
+              .data(new InteractionResponseData())
+              .build());
         });
   }
 
@@ -42,4 +89,9 @@ public class RaidStatsCommandHandler implements SlashCommandHandler {
   public SlashCommand getSlashCommand() {
     return SlashCommand.RAID_STATS;
   }
+
+  @Override
+  public boolean isDeferred() {
+    return true;
+  }
 }
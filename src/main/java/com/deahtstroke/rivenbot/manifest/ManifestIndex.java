@@ -0,0 +1,80 @@
+package com.deahtstroke.rivenbot.manifest;
+
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import lombok.Getter;
+import org.springframework.lang.Nullable;
+
+/**
+ * Read-only, in-memory snapshot of the Manifest tables the bot uses. Every table is indexed by the
+ * entity hash so lookups don't need to go through the network. Instances of this class are never
+ * mutated after creation, a new version of the Manifest means a brand-new index.
+ */
+public final class ManifestIndex {
+
+  /**
+   * Index used before the Manifest is loaded for the first time, every lookup is a miss
+   */
+  public static final ManifestIndex EMPTY = new ManifestIndex(null, Collections.emptyMap());
+
+  @Getter
+  @Nullable
+  private final String version;
+
+  private final Map<ManifestEntity, Map<Long, ManifestResponseFields>> tables;
+
+  /**
+   * Raid resolution table built from the activity definitions of this index
+   */
+  @Getter
+  private final RaidActivityTable raidActivityTable;
+
+  public ManifestIndex(String version,
+      Map<ManifestEntity, Map<Long, ManifestResponseFields>> tables) {
+    EnumMap<ManifestEntity, Map<Long, ManifestResponseFields>> indexedTables =
+        new EnumMap<>(ManifestEntity.class);
+    tables.forEach((entity, table) -> indexedTables.put(entity, Map.copyOf(table)));
+    this.version = version;
+    this.tables = Collections.unmodifiableMap(indexedTables);
+    this.raidActivityTable = RaidActivityTable.from(this);
+  }
+
+  /**
+   * Find a manifest entity in the index
+   *
+   * @param entityType The type of the entity
+   * @param hash       The hash of the entity
+   * @return {@link ManifestResponseFields} or null if the entity is not indexed
+   */
+  @Nullable
+  public ManifestResponseFields get(ManifestEntity entityType, Long hash) {
+    Map<Long, ManifestResponseFields> table = tables.get(entityType);
+    if (Objects.isNull(table) || Objects.isNull(hash)) {
+      return null;
+    }
+    return table.get(hash);
+  }
+
+  /**
+   * Get all the entries of an indexed table
+   *
+   * @param entityType The type of the entity
+   * @return Map of entities keyed by their hash, empty if the table is not indexed
+   */
+  public Map<Long, ManifestResponseFields> table(ManifestEntity entityType) {
+    return tables.getOrDefault(entityType, Collections.emptyMap());
+  }
+
+  /**
+   * Total amount of entities across all tables in this index
+   *
+   * @return the number of entities
+   */
+  public int size() {
+    return tables.values().stream().mapToInt(Map::size).sum();
+  }
+}
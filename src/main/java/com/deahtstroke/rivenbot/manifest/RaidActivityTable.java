@@ -0,0 +1,234 @@
+package com.deahtstroke.rivenbot.manifest;
+
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.lang.Nullable;
+
+/**
+ * Resolution table from an activity hash (the 'directorActivityHash' of an activity) to a raid and
+ * its difficulty. The table is built once per Manifest version so that resolving a raid activity is
+ * a primitive lookup instead of a Manifest call followed by parsing its display name.
+ * <p>
+ * Activity hashes are stored in an open-addressing table of longs, each slot holds an int where
+ * the upper bits are the id of the raid (an index into the raid names) and the lower two bits are
+ * the difficulty.
+ */
+public final class RaidActivityTable {
+
+  /**
+   * Value returned by {@link #find(long)} whenever an activity hash is not a raid
+   */
+  public static final int NOT_FOUND = -1;
+
+  /**
+   * Raids that have a Master difficulty, used when the Manifest has not been loaded yet
+   */
+  public static final Set<String> DEFAULT_RAIDS_WITH_MASTER_MODE = Set.of(
+      "Vault of Glass", "Vow of the Disciple", "King's Fall", "Root of Nightmares", "Crota's End",
+      "Salvation's Edge"
+  );
+
+  /**
+   * Table with no raid activities
+   */
+  public static final RaidActivityTable EMPTY = new RaidActivityTable(
+      Collections.emptyMap(), Collections.emptyList(), DEFAULT_RAIDS_WITH_MASTER_MODE);
+
+  private static final long RAID_ACTIVITY_TYPE_HASH = 2043403989L;
+  private static final int RAID_ACTIVITY_MODE = 4;
+  private static final int DIFFICULTY_BITS = 2;
+  private static final int DIFFICULTY_MASK = (1 << DIFFICULTY_BITS) - 1;
+  private static final RaidDifficulty[] DIFFICULTIES = {null, RaidDifficulty.NORMAL,
+      RaidDifficulty.MASTER};
+
+  private final long[] keys;
+  private final int[] values;
+  private final int mask;
+  private final String[] raidNames;
+  private final Set<String> raidsWithMasterMode;
+
+  private RaidActivityTable(Map<Long, Integer> entries, List<String> raidNames,
+      Set<String> raidsWithMasterMode) {
+    int capacity = Integer.highestOneBit(Math.max(entries.size() * 2, 8) - 1) << 1;
+    this.keys = new long[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    this.raidNames = raidNames.toArray(String[]::new);
+    this.raidsWithMasterMode = Set.copyOf(raidsWithMasterMode);
+    entries.forEach(this::insert);
+  }
+
+  /**
+   * Builds the table using the activity definitions of a Manifest index
+   *
+   * @param manifestIndex The Manifest index
+   * @return {@link RaidActivityTable}
+   */
+  public static RaidActivityTable from(ManifestIndex manifestIndex) {
+    Map<Long, ManifestResponseFields> activities =
+        manifestIndex.table(ManifestEntity.ACTIVITY_DEFINITION);
+    if (activities.isEmpty()) {
+      return EMPTY;
+    }
+    Map<String, Integer> raidIds = new HashMap<>();
+    List<String> raidNames = new ArrayList<>();
+    Map<Long, Integer> entries = new HashMap<>();
+    Set<String> raidsWithMasterMode = new HashSet<>(DEFAULT_RAIDS_WITH_MASTER_MODE);
+    activities.forEach((hash, activity) -> {
+      if (hash == 0 || !isRaid(activity)) {
+        return;
+      }
+      String displayName = activity.getDisplayProperties().getName();
+      String raidName = resolveRaidName(displayName);
+      RaidDifficulty raidDifficulty = resolveRaidDifficulty(displayName);
+      int raidId = raidIds.computeIfAbsent(raidName, name -> {
+        raidNames.add(name);
+        return raidNames.size() - 1;
+      });
+      if (raidDifficulty == RaidDifficulty.MASTER) {
+        raidsWithMasterMode.add(raidName);
+      }
+      entries.put(hash, raidId << DIFFICULTY_BITS | encode(raidDifficulty));
+    });
+    return new RaidActivityTable(entries, raidNames, raidsWithMasterMode);
+  }
+
+  /**
+   * Resolve the name of a raid from the display name of its activity definition, e.g., "King's
+   * Fall: Master" resolves to "King's Fall"
+   *
+   * @param displayName The display name of the activity
+   * @return the raid name
+   */
+  public static String resolveRaidName(String displayName) {
+    int separator = displayName.indexOf(':');
+    return (separator < 0 ? displayName : displayName.substring(0, separator)).trim();
+  }
+
+  /**
+   * Resolve the difficulty of a raid from the display name of its activity definition, e.g.,
+   * "King's Fall: Master" resolves to {@link RaidDifficulty#MASTER}
+   *
+   * @param displayName The display name of the activity
+   * @return the raid difficulty or null if the display name does not have a known difficulty
+   */
+  @Nullable
+  public static RaidDifficulty resolveRaidDifficulty(String displayName) {
+    String[] tokens = displayName.split(":");
+    if (tokens.length > 1) {
+      return switch (tokens[1].trim()) {
+        case "Normal", "normal" -> RaidDifficulty.NORMAL;
+        case "Master", "master" -> RaidDifficulty.MASTER;
+        default -> null;
+      };
+    }
+    return null;
+  }
+
+  /**
+   * Find the entry of an activity hash in this table
+   *
+   * @param activityHash The 'directorActivityHash' of the activity
+   * @return the entry of the activity or {@link #NOT_FOUND} if the activity is not a raid
+   */
+  public int find(long activityHash) {
+    if (activityHash == 0) {
+      return NOT_FOUND;
+    }
+    int slot = slot(activityHash);
+    while (keys[slot] != 0) {
+      if (keys[slot] == activityHash) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * Get the name of the raid of an entry returned by {@link #find(long)}
+   *
+   * @param entry The entry
+   * @return the name of the raid
+   */
+  public String raidName(int entry) {
+    return raidNames[entry >>> DIFFICULTY_BITS];
+  }
+
+  /**
+   * Get the difficulty of the raid of an entry returned by {@link #find(long)}
+   *
+   * @param entry The entry
+   * @return the difficulty of the raid, null if the raid only has one difficulty
+   */
+  @Nullable
+  public RaidDifficulty raidDifficulty(int entry) {
+    return DIFFICULTIES[entry & DIFFICULTY_MASK];
+  }
+
+  /**
+   * Get the names of the raids that can be played in Master difficulty
+   *
+   * @return Set of raid names
+   */
+  public Set<String> raidsWithMasterMode() {
+    return raidsWithMasterMode;
+  }
+
+  /**
+   * Amount of raid activities in this table
+   *
+   * @return the number of activities
+   */
+  public int size() {
+    int size = 0;
+    for (long key : keys) {
+      if (key != 0) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private void insert(long activityHash, int value) {
+    int slot = slot(activityHash);
+    while (keys[slot] != 0 && keys[slot] != activityHash) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = activityHash;
+    values[slot] = value;
+  }
+
+  private int slot(long activityHash) {
+    long mixed = activityHash * 0x9E3779B97F4A7C15L;
+    return (int) (mixed ^ (mixed >>> 32)) & mask;
+  }
+
+  private static boolean isRaid(ManifestResponseFields activity) {
+    boolean hasName = Objects.nonNull(activity.getDisplayProperties()) &&
+                      Objects.nonNull(activity.getDisplayProperties().getName()) &&
+                      !activity.getDisplayProperties().getName().isBlank();
+    boolean isRaidMode = Objects.equals(activity.getDirectActivityModeType(), RAID_ACTIVITY_MODE);
+    boolean isRaidType = Objects.equals(activity.getActivityTypeHash(), RAID_ACTIVITY_TYPE_HASH);
+    return hasName && (isRaidMode || isRaidType);
+  }
+
+  private static int encode(@Nullable RaidDifficulty raidDifficulty) {
+    if (raidDifficulty == null) {
+      return 0;
+    }
+    return switch (raidDifficulty) {
+      case NORMAL -> 1;
+      case MASTER -> 2;
+    };
+  }
+}
@@ -18,16 +18,28 @@ import com.deahtstroke.rivenbot.exception.BaseDiscordChatException;
 import com.deahtstroke.rivenbot.exception.MembershipsNotFoundException;
 import com.deahtstroke.rivenbot.exception.NoRaidDataFoundException;
 import com.deahtstroke.rivenbot.exception.ProfileNotPublicException;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
 import com.deahtstroke.rivenbot.service.DiscordAPIService;
+import com.deahtstroke.rivenbot.service.IngestionProgress;
 import com.deahtstroke.rivenbot.service.RaidStatsService;
+import com.deahtstroke.rivenbot.service.RaidStatsService.RaidStatsSync;
 import com.deahtstroke.rivenbot.util.MessageComponents;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuples;
 
 @Slf4j
 @Component
@@ -36,32 +48,57 @@ public class AsyncRaidsProcessor {
   private static final String HASHTAG = "#";
   private static final String ICON_BASE_URL = "https://www.bungie.net/";
   private static final String STATS_TITLE = "Raid Stats for %s";
+  private static final String STATS_DESCRIPTION =
+      "General crunched numbers regarding all the raid clears you've done so far guardian.";
+  private static final String SUMMARY_DESCRIPTION = """
+      A quick summary of all the raid clears you've done so far guardian, full clears are still \
+      being counted and this message will be updated once they are.""";
+  private static final String PARTIAL_DESCRIPTION = """
+      The raid clears counted so far guardian, the rest are still being counted and this message \
+      will be updated as they are.""";
+  private static final String STALE_DESCRIPTION = """
+      The raid clears you had done guardian when they were last counted <t:%s:R>, new clears are \
+      being counted and this message will be updated if there are any.""";
+  private static final String PROGRESS_DESCRIPTION = """
+      :hourglass: %s/%s pages of activity history and %s/%s post game carnage reports processed""";
+  private static final String REQUESTED_DESCRIPTION = "This was requested <t:%s:R>";
+  private static final String TIMED_OUT_MESSAGE = """
+      Your raid stats are taking longer than expected guardian, please try again in a few \
+      minutes.""";
   private static final String MANATEE_ICON = "https://www.harvardreview.org/wp-content/uploads/2020/10/Manatee.jpg";
   private static final String DEFAULT_RAID_THUMBNAIL_URL = "https://d1lss44hh2trtw.cloudfront.net/resize?type=webp&url=https%3A%2F%2Fshacknews-www.s3.amazonaws.com%2Fassets%2Farticle%2F2023%2F02%2F21%2Fdestiny-2-lightfall-raid-release-time_feature.jpg&width=2064&sign=GYtYnnD6xsEp5pOb7q50FhEUvzN8cE15FT4UUpCT5HA";
 
   private final DiscordAPIService discordAPIService;
   private final BungieClient defaultBungieClient;
+  private final AdaptiveRateController bungieRateController;
   private final RaidStatsService raidStatsService;
+  private final Duration progressInterval;
+  private final boolean staleWhileRevalidate;
+  private final Duration inlineMaxAge;
 
   public AsyncRaidsProcessor(
       DiscordAPIService discordAPIService,
       BungieClient defaultBungieClient,
-      RaidStatsService raidStatsService) {
+      AdaptiveRateController bungieRateController,
+      RaidStatsService raidStatsService,
+      @Value("${application.raidStats.progressInterval:PT5S}") Duration progressInterval,
+      @Value("${application.raidStats.staleWhileRevalidate:true}") boolean staleWhileRevalidate,
+      @Value("${application.raidStats.inlineMaxAge:PT1M}") Duration inlineMaxAge) {
     this.discordAPIService = discordAPIService;
     this.defaultBungieClient = defaultBungieClient;
+    this.bungieRateController = bungieRateController;
     this.raidStatsService = raidStatsService;
+    this.progressInterval = progressInterval;
+    this.staleWhileRevalidate = staleWhileRevalidate;
+    this.inlineMaxAge = inlineMaxAge;
   }
 
   private static Embedded createEmbed(String displayUsername, String usernameIcon,
-      List<EmbeddedField> embeddedFields) {
+      List<EmbeddedField> embeddedFields, String description) {
     var footer = EmbeddedFooter.builder()
         .iconUrl(MANATEE_ICON)
         .text("Developed by Deahtstroke")
         .build();
-    var description = """
-        General crunched numbers regarding all the raid clears you've done so far guardian.
-        This was requested <t:%s:R>""".formatted(
-        Instant.now().getEpochSecond());
     var thumbnail = EmbeddedThumbnail.builder()
         .url(DEFAULT_RAID_THUMBNAIL_URL)
         .build();
@@ -82,7 +119,13 @@ public class AsyncRaidsProcessor {
 
   /**
    * This method contains all the logic necessary to process a Destiny 2 user's statistics saved in
-   * the DB and subsequently send it through Discord chat
+   * the DB and subsequently send it through Discord chat. Users whose raids were never saved first
+   * get a summary of their statistics, followed by updates on how far the saving of their raids
+   * has gone every progress interval, until the statistics of every raid replace them. Returning
+   * users first get the statistics computed the last time they were synced, read from the database
+   * before anything is asked to Bungie.net, which are only replaced if their new raids changed
+   * them. Messages are edited one at a time and only the latest pending update is kept, so edits
+   * never pile up faster than Discord takes them
    *
    * @param username          The username for which to process raids
    * @param userTag           The tag of the user to process raids for
@@ -90,17 +133,98 @@ public class AsyncRaidsProcessor {
    *                          interaction
    */
   public Mono<Void> processRaidsAsync(String username, String userTag, String continuationToken) {
-    return createRaidStatsResponse(username, userTag)
+    return createRaidStatsResponses(username, userTag)
         .onErrorResume(BaseDiscordChatException.class,
             err -> Mono.just(err.getErrorInteractionResponse()))
         .doOnError(err -> log.error(err.getMessage()))
-        .flatMap(data -> discordAPIService.editOriginalInteraction(continuationToken, data));
+        .onBackpressureLatest()
+        .concatMap(data -> discordAPIService.editOriginalInteraction(continuationToken, data), 1)
+        .then();
   }
 
-  private Mono<InteractionResponseData> createRaidStatsResponse(String username, String userTag) {
+  /**
+   * Tell the user that their raid stats could not be sent in time, by replacing whatever was sent
+   * through the original interaction
+   *
+   * @param continuationToken The token from the interaction used to update the original
+   *                          interaction
+   * @return empty Mono once the interaction was edited
+   */
+  public Mono<Void> timedOut(String continuationToken) {
+    return Mono.defer(() -> discordAPIService.editOriginalInteraction(continuationToken,
+            InteractionResponseData.builder()
+                .content(TIMED_OUT_MESSAGE)
+                .embeds(List.of())
+                .build()));
+  }
+
+  /**
+   * Read the raid stats of a Destiny 2 user from the database, without syncing their new raids or
+   * asking anything to Bungie.net, so that they can be answered right away. Only users synced
+   * within the last 'inlineMaxAge' get them, the rest need their new raids synced through
+   * {@link #processRaidsAsync(String, String, String)}
+   *
+   * @param username The username for which to read raid stats
+   * @param userTag  The tag of the user to read raid stats for
+   * @return Mono with the raid stats, or empty if the user was not synced recently enough
+   */
+  public Mono<InteractionResponseData> raidStats(String username, String userTag) {
+    String displayUsername = username + HASHTAG + userTag;
+    return raidStatsService.lastSynced(username, userTag)
+        .filter(lastSynced -> lastSynced.plus(inlineMaxAge).isAfter(Instant.now()))
+        .flatMap(lastSynced -> toFields(raidStatsService.savedRaidStats(username, userTag)))
+        .filter(fields -> !fields.isEmpty())
+        .map(fields -> createResponse(displayUsername, null, fields, STATS_DESCRIPTION));
+  }
+
+  private Flux<InteractionResponseData> createRaidStatsResponses(String username,
+      String userTag) {
+    Flux<InteractionResponseData> responses = Flux.defer(() -> syncRaidStats(username, userTag));
+    if (!staleWhileRevalidate) {
+      return responses;
+    }
+    return raidStatsService.lastSynced(username, userTag)
+        .map(lastSynced -> revalidateRaidStats(username, userTag, responses.cache(), lastSynced))
+        .defaultIfEmpty(responses)
+        .flatMapMany(Function.identity());
+  }
+
+  private Flux<InteractionResponseData> syncRaidStats(String username, String userTag) {
+    return findMembership(username, userTag)
+        .flatMapMany(membership -> {
+          // Bungie.net matches names regardless of their case, raids and statistics are saved with
+          // the name Bungie.net knows the user by so that a differently typed name is not taken
+          // for a name change
+          String bungieName = Objects.requireNonNullElse(
+              membership.getBungieGlobalDisplayName(), username);
+          String bungieTag = Objects.isNull(membership.getBungieGlobalDisplayNameCode()) ?
+              userTag : String.valueOf(membership.getBungieGlobalDisplayNameCode());
+          String displayUsername = bungieName + HASHTAG + bungieTag;
+          String membershipId = membership.getMembershipId();
+          Integer membershipType = membership.getMembershipType();
+          RaidStatsSync sync = raidStatsService.syncRaidStats(bungieName, bungieTag,
+              membershipId, membershipType);
+          IngestionProgress progress = sync.progress();
+          Mono<MembershipResponse> userInfo = getBungieUserInfo(membershipId, membershipType)
+              .cache();
+          Mono<InteractionResponseData> stats = Mono.zip(userInfo,
+                  createEmbedFields(bungieName, bungieTag, sync.statistics()),
+                  (info, statsFields) -> createResponse(displayUsername, info, statsFields,
+                      STATS_DESCRIPTION))
+              .cache();
+          return raidStatsService.lastSynced(bungieName, bungieTag, membershipId)
+              .map(lastSynced -> stats.flux())
+              .defaultIfEmpty(Flux.defer(() -> previewRaidStats(displayUsername, membershipId,
+                  membershipType, userInfo, stats, progress)))
+              .flatMapMany(Function.identity());
+        });
+  }
+
+  private Mono<ExactUserSearchResponse> findMembership(String username, String userTag) {
     String displayUsername = username + HASHTAG + userTag;
     return defaultBungieClient.searchUserByExactNameAndCode(
             new ExactUserSearchRequest(username, userTag))
+        .doOnNext(bungieRateController::observe)
         .filter(response -> CollectionUtils.isNotEmpty(response.getResponse()))
         .switchIfEmpty(Mono.error(new MembershipsNotFoundException(
             "User [%s] does not have any valid Destiny 2 memberships".formatted(displayUsername),
@@ -109,7 +233,7 @@ public class AsyncRaidsProcessor {
                     "User %s has no valid Destiny 2 memberships! Please contact someone from the Dev Team in order to solve this issue or try again later"
                         .formatted(displayUsername))
                 .build())))
-        .flatMap(response -> {
+        .<ExactUserSearchResponse>flatMap(response -> {
           ExactUserSearchResponse firstResponse = response.getResponse().getFirst();
           if (Boolean.FALSE.equals(firstResponse.getIsPublic())) {
             return Mono.error(new ProfileNotPublicException(
@@ -121,35 +245,110 @@ public class AsyncRaidsProcessor {
                     .build()
             ));
           }
-          String membershipId = firstResponse.getMembershipId();
-          Integer membershipType = firstResponse.getMembershipType();
-          return Mono.zip(
-              getBungieUserInfo(membershipId, membershipType),
-              createEmbedFields(username, userTag, membershipId, membershipType),
-              (userInfo, fields) -> {
-                String usernameIcon = ICON_BASE_URL + userInfo.getBungieNetUser()
-                    .getProfilePicturePath();
-                return InteractionResponseData.builder()
-                    .embeds(MessageComponents.embeds(
-                        createEmbed(displayUsername, usernameIcon, fields)))
-                    .components(MessageComponents.components()
-                        .addActionRow(MessageComponents.actionRow()
-                            .button(MessageComponentId.RAID_STATS_COMPREHENSION,
-                                "What is this?", ButtonStyle.BLURPLE))
-                        .build())
-                    .build();
-              });
+          return Mono.just(firstResponse);
         });
   }
 
+  private Flux<InteractionResponseData> revalidateRaidStats(String username, String userTag,
+      Flux<InteractionResponseData> responses, Instant lastSynced) {
+    String displayUsername = username + HASHTAG + userTag;
+    Mono<List<EmbeddedField>> saved = toFields(raidStatsService.savedRaidStats(username, userTag))
+        .filter(savedFields -> !savedFields.isEmpty())
+        .onErrorResume(err -> {
+          log.warn("Unable to read the saved raid stats of user [{}]", displayUsername, err);
+          return Mono.empty();
+        })
+        .cache();
+    // The saved statistics are sent unless the new ones are ready first, in which case only the
+    // new ones are. They are sent without the profile picture of the user, since that has to be
+    // asked to Bungie.net. Once the saved statistics are sent the new ones only replace them if
+    // their numbers changed, and a failure to count the new raids or to reach Bungie.net at all
+    // leaves them as they are
+    AtomicBoolean staleSent = new AtomicBoolean();
+    Mono<InteractionResponseData> stale = saved
+        .map(savedFields -> createResponse(displayUsername, null, savedFields,
+            STALE_DESCRIPTION.formatted(lastSynced.getEpochSecond())))
+        .takeUntilOther(responses.onErrorResume(err -> Flux.never()))
+        .doOnNext(response -> staleSent.set(true));
+    Flux<InteractionResponseData> revalidated = responses
+        .filterWhen(response -> !staleSent.get() ? Mono.just(true) :
+            saved.map(savedFields -> !Set.copyOf(savedFields).equals(
+                Set.copyOf(response.getEmbeds().getFirst().getFields()))))
+        .onErrorResume(err -> {
+          if (!staleSent.get()) {
+            return Mono.error(err);
+          }
+          log.warn("Unable to revalidate the raid stats of user [{}]", displayUsername, err);
+          return Mono.empty();
+        });
+    return Flux.concat(stale, revalidated);
+  }
+
+  private Flux<InteractionResponseData> previewRaidStats(String displayUsername,
+      String membershipId, Integer membershipType, Mono<MembershipResponse> userInfo,
+      Mono<InteractionResponseData> stats, IngestionProgress progress) {
+    Mono<List<EmbeddedField>> summary = createSummaryFields(membershipId, membershipType)
+        .onErrorResume(err -> {
+          log.warn("Unable to summarize the raids of user [{}]", displayUsername, err);
+          return Mono.empty();
+        })
+        .cache();
+    // The summary is sent as soon as it is ready, the progress every interval after and both stop
+    // once the statistics of every raid are ready
+    Flux<InteractionResponseData> previews = Flux.concat(
+            Mono.zip(userInfo, summary, (info, fields) -> createResponse(displayUsername, info,
+                fields, describeProgress(SUMMARY_DESCRIPTION, progress))),
+            Flux.interval(progressInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> createPreview(displayUsername, userInfo, summary, progress), 1))
+        .takeUntilOther(stats);
+    return Flux.mergeSequential(previews, stats);
+  }
+
+  private Mono<InteractionResponseData> createPreview(String displayUsername,
+      Mono<MembershipResponse> userInfo, Mono<List<EmbeddedField>> summary,
+      IngestionProgress progress) {
+    return summary
+        .map(fields -> Tuples.of(fields, describeProgress(SUMMARY_DESCRIPTION, progress)))
+        .switchIfEmpty(Mono.defer(() -> createPartialFields(progress)
+            .map(fields -> Tuples.of(fields, describeProgress(PARTIAL_DESCRIPTION, progress)))))
+        .zipWith(userInfo, (preview, info) -> createResponse(displayUsername, info,
+            preview.getT1(), preview.getT2()));
+  }
+
+  private static String describeProgress(String description, IngestionProgress progress) {
+    if (progress.pagesDiscovered() == 0) {
+      return description;
+    }
+    return description + "\n" + PROGRESS_DESCRIPTION.formatted(progress.pagesProcessed(),
+        progress.pagesDiscovered(), progress.pgcrsProcessed(), progress.pgcrsDiscovered());
+  }
+
+  private static InteractionResponseData createResponse(String displayUsername,
+      @Nullable MembershipResponse userInfo, List<EmbeddedField> fields, String description) {
+    String usernameIcon = Objects.isNull(userInfo) ? null :
+        ICON_BASE_URL + userInfo.getBungieNetUser().getProfilePicturePath();
+    String requested = REQUESTED_DESCRIPTION.formatted(Instant.now().getEpochSecond());
+    return InteractionResponseData.builder()
+        .embeds(MessageComponents.embeds(
+            createEmbed(displayUsername, usernameIcon, fields, description + "\n" + requested)))
+        .components(MessageComponents.components()
+            .addActionRow(MessageComponents.actionRow()
+                .button(MessageComponentId.RAID_STATS_COMPREHENSION,
+                    "What is this?", ButtonStyle.BLURPLE))
+            .build())
+        .build();
+  }
+
   private Mono<MembershipResponse> getBungieUserInfo(String membershipId, Integer membershipType) {
     return defaultBungieClient.getMembershipInfoById(membershipId, membershipType)
+        .doOnNext(bungieRateController::observe)
         .map(BungieResponse::getResponse);
   }
 
   private Mono<List<EmbeddedField>> createEmbedFields(String username, String userTag,
-      String membershipId, Integer membershipType) {
-    return raidStatsService.calculateRaidStats(username, userTag, membershipId, membershipType)
+      Flux<RaidStatistics> statistics) {
+    return statistics
         .switchIfEmpty(Mono.error(new NoRaidDataFoundException(
             "User [%s] has no raid data available".formatted(username + HASHTAG + userTag),
             InteractionResponseData.builder()
@@ -159,6 +358,21 @@ public class AsyncRaidsProcessor {
                     username + HASHTAG + userTag))
                 .build()
         )))
+        .as(AsyncRaidsProcessor::toFields);
+  }
+
+  private Mono<List<EmbeddedField>> createSummaryFields(String membershipId,
+      Integer membershipType) {
+    return toFields(raidStatsService.summarizeRaidStats(membershipId, membershipType))
+        .filter(fields -> !fields.isEmpty());
+  }
+
+  private Mono<List<EmbeddedField>> createPartialFields(IngestionProgress progress) {
+    return toFields(raidStatsService.partialRaidStats(progress));
+  }
+
+  private static Mono<List<EmbeddedField>> toFields(Flux<RaidStatistics> statistics) {
+    return statistics
         .collectMap(RaidStatistics::getRaidName)
         .flatMapIterable(Map::entrySet)
         .map(MessageComponents::createField)
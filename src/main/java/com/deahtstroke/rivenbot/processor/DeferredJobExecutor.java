@@ -0,0 +1,243 @@
+package com.deahtstroke.rivenbot.processor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Runs the work of deferred interactions, i.e., interactions that were answered with a deferred
+ * response and are followed up by editing the original response. Jobs wait in a bounded queue and
+ * are run by a fixed amount of workers, submissions are rejected once the queue is full.
+ * <p>
+ * The token of an interaction expires 15 minutes after it was created, so every job has a timeout
+ * counted from the moment it was submitted, and jobs that waited in the queue for longer than that
+ * are dropped without running. Jobs that are cancelled by the timeout run their timeout action,
+ * e.g., telling the user while the token is still valid. On shutdown no new jobs are accepted and
+ * the queued and running ones are given some time to finish, before the web server shuts down.
+ */
+@Slf4j
+@Component
+public class DeferredJobExecutor implements SmartLifecycle {
+
+  private static final Duration DRAIN_POLL_INTERVAL = Duration.ofMillis(100);
+  private static final String LATENCY_METRIC = "rivenbot.deferred.jobs.latency";
+
+  private final Duration timeout;
+  private final Duration drainTimeout;
+  private final MeterRegistry meterRegistry;
+  private final BlockingQueue<DeferredJob> queue;
+  private final Sinks.Many<DeferredJob> jobs;
+  private final AtomicInteger activeJobs = new AtomicInteger();
+  private final Timer waitTimer;
+  private final Counter rejectedCounter;
+  private final Disposable workers;
+
+  private volatile boolean draining;
+  private volatile boolean running;
+
+  public DeferredJobExecutor(
+      MeterRegistry meterRegistry,
+      @Value("${application.deferredJobs.concurrency:16}") int concurrency,
+      @Value("${application.deferredJobs.queueCapacity:256}") int queueCapacity,
+      @Value("${application.deferredJobs.timeout:PT14M}") Duration timeout,
+      @Value("${application.deferredJobs.drainTimeout:PT30S}") Duration drainTimeout) {
+    this.timeout = timeout;
+    this.drainTimeout = drainTimeout;
+    this.meterRegistry = meterRegistry;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.jobs = Sinks.many().unicast().onBackpressureBuffer(queue);
+    this.waitTimer = Timer.builder("rivenbot.deferred.jobs.wait")
+        .description("Time deferred jobs waited in the queue before running")
+        .publishPercentileHistogram()
+        .register(meterRegistry);
+    this.rejectedCounter = Counter.builder("rivenbot.deferred.jobs.rejected")
+        .description("Deferred jobs rejected because the queue was full")
+        .register(meterRegistry);
+    Gauge.builder("rivenbot.deferred.jobs.queued", queue, BlockingQueue::size)
+        .description("Deferred jobs waiting for a worker")
+        .register(meterRegistry);
+    Gauge.builder("rivenbot.deferred.jobs.active", activeJobs, AtomicInteger::get)
+        .description("Deferred jobs being run")
+        .register(meterRegistry);
+    this.workers = jobs.asFlux()
+        .flatMap(this::run, concurrency)
+        .subscribe();
+  }
+
+  /**
+   * Queue the work of a deferred interaction
+   *
+   * @param name The name of the job, used for logging
+   * @param work The work to run
+   * @return true if the job was queued, false if it was rejected because the queue is full or the
+   * application is shutting down
+   */
+  public boolean submit(String name, Mono<Void> work) {
+    return submit(name, Instant.now(), work, Mono.empty());
+  }
+
+  /**
+   * Queue the work of a deferred interaction that was created earlier, e.g., on another instance.
+   * The timeout of the job is counted from the moment it was created
+   *
+   * @param name      The name of the job, used for logging
+   * @param createdAt When the job was created
+   * @param work      The work to run
+   * @param onTimeout The action to run if the work is cancelled by the timeout
+   * @return true if the job was queued, false if it was rejected because the queue is full or the
+   * application is shutting down
+   */
+  public synchronized boolean submit(String name, Instant createdAt, Mono<Void> work,
+      Mono<Void> onTimeout) {
+    if (draining) {
+      log.warn("Deferred job [{}] was rejected, the application is shutting down", name);
+      rejectedCounter.increment();
+      return false;
+    }
+    long submittedAt = System.nanoTime() - Duration.between(createdAt, Instant.now()).toNanos();
+    Sinks.EmitResult result = jobs.tryEmitNext(new DeferredJob(name, work, onTimeout, submittedAt));
+    if (result.isFailure()) {
+      log.warn("Deferred job [{}] was rejected with [{}] jobs queued", name, queue.size());
+      rejectedCounter.increment();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Get the amount of jobs waiting for a worker
+   *
+   * @return the amount of queued jobs
+   */
+  public int queuedJobs() {
+    return queue.size();
+  }
+
+  /**
+   * Get the amount of jobs being run
+   *
+   * @return the amount of running jobs
+   */
+  public int activeJobs() {
+    return activeJobs.get();
+  }
+
+  @Override
+  public void start() {
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    drain().block();
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    drain().doFinally(signal -> callback.run()).subscribe();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Stopped in the highest phase, i.e., before the graceful shutdown of the web server and before
+   * the HTTP resources of the clients are released
+   */
+  @Override
+  public int getPhase() {
+    return SmartLifecycle.DEFAULT_PHASE;
+  }
+
+  /**
+   * Stop accepting new jobs and wait for the queued and running ones to finish, for up to the drain
+   * timeout
+   *
+   * @return empty Mono once every job finished or the drain timeout passed
+   */
+  Mono<Void> drain() {
+    synchronized (this) {
+      draining = true;
+      running = false;
+      jobs.tryEmitComplete();
+    }
+    if (queue.isEmpty() && activeJobs.get() == 0) {
+      workers.dispose();
+      return Mono.empty();
+    }
+    log.info("Waiting for [{}] queued and [{}] running deferred jobs", queue.size(),
+        activeJobs.get());
+    return Flux.interval(DRAIN_POLL_INTERVAL)
+        .filter(tick -> queue.isEmpty() && activeJobs.get() == 0)
+        .next()
+        .timeout(drainTimeout)
+        .doOnError(err -> log.warn("[{}] deferred jobs did not finish in time",
+            queue.size() + activeJobs.get()))
+        .onErrorComplete()
+        .doFinally(signal -> workers.dispose())
+        .then();
+  }
+
+  private Mono<Void> run(DeferredJob job) {
+    Duration waited = Duration.ofNanos(System.nanoTime() - job.submittedAt());
+    waitTimer.record(waited);
+    Duration remaining = timeout.minus(waited);
+    if (remaining.isNegative() || remaining.isZero()) {
+      log.warn("Deferred job [{}] expired after waiting [{}] in the queue", job.name(), waited);
+      recordLatency(job, "expired");
+      return Mono.empty();
+    }
+    return Mono.defer(job::work)
+        .subscribeOn(Schedulers.boundedElastic())
+        .timeout(remaining)
+        .doOnSubscribe(subscription -> activeJobs.incrementAndGet())
+        .doOnSuccess(done -> recordLatency(job, "success"))
+        .onErrorResume(err -> {
+          boolean timedOut = err instanceof TimeoutException;
+          log.error("Deferred job [{}] {}", job.name(), timedOut ? "timed out" : "failed", err);
+          recordLatency(job, timedOut ? "timeout" : "error");
+          return timedOut ? onTimeout(job) : Mono.empty();
+        })
+        .doFinally(signal -> activeJobs.decrementAndGet());
+  }
+
+  private Mono<Void> onTimeout(DeferredJob job) {
+    return job.onTimeout()
+        .onErrorResume(err -> {
+          log.warn("Timeout action of deferred job [{}] failed", job.name(), err);
+          return Mono.empty();
+        });
+  }
+
+  private void recordLatency(DeferredJob job, String outcome) {
+    Timer.builder(LATENCY_METRIC)
+        .description("Time from the submission of deferred jobs until they finished")
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(meterRegistry)
+        .record(Duration.ofNanos(System.nanoTime() - job.submittedAt()));
+  }
+
+  private record DeferredJob(String name, Mono<Void> work, Mono<Void> onTimeout,
+      long submittedAt) {
+
+  }
+}
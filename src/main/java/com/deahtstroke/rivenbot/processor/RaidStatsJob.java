@@ -0,0 +1,86 @@
+package com.deahtstroke.rivenbot.processor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The deferred work of a /raid_stats command, i.e., the raid stats to send to a Discord
+ * interaction
+ *
+ * @param username         The username from Bungie
+ * @param userTag          The userTag from Bungie
+ * @param interactionToken The token used to edit the original response of the interaction
+ * @param requester        Who the Bungie.net calls of the job are made for
+ * @param enqueuedAt       When the job was created, the token of the interaction expires 15
+ *                         minutes after
+ */
+public record RaidStatsJob(String username, String userTag, String interactionToken,
+                           String requester, Instant enqueuedAt) {
+
+  private static final String USERNAME = "username";
+  private static final String USER_TAG = "userTag";
+  private static final String INTERACTION_TOKEN = "interactionToken";
+  private static final String REQUESTER = "requester";
+  private static final String ENQUEUED_AT = "enqueuedAt";
+
+  /**
+   * Read a job from the fields of a stream entry
+   *
+   * @param values The fields of the entry
+   * @return the job
+   * @throws IllegalArgumentException if a field is missing or malformed
+   */
+  public static RaidStatsJob fromMap(Map<String, String> values) {
+    try {
+      return new RaidStatsJob(required(values, USERNAME), required(values, USER_TAG),
+          required(values, INTERACTION_TOKEN), required(values, REQUESTER),
+          Instant.ofEpochMilli(Long.parseLong(required(values, ENQUEUED_AT))));
+    } catch (NumberFormatException err) {
+      throw new IllegalArgumentException("Malformed raid stats job " + values, err);
+    }
+  }
+
+  private static String required(Map<String, String> values, String field) {
+    String value = values.get(field);
+    if (Objects.isNull(value)) {
+      throw new IllegalArgumentException("Raid stats job is missing field [%s]".formatted(field));
+    }
+    return value;
+  }
+
+  /**
+   * Write the job as the fields of a stream entry
+   *
+   * @return the fields of the entry
+   */
+  public Map<String, String> toMap() {
+    return Map.of(
+        USERNAME, username,
+        USER_TAG, userTag,
+        INTERACTION_TOKEN, interactionToken,
+        REQUESTER, requester,
+        ENQUEUED_AT, String.valueOf(enqueuedAt.toEpochMilli()));
+  }
+
+  /**
+   * Whether the token of the interaction expired, so that the job is no longer worth running
+   *
+   * @param now           The current instant
+   * @param tokenLifetime How long the token is usable after the job was created
+   * @return true if the token expired
+   */
+  public boolean isExpired(Instant now, Duration tokenLifetime) {
+    return !enqueuedAt.plus(tokenLifetime).isAfter(now);
+  }
+
+  /**
+   * The name of the job, used for logging
+   *
+   * @return the name of the job
+   */
+  public String name() {
+    return "raid_stats " + username + "#" + userTag;
+  }
+}
@@ -0,0 +1,287 @@
+package com.deahtstroke.rivenbot.processor;
+
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import com.deahtstroke.rivenbot.ratelimit.RequestPriority;
+import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Range.Bound;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.stream.StreamReceiver;
+import org.springframework.data.redis.stream.StreamReceiver.StreamReceiverOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Queue of {@link RaidStatsJob} shared by every instance of the application, stored in a Redis
+ * Stream and consumed through a consumer group. Every instance reads a job only when its
+ * {@link DeferredJobExecutor} has room for it, so jobs are spread over the instances that have
+ * capacity to spare.
+ * <p>
+ * Jobs are acknowledged and removed from the stream once they ran or timed out. Instances keep the
+ * jobs they are running from going idle, so jobs that stay idle for longer than the min idle time
+ * belong to an instance that died and are reclaimed by the others. Jobs whose interaction token
+ * expired are discarded without running. If the stream can not be written to, jobs run on the
+ * instance that received them.
+ */
+@Slf4j
+@Component
+public class RaidStatsJobQueue {
+
+  private static final String STREAM_KEY = "rivenbot:raid-stats:jobs";
+  private static final String CONSUMER_GROUP = "raid-stats-workers";
+  private static final String BUSY_GROUP_ERROR = "BUSYGROUP";
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(2);
+  private static final Duration SUBMIT_RETRY_INTERVAL = Duration.ofMillis(500);
+  private static final long RECLAIM_BATCH = 100L;
+
+  private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+  private final ReactiveRedisConnectionFactory reactiveRedisConnectionFactory;
+  private final AsyncRaidsProcessor asyncRaidsProcessor;
+  private final DeferredJobExecutor deferredJobExecutor;
+  private final boolean enabled;
+  private final Duration tokenLifetime;
+  private final Duration minIdle;
+  private final Duration reclaimInterval;
+  private final String consumerName = UUID.randomUUID().toString();
+  private final Map<RecordId, Instant> running = new ConcurrentHashMap<>();
+  private final Disposable.Composite consumers = Disposables.composite();
+
+  public RaidStatsJobQueue(
+      ReactiveStringRedisTemplate reactiveStringRedisTemplate,
+      ReactiveRedisConnectionFactory reactiveRedisConnectionFactory,
+      AsyncRaidsProcessor asyncRaidsProcessor,
+      DeferredJobExecutor deferredJobExecutor,
+      @Value("${application.raidStats.queue.enabled:true}") boolean enabled,
+      @Value("${application.deferredJobs.timeout:PT14M}") Duration tokenLifetime,
+      @Value("${application.raidStats.queue.minIdle:PT1M}") Duration minIdle,
+      @Value("${application.raidStats.queue.reclaimInterval:PT15S}") Duration reclaimInterval) {
+    this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+    this.reactiveRedisConnectionFactory = reactiveRedisConnectionFactory;
+    this.asyncRaidsProcessor = asyncRaidsProcessor;
+    this.deferredJobExecutor = deferredJobExecutor;
+    this.enabled = enabled;
+    this.tokenLifetime = tokenLifetime;
+    this.minIdle = minIdle;
+    this.reclaimInterval = reclaimInterval;
+  }
+
+  /**
+   * Start consuming jobs, along with reclaiming the jobs of instances that died
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    StreamReceiver<String, MapRecord<String, String, String>> receiver = StreamReceiver.create(
+        reactiveRedisConnectionFactory, StreamReceiverOptions.builder()
+            .pollTimeout(POLL_TIMEOUT)
+            .batchSize(1)
+            .build());
+    consumers.add(createGroup()
+        .thenMany(Flux.defer(() -> receiver.receive(Consumer.from(CONSUMER_GROUP, consumerName),
+            StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()))))
+        .flatMap(this::process, 1)
+        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+            .maxBackoff(Duration.ofSeconds(30))
+            .doBeforeRetry(signal -> log.warn("Unable to consume raid stats jobs, retrying",
+                signal.failure())))
+        .subscribe());
+    consumers.add(Flux.interval(reclaimInterval)
+        .concatMap(tick -> keepRunningJobs()
+            .then(reclaim())
+            .onErrorResume(err -> {
+              log.warn("Unable to reclaim raid stats jobs", err);
+              return Mono.empty();
+            }))
+        .subscribe());
+  }
+
+  /**
+   * Stop consuming jobs, the jobs that were read but did not run are reclaimed by other instances
+   */
+  @PreDestroy
+  public void stop() {
+    consumers.dispose();
+  }
+
+  /**
+   * Queue a job
+   *
+   * @param job The job
+   * @return true if the job was queued, false if it was rejected
+   */
+  public Mono<Boolean> enqueue(RaidStatsJob job) {
+    if (!enabled) {
+      return Mono.fromCallable(() -> submit(job, run(job), timedOut(job)));
+    }
+    return streams().add(STREAM_KEY, job.toMap())
+        .thenReturn(true)
+        .onErrorResume(err -> {
+          log.warn("Unable to queue job [{}], running it on this instance", job.name(), err);
+          return Mono.fromCallable(() -> submit(job, run(job), timedOut(job)));
+        });
+  }
+
+  /**
+   * Get the amount of jobs that did not finish yet, queued or running on any instance
+   *
+   * @return Mono with the amount of jobs
+   */
+  public Mono<Long> backlog() {
+    Mono<Long> local = Mono.fromCallable(() ->
+        (long) deferredJobExecutor.queuedJobs() + deferredJobExecutor.activeJobs());
+    if (!enabled) {
+      return local;
+    }
+    return streams().size(STREAM_KEY)
+        .onErrorResume(err -> {
+          log.warn("Unable to read the size of the raid stats jobs queue", err);
+          return local;
+        });
+  }
+
+  /**
+   * Run a job read from the stream, the job is acknowledged once it ran
+   *
+   * @param record The entry of the job
+   * @return empty Mono once the job was handed to the {@link DeferredJobExecutor}
+   */
+  Mono<Void> process(MapRecord<String, String, String> record) {
+    RecordId id = record.getId();
+    RaidStatsJob job;
+    try {
+      job = RaidStatsJob.fromMap(record.getValue());
+    } catch (IllegalArgumentException err) {
+      log.warn("Discarding malformed raid stats job [{}]", id, err);
+      return acknowledge(id);
+    }
+    if (job.isExpired(Instant.now(), tokenLifetime)) {
+      log.warn("Discarding job [{}] queued at [{}], its interaction expired", job.name(),
+          job.enqueuedAt());
+      return acknowledge(id);
+    }
+    running.put(id, job.enqueuedAt());
+    Mono<Void> work = run(job)
+        .onErrorResume(err -> acknowledge(id).then(Mono.<Void>error(err)))
+        .then(acknowledge(id))
+        .doFinally(signal -> running.remove(id));
+    Mono<Void> onTimeout = timedOut(job).then(acknowledge(id));
+    return Mono.fromCallable(() -> submit(job, work, onTimeout))
+        .filter(Boolean::booleanValue)
+        .repeatWhenEmpty(attempts -> attempts.delayElements(SUBMIT_RETRY_INTERVAL))
+        .then();
+  }
+
+  /**
+   * Reclaim the jobs that stayed idle for longer than the min idle time. Pending jobs are read a
+   * page at a time from the last one seen, and each page is claimed only once the jobs claimed
+   * before were handed to the {@link DeferredJobExecutor}
+   *
+   * @return empty Mono once every idle job was reclaimed
+   */
+  Mono<Void> reclaim() {
+    return pending(Range.unbounded())
+        .expand(page -> page.size() < RECLAIM_BATCH ? Mono.empty() : pending(
+            Range.rightUnbounded(Bound.exclusive(page.get(page.size() - 1).getIdAsString()))))
+        .concatMap(page -> Flux.fromIterable(page)
+            .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0)
+            .map(PendingMessage::getId)
+            .collectList()
+            .filter(ids -> !ids.isEmpty())
+            .flatMapMany(ids -> streams().claim(STREAM_KEY, CONSUMER_GROUP, consumerName,
+                XClaimOptions.minIdle(minIdle).ids(ids.toArray(RecordId[]::new))))
+            .doOnNext(record -> log.info("Reclaimed raid stats job [{}]", record.getId()))
+            .concatMap(this::process), 1)
+        .then();
+  }
+
+  private Mono<PendingMessages> pending(Range<?> range) {
+    return streams().pending(STREAM_KEY, CONSUMER_GROUP, range, RECLAIM_BATCH);
+  }
+
+  private Mono<Void> run(RaidStatsJob job) {
+    return asyncRaidsProcessor.processRaidsAsync(job.username(), job.userTag(),
+            job.interactionToken())
+        .contextWrite(BungieRequestContext.withPriority(RequestPriority.COMMAND_CRITICAL)
+            .andThen(BungieRequestContext.withRequester(job.requester())));
+  }
+
+  private Mono<Void> timedOut(RaidStatsJob job) {
+    return Mono.defer(() -> asyncRaidsProcessor.timedOut(job.interactionToken()))
+        .onErrorResume(err -> {
+          log.warn("Unable to tell the user of job [{}] that it timed out", job.name(), err);
+          return Mono.empty();
+        });
+  }
+
+  private boolean submit(RaidStatsJob job, Mono<Void> work, Mono<Void> onTimeout) {
+    return deferredJobExecutor.submit(job.name(), job.enqueuedAt(), work, onTimeout);
+  }
+
+  private Mono<Void> createGroup() {
+    ByteBuffer key = ByteBuffer.wrap(STREAM_KEY.getBytes(StandardCharsets.UTF_8));
+    return reactiveStringRedisTemplate.execute(connection -> connection.streamCommands()
+            .xGroupCreate(key, CONSUMER_GROUP, ReadOffset.from("0"), true))
+        .then()
+        .onErrorResume(err -> Objects.toString(
+                NestedExceptionUtils.getMostSpecificCause(err).getMessage(), "")
+            .contains(BUSY_GROUP_ERROR), err -> Mono.empty());
+  }
+
+  /**
+   * Claim the running jobs again so that they never look idle to other instances, jobs whose
+   * interaction expired are left to be reclaimed and discarded
+   */
+  private Mono<Void> keepRunningJobs() {
+    Instant now = Instant.now();
+    running.values().removeIf(enqueuedAt -> !enqueuedAt.plus(tokenLifetime).isAfter(now));
+    if (running.isEmpty()) {
+      return Mono.empty();
+    }
+    return streams().claim(STREAM_KEY, CONSUMER_GROUP, consumerName,
+            XClaimOptions.minIdle(Duration.ZERO).ids(running.keySet().toArray(RecordId[]::new)))
+        .then();
+  }
+
+  private Mono<Void> acknowledge(RecordId id) {
+    return streams().acknowledge(STREAM_KEY, CONSUMER_GROUP, id)
+        .then(streams().delete(STREAM_KEY, id))
+        .then()
+        .onErrorResume(err -> {
+          log.warn("Unable to acknowledge raid stats job [{}]", id, err);
+          return Mono.empty();
+        });
+  }
+
+  private ReactiveStreamOperations<String, String, String> streams() {
+    return reactiveStringRedisTemplate.opsForStream();
+  }
+}
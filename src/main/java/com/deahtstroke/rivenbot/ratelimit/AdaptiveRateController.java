@@ -0,0 +1,317 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.util.HttpResponseUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.lang.Nullable;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Adaptive concurrency and rate limits for Bungie.net calls following an AIMD (additive increase,
+ * multiplicative decrease) policy. Every healthy response, one that is neither throttled nor slower
+ * than the latency threshold, grows both limits by roughly one per window of requests, and every
+ * throttle signal (a 429 or 503 status, or a Bungie throttle error code) multiplies both by the
+ * backoff ratio, each within its configured bounds. The rate limit is the amount of calls each API
+ * key can make every refresh period, which the token buckets of the keys read on every
+ * acquisition, see {@link DistributedRateLimiter}. By Little's law the rate the concurrency limit
+ * allows is the limit divided by the latency, which is published as an estimate.
+ * <p>
+ * A call holds its slot until the body of its response has been consumed, or until it fails or is
+ * cancelled before a response arrives, so slow or large bodies count against the limit too.
+ * <p>
+ * Whenever Bungie sends a 'Retry-After' header or 'ThrottleSeconds' no new calls are made until
+ * that time has passed. Throttle error codes come in the body of the response, which this filter
+ * does not read, so services that decode {@link BungieResponse}s should report them through
+ * {@link #observe(BungieResponse)}.
+ * <p>
+ * Calls that can not get a slot right away wait in a {@link PriorityScheduler}, so calls made for
+ * an interaction a user is waiting on go ahead of bulk work. The priority and requester of a call
+ * are read from the Reactor context, see {@link BungieRequestContext}.
+ */
+@Slf4j
+public class AdaptiveRateController implements ExchangeFilterFunction {
+
+  /**
+   * ThrottleLimitExceeded, ThrottleLimitExceededMinutes, ThrottleLimitExceededMomentarily and
+   * PerEndpointRequestThrottleExceeded
+   */
+  private static final Set<Integer> THROTTLE_ERROR_CODES = Set.of(36, 37, 38, 51);
+  private static final double LATENCY_SMOOTHING = 0.2;
+
+  private final double minLimit;
+  private final double maxLimit;
+  private final double minLimitForPeriod;
+  private final double maxLimitForPeriod;
+  private final double backoffRatio;
+  private final long latencyThresholdMillis;
+  private final long backoffCooldownMillis;
+  private final PriorityScheduler<Waiter> waiters;
+
+  private double limit;
+  private double limitForPeriod;
+  private int inFlight = 0;
+  private long pausedUntil = 0L;
+  private long lastBackoff;
+  private double averageLatencyMillis = 0.0;
+
+  public AdaptiveRateController(int initialLimit, int minLimit, int maxLimit,
+      int initialLimitForPeriod, int minLimitForPeriod, int maxLimitForPeriod,
+      double backoffRatio, Duration latencyThreshold, Map<RequestPriority, Duration> maxWaits,
+      Map<String, Double> requesterWeights, MeterRegistry meterRegistry) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    this.minLimitForPeriod = minLimitForPeriod;
+    this.maxLimitForPeriod = maxLimitForPeriod;
+    this.limitForPeriod = Math.max(minLimitForPeriod,
+        Math.min(maxLimitForPeriod, initialLimitForPeriod));
+    this.backoffRatio = backoffRatio;
+    this.latencyThresholdMillis = latencyThreshold.toMillis();
+    this.backoffCooldownMillis = latencyThreshold.toMillis();
+    this.lastBackoff = -backoffCooldownMillis;
+    this.waiters = new PriorityScheduler<>("concurrency", maxWaits, requesterWeights,
+        this::now, meterRegistry);
+    Gauge.builder("rivenbot.bungie.concurrency.limit", this, AdaptiveRateController::getLimit)
+        .description("Max number of concurrent calls to Bungie.net")
+        .register(meterRegistry);
+    Gauge.builder("rivenbot.bungie.concurrency.in-flight", this,
+            AdaptiveRateController::getInFlight)
+        .description("Number of calls to Bungie.net currently in flight")
+        .register(meterRegistry);
+    Gauge.builder("rivenbot.bungie.rate.limit", this, AdaptiveRateController::getRateLimit)
+        .description("Estimated max calls per second to Bungie.net given the current latency")
+        .register(meterRegistry);
+    Gauge.builder("rivenbot.bungie.rate.limit-for-period", this,
+            AdaptiveRateController::getLimitForPeriod)
+        .description("Calls to Bungie.net each API key can make every refresh period")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    return Mono.deferContextual(context -> acquire(BungieRequestContext.priority(context),
+        BungieRequestContext.requester(context))).then(Mono.defer(() -> {
+      long start = now();
+      AtomicBoolean released = new AtomicBoolean();
+      AtomicBoolean responded = new AtomicBoolean();
+      Runnable releaseOnce = () -> {
+        if (released.compareAndSet(false, true)) {
+          release();
+        }
+      };
+      return next.exchange(request)
+          .doOnNext(response -> onResponse(response, now() - start))
+          .map(response -> {
+            responded.set(true);
+            return response.mutate()
+                .body(body -> body.doFinally(signal -> releaseOnce.run()))
+                .build();
+          })
+          .doFinally(signal -> {
+            if (!responded.get()) {
+              releaseOnce.run();
+            }
+          });
+    }));
+  }
+
+  /**
+   * Report a decoded response from Bungie, backing off if it carries a throttle error code or
+   * 'ThrottleSeconds'
+   *
+   * @param response The decoded response
+   */
+  public void observe(@Nullable BungieResponse<?> response) {
+    if (Objects.isNull(response)) {
+      return;
+    }
+    Integer throttleSeconds = response.getThrottleSeconds();
+    boolean hasThrottleSeconds = Objects.nonNull(throttleSeconds) && throttleSeconds > 0;
+    if (hasThrottleSeconds || THROTTLE_ERROR_CODES.contains(response.getErrorCode())) {
+      backoff(hasThrottleSeconds ? Duration.ofSeconds(throttleSeconds) : Duration.ZERO);
+    }
+  }
+
+  /**
+   * Get the current concurrency limit
+   *
+   * @return the max number of concurrent calls
+   */
+  public synchronized double getLimit() {
+    return limit;
+  }
+
+  /**
+   * Get the current rate limit
+   *
+   * @return the amount of calls each API key can make every refresh period
+   */
+  public synchronized int getLimitForPeriod() {
+    return (int) limitForPeriod;
+  }
+
+  /**
+   * Get the number of calls that are currently in flight
+   *
+   * @return the number of calls
+   */
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+
+  /**
+   * Get the estimated max rate of calls, i.e., the concurrency limit divided by the average
+   * latency
+   *
+   * @return calls per second, or the concurrency limit if no latency has been measured yet
+   */
+  public synchronized double getRateLimit() {
+    if (averageLatencyMillis <= 0) {
+      return limit;
+    }
+    return limit * 1000.0 / averageLatencyMillis;
+  }
+
+  private Mono<Void> acquire(RequestPriority priority, String requester) {
+    return Mono.defer(() -> {
+      long waitMillis;
+      synchronized (this) {
+        waitMillis = pausedUntil - now();
+      }
+      if (waitMillis > 0) {
+        return Mono.delay(Duration.ofMillis(waitMillis)).then(acquire(priority, requester));
+      }
+      return Mono.<Void>create(sink -> {
+        Waiter waiter = new Waiter(sink);
+        sink.onCancel(() -> cancel(waiter));
+        boolean acquired;
+        synchronized (this) {
+          if (waiter.cancelled) {
+            return;
+          }
+          acquired = waiters.isEmpty() && inFlight < limit;
+          if (acquired) {
+            inFlight++;
+            waiter.granted = true;
+            waiters.recordWait(priority, Duration.ZERO);
+          } else {
+            waiters.offer(waiter, priority, requester);
+          }
+        }
+        if (acquired) {
+          sink.success();
+        }
+      });
+    });
+  }
+
+  private void cancel(Waiter waiter) {
+    synchronized (this) {
+      waiter.cancelled = true;
+      if (!waiter.granted) {
+        waiters.remove(waiter);
+        return;
+      }
+    }
+    // the slot was handed to the waiter right before it was cancelled
+    release();
+  }
+
+  private void release() {
+    synchronized (this) {
+      inFlight--;
+    }
+    drain();
+  }
+
+  private void drain() {
+    List<Waiter> ready = new ArrayList<>();
+    synchronized (this) {
+      while (inFlight < limit && !waiters.isEmpty()) {
+        Waiter waiter = waiters.poll();
+        waiter.granted = true;
+        inFlight++;
+        ready.add(waiter);
+      }
+    }
+    ready.forEach(waiter -> waiter.sink.success());
+  }
+
+  private void onResponse(ClientResponse response, long latencyMillis) {
+    var status = response.statusCode();
+    if (status.isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS) ||
+        status.isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE)) {
+      backoff(HttpResponseUtils.retryAfter(response.headers().asHttpHeaders()));
+      return;
+    }
+    boolean increased = false;
+    synchronized (this) {
+      averageLatencyMillis = averageLatencyMillis <= 0 ? latencyMillis :
+          averageLatencyMillis + LATENCY_SMOOTHING * (latencyMillis - averageLatencyMillis);
+      if (latencyMillis <= latencyThresholdMillis) {
+        limitForPeriod = Math.min(maxLimitForPeriod, limitForPeriod + 1.0 / limitForPeriod);
+        if (limit < maxLimit) {
+          limit = Math.min(maxLimit, limit + 1.0 / limit);
+          increased = true;
+        }
+      }
+    }
+    if (increased) {
+      drain();
+    }
+  }
+
+  private void backoff(Duration pause) {
+    synchronized (this) {
+      long now = now();
+      // a single overload usually throttles many calls at once, back off once per cooldown
+      if (now - lastBackoff >= backoffCooldownMillis) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        limitForPeriod = Math.max(minLimitForPeriod, limitForPeriod * backoffRatio);
+        lastBackoff = now;
+        log.warn("Bungie.net is throttling calls, concurrency limit reduced to [{}] and rate "
+                 + "limit to [{}] calls per period", String.format("%.2f", limit),
+            String.format("%.2f", limitForPeriod));
+      }
+      if (!pause.isZero()) {
+        pausedUntil = Math.max(pausedUntil, now + pause.toMillis());
+      }
+    }
+  }
+
+  private long now() {
+    return Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A call waiting for a slot, its state is guarded by the controller. Waiters are compared by
+   * identity so that the scheduler can find them when they are cancelled
+   */
+  private static final class Waiter {
+
+    private final MonoSink<Void> sink;
+    private boolean granted = false;
+    private boolean cancelled = false;
+
+    private Waiter(MonoSink<Void> sink) {
+      this.sink = sink;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import com.deahtstroke.rivenbot.exception.RateLimitExceededException;
+import com.deahtstroke.rivenbot.util.HttpResponseUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Pool of Bungie.net API keys shared by every web client that calls Bungie. Each call is sent with
+ * the healthy key that has the least calls pending, and waits for a permit of that key's own
+ * {@link DistributedRateLimiter} so that every key is held to its own budget.
+ * <p>
+ * A key that gets a 429 or 503 is taken out of rotation until its 'Retry-After', or an exponential
+ * backoff when there is none, has passed. The rest of the keys keep serving calls in the meantime;
+ * calls only wait when every key is backing off.
+ */
+@Slf4j
+public class ApiKeyPool implements ExchangeFilterFunction {
+
+  /**
+   * The name of the Bungie API key header
+   */
+  public static final String API_KEY_HEADER_NAME = "x-api-key";
+
+  private static final long MIN_BACKOFF_MILLIS = 1_000L;
+  private static final long MAX_BACKOFF_MILLIS = 60_000L;
+
+  private final List<ApiKey> apiKeys;
+  private final AtomicInteger nextKey = new AtomicInteger();
+
+  /**
+   * Creates a pool with a rate limiter per key
+   *
+   * @param keys               The Bungie.net API keys
+   * @param rateLimiterFactory Creates the rate limiter of a key given its alias
+   * @param meterRegistry      Registry used to publish per-key metrics
+   */
+  public ApiKeyPool(List<String> keys, Function<String, DistributedRateLimiter> rateLimiterFactory,
+      MeterRegistry meterRegistry) {
+    if (keys.isEmpty()) {
+      throw new IllegalArgumentException("At least one Bungie.net API key is required");
+    }
+    List<ApiKey> pool = new ArrayList<>(keys.size());
+    for (int i = 0; i < keys.size(); i++) {
+      // keys are secrets, they are only identified by their alias in metrics and logs
+      String alias = "key-" + i;
+      pool.add(new ApiKey(alias, keys.get(i), rateLimiterFactory.apply(alias), meterRegistry));
+    }
+    this.apiKeys = List.copyOf(pool);
+  }
+
+  @Override
+  public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+    return select().flatMap(apiKey -> {
+      ClientRequest keyedRequest = ClientRequest.from(request)
+          .headers(headers -> headers.set(API_KEY_HEADER_NAME, apiKey.value))
+          .build();
+      return Mono.defer(() -> next.exchange(keyedRequest))
+          .transformDeferred(DistributedRateLimiterOperator.of(apiKey.rateLimiter))
+          .doOnNext(response -> apiKey.onResponse(response.statusCode(),
+              response.headers().asHttpHeaders()))
+          .doOnError(RateLimitExceededException.class, error -> apiKey.rateLimited.increment())
+          .doFinally(signal -> apiKey.pending.decrementAndGet());
+    });
+  }
+
+  /**
+   * Amount of keys that are currently not backing off
+   *
+   * @return the number of healthy keys
+   */
+  public int healthyKeys() {
+    long now = now();
+    return (int) apiKeys.stream().filter(apiKey -> apiKey.isHealthy(now)).count();
+  }
+
+  private Mono<ApiKey> select() {
+    return Mono.defer(() -> {
+      long now = now();
+      long earliestRecovery = Long.MAX_VALUE;
+      ApiKey selected = null;
+      int offset = Math.floorMod(nextKey.getAndIncrement(), apiKeys.size());
+      for (int i = 0; i < apiKeys.size(); i++) {
+        ApiKey apiKey = apiKeys.get((offset + i) % apiKeys.size());
+        if (!apiKey.isHealthy(now)) {
+          earliestRecovery = Math.min(earliestRecovery, apiKey.throttledUntil);
+        } else if (Objects.isNull(selected) || apiKey.pending.get() < selected.pending.get()) {
+          selected = apiKey;
+        }
+      }
+      if (Objects.nonNull(selected)) {
+        selected.pending.incrementAndGet();
+        return Mono.just(selected);
+      }
+      return Mono.delay(Duration.ofMillis(Math.max(1, earliestRecovery - now)))
+          .then(select());
+    });
+  }
+
+  private static long now() {
+    return Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+  }
+
+  private static final class ApiKey {
+
+    private final String alias;
+    private final String value;
+    private final DistributedRateLimiter rateLimiter;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Counter requests;
+    private final Counter throttled;
+    private final Counter rateLimited;
+
+    private volatile long throttledUntil = 0L;
+    private int consecutiveThrottles = 0;
+
+    private ApiKey(String alias, String value, DistributedRateLimiter rateLimiter,
+        MeterRegistry meterRegistry) {
+      this.alias = alias;
+      this.value = value;
+      this.rateLimiter = rateLimiter;
+      this.requests = Counter.builder("rivenbot.bungie.api-key.requests")
+          .description("Calls to Bungie.net sent with an API key")
+          .tag("key", alias)
+          .register(meterRegistry);
+      this.throttled = Counter.builder("rivenbot.bungie.api-key.rejections")
+          .description("Calls to Bungie.net with an API key that were rejected")
+          .tags("key", alias, "reason", "throttled")
+          .register(meterRegistry);
+      this.rateLimited = Counter.builder("rivenbot.bungie.api-key.rejections")
+          .description("Calls to Bungie.net with an API key that were rejected")
+          .tags("key", alias, "reason", "rate-limited")
+          .register(meterRegistry);
+      Gauge.builder("rivenbot.bungie.api-key.pending", pending, AtomicInteger::get)
+          .description("Calls waiting for or being served with an API key")
+          .tag("key", alias)
+          .register(meterRegistry);
+      Gauge.builder("rivenbot.bungie.api-key.healthy", this, key -> key.isHealthy(now()) ? 1 : 0)
+          .description("Whether an API key is serving calls or backing off")
+          .tag("key", alias)
+          .register(meterRegistry);
+    }
+
+    private boolean isHealthy(long now) {
+      return throttledUntil <= now;
+    }
+
+    private synchronized void onResponse(HttpStatusCode status, HttpHeaders headers) {
+      requests.increment();
+      if (!status.isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS) &&
+          !status.isSameCodeAs(HttpStatus.SERVICE_UNAVAILABLE)) {
+        consecutiveThrottles = 0;
+        return;
+      }
+      throttled.increment();
+      long backoff = Math.min(MAX_BACKOFF_MILLIS,
+          MIN_BACKOFF_MILLIS << Math.min(consecutiveThrottles, 16));
+      consecutiveThrottles++;
+      long retryAfter = HttpResponseUtils.retryAfter(headers).toMillis();
+      throttledUntil = Math.max(throttledUntil, now() + Math.max(backoff, retryAfter));
+      log.warn("Bungie.net API key [{}] was throttled, backing off for [{}] ms", alias,
+          Math.max(backoff, retryAfter));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import com.deahtstroke.rivenbot.dto.discord.Interaction;
+import java.util.Objects;
+import java.util.function.Function;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Reactor context entries that tell the scheduler of Bungie.net calls who a call is made for and
+ * with what priority, e.g.,
+ * <code>mono.contextWrite(BungieRequestContext.withPriority(RequestPriority.BULK_PGCR))</code>.
+ * Calls without a priority are {@link RequestPriority#COMMAND_CRITICAL} and calls without a
+ * requester are attributed to {@link #ANONYMOUS}
+ */
+public final class BungieRequestContext {
+
+  /**
+   * Requester of calls that are not made on behalf of a Discord user
+   */
+  public static final String ANONYMOUS = "anonymous";
+
+  private static final String PRIORITY_KEY = "rivenbot.bungie.priority";
+  private static final String REQUESTER_KEY = "rivenbot.bungie.requester";
+
+  private BungieRequestContext() {
+  }
+
+  /**
+   * Set the priority of the calls made upstream
+   *
+   * @param priority The priority
+   * @return function to be used with contextWrite
+   */
+  public static Function<Context, Context> withPriority(RequestPriority priority) {
+    return context -> context.put(PRIORITY_KEY, priority);
+  }
+
+  /**
+   * Set who the calls made upstream are made for
+   *
+   * @param requester The requester, e.g., the Discord user id
+   * @return function to be used with contextWrite
+   */
+  public static Function<Context, Context> withRequester(String requester) {
+    return context -> context.put(REQUESTER_KEY, requester);
+  }
+
+  /**
+   * Set the priority and requester of the calls made upstream while serving an interaction
+   *
+   * @param interaction The Discord interaction
+   * @param priority    The priority
+   * @return function to be used with contextWrite
+   */
+  public static Function<Context, Context> forInteraction(Interaction interaction,
+      RequestPriority priority) {
+    return withPriority(priority).andThen(withRequester(requester(interaction)));
+  }
+
+  /**
+   * Get the requester of an interaction
+   *
+   * @param interaction The Discord interaction
+   * @return the id of the Discord user that sent the interaction or {@link #ANONYMOUS}
+   */
+  public static String requester(Interaction interaction) {
+    if (Objects.isNull(interaction.getMember()) ||
+        Objects.isNull(interaction.getMember().getUser()) ||
+        Objects.isNull(interaction.getMember().getUser().getId())) {
+      return ANONYMOUS;
+    }
+    return interaction.getMember().getUser().getId();
+  }
+
+  /**
+   * Get the priority of a call
+   *
+   * @param context The context of the call
+   * @return the priority in the context or {@link RequestPriority#COMMAND_CRITICAL}
+   */
+  public static RequestPriority priority(ContextView context) {
+    return context.getOrDefault(PRIORITY_KEY, RequestPriority.COMMAND_CRITICAL);
+  }
+
+  /**
+   * Get the requester of a call
+   *
+   * @param context The context of the call
+   * @return the requester in the context or {@link #ANONYMOUS}
+   */
+  public static String requester(ContextView context) {
+    return context.getOrDefault(REQUESTER_KEY, ANONYMOUS);
+  }
+}
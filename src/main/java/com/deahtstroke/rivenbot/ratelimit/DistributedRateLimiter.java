@@ -0,0 +1,303 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import com.deahtstroke.rivenbot.exception.RateLimitExceededException;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Token bucket rate limiter shared by every instance of the application, the bucket lives in a
+ * {@link TokenBucketStore} so that all instances together respect the limit of a single API key.
+ * <p>
+ * To avoid a round-trip to the store for every request, each acquisition takes up to 'prefetch'
+ * permits at once and keeps the extra ones locally. Local permits are only valid for one refresh
+ * period, so an idle instance can never hoard permits. If the store is unavailable permits are
+ * acquired from a local limiter with the same configuration.
+ * <p>
+ * The limit of the bucket is read on every acquisition, so that it can follow the rate limit of
+ * an {@link AdaptiveRateController}.
+ * <p>
+ * Calls that can not get a local permit wait in a {@link PriorityScheduler}, which decides who
+ * gets the next token by priority and then by weighted fair queuing between requesters, so a
+ * single user with thousands of calls waiting for tokens can not delay the calls of every other
+ * user. Only the first waiter goes to the token bucket at a time.
+ * <p>
+ * The last 'reserved' tokens of the bucket can only be taken by interactive calls, see
+ * {@link RequestPriority#isInteractive()}, so that when bulk work drains the bucket a call a user
+ * is waiting on gets the next token instead of queueing behind it. Permits prefetched by
+ * interactive calls are kept apart from the ones prefetched by other calls for the same reason.
+ * The priority and requester of a call are read from the Reactor context, see
+ * {@link BungieRequestContext}.
+ */
+@Slf4j
+public class DistributedRateLimiter {
+
+  private static final String KEY_PREFIX = "rivenbot:rate-limiter:";
+
+  private final String name;
+  private final String key;
+  private final TokenBucketStore tokenBucketStore;
+  private final IntSupplier limitForPeriod;
+  private final long limitRefreshPeriodMillis;
+  private final Duration timeout;
+  private final int prefetch;
+  private final int reserved;
+  private final RateLimiter fallbackRateLimiter;
+
+  private final LocalPermits interactivePermits = new LocalPermits();
+  private final LocalPermits backgroundPermits = new LocalPermits();
+  private final PriorityScheduler<Waiter> waiters;
+
+  private boolean pumping = false;
+  private boolean sleeping = false;
+  private long round = 0L;
+
+  public DistributedRateLimiter(String name, TokenBucketStore tokenBucketStore,
+      IntSupplier limitForPeriod, Duration limitRefreshPeriod, Duration timeout, int prefetch,
+      int reserved, Map<RequestPriority, Duration> maxWaits, Map<String, Double> requesterWeights,
+      MeterRegistry meterRegistry) {
+    this.name = name;
+    this.key = KEY_PREFIX + name;
+    this.tokenBucketStore = tokenBucketStore;
+    this.limitForPeriod = limitForPeriod;
+    this.limitRefreshPeriodMillis = limitRefreshPeriod.toMillis();
+    this.timeout = timeout;
+    this.prefetch = Math.max(1, prefetch);
+    this.reserved = Math.max(0, reserved);
+    this.fallbackRateLimiter = RateLimiter.of(name + "-fallback", RateLimiterConfig.custom()
+        .limitForPeriod(Math.max(1, limitForPeriod.getAsInt()))
+        .limitRefreshPeriod(limitRefreshPeriod)
+        .timeoutDuration(timeout)
+        .build());
+    this.waiters = new PriorityScheduler<>(name, maxWaits, requesterWeights, this::now,
+        meterRegistry);
+  }
+
+  /**
+   * Acquire a single permit, waiting until one is available
+   *
+   * @return Mono that completes once the permit is acquired, or that errors with a
+   * {@link RateLimitExceededException} if no permit was acquired before the timeout
+   */
+  public Mono<Void> acquirePermission() {
+    return Mono.deferContextual(context -> acquire(BungieRequestContext.priority(context),
+            BungieRequestContext.requester(context)))
+        .timeout(timeout, Mono.error(() -> new RateLimitExceededException(
+            "No permit for rate limiter [%s] was acquired within %s".formatted(name, timeout))));
+  }
+
+  private Mono<Void> acquire(RequestPriority priority, String requester) {
+    return Mono.create(sink -> {
+      Waiter waiter = new Waiter(sink, priority.isInteractive());
+      sink.onCancel(() -> cancel(waiter));
+      boolean acquired;
+      synchronized (this) {
+        if (waiter.cancelled) {
+          return;
+        }
+        acquired = waiters.isEmpty() && takeLocal(waiter.interactive, now());
+        if (acquired) {
+          waiter.granted = true;
+          waiters.recordWait(priority, Duration.ZERO);
+        } else {
+          waiters.offer(waiter, priority, requester);
+        }
+      }
+      if (acquired) {
+        sink.success();
+      } else {
+        schedule(waiter);
+      }
+    });
+  }
+
+  private void cancel(Waiter waiter) {
+    synchronized (this) {
+      waiter.cancelled = true;
+      if (!waiter.granted) {
+        waiters.remove(waiter);
+      }
+    }
+  }
+
+  /**
+   * Start pumping tokens to the waiters unless it is already being done. A waiter that goes ahead
+   * of the one the pump is waiting a token for wakes it up, since it may be able to take a reserved
+   * token right away
+   */
+  private void schedule(Waiter arrived) {
+    long current;
+    synchronized (this) {
+      if (pumping && !(sleeping && waiters.peek() == arrived)) {
+        return;
+      }
+      pumping = true;
+      sleeping = false;
+      current = ++round;
+    }
+    pump(current);
+  }
+
+  /**
+   * Hand out permits to the waiters one at a time in the order of the scheduler, only the first
+   * waiter goes to the token bucket so that the scheduler rather than the timing of retries
+   * decides who gets the next token
+   */
+  private void pump(long current) {
+    List<Waiter> ready = new ArrayList<>();
+    Waiter next;
+    synchronized (this) {
+      long now = now();
+      next = waiters.peek();
+      while (Objects.nonNull(next) && takeLocal(next.interactive, now)) {
+        grant(ready);
+        next = waiters.peek();
+      }
+      if (Objects.isNull(next)) {
+        pumping = false;
+      }
+    }
+    ready.forEach(waiter -> waiter.sink.success());
+    if (Objects.isNull(next)) {
+      return;
+    }
+    boolean interactive = next.interactive;
+    int limit = Math.max(1, limitForPeriod.getAsInt());
+    tokenBucketStore.acquire(key, limit, limitRefreshPeriodMillis, Math.min(prefetch, limit),
+            interactive ? 0 : Math.min(reserved, limit - 1))
+        .onErrorResume(throwable -> {
+          log.warn("Token bucket for rate limiter [{}] is unavailable, using local limits",
+              name, throwable);
+          return acquireLocally(limit).thenReturn(1L);
+        })
+        .subscribe(result -> onResult(current, result, interactive),
+            err -> onError(current, err));
+  }
+
+  private void onResult(long current, long result, boolean interactive) {
+    if (result <= 0) {
+      synchronized (this) {
+        sleeping = true;
+      }
+      Mono.delay(Duration.ofMillis(Math.max(1L, -result)))
+          .subscribe(tick -> wake(current));
+      return;
+    }
+    List<Waiter> ready = new ArrayList<>();
+    synchronized (this) {
+      // the token goes to whoever is first now, in case the waiter it was taken for is gone
+      LocalPermits permits = interactive ? interactivePermits : backgroundPermits;
+      permits.store((int) result - grant(ready), now(), limitRefreshPeriodMillis);
+    }
+    ready.forEach(waiter -> waiter.sink.success());
+    pump(current);
+  }
+
+  private void onError(long current, Throwable err) {
+    List<Waiter> failed = new ArrayList<>();
+    synchronized (this) {
+      grant(failed);
+    }
+    failed.forEach(waiter -> waiter.sink.error(err));
+    pump(current);
+  }
+
+  private void wake(long current) {
+    synchronized (this) {
+      if (!sleeping || round != current) {
+        return;
+      }
+      sleeping = false;
+    }
+    pump(current);
+  }
+
+  /**
+   * Take the first waiter out of the scheduler, guarded by the limiter
+   *
+   * @return 1 if a waiter was taken, 0 if there were none
+   */
+  private int grant(List<Waiter> ready) {
+    Waiter waiter = waiters.poll();
+    if (Objects.isNull(waiter)) {
+      return 0;
+    }
+    waiter.granted = true;
+    ready.add(waiter);
+    return 1;
+  }
+
+  private boolean takeLocal(boolean interactive, long now) {
+    return (interactive && interactivePermits.take(now)) || backgroundPermits.take(now);
+  }
+
+  private Mono<Void> acquireLocally(int limit) {
+    if (fallbackRateLimiter.getRateLimiterConfig().getLimitForPeriod() != limit) {
+      fallbackRateLimiter.changeLimitForPeriod(limit);
+    }
+    return Mono.<Void>empty()
+        .transformDeferred(RateLimiterOperator.of(fallbackRateLimiter));
+  }
+
+  private long now() {
+    return Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A call waiting for a permit, its state is guarded by the limiter. Waiters are compared by
+   * identity so that the scheduler can find them when they are cancelled
+   */
+  private static final class Waiter {
+
+    private final MonoSink<Void> sink;
+    private final boolean interactive;
+    private boolean granted = false;
+    private boolean cancelled = false;
+
+    private Waiter(MonoSink<Void> sink, boolean interactive) {
+      this.sink = sink;
+      this.interactive = interactive;
+    }
+  }
+
+  /**
+   * Permits taken from the token bucket ahead of time, valid until they expire
+   */
+  private static final class LocalPermits {
+
+    private final AtomicInteger permits = new AtomicInteger();
+    private volatile long expiry = 0L;
+
+    private boolean take(long now) {
+      if (now >= expiry) {
+        return false;
+      }
+      return permits.getAndUpdate(available -> available > 0 ? available - 1 : 0) > 0;
+    }
+
+    private void store(int granted, long now, long validityMillis) {
+      if (granted <= 0) {
+        return;
+      }
+      if (now >= expiry) {
+        permits.set(granted);
+      } else {
+        permits.addAndGet(granted);
+      }
+      expiry = now + validityMillis;
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import java.util.function.UnaryOperator;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive operator that subscribes to a publisher only after a permit of a
+ * {@link DistributedRateLimiter} has been acquired, meant to be used the same way as Resilience4j's
+ * RateLimiterOperator, e.g.,
+ * <code>mono.transformDeferred(DistributedRateLimiterOperator.of(rateLimiter))</code>
+ *
+ * @param <T> The type of the elements of the publisher
+ */
+public class DistributedRateLimiterOperator<T> implements UnaryOperator<Publisher<T>> {
+
+  private final DistributedRateLimiter rateLimiter;
+
+  private DistributedRateLimiterOperator(DistributedRateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Create an operator for a rate limiter
+   *
+   * @param rateLimiter The rate limiter
+   * @param <T>         The type of the elements of the publisher
+   * @return {@link DistributedRateLimiterOperator}
+   */
+  public static <T> DistributedRateLimiterOperator<T> of(DistributedRateLimiter rateLimiter) {
+    return new DistributedRateLimiterOperator<>(rateLimiter);
+  }
+
+  @Override
+  public Publisher<T> apply(Publisher<T> publisher) {
+    if (publisher instanceof Mono<T> mono) {
+      return rateLimiter.acquirePermission().then(mono);
+    } else if (publisher instanceof Flux<T> flux) {
+      return rateLimiter.acquirePermission().thenMany(flux);
+    }
+    throw new IllegalStateException(
+        "Publisher of type <" + publisher.getClass().getSimpleName() + "> is not supported");
+  }
+}
@@ -0,0 +1,66 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Token buckets kept in the memory of this instance, implementing the same algorithm as
+ * 'scripts/token_bucket.lua' and 'scripts/token_bucket_refund.lua'. Every bucket is two numbers,
+ * its tokens and when it was last refilled, and buckets that were idle for longer than the idle
+ * timeout are evicted since by then they are full again
+ */
+public class LocalTokenBucketStore implements TokenBucketStore {
+
+  private static final long MAX_BUCKETS = 100_000L;
+
+  private final Cache<String, double[]> buckets;
+
+  public LocalTokenBucketStore(Duration idleTimeout) {
+    this.buckets = Caffeine.newBuilder()
+        .maximumSize(MAX_BUCKETS)
+        .expireAfterAccess(idleTimeout)
+        .build();
+  }
+
+  @Override
+  public Mono<Long> acquire(String key, int capacity, long refillPeriodMillis, int requested,
+      int reserved) {
+    return Mono.fromCallable(() -> {
+      long now = Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+      long[] result = new long[1];
+      buckets.asMap().compute(key, (k, bucket) -> {
+        double tokens = capacity;
+        if (Objects.nonNull(bucket)) {
+          double elapsed = Math.max(0, now - bucket[1]);
+          tokens = Math.min(capacity, bucket[0] + elapsed * capacity / refillPeriodMillis);
+        }
+        long granted = Math.min(requested, (long) Math.floor(tokens - reserved));
+        if (granted > 0) {
+          tokens -= granted;
+          result[0] = granted;
+        } else {
+          result[0] = -(long) Math.ceil((1 + reserved - tokens) * refillPeriodMillis / capacity);
+        }
+        return new double[]{tokens, now};
+      });
+      return result[0];
+    });
+  }
+
+  @Override
+  public Mono<Void> refund(String key, int capacity, long refillPeriodMillis, int tokens) {
+    return Mono.fromRunnable(() -> {
+      long now = Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+      buckets.asMap().computeIfPresent(key, (k, bucket) -> {
+        double elapsed = Math.max(0, now - bucket[1]);
+        return new double[]{
+            Math.min(capacity, bucket[0] + elapsed * capacity / refillPeriodMillis + tokens), now};
+      });
+    });
+  }
+}
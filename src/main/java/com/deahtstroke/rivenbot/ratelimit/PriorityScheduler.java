@@ -0,0 +1,279 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.springframework.lang.Nullable;
+
+/**
+ * Decides which waiting call to Bungie.net goes next. Calls are served strictly by
+ * {@link RequestPriority}, except for calls that have waited longer than the max wait configured
+ * for their priority, which go first so that lower priorities are never starved. Within a priority
+ * requesters are served with start-time fair queuing, so a single user with thousands of calls
+ * queued can not delay the calls of every other user. Requesters get a share of the calls
+ * proportional to their weight, requesters without a configured weight have a weight of 1.
+ * <p>
+ * This class is not thread-safe, callers must synchronize access to it.
+ *
+ * @param <T> The type of the waiting calls
+ */
+public class PriorityScheduler<T> {
+
+  private static final double DEFAULT_WEIGHT = 1.0;
+
+  private final Map<RequestPriority, PriorityQueueClass> classes =
+      new EnumMap<>(RequestPriority.class);
+  private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+  private final Map<String, Double> weights;
+  private final LongSupplier clock;
+  private long sequence = 0L;
+
+  /**
+   * Creates a scheduler
+   *
+   * @param name          Name of the scheduler, used to tell the metrics of schedulers apart
+   * @param maxWaits      Max time calls of each priority wait before going ahead of every other
+   *                      priority, priorities without a max wait are served strictly in order
+   * @param weights       Weight of each requester, requesters that are not in the map have a
+   *                      weight of 1
+   * @param clock         Clock that returns the current time in milliseconds
+   * @param meterRegistry Registry used to publish queue depths and wait times per priority
+   */
+  public PriorityScheduler(String name, Map<RequestPriority, Duration> maxWaits,
+      Map<String, Double> weights, LongSupplier clock, MeterRegistry meterRegistry) {
+    this.weights = weights;
+    this.clock = clock;
+    for (RequestPriority priority : RequestPriority.values()) {
+      PriorityQueueClass queueClass = new PriorityQueueClass(maxWaits.get(priority),
+          Timer.builder("rivenbot.bungie.scheduler.wait")
+              .description("Time calls to Bungie.net waited to be scheduled")
+              .tag("scheduler", name)
+              .tag("priority", priority.name())
+              .register(meterRegistry));
+      Gauge.builder("rivenbot.bungie.scheduler.queue", queueClass, q -> q.arrivals.size())
+          .description("Calls to Bungie.net waiting to be scheduled")
+          .tag("scheduler", name)
+          .tag("priority", priority.name())
+          .register(meterRegistry);
+      classes.put(priority, queueClass);
+    }
+  }
+
+  /**
+   * Queue a call
+   *
+   * @param item      The call
+   * @param priority  The priority of the call
+   * @param requester Who the call is made for
+   */
+  public void offer(T item, RequestPriority priority, String requester) {
+    PriorityQueueClass queueClass = classes.get(priority);
+    Entry<T> entry = new Entry<>(item, priority, requester, clock.getAsLong(), sequence++);
+    queueClass.offer(entry, weight(requester));
+    entries.put(item, entry);
+  }
+
+  /**
+   * Take the next call to serve
+   *
+   * @return the next call or null if there are no calls waiting
+   */
+  @Nullable
+  public T poll() {
+    long now = clock.getAsLong();
+    PriorityQueueClass starving = starving(now);
+    Entry<T> entry = null;
+    if (Objects.nonNull(starving)) {
+      entry = starving.pollOldest();
+    } else {
+      for (PriorityQueueClass queueClass : classes.values()) {
+        if (!queueClass.arrivals.isEmpty()) {
+          entry = queueClass.pollFair();
+          break;
+        }
+      }
+    }
+    if (Objects.isNull(entry)) {
+      return null;
+    }
+    entries.remove(entry.item);
+    recordWait(entry.priority, Duration.ofMillis(now - entry.enqueuedAt));
+    return entry.item;
+  }
+
+  /**
+   * Get the next call to serve without taking it, see {@link #poll()}
+   *
+   * @return the next call or null if there are no calls waiting
+   */
+  @Nullable
+  public T peek() {
+    PriorityQueueClass starving = starving(clock.getAsLong());
+    if (Objects.nonNull(starving)) {
+      return starving.arrivals.iterator().next().item;
+    }
+    for (PriorityQueueClass queueClass : classes.values()) {
+      if (!queueClass.arrivals.isEmpty()) {
+        return queueClass.fairQueue.peek().item;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Remove a call that is no longer waiting, e.g., because it was cancelled
+   *
+   * @param item The call
+   * @return true if the call was waiting
+   */
+  public boolean remove(T item) {
+    Entry<T> entry = entries.remove(item);
+    if (Objects.isNull(entry)) {
+      return false;
+    }
+    classes.get(entry.priority).remove(entry);
+    return true;
+  }
+
+  /**
+   * Whether there are calls waiting
+   *
+   * @return true if no call is waiting
+   */
+  public boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  @Nullable
+  private PriorityQueueClass starving(long now) {
+    PriorityQueueClass starving = null;
+    long mostOverdue = 0L;
+    for (PriorityQueueClass queueClass : classes.values()) {
+      long overdue = queueClass.overdue(now);
+      if (overdue > mostOverdue) {
+        mostOverdue = overdue;
+        starving = queueClass;
+      }
+    }
+    return starving;
+  }
+
+  private double weight(String requester) {
+    Double weight = weights.get(requester);
+    return Objects.nonNull(weight) && weight > 0 ? weight : DEFAULT_WEIGHT;
+  }
+
+  /**
+   * Record the time a call waited, calls that did not need to queue should be recorded with zero
+   *
+   * @param priority The priority of the call
+   * @param wait     The time the call waited
+   */
+  public void recordWait(RequestPriority priority, Duration wait) {
+    classes.get(priority).waitTimer.record(wait.toMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A waiting call with its virtual start and finish tags, compared by identity
+   */
+  private static final class Entry<T> {
+
+    private final T item;
+    private final RequestPriority priority;
+    private final String requester;
+    private final long enqueuedAt;
+    private final long sequence;
+    private double startTag;
+    private double finishTag;
+
+    private Entry(T item, RequestPriority priority, String requester, long enqueuedAt,
+        long sequence) {
+      this.item = item;
+      this.priority = priority;
+      this.requester = requester;
+      this.enqueuedAt = enqueuedAt;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * Calls of a single priority, fairly queued by requester
+   */
+  private final class PriorityQueueClass {
+
+    private final PriorityQueue<Entry<T>> fairQueue = new PriorityQueue<>(
+        Comparator.<Entry<T>>comparingDouble(entry -> entry.startTag)
+            .thenComparingLong(entry -> entry.sequence));
+    private final LinkedHashSet<Entry<T>> arrivals = new LinkedHashSet<>();
+    private final Map<String, Double> lastFinishTags = new HashMap<>();
+    private final Map<String, Integer> queuedPerRequester = new HashMap<>();
+    private final Long maxWaitMillis;
+    private final Timer waitTimer;
+    private double virtualTime = 0.0;
+
+    private PriorityQueueClass(@Nullable Duration maxWait, Timer waitTimer) {
+      this.maxWaitMillis = Objects.isNull(maxWait) ? null : maxWait.toMillis();
+      this.waitTimer = waitTimer;
+    }
+
+    private void offer(Entry<T> entry, double weight) {
+      entry.startTag = Math.max(virtualTime,
+          lastFinishTags.getOrDefault(entry.requester, virtualTime));
+      entry.finishTag = entry.startTag + 1.0 / weight;
+      lastFinishTags.put(entry.requester, entry.finishTag);
+      queuedPerRequester.merge(entry.requester, 1, Integer::sum);
+      fairQueue.add(entry);
+      arrivals.add(entry);
+    }
+
+    private long overdue(long now) {
+      if (Objects.isNull(maxWaitMillis) || arrivals.isEmpty()) {
+        return 0L;
+      }
+      return now - arrivals.iterator().next().enqueuedAt - maxWaitMillis;
+    }
+
+    private Entry<T> pollFair() {
+      Entry<T> entry = fairQueue.poll();
+      virtualTime = Math.max(virtualTime, entry.startTag);
+      arrivals.remove(entry);
+      dequeued(entry);
+      return entry;
+    }
+
+    private Entry<T> pollOldest() {
+      Iterator<Entry<T>> iterator = arrivals.iterator();
+      Entry<T> entry = iterator.next();
+      iterator.remove();
+      fairQueue.remove(entry);
+      dequeued(entry);
+      return entry;
+    }
+
+    private void remove(Entry<T> entry) {
+      arrivals.remove(entry);
+      fairQueue.remove(entry);
+      dequeued(entry);
+    }
+
+    private void dequeued(Entry<T> entry) {
+      // requesters that have nothing queued start over at the current virtual time
+      if (queuedPerRequester.merge(entry.requester, -1, Integer::sum) <= 0) {
+        queuedPerRequester.remove(entry.requester);
+        lastFinishTags.remove(entry.requester);
+      }
+    }
+  }
+}
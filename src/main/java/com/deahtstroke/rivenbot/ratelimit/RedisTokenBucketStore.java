@@ -0,0 +1,42 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import java.util.List;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+/**
+ * Token buckets stored in Redis, every acquisition and refund is a single call to a Lua script so
+ * that concurrent acquisitions from different instances never race
+ */
+public class RedisTokenBucketStore implements TokenBucketStore {
+
+  private static final RedisScript<Long> TOKEN_BUCKET_SCRIPT = RedisScript.of(
+      new ClassPathResource("scripts/token_bucket.lua"), Long.class);
+  private static final RedisScript<Long> TOKEN_BUCKET_REFUND_SCRIPT = RedisScript.of(
+      new ClassPathResource("scripts/token_bucket_refund.lua"), Long.class);
+
+  private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+  public RedisTokenBucketStore(ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+    this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+  }
+
+  @Override
+  public Mono<Long> acquire(String key, int capacity, long refillPeriodMillis, int requested,
+      int reserved) {
+    return reactiveStringRedisTemplate.execute(TOKEN_BUCKET_SCRIPT, List.of(key),
+            List.of(String.valueOf(capacity), String.valueOf(refillPeriodMillis),
+                String.valueOf(requested), String.valueOf(reserved)))
+        .next();
+  }
+
+  @Override
+  public Mono<Void> refund(String key, int capacity, long refillPeriodMillis, int tokens) {
+    return reactiveStringRedisTemplate.execute(TOKEN_BUCKET_REFUND_SCRIPT, List.of(key),
+            List.of(String.valueOf(capacity), String.valueOf(refillPeriodMillis),
+                String.valueOf(tokens)))
+        .then();
+  }
+}
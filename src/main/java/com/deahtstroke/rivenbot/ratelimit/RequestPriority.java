@@ -0,0 +1,36 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+/**
+ * Priority classes of calls to Bungie.net, declared from the highest to the lowest priority
+ */
+public enum RequestPriority {
+
+  /**
+   * Autocomplete suggestions, Discord discards them after 3 seconds
+   */
+  AUTOCOMPLETE,
+
+  /**
+   * Calls a slash command can not answer without, e.g., memberships and profiles
+   */
+  COMMAND_CRITICAL,
+
+  /**
+   * Bulk retrieval of Post Game Carnage Reports
+   */
+  BULK_PGCR,
+
+  /**
+   * Refreshes nobody is waiting for, e.g., the Manifest
+   */
+  BACKGROUND;
+
+  /**
+   * Whether a user is waiting on the calls of this priority to get an answer
+   *
+   * @return true for autocomplete and slash command calls
+   */
+  public boolean isInteractive() {
+    return compareTo(COMMAND_CRITICAL) <= 0;
+  }
+}
@@ -0,0 +1,52 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Storage for token buckets that are shared by every instance of the application
+ */
+public interface TokenBucketStore {
+
+  /**
+   * Atomically take tokens from a bucket, the bucket is refilled continuously at a rate of
+   * 'capacity' tokens every 'refillPeriodMillis'
+   *
+   * @param key                The key of the bucket
+   * @param capacity           The max amount of tokens in the bucket
+   * @param refillPeriodMillis The time it takes to refill an empty bucket, in milliseconds
+   * @param requested          The amount of tokens to take
+   * @return the amount of tokens granted, between 1 and the requested amount, or if none could be
+   * granted the negated amount of milliseconds to wait until the next token is available
+   */
+  default Mono<Long> acquire(String key, int capacity, long refillPeriodMillis, int requested) {
+    return acquire(key, capacity, refillPeriodMillis, requested, 0);
+  }
+
+  /**
+   * Atomically take tokens from a bucket without taking the last 'reserved' tokens, which are left
+   * for the acquisitions that do not reserve any
+   *
+   * @param key                The key of the bucket
+   * @param capacity           The max amount of tokens in the bucket
+   * @param refillPeriodMillis The time it takes to refill an empty bucket, in milliseconds
+   * @param requested          The amount of tokens to take
+   * @param reserved           The amount of tokens that have to be left in the bucket
+   * @return the amount of tokens granted, between 1 and the requested amount, or if none could be
+   * granted the negated amount of milliseconds to wait until the next token above the reserved
+   * ones is available
+   */
+  Mono<Long> acquire(String key, int capacity, long refillPeriodMillis, int requested,
+      int reserved);
+
+  /**
+   * Atomically give tokens back to a bucket, e.g., tokens taken for a request that was rejected
+   * afterwards for another reason. The bucket never holds more than its capacity
+   *
+   * @param key                The key of the bucket
+   * @param capacity           The max amount of tokens in the bucket
+   * @param refillPeriodMillis The time it takes to refill an empty bucket, in milliseconds
+   * @param tokens             The amount of tokens to give back
+   * @return empty Mono once the tokens were given back
+   */
+  Mono<Void> refund(String key, int capacity, long refillPeriodMillis, int tokens);
+}
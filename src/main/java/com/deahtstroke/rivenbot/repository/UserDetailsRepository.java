@@ -1,6 +1,8 @@
 package com.deahtstroke.rivenbot.repository;
 
 import com.deahtstroke.rivenbot.entity.UserDetails;
+import org.springframework.data.mongodb.repository.ExistsQuery;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Mono;
@@ -8,7 +10,22 @@ import reactor.core.publisher.Mono;
 @Repository
 public interface UserDetailsRepository extends ReactiveMongoRepository<UserDetails, Long> {
 
-  Mono<Boolean> existsByUsernameAndUserTag(String username, String userTag);
+  /**
+   * Matches a user by their membershipId, or by their username and userTag if they were saved
+   * before their membershipId was stored. Both branches are backed by an index of 'user_details'
+   */
+  String USER_QUERY = "{ '$or': [ { 'membershipId': ?0 }, "
+                      + "{ 'username': ?1, 'userTag': ?2, 'membershipId': null } ] }";
 
-  Mono<UserDetails> findUserDetailsByUsernameAndUserTag(String username, String userTag);
+  @ExistsQuery(USER_QUERY)
+  Mono<Boolean> existsUser(String membershipId, String username, String userTag);
+
+  @Query(USER_QUERY)
+  Mono<UserDetails> findUser(String membershipId, String username, String userTag);
+
+  /**
+   * Matches a user by their username and userTag alone, for when their membershipId is not known
+   * yet. Backed by the 'username_user_tag' index of 'user_details'
+   */
+  Mono<UserDetails> findFirstByUsernameAndUserTag(String username, String userTag);
 }
@@ -0,0 +1,67 @@
+package com.deahtstroke.rivenbot.runner;
+
+import com.deahtstroke.rivenbot.repository.UserDetailsRepository;
+import com.deahtstroke.rivenbot.service.ManifestService;
+import com.deahtstroke.rivenbot.service.UserRaidStatisticsService;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Rebuilds the materialized raid statistics of every user from their raids and checks them against
+ * the statistics aggregated from the same raids. Users whose raids are still embedded are migrated
+ * first. It only runs when the application is started with
+ * '--application.statistics.rebuild=true', e.g., after the statistics drifted because an update
+ * failed halfway through
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.statistics.rebuild", havingValue = "true")
+public class RaidStatisticsRebuildRunner implements ApplicationRunner {
+
+  private static final int MAX_CONCURRENT_REBUILDS = 4;
+
+  private final UserDetailsRepository userDetailsRepository;
+  private final UserRaidStatisticsService userRaidStatisticsService;
+  private final ManifestService manifestService;
+  private final UserRaidDetailsMigrator userRaidDetailsMigrator;
+
+  public RaidStatisticsRebuildRunner(
+      UserDetailsRepository userDetailsRepository,
+      UserRaidStatisticsService userRaidStatisticsService,
+      ManifestService manifestService,
+      UserRaidDetailsMigrator userRaidDetailsMigrator) {
+    this.userDetailsRepository = userDetailsRepository;
+    this.userRaidStatisticsService = userRaidStatisticsService;
+    this.manifestService = manifestService;
+    this.userRaidDetailsMigrator = userRaidDetailsMigrator;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    Set<String> raidsWithMasterMode = manifestService.raidActivityTable().raidsWithMasterMode();
+    AtomicInteger rebuilt = new AtomicInteger();
+    AtomicInteger mismatched = new AtomicInteger();
+    log.info("Rebuilding the materialized raid statistics of every user");
+    userDetailsRepository.findAll()
+        .flatMap(userDetails -> userRaidDetailsMigrator.migrate(userDetails)
+            .then(userRaidStatisticsService.rebuild(userDetails.getUsername(),
+                userDetails.getUserTag()))
+            .then(Mono.defer(() -> userRaidStatisticsService.verify(userDetails.getUsername(),
+                userDetails.getUserTag(), raidsWithMasterMode)))
+            .doOnNext(matches -> {
+              rebuilt.incrementAndGet();
+              if (!matches) {
+                mismatched.incrementAndGet();
+              }
+            }), MAX_CONCURRENT_REBUILDS)
+        .blockLast();
+    log.info("Rebuilt the materialized raid statistics of [{}] users, [{}] did not match the "
+             + "aggregated statistics", rebuilt.get(), mismatched.get());
+  }
+}
@@ -0,0 +1,113 @@
+package com.deahtstroke.rivenbot.runner;
+
+import com.deahtstroke.rivenbot.entity.UserDetails;
+import com.deahtstroke.rivenbot.service.UserRaidInstanceService;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Moves the raids that are still embedded in {@link UserDetails} documents to their own
+ * collection. Users are migrated in the background one at a time, waiting between each of them so
+ * that the migration does not compete with interactions for the database. Users that send an
+ * interaction before they are migrated are migrated when their raids are updated.
+ */
+@Slf4j
+@Component
+public class UserRaidDetailsMigrator {
+
+  private static final String ID_FIELD = "_id";
+  private static final String RAID_DETAILS_FIELD = "userRaidDetails";
+
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final UserRaidInstanceService userRaidInstanceService;
+  private final Duration interval;
+
+  private Disposable migrationTask;
+
+  public UserRaidDetailsMigrator(
+      ReactiveMongoTemplate reactiveMongoTemplate,
+      UserRaidInstanceService userRaidInstanceService,
+      @Value("${application.migration.userRaidDetailsInterval:PT1S}") Duration interval) {
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.userRaidInstanceService = userRaidInstanceService;
+    this.interval = interval;
+  }
+
+  /**
+   * Starts migrating every user that still has embedded raids. Only the ids of those users are
+   * read upfront, each user is read again right before it is migrated
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void startMigrating() {
+    Query pendingUsers = new Query(Criteria.where(RAID_DETAILS_FIELD).ne(null));
+    pendingUsers.fields().include(ID_FIELD);
+    AtomicInteger migrated = new AtomicInteger();
+    this.migrationTask = reactiveMongoTemplate.find(pendingUsers, UserDetails.class)
+        .map(UserDetails::getId)
+        .collectList()
+        .doOnNext(ids -> {
+          if (!ids.isEmpty()) {
+            log.info("Migrating the embedded raids of [{}] users", ids.size());
+          }
+        })
+        .flatMapMany(Flux::fromIterable)
+        .delayElements(interval)
+        .concatMap(id -> reactiveMongoTemplate.findById(id, UserDetails.class)
+            .flatMap(this::migrate)
+            .doOnSuccess(ignored -> migrated.incrementAndGet())
+            .onErrorResume(err -> {
+              log.error("Unable to migrate the embedded raids of user with Id [{}]", id, err);
+              return Mono.empty();
+            }))
+        .doOnComplete(() -> {
+          if (migrated.get() > 0) {
+            log.info("Migrated the embedded raids of [{}] users", migrated.get());
+          }
+        })
+        .subscribe(
+            ignored -> {
+            },
+            err -> log.error("Unable to find the users that have embedded raids", err));
+  }
+
+  @PreDestroy
+  public void stopMigrating() {
+    if (Objects.nonNull(migrationTask)) {
+      migrationTask.dispose();
+    }
+  }
+
+  /**
+   * Move the embedded raids of a user to their own collection and remove them from the user.
+   * Raids are upserted, so migrating a user twice, or while their raids are being updated, does
+   * not duplicate them
+   *
+   * @param userDetails The user
+   * @return empty Mono once the raids were moved
+   */
+  public Mono<Void> migrate(UserDetails userDetails) {
+    if (Objects.isNull(userDetails.getUserRaidDetails())) {
+      return Mono.empty();
+    }
+    return userRaidInstanceService.saveAll(userDetails.getUsername(), userDetails.getUserTag(),
+            userDetails.getUserRaidDetails())
+        .then(reactiveMongoTemplate.updateFirst(
+            new Query(Criteria.where(ID_FIELD).is(userDetails.getId())),
+            new Update().unset(RAID_DETAILS_FIELD), UserDetails.class))
+        .then();
+  }
+}
@@ -1,7 +1,9 @@
 package com.deahtstroke.rivenbot.service;
 
+import com.deahtstroke.rivenbot.cache.ReactiveCache;
 import com.deahtstroke.rivenbot.client.BungieClient;
 import com.deahtstroke.rivenbot.dto.destiny.ActivitiesResponse;
+import com.deahtstroke.rivenbot.dto.destiny.AggregateActivity;
 import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
 import com.deahtstroke.rivenbot.dto.destiny.SearchResult;
 import com.deahtstroke.rivenbot.dto.destiny.UserGlobalSearchBody;
@@ -13,12 +15,13 @@ import com.deahtstroke.rivenbot.enums.ManifestEntity;
 import com.deahtstroke.rivenbot.exception.ManifestEntityNotFoundException;
 import com.deahtstroke.rivenbot.exception.NoCharactersFoundException;
 import com.deahtstroke.rivenbot.exception.ResourceNotFoundException;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -33,15 +36,23 @@ public class BungieAPIService {
   private static final Integer MAX_NUMBER_OF_ELEMENTS = 250;
   private static final String PREFIX_PLAYERS_URL = "/User/Search/GlobalName/{pageNumber}/";
   private static final Integer RAID_MODE = 4;
+  private static final String MANIFEST_ENTITY_CACHE = "manifestEntity";
+  private static final String PLAYERS_PREFIX_SEARCH_CACHE = "playersPrefixSearch";
 
   private final BungieClient defaultBungieClient;
   private final WebClient webClient;
+  private final ReactiveCache reactiveCache;
+  private final AdaptiveRateController bungieRateController;
 
   public BungieAPIService(
       BungieClient defaultBungieClient,
-      WebClient defaultBungieWebClient) {
+      WebClient defaultBungieWebClient,
+      ReactiveCache reactiveCache,
+      AdaptiveRateController bungieRateController) {
     this.defaultBungieClient = defaultBungieClient;
     this.webClient = defaultBungieWebClient;
+    this.reactiveCache = reactiveCache;
+    this.bungieRateController = bungieRateController;
   }
 
   /**
@@ -57,6 +68,7 @@ public class BungieAPIService {
       String characterId, Integer pageNumber) {
     return defaultBungieClient.getActivityHistory(membershipType, membershipId, characterId,
             MAX_NUMBER_OF_ELEMENTS, RAID_MODE, pageNumber)
+        .doOnNext(bungieRateController::observe)
         .filter(data ->
             Objects.nonNull(data.getResponse()) &&
             CollectionUtils.isNotEmpty(data.getResponse().getActivities()))
@@ -65,6 +77,26 @@ public class BungieAPIService {
         .map(BungieResponse::getResponse);
   }
 
+  /**
+   * Get the aggregated stats of every activity a character has played
+   *
+   * @param membershipType The membership type of the bungie.net user
+   * @param membershipId   The membershipId of the bungie.net user
+   * @param characterId    The characterId of the bungie.net user
+   * @return List of {@link AggregateActivity}, empty if the character has not played anything
+   */
+  public Mono<List<AggregateActivity>> getAggregateActivityStats(Integer membershipType,
+      String membershipId, String characterId) {
+    return defaultBungieClient.getAggregateActivityStats(membershipType, membershipId,
+            characterId)
+        .doOnNext(bungieRateController::observe)
+        .filter(data ->
+            Objects.nonNull(data.getResponse()) &&
+            CollectionUtils.isNotEmpty(data.getResponse().getActivities()))
+        .map(data -> data.getResponse().getActivities())
+        .defaultIfEmpty(Collections.emptyList());
+  }
+
   /**
    * Return a map of character details for a bungie.net user
    *
@@ -76,6 +108,7 @@ public class BungieAPIService {
   public Mono<Map<String, UserCharacter>> getUserCharacters(Integer membershipType,
       String membershipId) {
     return defaultBungieClient.getUserCharacters(membershipType, membershipId)
+        .doOnNext(bungieRateController::observe)
         .filter(data -> Objects.equals(data.getErrorCode(), 1))
         .filter(data -> CollectionUtils.isNotEmpty(
             data.getResponse().getCharacters().getData().entrySet()))
@@ -100,14 +133,15 @@ public class BungieAPIService {
    * @param hash       The hash of the entity
    * @return {@link ManifestResponseFields}
    */
-  @Cacheable(cacheNames = "manifestEntity", cacheManager = "redisCacheManager")
   public Mono<ManifestResponseFields> getManifestEntity(ManifestEntity entityType, Long hash) {
-    return defaultBungieClient.getManifestEntity(entityType.getId(), hash).cache()
-        .filter(me -> Objects.nonNull(me) && Objects.nonNull(me.getResponse()))
-        .switchIfEmpty(Mono.error(new ManifestEntityNotFoundException(
-            "Manifest entity not found for [%s] and hash [%s]".formatted(entityType, hash),
-            HttpStatus.INTERNAL_SERVER_ERROR)))
-        .map(BungieResponse::getResponse);
+    return reactiveCache.get(MANIFEST_ENTITY_CACHE, "%s:%s".formatted(entityType, hash),
+        () -> defaultBungieClient.getManifestEntity(entityType.getId(), hash)
+            .doOnNext(bungieRateController::observe)
+            .filter(me -> Objects.nonNull(me) && Objects.nonNull(me.getResponse()))
+            .switchIfEmpty(Mono.error(new ManifestEntityNotFoundException(
+                "Manifest entity not found for [%s] and hash [%s]".formatted(entityType, hash),
+                HttpStatus.INTERNAL_SERVER_ERROR)))
+            .map(BungieResponse::getResponse));
   }
 
   /**
@@ -117,6 +151,7 @@ public class BungieAPIService {
    */
   public Mono<Map<String, MilestoneEntry>> getPublicMilestones() {
     return defaultBungieClient.getPublicMilestones()
+        .doOnNext(bungieRateController::observe)
         .flatMap(response -> {
           if (Objects.isNull(response) || Objects.isNull(response.getResponse())) {
             return Mono.error(new ResourceNotFoundException(
@@ -135,9 +170,15 @@ public class BungieAPIService {
    * @param page       the number of the page
    * @return {@link SearchResult}
    */
-  @Cacheable(cacheNames = "playersPrefixSearch", cacheManager = "redisCacheManager")
   public Mono<BungieResponse<SearchResult>> retrievePlayers(UserGlobalSearchBody searchBody,
       Integer page) {
+    return reactiveCache.get(PLAYERS_PREFIX_SEARCH_CACHE,
+        "%s:%s".formatted(searchBody.getDisplayNamePrefix(), page),
+        () -> searchPlayers(searchBody, page));
+  }
+
+  private Mono<BungieResponse<SearchResult>> searchPlayers(UserGlobalSearchBody searchBody,
+      Integer page) {
     return webClient.post().uri(PREFIX_PLAYERS_URL, page)
         .body(BodyInserters.fromValue(searchBody))
         .exchangeToMono(clientResponse -> {
@@ -151,6 +192,7 @@ public class BungieAPIService {
             };
             return clientResponse.bodyToMono(typeReference);
           }
-        });
+        })
+        .doOnNext(bungieRateController::observe);
   }
 }
@@ -0,0 +1,198 @@
+package com.deahtstroke.rivenbot.service;
+
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.entity.IngestionCheckpoint;
+import com.deahtstroke.rivenbot.entity.IngestionJob;
+import com.deahtstroke.rivenbot.exception.IngestionInterruptedException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Runs the ingestion jobs of users, see {@link IngestionJob}. On shutdown no new jobs are started
+ * and the running ones are given some time to checkpoint the page they are saving, they stop right
+ * after and are resumed the next time their user is requested. Jobs are drained before the web
+ * server shuts down, while Bungie.net and the database can still be reached.
+ */
+@Service
+@Slf4j
+public class IngestionJobService implements SmartLifecycle {
+
+  private static final String ID_FIELD = "_id";
+  private static final String CHECKPOINTS_FIELD = "checkpoints";
+  private static final String CHECKPOINTED_AT_FIELD = "checkpointedAt";
+  private static final Duration DRAIN_POLL_INTERVAL = Duration.ofMillis(100);
+
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final Duration drainTimeout;
+  private final Duration expiration;
+  private final AtomicInteger runningJobs = new AtomicInteger();
+
+  private volatile boolean draining;
+  private volatile boolean running;
+
+  public IngestionJobService(
+      ReactiveMongoTemplate reactiveMongoTemplate,
+      @Value("${application.ingestion.drainTimeout:PT20S}") Duration drainTimeout,
+      @Value("${application.ingestion.jobExpiration:P7D}") Duration expiration) {
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.drainTimeout = drainTimeout;
+    this.expiration = expiration;
+  }
+
+  /**
+   * Creates the index that expires jobs that have not made progress in a while, e.g., because
+   * their user was never requested again after the job failed
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void createIndexes() {
+    reactiveMongoTemplate.indexOps(IngestionJob.class)
+        .ensureIndex(new Index()
+            .on(CHECKPOINTED_AT_FIELD, Direction.ASC)
+            .expire(expiration)
+            .named("checkpointed_at_ttl"))
+        .subscribe(
+            index -> log.info("Index [{}] is ready for the ingestion jobs", index),
+            err -> log.error("Unable to create the index of the ingestion jobs", err));
+  }
+
+  /**
+   * Run the ingestion job of a user. If the user already has a job, i.e., a previous ingestion was
+   * interrupted, that job is resumed instead of the new one. The job is removed once the ingestion
+   * completes, it is kept if it fails so that it can be resumed
+   *
+   * @param newJob    The job to start if the user does not have one
+   * @param ingestion The ingestion to run for the job
+   * @return empty Mono once the ingestion completed
+   */
+  public Mono<Void> run(IngestionJob newJob, Function<IngestionJob, Mono<Void>> ingestion) {
+    return Mono.defer(() -> {
+      if (draining) {
+        return Mono.error(interrupted(newJob));
+      }
+      runningJobs.incrementAndGet();
+      return resumeOrStart(newJob)
+          .flatMap(job -> ingestion.apply(job)
+              .then(Mono.defer(() -> reactiveMongoTemplate.remove(idQuery(job.getId()),
+                  IngestionJob.class))))
+          .doFinally(signal -> runningJobs.decrementAndGet())
+          .then();
+    });
+  }
+
+  /**
+   * Save the checkpoint of a character. If the application is shutting down the job is interrupted
+   * right after the checkpoint is saved
+   *
+   * @param job         The job of the user
+   * @param characterId The characterId the checkpoint belongs to
+   * @param checkpoint  The checkpoint
+   * @return empty Mono once the checkpoint was saved, or {@link IngestionInterruptedException} if
+   * the job has to stop
+   */
+  public Mono<Void> checkpoint(IngestionJob job, String characterId,
+      IngestionCheckpoint checkpoint) {
+    Update update = new Update()
+        .set(CHECKPOINTS_FIELD + "." + characterId, checkpoint)
+        .set(CHECKPOINTED_AT_FIELD, Instant.now());
+    return reactiveMongoTemplate.updateFirst(idQuery(job.getId()), update, IngestionJob.class)
+        .then(Mono.defer(() -> draining ? Mono.error(interrupted(job)) : Mono.empty()));
+  }
+
+  @Override
+  public void start() {
+    draining = false;
+    running = true;
+  }
+
+  @Override
+  public void stop() {
+    drain().block();
+  }
+
+  @Override
+  public void stop(Runnable callback) {
+    drain().doFinally(signal -> callback.run()).subscribe();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  /**
+   * Stopped in the highest phase, i.e., before the graceful shutdown of the web server and before
+   * the HTTP resources of the clients are released
+   */
+  @Override
+  public int getPhase() {
+    return SmartLifecycle.DEFAULT_PHASE;
+  }
+
+  /**
+   * Stop starting new jobs and wait for the running ones to checkpoint, for up to the drain
+   * timeout
+   *
+   * @return empty Mono once every running job stopped or the drain timeout passed
+   */
+  Mono<Void> drain() {
+    draining = true;
+    running = false;
+    if (runningJobs.get() == 0) {
+      return Mono.empty();
+    }
+    log.info("Waiting for [{}] ingestion jobs to checkpoint", runningJobs.get());
+    return Flux.interval(DRAIN_POLL_INTERVAL)
+        .filter(tick -> runningJobs.get() == 0)
+        .next()
+        .timeout(drainTimeout)
+        .doOnError(err -> log.warn("[{}] ingestion jobs did not checkpoint in time",
+            runningJobs.get()))
+        .onErrorComplete()
+        .then();
+  }
+
+  private Mono<IngestionJob> resumeOrStart(IngestionJob newJob) {
+    return reactiveMongoTemplate.findById(newJob.getId(), IngestionJob.class)
+        .doOnNext(job -> {
+          log.info("Resuming the ingestion job of user [{}] started at [{}]",
+              job.getUsername() + "#" + job.getUserTag(), job.getStartedAt());
+          // The user may have changed their name since, raids are saved with the current one
+          job.setUsername(newJob.getUsername());
+          job.setUserTag(newJob.getUserTag());
+        })
+        .switchIfEmpty(Mono.defer(() -> reactiveMongoTemplate.insert(newJob)
+            .onErrorResume(DuplicateKeyException.class,
+                err -> reactiveMongoTemplate.findById(newJob.getId(), IngestionJob.class))));
+  }
+
+  private static IngestionInterruptedException interrupted(IngestionJob job) {
+    String displayUsername = job.getUsername() + "#" + job.getUserTag();
+    return new IngestionInterruptedException(
+        "Saving the raids of [%s] was interrupted by a shutdown".formatted(displayUsername),
+        InteractionResponseData.builder()
+            .content("The raids of %s are still being saved, please try again in a few moments"
+                .formatted(displayUsername))
+            .build());
+  }
+
+  private static Query idQuery(String id) {
+    return new Query(Criteria.where(ID_FIELD).is(id));
+  }
+}
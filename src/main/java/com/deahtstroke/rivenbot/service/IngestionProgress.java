@@ -0,0 +1,113 @@
+package com.deahtstroke.rivenbot.service;
+
+import com.deahtstroke.rivenbot.entity.RaidStatistics;
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidStatistics;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Progress of the ingestion of the raids of a user, i.e., the pages of activity history and the
+ * Post Game Carnage Reports (PGCRs) processed out of those discovered so far, along with the
+ * statistics of the raids saved so far. It is tracked by putting it in the Reactor context of an
+ * ingestion, e.g., <code>mono.contextWrite(IngestionProgress.track(progress))</code>
+ */
+public final class IngestionProgress {
+
+  private static final String PROGRESS_KEY = "rivenbot.ingestion.progress";
+
+  private final AtomicInteger pagesDiscovered = new AtomicInteger();
+  private final AtomicInteger pagesProcessed = new AtomicInteger();
+  private final AtomicInteger pgcrsDiscovered = new AtomicInteger();
+  private final AtomicInteger pgcrsProcessed = new AtomicInteger();
+  private final Map<String, UserRaidStatistics> statistics = new LinkedHashMap<>();
+
+  /**
+   * Track the progress of the ingestion running upstream
+   *
+   * @param progress The progress to update
+   * @return function to be used with contextWrite
+   */
+  public static Function<Context, Context> track(IngestionProgress progress) {
+    return context -> context.put(PROGRESS_KEY, progress);
+  }
+
+  /**
+   * Get the progress of an ingestion
+   *
+   * @param context The context of the ingestion
+   * @return the progress in the context, or a new one nobody looks at if it is not tracked
+   */
+  public static IngestionProgress from(ContextView context) {
+    return context.getOrDefault(PROGRESS_KEY, new IngestionProgress());
+  }
+
+  /**
+   * A page of activity history was fetched
+   *
+   * @param raids The amount of raids in the page, each of them needs its PGCR
+   */
+  public void pageDiscovered(int raids) {
+    pagesDiscovered.incrementAndGet();
+    pgcrsDiscovered.addAndGet(raids);
+  }
+
+  /**
+   * The PGCR of a raid was processed
+   */
+  public void pgcrProcessed() {
+    pgcrsProcessed.incrementAndGet();
+  }
+
+  /**
+   * The raids of a page were saved
+   *
+   * @param username    The username of the player
+   * @param userTag     The userTag of the player
+   * @param raidDetails The raids that were saved
+   */
+  public void pageProcessed(String username, String userTag,
+      Collection<UserRaidDetails> raidDetails) {
+    synchronized (statistics) {
+      UserRaidStatisticsService.summarize(statistics, username, userTag, raidDetails);
+    }
+    pagesProcessed.incrementAndGet();
+  }
+
+  /**
+   * Get the statistics of the raids saved so far
+   *
+   * @param raidsWithMasterMode Names of the raids that have a master mode
+   * @return statistics, one per raid
+   */
+  public List<RaidStatistics> statistics(Set<String> raidsWithMasterMode) {
+    synchronized (statistics) {
+      return statistics.values().stream()
+          .map(raid -> raid.toRaidStatistics(raidsWithMasterMode))
+          .toList();
+    }
+  }
+
+  public int pagesDiscovered() {
+    return pagesDiscovered.get();
+  }
+
+  public int pagesProcessed() {
+    return pagesProcessed.get();
+  }
+
+  public int pgcrsDiscovered() {
+    return pgcrsDiscovered.get();
+  }
+
+  public int pgcrsProcessed() {
+    return pgcrsProcessed.get();
+  }
+}
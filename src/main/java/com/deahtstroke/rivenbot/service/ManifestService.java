@@ -0,0 +1,216 @@
+package com.deahtstroke.rivenbot.service;
+
+import com.deahtstroke.rivenbot.client.BungieClient;
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DestinyManifest;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import com.deahtstroke.rivenbot.manifest.ManifestIndex;
+import com.deahtstroke.rivenbot.manifest.RaidActivityTable;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import com.deahtstroke.rivenbot.ratelimit.RequestPriority;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+@Slf4j
+@Service
+public class ManifestService {
+
+  private static final String MANIFEST_LOCALE = "en";
+  private static final Set<ManifestEntity> INDEXED_ENTITIES = EnumSet.of(
+      ManifestEntity.ACTIVITY_DEFINITION,
+      ManifestEntity.ACTIVITY_TYPE_DEFINITION,
+      ManifestEntity.MILESTONE_DEFINITION);
+
+  private final BungieClient defaultBungieClient;
+  private final BungieAPIService bungieAPIService;
+  private final AdaptiveRateController bungieRateController;
+  private final WebClient manifestWebClient;
+  private final ObjectMapper objectMapper;
+  private final Duration refreshInterval;
+
+  private final AtomicReference<ManifestIndex> manifestIndex =
+      new AtomicReference<>(ManifestIndex.EMPTY);
+
+  private Disposable refreshTask;
+
+  public ManifestService(
+      BungieClient defaultBungieClient,
+      BungieAPIService bungieAPIService,
+      AdaptiveRateController bungieRateController,
+      WebClient manifestWebClient,
+      ObjectMapper objectMapper,
+      @Value("${bungie.api.manifestRefreshInterval:PT1H}") Duration refreshInterval) {
+    this.defaultBungieClient = defaultBungieClient;
+    this.bungieAPIService = bungieAPIService;
+    this.bungieRateController = bungieRateController;
+    this.manifestWebClient = manifestWebClient;
+    this.objectMapper = objectMapper;
+    this.refreshInterval = refreshInterval;
+  }
+
+  /**
+   * Loads the Manifest as soon as the application is ready and keeps checking for newer versions
+   * every refresh interval
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void startRefreshing() {
+    this.refreshTask = Flux.interval(Duration.ZERO, refreshInterval)
+        .onBackpressureDrop()
+        .concatMap(tick -> refresh()
+            .onErrorResume(err -> {
+              log.error("Unable to refresh the Manifest index, keeping version [{}]",
+                  manifestIndex.get().getVersion(), err);
+              return Mono.empty();
+            }))
+        .subscribe();
+  }
+
+  @PreDestroy
+  public void stopRefreshing() {
+    if (Objects.nonNull(refreshTask)) {
+      refreshTask.dispose();
+    }
+  }
+
+  /**
+   * Retrieves a manifest entity, the in-memory index is checked first and Bungie's Manifest API is
+   * only called whenever the entity is not indexed
+   *
+   * @param entityType The type of the entity
+   * @param hash       The hash of the entity
+   * @return {@link ManifestResponseFields}
+   */
+  public Mono<ManifestResponseFields> getManifestEntity(ManifestEntity entityType, Long hash) {
+    ManifestResponseFields indexedEntity = manifestIndex.get().get(entityType, hash);
+    if (Objects.nonNull(indexedEntity)) {
+      return Mono.just(indexedEntity);
+    }
+    return bungieAPIService.getManifestEntity(entityType, hash);
+  }
+
+  /**
+   * Get the Manifest index currently in use
+   *
+   * @return {@link ManifestIndex}
+   */
+  public ManifestIndex currentIndex() {
+    return manifestIndex.get();
+  }
+
+  /**
+   * Get the raid resolution table of the Manifest index currently in use
+   *
+   * @return {@link RaidActivityTable}
+   */
+  public RaidActivityTable raidActivityTable() {
+    return manifestIndex.get().getRaidActivityTable();
+  }
+
+  /**
+   * Checks the current version of the Manifest and, if it is different from the one that is
+   * indexed, downloads all the indexed tables and swaps the index in a single step. Lookups
+   * happening while the new version is downloading keep using the previous index. Calls made to
+   * refresh the index are background work and yield to every interaction.
+   *
+   * @return the new {@link ManifestIndex} or empty if the version did not change
+   */
+  public Mono<ManifestIndex> refresh() {
+    return defaultBungieClient.getManifest()
+        .doOnNext(bungieRateController::observe)
+        .filter(response -> Objects.nonNull(response.getResponse()))
+        .map(BungieResponse::getResponse)
+        .filter(manifest -> !Objects.equals(manifest.getVersion(),
+            manifestIndex.get().getVersion()))
+        .flatMap(this::buildIndex)
+        .doOnNext(index -> {
+          manifestIndex.set(index);
+          log.info("Manifest index swapped to version [{}] with [{}] entities and [{}] raids",
+              index.getVersion(), index.size(), index.getRaidActivityTable().size());
+        })
+        .contextWrite(BungieRequestContext.withPriority(RequestPriority.BACKGROUND));
+  }
+
+  private Mono<ManifestIndex> buildIndex(DestinyManifest manifest) {
+    Map<String, String> contentPaths = Objects.isNull(
+        manifest.getJsonWorldComponentContentPaths()) ? Collections.emptyMap() :
+        manifest.getJsonWorldComponentContentPaths()
+            .getOrDefault(MANIFEST_LOCALE, Collections.emptyMap());
+    return Flux.fromIterable(INDEXED_ENTITIES)
+        .filter(entity -> contentPaths.containsKey(entity.getId()))
+        .concatMap(entity -> downloadTable(contentPaths.get(entity.getId()))
+            .map(table -> Map.entry(entity, table)))
+        .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+        .map(tables -> new ManifestIndex(manifest.getVersion(), tables));
+  }
+
+  private Mono<Map<Long, ManifestResponseFields>> downloadTable(String contentPath) {
+    return Mono.usingWhen(
+        Mono.fromCallable(() -> Files.createTempFile("manifest-", ".json"))
+            .subscribeOn(Schedulers.boundedElastic()),
+        file -> DataBufferUtils.write(manifestWebClient.get()
+                    .uri(contentPath)
+                    .retrieve()
+                    .bodyToFlux(DataBuffer.class), file)
+            .then(Mono.fromCallable(() -> readTable(file))
+                .subscribeOn(Schedulers.boundedElastic())),
+        file -> Mono.fromCallable(() -> Files.deleteIfExists(file))
+            .subscribeOn(Schedulers.boundedElastic()));
+  }
+
+  private Map<Long, ManifestResponseFields> readTable(Path file) throws IOException {
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      return readTable(inputStream);
+    }
+  }
+
+  /**
+   * Reads a Manifest table in JSON format one entity at a time, that way the whole table is never
+   * materialized as a tree before being indexed
+   *
+   * @param inputStream The stream of the Manifest table
+   * @return Map of entities keyed by their hash
+   * @throws IOException if the table is not valid JSON
+   */
+  Map<Long, ManifestResponseFields> readTable(InputStream inputStream) throws IOException {
+    Map<Long, ManifestResponseFields> table = new HashMap<>();
+    try (JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("Manifest table is expected to be a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        Long hash = Long.valueOf(parser.currentName());
+        parser.nextToken();
+        table.put(hash, objectMapper.readValue(parser, ManifestResponseFields.class));
+      }
+    }
+    return table;
+  }
+}
@@ -1,48 +1,62 @@
 package com.deahtstroke.rivenbot.service;
 
-import com.deahtstroke.rivenbot.config.BungieConfiguration;
+import com.deahtstroke.rivenbot.decoder.NonBlockingPGCRParser;
 import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
 import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
 import com.deahtstroke.rivenbot.entity.PGCRDetails;
-import com.deahtstroke.rivenbot.exception.PGCRSizeLimitException;
+import com.deahtstroke.rivenbot.exception.ResourceNotFoundException;
 import com.deahtstroke.rivenbot.mapper.PGCRMapper;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.deahtstroke.rivenbot.ratelimit.BungieRequestContext;
+import com.deahtstroke.rivenbot.ratelimit.RequestPriority;
 import com.deahtstroke.rivenbot.repository.PGCRRepository;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.github.resilience4j.reactor.ratelimiter.operator.RateLimiterOperator;
-import java.util.concurrent.atomic.AtomicInteger;
-import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.commons.collections4.CollectionUtils;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyExtractors;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 // Short for PostGameCarnageReportService
 @Service
-@Slf4j
 public class PGCRService {
 
   private static final String PGCR_ENDPOINT_URL = "/Destiny2/Stats/PostGameCarnageReport/{activityId}/";
-  private static final Integer PGCR_SIZE_LIMIT_BYTES = 32_000;
+  private static final Integer MAX_CONCURRENT_PGCR_CALLS = 20;
+  private static final String ID_FIELD = "_id";
+  private static final String FROM_BEGINNING_FIELD = "fromBeginning";
 
   private final WebClient webClient;
   private final PGCRMapper pgcrMapper;
   private final PGCRRepository pgcrRepository;
   private final ObjectMapper objectMapper;
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final AdaptiveRateController bungieRateController;
 
   public PGCRService(
       WebClient pgcrWebClient,
       PGCRMapper pgcrMapper,
       PGCRRepository pgcrRepository,
-      ObjectMapper objectMapper) {
+      ObjectMapper objectMapper,
+      ReactiveMongoTemplate reactiveMongoTemplate,
+      AdaptiveRateController bungieRateController) {
     this.pgcrMapper = pgcrMapper;
     this.pgcrRepository = pgcrRepository;
     this.objectMapper = objectMapper;
     this.webClient = pgcrWebClient;
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.bungieRateController = bungieRateController;
   }
 
   /**
@@ -53,46 +67,78 @@ public class PGCRService {
    * @return {@link PGCRDetails}
    */
   public Mono<PGCRDetails> retrievePGCR(Long activityInstanceId) {
-    AtomicInteger currentSize = new AtomicInteger(0);
-    return pgcrRepository.existsById(activityInstanceId)
-        .flatMap(existsById -> {
-          if (Boolean.TRUE.equals(existsById)) {
-            return pgcrRepository.findById(activityInstanceId);
-          } else {
-            return webClient.get()
-                .uri(PGCR_ENDPOINT_URL, activityInstanceId)
-                .exchangeToFlux(
-                    clientResponse -> clientResponse.body(BodyExtractors.toDataBuffers()))
-                .concatMap(dataBuffer -> {
-                  int chunkSize = dataBuffer.readableByteCount();
-                  if (dataBuffer.readableByteCount() + currentSize.get() > PGCR_SIZE_LIMIT_BYTES) {
-                    return Mono.error(new PGCRSizeLimitException(
-                        "PGCR with Id [%s] exceeded the size limit of 16 KBs".formatted(
-                            activityInstanceId)));
-                  } else {
-                    currentSize.addAndGet(chunkSize);
-                    return Mono.just(dataBuffer);
-                  }
-                })
-                .transformDeferred(RateLimiterOperator.of(BungieConfiguration.PGCR_RATE_LIMITER))
-                .collectList()
-                .flatMap(buffers -> DataBufferUtils.join(Flux.fromIterable(buffers)))
-                .flatMap(buffer -> {
-                  byte[] bytes = new byte[buffer.readableByteCount()];
-                  buffer.read(bytes);
-                  DataBufferUtils.release(buffer);
-                  var type = new TypeReference<BungieResponse<PostGameCarnageReport>>() {
-                  };
-                  return Mono.defer(
-                          () -> Mono.fromCallable(() -> objectMapper.readValue(bytes, type)))
-                      .subscribeOn(Schedulers.boundedElastic());
-                })
-                .onErrorResume(PGCRSizeLimitException.class, ex -> Mono.just(
-                    BungieResponse.of(PostGameCarnageReport.EMPTY_RESPONSE)))
-                .flatMap(response -> pgcrRepository.save(
-                    pgcrMapper.dtoToEntity(response.getResponse(), activityInstanceId)))
-                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    return retrievePGCRs(List.of(activityInstanceId)).next();
+  }
+
+  /**
+   * Return the Post Game Carnage Reports for a batch of activities. All the reports that are
+   * already saved are resolved with a single query to the database, only the ones that are missing
+   * are requested to Bungie's API. Reports are emitted as soon as they are resolved, so the order
+   * of the results is not guaranteed to match the order of the instanceIds.
+   * <p>
+   * Reports coming from the database only have the fields needed by the raid statistics, that is,
+   * the instanceId and whether the activity was started from the beginning. A report that Bungie
+   * answers without, for example because of throttling, errors with a
+   * {@link ResourceNotFoundException} instead of being left out, so that the raids it belongs to
+   * are retried rather than lost.
+   *
+   * @param activityInstanceIds the activity instanceIds
+   * @return Flux of {@link PGCRDetails}
+   */
+  public Flux<PGCRDetails> retrievePGCRs(Collection<Long> activityInstanceIds) {
+    if (CollectionUtils.isEmpty(activityInstanceIds)) {
+      return Flux.empty();
+    }
+    return Flux.defer(() -> {
+      Set<String> missingIds = new LinkedHashSet<>();
+      activityInstanceIds.forEach(id -> missingIds.add(String.valueOf(id)));
+
+      Query query = new Query(Criteria.where(ID_FIELD).in(missingIds));
+      query.fields().include(FROM_BEGINNING_FIELD);
+
+      return reactiveMongoTemplate.find(query, PGCRDetails.class)
+          .doOnNext(pgcr -> missingIds.remove(pgcr.getInstanceId()))
+          .concatWith(Flux.defer(() -> Flux.fromIterable(missingIds))
+              .flatMap(missingId -> fetchPGCR(Long.valueOf(missingId)),
+                  MAX_CONCURRENT_PGCR_CALLS));
+    });
+  }
+
+  private Mono<PGCRDetails> fetchPGCR(Long activityInstanceId) {
+    return webClient.get()
+        .uri(PGCR_ENDPOINT_URL, activityInstanceId)
+        .exchangeToMono(clientResponse -> decode(
+            clientResponse.body(BodyExtractors.toDataBuffers())))
+        .contextWrite(BungieRequestContext.withPriority(RequestPriority.BULK_PGCR))
+        .doOnNext(bungieRateController::observe)
+        .flatMap(response -> {
+          if (Objects.isNull(response.getResponse())) {
+            return Mono.error(new ResourceNotFoundException(
+                "PGCR with Id [%s] could not be retrieved, error code [%s]".formatted(
+                    activityInstanceId, response.getErrorCode())));
           }
+          return pgcrRepository.save(
+              pgcrMapper.dtoToEntity(response.getResponse(), activityInstanceId));
         });
   }
+
+  /**
+   * Decodes a PGCR while its body is being received. Each buffer is parsed on the thread it arrives
+   * on and released right away, so no matter how big the PGCR is it is never copied nor blocks
+   *
+   * @param body The body of the PGCR response
+   * @return the decoded {@link PostGameCarnageReport}
+   */
+  private Mono<BungieResponse<PostGameCarnageReport>> decode(Flux<DataBuffer> body) {
+    return Mono.using(() -> new NonBlockingPGCRParser(objectMapper.getFactory()),
+        parser -> body
+            .<Void>handle((dataBuffer, sink) -> {
+              try {
+                parser.feed(dataBuffer);
+              } catch (IOException e) {
+                sink.error(e);
+              }
+            })
+            .then(Mono.fromCallable(parser::finish)));
+  }
 }
@@ -1,21 +1,34 @@
 package com.deahtstroke.rivenbot.service;
 
-import com.deahtstroke.rivenbot.dto.destiny.ActivitiesResponse;
 import com.deahtstroke.rivenbot.dto.destiny.Activity;
 import com.deahtstroke.rivenbot.dto.destiny.Basic;
 import com.deahtstroke.rivenbot.dto.destiny.ValueEntry;
+import com.deahtstroke.rivenbot.entity.CharacterWatermark;
+import com.deahtstroke.rivenbot.entity.IngestionCheckpoint;
+import com.deahtstroke.rivenbot.entity.IngestionJob;
 import com.deahtstroke.rivenbot.entity.UserDetails;
 import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidStatistics;
 import com.deahtstroke.rivenbot.enums.ManifestEntity;
 import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import com.deahtstroke.rivenbot.manifest.RaidActivityTable;
 import com.deahtstroke.rivenbot.repository.UserDetailsRepository;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -34,18 +47,67 @@ public class PlayerRaidDetailsService {
   private final UserDetailsRepository userDetailsRepository;
   private final PGCRService postGameCarnageService;
   private final BungieAPIService bungieAPIService;
+  private final ManifestService manifestService;
+  private final UserRaidStatisticsService userRaidStatisticsService;
+  private final UserRaidInstanceService userRaidInstanceService;
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final IngestionJobService ingestionJobService;
 
   public PlayerRaidDetailsService(
       UserDetailsRepository userDetailsRepository,
       PGCRService postGameCarnageService,
-      BungieAPIService bungieAPIService) {
+      BungieAPIService bungieAPIService,
+      ManifestService manifestService,
+      UserRaidStatisticsService userRaidStatisticsService,
+      UserRaidInstanceService userRaidInstanceService,
+      ReactiveMongoTemplate reactiveMongoTemplate,
+      IngestionJobService ingestionJobService) {
     this.userDetailsRepository = userDetailsRepository;
     this.postGameCarnageService = postGameCarnageService;
     this.bungieAPIService = bungieAPIService;
+    this.manifestService = manifestService;
+    this.userRaidStatisticsService = userRaidStatisticsService;
+    this.userRaidInstanceService = userRaidInstanceService;
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.ingestionJobService = ingestionJobService;
   }
 
   /**
-   * Creates user details for a new user that hasn't been seen yet
+   * Creates the indexes users are looked up by, see {@link #userDetailsIndexes()}
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void createIndexes() {
+    var indexOps = reactiveMongoTemplate.indexOps(UserDetails.class);
+    Flux.fromIterable(userDetailsIndexes())
+        .concatMap(indexOps::ensureIndex)
+        .subscribe(
+            index -> log.info("Index [{}] is ready for user details", index),
+            err -> log.error("Unable to create the indexes of user details", err));
+  }
+
+  /**
+   * The indexes of user details: a unique one on the membershipId, and one on the username and
+   * userTag for users saved before their membershipId was stored
+   *
+   * @return List of {@link Index}
+   */
+  static List<Index> userDetailsIndexes() {
+    return List.of(
+        new Index()
+            .on("membershipId", Direction.ASC)
+            .unique()
+            .sparse()
+            .named("membership_id"),
+        new Index()
+            .on("username", Direction.ASC)
+            .on("userTag", Direction.ASC)
+            .named("username_user_tag"));
+  }
+
+  /**
+   * Creates user details for a new user that hasn't been seen yet, along with their raids and
+   * materialized raid statistics. Raids are ingested by an {@link IngestionJob}, so a creation
+   * that fails resumes from the last saved page the next time the user is requested
    *
    * @param creationInstant The instant this creation action was fired
    * @param membershipId    The membershipId of the newly created user
@@ -56,25 +118,36 @@ public class PlayerRaidDetailsService {
    */
   public Mono<Void> createUserDetails(Instant creationInstant, String username,
       String userTag, String membershipId, Integer membershipType) {
-    return bungieAPIService.getUserCharacters(membershipType, membershipId)
-        .flatMapMany(characters -> Flux.fromIterable(characters.keySet()))
-        .flatMap(characterId -> getActivitiesAll(membershipType, membershipId, characterId))
-        .flatMap(this::buildRaidDetails, MAX_MANIFEST_CONCURRENT_CALLS)
-        .flatMap(this::addPGCRDetails)
-        .collectList()
-        .flatMap(raidDetails -> {
-          UserDetails newEntry = UserDetails.builder()
-              .username(username)
-              .userTag(userTag)
-              .userRaidDetails(raidDetails)
-              .lastRequestDateTime(creationInstant)
-              .build();
-          return userDetailsRepository.save(newEntry);
-        }).then();
+    IngestionJob newJob = IngestionJob.start(membershipId, username, userTag, creationInstant,
+        null);
+    return ingestionJobService.run(newJob, job -> {
+      Map<String, UserRaidStatistics> statistics = new LinkedHashMap<>();
+      Map<String, CharacterWatermark> watermarks = new ConcurrentHashMap<>();
+      return userRaidInstanceService.hasUnrecorded(username, userTag)
+          .flatMap(unrecorded -> ingest(job, membershipType, membershipId, watermarks, statistics)
+              .flatMap(savedRaids -> {
+                UserDetails newEntry = UserDetails.builder()
+                    .username(username)
+                    .userTag(userTag)
+                    .membershipId(membershipId)
+                    .lastRequestDateTime(job.getStartedAt())
+                    .raidStatisticsMaterialized(true)
+                    .characterWatermarks(new HashMap<>(watermarks))
+                    .build();
+                return userDetailsRepository.save(newEntry)
+                    .then(recordStatistics(job, statistics, unrecorded));
+              }));
+    });
   }
 
   /**
-   * Updates user details for a user that has already been seen by the bot
+   * Updates user details for a user that has already been seen by the bot. Only the new raids are
+   * added to the materialized raid statistics of the user, unless they were never materialized, in
+   * which case they are rebuilt from all of their raids. Raids still embedded in the user details
+   * are moved to their own collection along the way, as are the raids of users that changed their
+   * Bungie name since they were last requested. Like {@link #createUserDetails} new raids are
+   * ingested by an {@link IngestionJob}, the activity history of each character is only read up to
+   * its watermark, or up to the last time the user was requested if it does not have one yet
    *
    * @param updateTimestamp The timestamp when this update action was fired
    * @param membershipId    The membershipId of the newly created user
@@ -85,29 +158,70 @@ public class PlayerRaidDetailsService {
    */
   public Mono<Void> updateUserDetails(Instant updateTimestamp, String username,
       String userTag, String membershipId, Integer membershipType) {
-    return userDetailsRepository.findUserDetailsByUsernameAndUserTag(username, userTag)
-        .flatMap(userDetails -> bungieAPIService.getUserCharacters(membershipType, membershipId)
-            .flatMapIterable(Map::keySet)
-            .flatMap(characterId -> getActivitiesUntil(membershipType, membershipId,
-                characterId, userDetails.getLastRequestDateTime())
-                .flatMap(this::buildRaidDetails, MAX_MANIFEST_CONCURRENT_CALLS)
-                .flatMap(this::addPGCRDetails))
-            .collectList()
-            .flatMap(raidDetails -> {
-              userDetails.setLastRequestDateTime(updateTimestamp);
-              if (CollectionUtils.isEmpty(raidDetails)) {
-                log.warn(
-                    "No new raid encounters were found for user [{}]. Last time requested set to: [{}]",
-                    username, updateTimestamp);
-              } else {
-                log.info(
-                    "Adding [{}] new raid encounters for user [{}]. Last time requested set to: [{}]",
-                    raidDetails.size(), username, updateTimestamp);
-                userDetails.getUserRaidDetails().addAll(raidDetails);
+    return userDetailsRepository.findUser(membershipId, username, userTag)
+        .flatMap(userDetails -> ingestionJobService.run(
+            IngestionJob.start(membershipId, username, userTag, updateTimestamp,
+                userDetails.getLastRequestDateTime()),
+            job -> {
+              Map<String, UserRaidStatistics> statistics = new LinkedHashMap<>();
+              Map<String, CharacterWatermark> watermarks = new ConcurrentHashMap<>();
+              if (Objects.nonNull(userDetails.getCharacterWatermarks())) {
+                watermarks.putAll(userDetails.getCharacterWatermarks());
               }
-              return userDetailsRepository.save(userDetails);
-            }))
-        .then();
+              return rename(userDetails, username, userTag)
+                  .then(userRaidInstanceService.hasUnrecorded(username, userTag))
+                  .flatMap(unrecorded -> userRaidInstanceService.saveAll(username, userTag,
+                          userDetails.getUserRaidDetails())
+                      .then(ingest(job, membershipType, membershipId, watermarks, statistics))
+                      .flatMap(savedRaids -> {
+                        userDetails.setLastRequestDateTime(job.getStartedAt());
+                        userDetails.setMembershipId(membershipId);
+                        userDetails.setUserRaidDetails(null);
+                        userDetails.setCharacterWatermarks(new HashMap<>(watermarks));
+                        if (savedRaids == 0) {
+                          log.warn(
+                              "No new raid encounters were found for user [{}]. Last time requested set to: [{}]",
+                              username, job.getStartedAt());
+                        } else {
+                          log.info(
+                              "Added [{}] new raid encounters for user [{}]. Last time requested set to: [{}]",
+                              savedRaids, username, job.getStartedAt());
+                        }
+                        boolean materialized = Boolean.TRUE.equals(
+                            userDetails.getRaidStatisticsMaterialized());
+                        userDetails.setRaidStatisticsMaterialized(true);
+                        return userDetailsRepository.save(userDetails)
+                            .then(recordStatistics(job, statistics,
+                                unrecorded || !materialized));
+                      }));
+            }));
+  }
+
+  /**
+   * Move the raids of a user that changed their Bungie name, users are found by their
+   * membershipId but their raids and statistics are saved with their name. The statistics of the
+   * old name are removed, they are rebuilt under the new name since the moved raids are not
+   * recorded yet
+   *
+   * @param userDetails The saved user details, updated with the new name
+   * @param username    The current username of the user
+   * @param userTag     The current userTag of the user
+   * @return empty Mono once the raids were moved, or right away if the name did not change
+   */
+  private Mono<Void> rename(UserDetails userDetails, String username, String userTag) {
+    String oldUsername = userDetails.getUsername();
+    String oldUserTag = userDetails.getUserTag();
+    if (Objects.equals(oldUsername, username) && Objects.equals(oldUserTag, userTag)) {
+      return Mono.empty();
+    }
+    log.info("User [{}] is now known as [{}], moving their raids", oldUsername + "#" + oldUserTag,
+        username + "#" + userTag);
+    return userRaidInstanceService.rename(oldUsername, oldUserTag, username, userTag)
+        .then(userRaidStatisticsService.remove(oldUsername, oldUserTag))
+        .then(Mono.fromRunnable(() -> {
+          userDetails.setUsername(username);
+          userDetails.setUserTag(userTag);
+        }));
   }
 
   /**
@@ -121,16 +235,8 @@ public class PlayerRaidDetailsService {
    */
   public Flux<Activity> getActivitiesAll(Integer membershipType, String membershipId,
       String characterId) {
-    return Flux.range(0, MAX_SANE_AMOUNT_OF_RAID_PAGES)
-        .flatMapSequential(pageNumber ->
-            bungieAPIService.getRaidActivities(membershipType, membershipId,
-                characterId, pageNumber), MAX_CONCURRENT_ACTIVITY_HISTORY_CALLS)
-        .takeUntil(response ->
-            CollectionUtils.isEmpty(response.getActivities()) ||
-            response.getActivities().size() < MAX_PAGE_COUNT)
-        .filter(response -> Objects.nonNull(response.getActivities()))
-        .flatMapIterable(ActivitiesResponse::getActivities)
-        .switchIfEmpty(Flux.empty());
+    return getActivityPages(membershipType, membershipId, characterId, 0, null)
+        .flatMapIterable(ActivityPage::activities);
   }
 
   /**
@@ -146,80 +252,268 @@ public class PlayerRaidDetailsService {
    */
   public Flux<Activity> getActivitiesUntil(Integer membershipType, String membershipId,
       String characterId, Instant until) {
-    return Flux.range(0, MAX_SANE_AMOUNT_OF_RAID_PAGES)
-        .flatMapSequential(pageNumber ->
-            bungieAPIService.getRaidActivities(membershipType, membershipId, characterId,
-                pageNumber), MAX_CONCURRENT_ACTIVITY_HISTORY_CALLS)
-        .filter(response -> Objects.nonNull(response) && Objects.nonNull(response.getActivities()))
-        .takeUntil(response -> {
-          boolean nullResponse = Objects.isNull(response);
-          boolean emptyActivities = CollectionUtils.isEmpty(response.getActivities());
-
-          List<Activity> activities = response.getActivities();
-          long newRaidCount = activities.stream()
-              .filter(activity -> activity.getPeriod().isAfter(until))
-              .count();
-          boolean noMoreNewDataAvailable = newRaidCount < MAX_PAGE_COUNT;
-          return nullResponse || emptyActivities || noMoreNewDataAvailable;
+    return getActivityPages(membershipType, membershipId, characterId, 0,
+        Objects.isNull(until) ? null : new CharacterWatermark(null, until))
+        .flatMapIterable(ActivityPage::activities);
+  }
+
+  /**
+   * Get the pages of a character's activity history, starting from a given page, until the page
+   * where the history ends or reaches a watermark. Pages are only fetched ahead concurrently when
+   * the whole history is read, a delta sync up to a watermark fetches one page at a time so that no
+   * page past the watermark is ever requested
+   *
+   * @param membershipType The membershipType of the user
+   * @param membershipId   The membershipId of the user
+   * @param characterId    The characterId of the user
+   * @param firstPage      The first page to get
+   * @param bound          Only activities newer than this watermark are kept, null to keep every
+   *                       activity
+   * @return Flux of {@link ActivityPage} in order
+   */
+  private Flux<ActivityPage> getActivityPages(Integer membershipType, String membershipId,
+      String characterId, int firstPage, CharacterWatermark bound) {
+    Flux<Integer> pageNumbers = Flux.range(firstPage,
+        Math.max(0, MAX_SANE_AMOUNT_OF_RAID_PAGES - firstPage));
+    Function<Integer, Mono<ActivityPage>> getPage = pageNumber ->
+        bungieAPIService.getRaidActivities(membershipType, membershipId, characterId, pageNumber)
+            .map(response -> ActivityPage.of(pageNumber, response.getActivities(), bound));
+    Flux<ActivityPage> pages = Objects.isNull(bound) ?
+        pageNumbers.flatMapSequential(getPage, MAX_CONCURRENT_ACTIVITY_HISTORY_CALLS) :
+        pageNumbers.concatMap(getPage);
+    return pages.takeUntil(ActivityPage::last);
+  }
+
+  /**
+   * Ingest the raids of every character of a user, starting from the checkpoint of each character
+   * and stopping at its watermark. Characters are ingested concurrently, the pages of a character
+   * one at a time and in order, so its checkpoint can be saved after each page. The newest raid of
+   * each character becomes its new watermark, it is carried in the checkpoints so a resumed job
+   * still knows it. The progress of the ingestion is reported to the {@link IngestionProgress} in
+   * the context, if any
+   *
+   * @param job            The job of the user
+   * @param membershipType The membershipType of the user
+   * @param membershipId   The membershipId of the user
+   * @param watermarks     The known watermarks, keyed by characterId, updated with the new ones
+   * @param statistics     The statistics of the saved raids, keyed by the name of the raid
+   * @return the amount of raids that were saved
+   */
+  private Mono<Integer> ingest(IngestionJob job, Integer membershipType, String membershipId,
+      Map<String, CharacterWatermark> watermarks, Map<String, UserRaidStatistics> statistics) {
+    return Mono.deferContextual(context -> ingest(job, membershipType, membershipId, watermarks,
+        statistics, IngestionProgress.from(context)));
+  }
+
+  private Mono<Integer> ingest(IngestionJob job, Integer membershipType, String membershipId,
+      Map<String, CharacterWatermark> watermarks, Map<String, UserRaidStatistics> statistics,
+      IngestionProgress progress) {
+    return bungieAPIService.getUserCharacters(membershipType, membershipId)
+        .flatMapIterable(Map::keySet)
+        .flatMap(characterId -> {
+          IngestionCheckpoint checkpoint = job.checkpoint(characterId);
+          if (Objects.nonNull(checkpoint) && Boolean.TRUE.equals(checkpoint.getCompleted())) {
+            if (Objects.nonNull(checkpoint.getWatermark())) {
+              watermarks.put(characterId, checkpoint.getWatermark());
+            }
+            return Flux.<Integer>empty();
+          }
+          int firstPage = Objects.isNull(checkpoint) ? 0 : checkpoint.getNextPage();
+          Long lastSaved = Objects.isNull(checkpoint) ? null : checkpoint.getLastInstanceId();
+          AtomicReference<CharacterWatermark> newest = new AtomicReference<>(
+              Objects.isNull(checkpoint) ? null : checkpoint.getWatermark());
+          CharacterWatermark bound = watermarks.get(characterId);
+          if (Objects.isNull(bound) && Objects.nonNull(job.getUntil())) {
+            bound = new CharacterWatermark(null, job.getUntil());
+          }
+          return getActivityPages(membershipType, membershipId, characterId, firstPage, bound)
+              .map(page -> page.number() == firstPage ? page.after(lastSaved) : page)
+              .doOnNext(page -> progress.pageDiscovered(page.activities().size()))
+              .concatMap(page -> {
+                if (page.number() == 0 && !page.activities().isEmpty()) {
+                  Activity activity = page.activities().get(0);
+                  newest.set(new CharacterWatermark(
+                      activity.getActivityDetails().getInstanceId(), activity.getPeriod()));
+                }
+                return savePage(job, characterId, page, newest.get(), statistics, progress);
+              })
+              .doOnComplete(() -> {
+                if (Objects.nonNull(newest.get())) {
+                  watermarks.put(characterId, newest.get());
+                }
+              });
         })
-        .flatMapIterable(ActivitiesResponse::getActivities)
-        .filter(activity -> activity.getPeriod().isAfter(until))
-        .switchIfEmpty(Flux.empty());
+        .reduce(0, Integer::sum);
+  }
+
+  /**
+   * Save the raids of a page of activities with a single bulk write and checkpoint the page. Only
+   * the statistics of the raids that were not saved before are kept, so a page that is saved
+   * twice is only counted once, and the memory used does not grow with the amount of raids
+   *
+   * @param job         The job of the user
+   * @param characterId The characterId the page belongs to
+   * @param page        The page of activities
+   * @param watermark   The newest raid of the character, null if it is not known
+   * @param statistics  The statistics of the saved raids, keyed by the name of the raid
+   * @param progress    The progress of the ingestion
+   * @return the amount of raids that were not saved before
+   */
+  private Mono<Integer> savePage(IngestionJob job, String characterId, ActivityPage page,
+      CharacterWatermark watermark, Map<String, UserRaidStatistics> statistics,
+      IngestionProgress progress) {
+    List<Activity> activities = page.activities();
+    Long lastInstanceId = activities.isEmpty() ? null :
+        activities.get(activities.size() - 1).getActivityDetails().getInstanceId();
+    IngestionCheckpoint checkpoint = new IngestionCheckpoint(page.number() + 1, lastInstanceId,
+        page.last(), watermark);
+    return Flux.fromIterable(activities)
+        .flatMap(this::buildRaidDetails, MAX_MANIFEST_CONCURRENT_CALLS)
+        .collectList()
+        .flatMapMany(raidDetails -> addPGCRDetails(raidDetails, progress))
+        .collectList()
+        .flatMap(raidDetails -> userRaidInstanceService.saveAll(job.getUsername(),
+                job.getUserTag(), raidDetails)
+            .collectList()
+            .map(newRaids -> {
+              synchronized (statistics) {
+                UserRaidStatisticsService.summarize(statistics, job.getUsername(),
+                    job.getUserTag(), newRaids);
+              }
+              progress.pageProcessed(job.getUsername(), job.getUserTag(), raidDetails);
+              return newRaids.size();
+            }))
+        .flatMap(savedRaids -> ingestionJobService.checkpoint(job, characterId, checkpoint)
+            .thenReturn(savedRaids));
+  }
+
+  /**
+   * Add the statistics of the raids saved by a job to the materialized statistics of the user and
+   * mark those raids as recorded. When an earlier ingestion of the user stopped before its raids
+   * were recorded, e.g., a job that was interrupted, the job does not have the statistics of those
+   * raids, so the statistics are rebuilt from every raid instead
+   *
+   * @param job        The job of the user
+   * @param statistics The statistics of the raids saved by the job
+   * @param rebuild    Whether the statistics have to be rebuilt from every raid
+   * @return empty Mono once the statistics were saved
+   */
+  private Mono<Void> recordStatistics(IngestionJob job,
+      Map<String, UserRaidStatistics> statistics, boolean rebuild) {
+    return rebuild ?
+        userRaidStatisticsService.rebuild(job.getUsername(), job.getUserTag()) :
+        userRaidStatisticsService.record(statistics.values())
+            .then(userRaidInstanceService.markRecorded(job.getUsername(), job.getUserTag()));
   }
 
-  private Mono<UserRaidDetails> addPGCRDetails(UserRaidDetails userRaidDetails) {
-    return postGameCarnageService.retrievePGCR(userRaidDetails.getInstanceId())
-        .map(report -> {
-          userRaidDetails.setFromBeginning(report.getFromBeginning());
-          return userRaidDetails;
+  private Flux<UserRaidDetails> addPGCRDetails(List<UserRaidDetails> userRaidDetails,
+      IngestionProgress progress) {
+    Map<String, UserRaidDetails> raidDetailsById = userRaidDetails.stream()
+        .collect(Collectors.toMap(raidDetails -> String.valueOf(raidDetails.getInstanceId()),
+            Function.identity(), (first, second) -> first));
+    List<Long> instanceIds = userRaidDetails.stream()
+        .map(UserRaidDetails::getInstanceId)
+        .distinct()
+        .toList();
+    return postGameCarnageService.retrievePGCRs(instanceIds)
+        .mapNotNull(report -> {
+          UserRaidDetails raidDetails = raidDetailsById.get(report.getInstanceId());
+          progress.pgcrProcessed();
+          if (Objects.nonNull(raidDetails)) {
+            raidDetails.setFromBeginning(report.getFromBeginning());
+          }
+          return raidDetails;
         });
   }
 
   private Mono<UserRaidDetails> buildRaidDetails(Activity activity) {
-    return bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION,
-            activity.getActivityDetails().getDirectorActivityHash())
+    Long activityHash = activity.getActivityDetails().getDirectorActivityHash();
+    RaidActivityTable raidActivityTable = manifestService.raidActivityTable();
+    int raidEntry = Objects.isNull(activityHash) ? RaidActivityTable.NOT_FOUND :
+        raidActivityTable.find(activityHash);
+    if (raidEntry != RaidActivityTable.NOT_FOUND) {
+      return Mono.just(createRaidDetails(activity, raidActivityTable.raidName(raidEntry),
+          raidActivityTable.raidDifficulty(raidEntry)));
+    }
+    return manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, activityHash)
         .map(entity -> {
-              boolean emptyRaidDetails =
-                  entity.getDisplayProperties() == null ||
-                  entity.getDisplayProperties().getName() == null;
-
-              String raidName = emptyRaidDetails ? EMPTY_RAID_NAME :
-                  resolveRaidName(entity.getDisplayProperties().getName());
-              RaidDifficulty raidDifficulty = emptyRaidDetails ? null :
-                  resolveRaidDifficult(entity.getDisplayProperties().getName());
-
-              var valuesMap = activity.getValues();
-              var instanceId = activity.getActivityDetails().getInstanceId();
-              Function<String, Double> retrieveByKey = key -> valuesMap.getOrDefault(
-                  key, new ValueEntry(null, new Basic(0.0, "0.0"))).getBasic().getValue();
-              return UserRaidDetails.builder()
-                  .raidName(raidName)
-                  .instanceId(instanceId)
-                  .raidDifficulty(raidDifficulty)
-                  .totalDeaths(retrieveByKey.apply("deaths").intValue())
-                  .totalKills(retrieveByKey.apply("kills").intValue())
-                  .kda(retrieveByKey.apply("killsDeathsAssists"))
-                  .durationSeconds(retrieveByKey.apply("activityDurationSeconds").intValue())
-                  .isCompleted(retrieveByKey.apply("completed") != 0)
-                  .build();
-            }
-        );
+          boolean emptyRaidDetails =
+              entity.getDisplayProperties() == null ||
+              entity.getDisplayProperties().getName() == null;
+
+          String raidName = emptyRaidDetails ? EMPTY_RAID_NAME :
+              RaidActivityTable.resolveRaidName(entity.getDisplayProperties().getName());
+          RaidDifficulty raidDifficulty = emptyRaidDetails ? null :
+              RaidActivityTable.resolveRaidDifficulty(entity.getDisplayProperties().getName());
+          return createRaidDetails(activity, raidName, raidDifficulty);
+        });
   }
 
-  private RaidDifficulty resolveRaidDifficult(String raidName) {
-    String[] tokens = raidName.split(":");
-    if (tokens.length > 1) {
-      return switch (tokens[1].trim()) {
-        case "Normal", "normal" -> RaidDifficulty.NORMAL;
-        case "Master", "master" -> RaidDifficulty.MASTER;
-        default -> null;
-      };
-    }
-    return null;
+  private UserRaidDetails createRaidDetails(Activity activity, String raidName,
+      RaidDifficulty raidDifficulty) {
+    var valuesMap = activity.getValues();
+    var instanceId = activity.getActivityDetails().getInstanceId();
+    Function<String, Double> retrieveByKey = key -> valuesMap.getOrDefault(
+        key, new ValueEntry(null, new Basic(0.0, "0.0"))).getBasic().getValue();
+    return UserRaidDetails.builder()
+        .raidName(raidName)
+        .instanceId(instanceId)
+        .period(activity.getPeriod())
+        .raidDifficulty(raidDifficulty)
+        .totalDeaths(retrieveByKey.apply("deaths").intValue())
+        .totalKills(retrieveByKey.apply("kills").intValue())
+        .kda(retrieveByKey.apply("killsDeathsAssists"))
+        .durationSeconds(retrieveByKey.apply("activityDurationSeconds").intValue())
+        .isCompleted(retrieveByKey.apply("completed") != 0)
+        .build();
   }
 
-  private String resolveRaidName(String name) {
-    String[] tokens = name.split(":");
-    return tokens[0].trim();
+  /**
+   * A page of a character's activity history
+   *
+   * @param number     The number of the page
+   * @param activities The activities of the page that are newer than the watermark
+   * @param last       Whether there are no more pages to get after this one, i.e., the history
+   *                   ended or the watermark was reached
+   */
+  private record ActivityPage(int number, List<Activity> activities, boolean last) {
+
+    static ActivityPage of(int number, List<Activity> activities, CharacterWatermark bound) {
+      if (Objects.isNull(activities)) {
+        return new ActivityPage(number, List.of(), true);
+      }
+      List<Activity> kept = Objects.isNull(bound) ? activities : activities.stream()
+          .takeWhile(activity -> isNewer(activity, bound))
+          .toList();
+      return new ActivityPage(number, kept,
+          kept.size() < activities.size() || activities.size() < MAX_PAGE_COUNT);
+    }
+
+    /**
+     * Drop the activities of the page up to and including an activity that was already saved,
+     * e.g., the last activity of the page before when the page is the one a job resumes from
+     *
+     * @param instanceId The instanceId of the saved activity, null to keep every activity
+     * @return the page without the saved activities, or this page if the activity is not in it
+     */
+    ActivityPage after(Long instanceId) {
+      if (Objects.isNull(instanceId)) {
+        return this;
+      }
+      for (int i = 0; i < activities.size(); i++) {
+        if (instanceId.equals(activities.get(i).getActivityDetails().getInstanceId())) {
+          return new ActivityPage(number, activities.subList(i + 1, activities.size()), last);
+        }
+      }
+      return this;
+    }
+
+    private static boolean isNewer(Activity activity, CharacterWatermark bound) {
+      boolean known = Objects.nonNull(bound.getInstanceId()) &&
+                      bound.getInstanceId().equals(activity.getActivityDetails().getInstanceId());
+      boolean older = Objects.nonNull(bound.getPeriod()) &&
+                      !activity.getPeriod().isAfter(bound.getPeriod());
+      return !known && !older;
+    }
   }
 }
@@ -1,26 +1,22 @@
 package com.deahtstroke.rivenbot.service;
 
+import com.deahtstroke.rivenbot.cache.SingleFlight;
+import com.deahtstroke.rivenbot.cache.SingleFlight.Flight;
+import com.deahtstroke.rivenbot.dto.destiny.AggregateActivity;
+import com.deahtstroke.rivenbot.dto.destiny.ValueEntry;
 import com.deahtstroke.rivenbot.entity.RaidStatistics;
 import com.deahtstroke.rivenbot.entity.UserDetails;
 import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import com.deahtstroke.rivenbot.manifest.RaidActivityTable;
 import com.deahtstroke.rivenbot.repository.UserDetailsRepository;
-import java.time.Clock;
 import java.time.Instant;
-import java.time.ZoneId;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.function.Function;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
-import org.springframework.data.mongodb.core.aggregation.Aggregation;
-import org.springframework.data.mongodb.core.aggregation.BooleanOperators.And;
-import org.springframework.data.mongodb.core.aggregation.ComparisonOperators.Eq;
-import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
-import org.springframework.data.mongodb.core.aggregation.EvaluationOperators.Expr;
-import org.springframework.data.mongodb.core.aggregation.Fields;
-import org.springframework.data.mongodb.core.aggregation.GroupOperation;
-import org.springframework.data.mongodb.core.aggregation.MatchOperation;
-import org.springframework.data.mongodb.core.aggregation.StringOperators.RegexMatch;
-import org.springframework.data.mongodb.core.aggregation.UnwindOperation;
-import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -29,110 +25,145 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class RaidStatsService {
 
-  private static final Set<String> RAIDS_WITH_MASTER_MODE = Set.of(
-      "Vault of Glass", "Vow of the Disciple", "King's Fall", "Root of Nightmares", "Crota's End",
-      "Salvation's Edge"
-  );
-  private static final String USERNAME = "$username";
-  private static final String USER_TAG = "$userTag";
-  private static final String RAID_NAME = "userRaidDetails.raidName";
-  private static final String IS_COMPLETED = "userRaidDetails.isCompleted";
-  private static final String RAID_DIFFICULTY = "userRaidDetails.raidDifficulty";
-  private static final String TOTAL_KILLS = "userRaidDetails.totalKills";
-  private static final String TOTAL_DEATHS = "userRaidDetails.totalDeaths";
-  private static final String FROM_BEGINNING = "userRaidDetails.fromBeginning";
-  private static final ZoneId AMERICA_LOS_ANGELES = ZoneId.of("America/Los_Angeles");
+  private static final String COMPLETIONS = "activityCompletions";
+  private static final String KILLS = "activityKills";
+  private static final String DEATHS = "activityDeaths";
+  private static final String FASTEST_COMPLETION_MS = "fastestCompletionMsForActivity";
+  private static final String SYNC_KEY_PREFIX = "raid-stats:";
+
   private final UserDetailsRepository userDetailsRepository;
   private final PlayerRaidDetailsService userRaidDetailsService;
-  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final UserRaidStatisticsService userRaidStatisticsService;
+  private final ManifestService manifestService;
+  private final BungieAPIService bungieAPIService;
+  private final SingleFlight singleFlight;
 
   public RaidStatsService(
       PlayerRaidDetailsService userRaidDetailsService,
-      ReactiveMongoTemplate reactiveMongoTemplate,
-      UserDetailsRepository userDetailsRepository) {
+      UserRaidStatisticsService userRaidStatisticsService,
+      UserDetailsRepository userDetailsRepository,
+      ManifestService manifestService,
+      BungieAPIService bungieAPIService,
+      SingleFlight singleFlight) {
     this.userRaidDetailsService = userRaidDetailsService;
-    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.userRaidStatisticsService = userRaidStatisticsService;
     this.userDetailsRepository = userDetailsRepository;
+    this.manifestService = manifestService;
+    this.bungieAPIService = bungieAPIService;
+    this.singleFlight = singleFlight;
   }
 
-  private static Aggregation statsAggregationPipeline(String username, String userTag) {
-    // Match username using case insensitivity and matching user tag
-    RegexMatch usernameMatch = RegexMatch.valueOf(USERNAME).regex(username).options("i");
-    Eq userTagMatch = Eq.valueOf(USER_TAG).equalToValue(userTag);
-    MatchOperation userMatch = Aggregation.match(
-        Expr.valueOf(And.and(usernameMatch, userTagMatch)));
-
-    // Unwind the userRaidDetails array
-    UnwindOperation unwindRaids = new UnwindOperation(Fields.field("userRaidDetails"));
-
-    // All other calculations below for grouping up
-    Criteria fastestTimeCriteria = new Criteria();
-    fastestTimeCriteria.andOperator(
-        Criteria.where(FROM_BEGINNING).is(true),
-        Criteria.where(IS_COMPLETED).is(true)
-    );
-
-    Criteria normalModeClearsCriteria = new Criteria();
-    normalModeClearsCriteria.andOperator(
-        Criteria.where(RAID_NAME).in(RAIDS_WITH_MASTER_MODE),
-        Criteria.where(IS_COMPLETED).is(true),
-        Criteria.where(RAID_DIFFICULTY).is(RaidDifficulty.NORMAL.name())
-    );
-
-    Criteria masterModeClearsCriteria = new Criteria();
-    masterModeClearsCriteria.andOperator(
-        Criteria.where(RAID_NAME).in(RAIDS_WITH_MASTER_MODE),
-        Criteria.where(IS_COMPLETED).is(true),
-        Criteria.where(RAID_DIFFICULTY).is(RaidDifficulty.MASTER.name())
-    );
-
-    Criteria raidClearCriteria = Criteria.where(IS_COMPLETED).is(true);
-
-    Criteria fullRaidClearCriteria = new Criteria();
-    fullRaidClearCriteria.andOperator(
-        Criteria.where(IS_COMPLETED).is(true),
-        Criteria.where(FROM_BEGINNING).is(true)
-    );
-
-    Criteria partialRaidClearCriteria = new Criteria();
-    partialRaidClearCriteria.andOperator(
-        Criteria.where(IS_COMPLETED).is(true),
-        Criteria.where(FROM_BEGINNING).is(false)
-    );
-    GroupOperation groupByRaidName = Aggregation.group(RAID_NAME)
-        .sum(TOTAL_KILLS).as("totalKills")
-        .sum(TOTAL_DEATHS).as("totalDeaths")
-        .min(ConditionalOperators
-            .when(fastestTimeCriteria)
-            .then("$userRaidDetails.durationSeconds")
-            .otherwise("0")).as("fastestTime")
-        .sum(ConditionalOperators
-            .when(raidClearCriteria)
-            .then(1)
-            .otherwise(0)).as("totalClears")
-        .sum(ConditionalOperators
-            .when(partialRaidClearCriteria)
-            .then(1)
-            .otherwise(0)).as("partialClears")
-        .sum(ConditionalOperators
-            .when(fullRaidClearCriteria)
-            .then(1)
-            .otherwise(0)).as("fullClears")
-        .sum(ConditionalOperators
-            .when(normalModeClearsCriteria)
-            .then(1)
-            .otherwise(0)).as("normalClears")
-        .sum(ConditionalOperators
-            .when(masterModeClearsCriteria)
-            .then(1)
-            .otherwise(0)).as("masterClears");
-
-    return Aggregation.newAggregation(userMatch, unwindRaids, groupByRaidName);
+  /**
+   * Summarize the aggregated activity stats of the characters of a user into raid statistics.
+   * Aggregated stats do not say whether a clear was done from the beginning, so full and partial
+   * clears are left out
+   *
+   * @param raidActivityTable The table the raids are looked up in
+   * @param activities        The aggregated activity stats of every character of the user
+   * @return raid statistics, one per raid
+   */
+  static Collection<RaidStatistics> summarize(RaidActivityTable raidActivityTable,
+      Collection<AggregateActivity> activities) {
+    Set<String> raidsWithMasterMode = raidActivityTable.raidsWithMasterMode();
+    Map<String, RaidStatistics> statistics = new LinkedHashMap<>();
+    for (AggregateActivity activity : activities) {
+      int raidEntry = Objects.isNull(activity.getActivityHash()) ? RaidActivityTable.NOT_FOUND :
+          raidActivityTable.find(activity.getActivityHash());
+      if (raidEntry == RaidActivityTable.NOT_FOUND) {
+        continue;
+      }
+      String raidName = raidActivityTable.raidName(raidEntry);
+      RaidStatistics raid = statistics.computeIfAbsent(raidName,
+          name -> new RaidStatistics(name, 0, 0, 0, null, 0, null, 0, 0));
+      int completions = statValue(activity, COMPLETIONS);
+      int fastestSeconds = statValue(activity, FASTEST_COMPLETION_MS) / 1000;
+      raid.setTotalKills(raid.getTotalKills() + statValue(activity, KILLS));
+      raid.setTotalDeaths(raid.getTotalDeaths() + statValue(activity, DEATHS));
+      raid.setTotalClears(raid.getTotalClears() + completions);
+      if (fastestSeconds > 0 &&
+          (raid.getFastestTime() == 0 || fastestSeconds < raid.getFastestTime())) {
+        raid.setFastestTime(fastestSeconds);
+      }
+      if (!raidsWithMasterMode.contains(raidName)) {
+        continue;
+      }
+      RaidDifficulty raidDifficulty = raidActivityTable.raidDifficulty(raidEntry);
+      if (raidDifficulty == RaidDifficulty.NORMAL) {
+        raid.setNormalClears(raid.getNormalClears() + completions);
+      } else if (raidDifficulty == RaidDifficulty.MASTER) {
+        raid.setMasterClears(raid.getMasterClears() + completions);
+      }
+    }
+    return statistics.values();
+  }
+
+  /**
+   * Get when the raids of a user were last synced. Users that were never synced have to go
+   * through their whole activity history in {@link #calculateRaidStats}
+   *
+   * @param username     The username from Bungie
+   * @param userTag      The userTag from Bungie
+   * @param membershipId The membership ID of the Destiny 2 user
+   * @return Mono of the instant the user was last synced, empty if the user is not known
+   */
+  public Mono<Instant> lastSynced(String username, String userTag, String membershipId) {
+    return userDetailsRepository.findUser(membershipId, username, userTag)
+        .mapNotNull(UserDetails::getLastRequestDateTime);
+  }
+
+  /**
+   * Get when the raids of a user were last synced by their username and userTag, without asking
+   * Bungie.net for their membership ID first. A user that changed their name is not found by it,
+   * so this is only meant for answers that are revalidated afterward
+   *
+   * @param username The username from Bungie
+   * @param userTag  The userTag from Bungie
+   * @return Mono of the instant the user was last synced, empty if the user is not known
+   */
+  public Mono<Instant> lastSynced(String username, String userTag) {
+    return userDetailsRepository.findFirstByUsernameAndUserTag(username, userTag)
+        .mapNotNull(UserDetails::getLastRequestDateTime);
+  }
+
+  /**
+   * Get the raid statistics of a user as they were computed the last time the user was synced,
+   * without syncing them
+   *
+   * @param username The username from Bungie
+   * @param userTag  The userTag from Bungie
+   * @return Flux of {@link RaidStatistics}, empty if they were never materialized
+   */
+  public Flux<RaidStatistics> savedRaidStats(String username, String userTag) {
+    return Flux.defer(() -> userRaidStatisticsService.findRaidStatistics(username, userTag,
+        manifestService.raidActivityTable().raidsWithMasterMode()));
+  }
+
+  /**
+   * Summarize the raid statistics of a user from the aggregated activity stats of their
+   * characters, see {@link #summarize}. This takes one call per character, so it is a fast preview
+   * for users that have to go through their whole activity history in
+   * {@link #calculateRaidStats}
+   *
+   * @param membershipId   The membership ID of the Destiny 2 user
+   * @param membershipType The membership type of the Destiny 2 user
+   * @return Flux of summarized {@link RaidStatistics}, one per raid
+   */
+  public Flux<RaidStatistics> summarizeRaidStats(String membershipId, Integer membershipType) {
+    return bungieAPIService.getUserCharacters(membershipType, membershipId)
+        .flatMapIterable(Map::keySet)
+        .flatMap(characterId -> bungieAPIService.getAggregateActivityStats(membershipType,
+            membershipId, characterId))
+        .flatMapIterable(Function.identity())
+        .collectList()
+        .flatMapIterable(activities -> summarize(manifestService.raidActivityTable(), activities));
   }
 
   /**
    * Calculate user raid statistics based on the parsed data from a Discord option value. This
-   * method returns a map of the raid stats grouped by the raid name.
+   * method returns a map of the raid stats grouped by the raid name. The statistics are read from
+   * the materialized statistics of the user once their new raids have been saved. Concurrent
+   * requests for the same user share the same sync of their raids, each of them then reads the
+   * statistics on their own.
    *
    * @param username       The username from Bungie
    * @param userTag        The userTag from Bungie
@@ -142,14 +173,50 @@ public class RaidStatsService {
    */
   public Flux<RaidStatistics> calculateRaidStats(String username, String userTag,
       String membershipId, Integer membershipType) {
-    Instant actionTimestamp = Instant.now(Clock.system(AMERICA_LOS_ANGELES));
-    Aggregation aggregation = statsAggregationPipeline(username, userTag);
-    return userDetailsRepository.existsByUsernameAndUserTag(username, userTag)
+    return Flux.defer(() -> syncRaidStats(username, userTag, membershipId, membershipType)
+        .statistics());
+  }
+
+  /**
+   * Join the sync of the raids of a user, see {@link #calculateRaidStats}. Concurrent requests for
+   * the same user share the progress of the sync, so every one of them can report how far it has
+   * gone. The sync only starts once its statistics are subscribed to
+   *
+   * @param username       The username from Bungie
+   * @param userTag        The userTag from Bungie
+   * @param membershipId   The membership ID of the Destiny 2 user
+   * @param membershipType The membership type of the Destiny 2 user
+   * @return the progress and the statistics of the sync
+   */
+  public RaidStatsSync syncRaidStats(String username, String userTag, String membershipId,
+      Integer membershipType) {
+    Flight<IngestionProgress> flight = singleFlight.join(SYNC_KEY_PREFIX + membershipId,
+        IngestionProgress::new,
+        progress -> syncUser(username, userTag, membershipId, membershipType)
+            .contextWrite(IngestionProgress.track(progress)));
+    return new RaidStatsSync(flight.state(), flight.execution()
+        .thenMany(Flux.defer(() -> userRaidStatisticsService.findRaidStatistics(username, userTag,
+            manifestService.raidActivityTable().raidsWithMasterMode()))));
+  }
+
+  /**
+   * Get the statistics of the raids saved so far by an ingestion that is still running
+   *
+   * @param progress The progress of the ingestion
+   * @return Flux of partial {@link RaidStatistics}, one per raid
+   */
+  public Flux<RaidStatistics> partialRaidStats(IngestionProgress progress) {
+    return Flux.defer(() -> Flux.fromIterable(progress.statistics(
+        manifestService.raidActivityTable().raidsWithMasterMode())));
+  }
+
+  private Mono<Void> syncUser(String username, String userTag, String membershipId,
+      Integer membershipType) {
+    Instant actionTimestamp = Instant.now();
+    return userDetailsRepository.existsUser(membershipId, username, userTag)
         .flatMap(exists -> Boolean.TRUE.equals(exists) ?
             updateUser(actionTimestamp, username, userTag, membershipType, membershipId) :
-            createUser(actionTimestamp, username, userTag, membershipType, membershipId))
-        .thenMany(
-            reactiveMongoTemplate.aggregate(aggregation, UserDetails.class, RaidStatistics.class));
+            createUser(actionTimestamp, username, userTag, membershipType, membershipId));
   }
 
   private Mono<Void> updateUser(Instant now, String username, String userTag,
@@ -175,4 +242,21 @@ public class RaidStatsService {
             "Creation action finished for user [{}] with ID: [{}] and membership type: [{}]",
             username + "#" + userTag, membershipId, membershipType));
   }
+
+  private static int statValue(AggregateActivity activity, String statId) {
+    ValueEntry entry = Objects.isNull(activity.getValues()) ? null :
+        activity.getValues().get(statId);
+    return Objects.isNull(entry) || Objects.isNull(entry.getBasic()) ||
+           Objects.isNull(entry.getBasic().getValue()) ? 0 : entry.getBasic().getValue().intValue();
+  }
+
+  /**
+   * The sync of the raids of a user, shared by every request for the user
+   *
+   * @param progress   The progress of the ingestion of the raids of the user
+   * @param statistics The statistics of the user, read once the sync completes
+   */
+  public record RaidStatsSync(IngestionProgress progress, Flux<RaidStatistics> statistics) {
+
+  }
 }
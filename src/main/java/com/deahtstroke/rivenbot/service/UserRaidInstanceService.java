@@ -0,0 +1,204 @@
+package com.deahtstroke.rivenbot.service;
+
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidInstance;
+import com.mongodb.bulk.BulkWriteResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Saves and reads the raids played by each user, stored one {@link UserRaidInstance} per user and
+ * activity instance in the 'user_raid_details' collection
+ */
+@Service
+@Slf4j
+public class UserRaidInstanceService {
+
+  static final String USERNAME_FIELD = "username";
+  static final String USER_TAG_FIELD = "userTag";
+  static final String RAID_NAME_FIELD = "raidName";
+  static final String PERIOD_FIELD = "period";
+  static final String STATISTICS_RECORDED_FIELD = "statisticsRecorded";
+
+  private static final String ID_FIELD = "_id";
+
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+
+  public UserRaidInstanceService(ReactiveMongoTemplate reactiveMongoTemplate) {
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+  }
+
+  /**
+   * Creates the indexes used to read the raids of a user, either all of them, the ones of a single
+   * raid, the most recent ones, or the ones that were not recorded in their statistics yet
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void createIndexes() {
+    var indexOps = reactiveMongoTemplate.indexOps(UserRaidInstance.class);
+    Flux.concat(
+            indexOps.ensureIndex(new Index()
+                .on(USERNAME_FIELD, Direction.ASC)
+                .on(USER_TAG_FIELD, Direction.ASC)
+                .on(RAID_NAME_FIELD, Direction.ASC)
+                .on(PERIOD_FIELD, Direction.DESC)
+                .named("user_raid_period")),
+            indexOps.ensureIndex(new Index()
+                .on(USERNAME_FIELD, Direction.ASC)
+                .on(USER_TAG_FIELD, Direction.ASC)
+                .on(PERIOD_FIELD, Direction.DESC)
+                .named("user_period")),
+            indexOps.ensureIndex(new Index()
+                .on(USERNAME_FIELD, Direction.ASC)
+                .on(USER_TAG_FIELD, Direction.ASC)
+                .partial(PartialIndexFilter.of(unrecordedCriteria()))
+                .named("user_unrecorded")))
+        .subscribe(
+            index -> log.info("Index [{}] is ready for the raids of every user", index),
+            err -> log.error("Unable to create the indexes of the raids of every user", err));
+  }
+
+  /**
+   * Save raids played by a user with a single unordered bulk write. Every raid is only inserted if
+   * its id is not saved yet, so saving raids that were already saved, e.g., when retrying a failed
+   * update, neither duplicates nor rewrites them. The raids that were actually inserted are
+   * returned so that only those are added to the statistics of the user
+   *
+   * @param username    The username of the player
+   * @param userTag     The userTag of the player
+   * @param raidDetails The raids to save
+   * @return Flux of the {@link UserRaidDetails} that were not saved before
+   */
+  public Flux<UserRaidDetails> saveAll(String username, String userTag,
+      Collection<UserRaidDetails> raidDetails) {
+    if (CollectionUtils.isEmpty(raidDetails)) {
+      return Flux.empty();
+    }
+    List<UserRaidDetails> raids = new ArrayList<>(raidDetails);
+    return Mono.defer(() -> {
+          ReactiveBulkOperations bulkOperations = reactiveMongoTemplate.bulkOps(
+              BulkMode.UNORDERED, UserRaidInstance.class);
+          for (UserRaidDetails details : raids) {
+            UserRaidInstance instance = UserRaidInstance.of(username, userTag, details);
+            bulkOperations.upsert(new Query(Criteria.where(ID_FIELD).is(instance.getId())),
+                insertOnly(instance));
+          }
+          return bulkOperations.execute();
+        })
+        .flatMapIterable(BulkWriteResult::getUpserts)
+        .map(upsert -> raids.get(upsert.getIndex()));
+  }
+
+  /**
+   * Move the raids of a user that changed their Bungie name to their new name. Raids are saved
+   * again under the new name before the ones of the old name are removed, so moving them again
+   * after a failure finishes the move instead of losing raids. The moved raids are not recorded
+   * in the statistics of the new name, see {@link #hasUnrecorded}
+   *
+   * @param username    The username the raids were saved with
+   * @param userTag     The userTag the raids were saved with
+   * @param newUsername The new username of the player
+   * @param newUserTag  The new userTag of the player
+   * @return empty Mono once the raids were moved
+   */
+  public Mono<Void> rename(String username, String userTag, String newUsername,
+      String newUserTag) {
+    return findAll(username, userTag)
+        .collectList()
+        .flatMapMany(raidDetails -> saveAll(newUsername, newUserTag, raidDetails))
+        .then(reactiveMongoTemplate.remove(userQuery(username, userTag), UserRaidInstance.class))
+        .then();
+  }
+
+  /**
+   * Whether a user has raids that were saved but not recorded in their statistics, i.e., an
+   * earlier ingestion stopped between saving its raids and recording them, so their statistics are
+   * missing some raids
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return true if there is at least one raid that was not recorded
+   */
+  public Mono<Boolean> hasUnrecorded(String username, String userTag) {
+    return reactiveMongoTemplate.exists(unrecordedQuery(username, userTag),
+        UserRaidInstance.class);
+  }
+
+  /**
+   * Mark every raid of a user as recorded in their statistics. Only one ingestion runs for a user
+   * at a time, so the raids that are not recorded yet are the ones the running ingestion saved
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return empty Mono once the raids were marked
+   */
+  public Mono<Void> markRecorded(String username, String userTag) {
+    return reactiveMongoTemplate.updateMulti(unrecordedQuery(username, userTag),
+            Update.update(STATISTICS_RECORDED_FIELD, true), UserRaidInstance.class)
+        .then();
+  }
+
+  /**
+   * Get every raid played by a user
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return Flux of {@link UserRaidDetails}
+   */
+  public Flux<UserRaidDetails> findAll(String username, String userTag) {
+    return reactiveMongoTemplate.find(userQuery(username, userTag), UserRaidInstance.class)
+        .mapNotNull(UserRaidInstance::getRaidDetails);
+  }
+
+  /**
+   * Criteria that matches every raid of a user, backed by the indexes of the collection
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return {@link Criteria}
+   */
+  static Criteria userCriteria(String username, String userTag) {
+    return Criteria.where(USERNAME_FIELD).is(username).and(USER_TAG_FIELD).is(userTag);
+  }
+
+  private Update insertOnly(UserRaidInstance instance) {
+    Document document = new Document();
+    reactiveMongoTemplate.getConverter().write(instance, document);
+    Update update = new Update();
+    document.forEach((field, value) -> {
+      if (!ID_FIELD.equals(field)) {
+        update.setOnInsert(field, value);
+      }
+    });
+    return update;
+  }
+
+  private static Criteria unrecordedCriteria() {
+    return Criteria.where(STATISTICS_RECORDED_FIELD).is(false);
+  }
+
+  private static Query unrecordedQuery(String username, String userTag) {
+    return new Query(userCriteria(username, userTag).and(STATISTICS_RECORDED_FIELD).is(false));
+  }
+
+  private static Query userQuery(String username, String userTag) {
+    return new Query(userCriteria(username, userTag));
+  }
+}
@@ -0,0 +1,340 @@
+package com.deahtstroke.rivenbot.service;
+
+import com.deahtstroke.rivenbot.entity.RaidStatistics;
+import com.deahtstroke.rivenbot.entity.UserDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidInstance;
+import com.deahtstroke.rivenbot.entity.UserRaidStatistics;
+import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.GroupOperation;
+import org.springframework.data.mongodb.core.aggregation.MatchOperation;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Maintains the materialized raid statistics of every user, one {@link UserRaidStatistics}
+ * document per user and raid. Statistics are updated incrementally with atomic '$inc' and '$min'
+ * updates as new raids are saved, so reading them costs one document per raid instead of going
+ * through every raid a user has ever played.
+ */
+@Service
+@Slf4j
+public class UserRaidStatisticsService {
+
+  private static final String MATERIALIZED_FIELD = "raidStatisticsMaterialized";
+  private static final String USERNAME_FIELD = "username";
+  private static final String USER_TAG_FIELD = "userTag";
+  private static final String RAID_NAME_FIELD = "raidName";
+
+  private static final String IS_COMPLETED = "isCompleted";
+  private static final String RAID_DIFFICULTY = "raidDifficulty";
+  private static final String TOTAL_KILLS = "totalKills";
+  private static final String TOTAL_DEATHS = "totalDeaths";
+  private static final String FROM_BEGINNING = "fromBeginning";
+
+  private final ReactiveMongoTemplate reactiveMongoTemplate;
+  private final UserRaidInstanceService userRaidInstanceService;
+
+  public UserRaidStatisticsService(ReactiveMongoTemplate reactiveMongoTemplate,
+      UserRaidInstanceService userRaidInstanceService) {
+    this.reactiveMongoTemplate = reactiveMongoTemplate;
+    this.userRaidInstanceService = userRaidInstanceService;
+  }
+
+  /**
+   * Summarize raid details into the statistics of each raid
+   *
+   * @param username    The username of the player
+   * @param userTag     The userTag of the player
+   * @param raidDetails The raid details to summarize
+   * @return statistics keyed by the name of the raid
+   */
+  static Map<String, UserRaidStatistics> summarize(String username, String userTag,
+      Collection<UserRaidDetails> raidDetails) {
+    Map<String, UserRaidStatistics> statistics = new LinkedHashMap<>();
+    summarize(statistics, username, userTag, raidDetails);
+    return statistics;
+  }
+
+  /**
+   * Add raid details to statistics that were already summarized, so raids can be summarized as
+   * they arrive without keeping them around
+   *
+   * @param statistics  The statistics summarized so far, keyed by the name of the raid
+   * @param username    The username of the player
+   * @param userTag     The userTag of the player
+   * @param raidDetails The raid details to add
+   */
+  static void summarize(Map<String, UserRaidStatistics> statistics, String username,
+      String userTag, Collection<UserRaidDetails> raidDetails) {
+    for (UserRaidDetails details : raidDetails) {
+      UserRaidStatistics raid = statistics.computeIfAbsent(details.getRaidName(),
+          raidName -> new UserRaidStatistics(null, username, userTag, raidName, 0, 0, null, 0, 0,
+              0, 0, 0));
+      raid.setTotalKills(raid.getTotalKills() + valueOf(details.getTotalKills()));
+      raid.setTotalDeaths(raid.getTotalDeaths() + valueOf(details.getTotalDeaths()));
+      if (!Boolean.TRUE.equals(details.getIsCompleted())) {
+        continue;
+      }
+      raid.setTotalClears(raid.getTotalClears() + 1);
+      if (Boolean.TRUE.equals(details.getFromBeginning())) {
+        raid.setFullClears(raid.getFullClears() + 1);
+        if (Objects.nonNull(details.getDurationSeconds()) &&
+            (Objects.isNull(raid.getFastestTime()) ||
+             details.getDurationSeconds() < raid.getFastestTime())) {
+          raid.setFastestTime(details.getDurationSeconds());
+        }
+      } else if (Boolean.FALSE.equals(details.getFromBeginning())) {
+        raid.setPartialClears(raid.getPartialClears() + 1);
+      }
+      if (details.getRaidDifficulty() == RaidDifficulty.NORMAL) {
+        raid.setNormalClears(raid.getNormalClears() + 1);
+      } else if (details.getRaidDifficulty() == RaidDifficulty.MASTER) {
+        raid.setMasterClears(raid.getMasterClears() + 1);
+      }
+    }
+  }
+
+  /**
+   * Creates the index used to find the statistics of a user, statistics are upserted by user and
+   * raid so the index is also what keeps them unique
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void createIndexes() {
+    reactiveMongoTemplate.indexOps(UserRaidStatistics.class)
+        .ensureIndex(new Index()
+            .on(USERNAME_FIELD, Direction.ASC)
+            .on(USER_TAG_FIELD, Direction.ASC)
+            .on(RAID_NAME_FIELD, Direction.ASC)
+            .unique()
+            .named("user_raid"))
+        .subscribe(
+            index -> log.info("Index [{}] is ready for the materialized raid statistics", index),
+            err -> log.error("Unable to create the index of the materialized raid statistics",
+                err));
+  }
+
+  /**
+   * Add the statistics of new raids to the statistics of a user. Every raid is applied with a
+   * single atomic update, so concurrent updates for the same user do not lose counts
+   *
+   * @param statistics The statistics summarized from the raids that were just saved for a player,
+   *                   see {@link #summarize}
+   * @return empty Mono once every raid was updated
+   */
+  public Mono<Void> record(Collection<UserRaidStatistics> statistics) {
+    if (CollectionUtils.isEmpty(statistics)) {
+      return Mono.empty();
+    }
+    return Flux.fromIterable(statistics)
+        .flatMap(raid -> {
+          Update update = new Update()
+              .inc("totalKills", raid.getTotalKills())
+              .inc("totalDeaths", raid.getTotalDeaths())
+              .inc("totalClears", raid.getTotalClears())
+              .inc("fullClears", raid.getFullClears())
+              .inc("partialClears", raid.getPartialClears())
+              .inc("normalClears", raid.getNormalClears())
+              .inc("masterClears", raid.getMasterClears());
+          if (Objects.nonNull(raid.getFastestTime())) {
+            update.min("fastestTime", raid.getFastestTime());
+          }
+          return reactiveMongoTemplate.upsert(userRaidQuery(raid.getUsername(), raid.getUserTag())
+                  .addCriteria(Criteria.where(RAID_NAME_FIELD).is(raid.getRaidName())), update,
+              UserRaidStatistics.class);
+        })
+        .then();
+  }
+
+  /**
+   * Get the materialized raid statistics of a user
+   *
+   * @param username            The username of the player
+   * @param userTag             The userTag of the player
+   * @param raidsWithMasterMode Names of the raids that have a master mode
+   * @return Flux of {@link RaidStatistics}, one per raid
+   */
+  public Flux<RaidStatistics> findRaidStatistics(String username, String userTag,
+      Set<String> raidsWithMasterMode) {
+    return reactiveMongoTemplate.find(userRaidQuery(username, userTag), UserRaidStatistics.class)
+        .map(raid -> raid.toRaidStatistics(raidsWithMasterMode));
+  }
+
+  /**
+   * Recompute the materialized statistics of a user from all their raids, replacing the ones that
+   * exist, and mark the raids and the user so that later updates are applied incrementally. It is
+   * safe to rebuild again if a rebuild fails half-way, so this is also how statistics that missed
+   * some raids are repaired
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return empty Mono once the statistics were replaced
+   */
+  public Mono<Void> rebuild(String username, String userTag) {
+    return userRaidInstanceService.findAll(username, userTag)
+        .collectList()
+        .flatMap(raidDetails -> reactiveMongoTemplate.remove(userRaidQuery(username, userTag),
+                UserRaidStatistics.class)
+            .thenMany(reactiveMongoTemplate.insertAll(
+                summarize(username, userTag, raidDetails).values()))
+            .then(userRaidInstanceService.markRecorded(username, userTag))
+            .then(reactiveMongoTemplate.updateFirst(userRaidQuery(username, userTag),
+                Update.update(MATERIALIZED_FIELD, true), UserDetails.class)))
+        .then();
+  }
+
+  /**
+   * Remove the materialized statistics of a user, e.g., the ones saved with the old name of a
+   * player that changed their Bungie name
+   *
+   * @param username The username of the player
+   * @param userTag  The userTag of the player
+   * @return empty Mono once the statistics were removed
+   */
+  public Mono<Void> remove(String username, String userTag) {
+    return reactiveMongoTemplate.remove(userRaidQuery(username, userTag), UserRaidStatistics.class)
+        .then();
+  }
+
+  /**
+   * Check that the materialized statistics of a user match the ones aggregated from all their
+   * raid details
+   *
+   * @param username            The username of the player
+   * @param userTag             The userTag of the player
+   * @param raidsWithMasterMode Names of the raids that have a master mode
+   * @return true if both are the same
+   */
+  public Mono<Boolean> verify(String username, String userTag, Set<String> raidsWithMasterMode) {
+    Comparator<RaidStatistics> byRaidName = Comparator.comparing(RaidStatistics::getRaidName,
+        Comparator.nullsFirst(Comparator.naturalOrder()));
+    return Mono.zip(
+            findRaidStatistics(username, userTag, raidsWithMasterMode).collectSortedList(byRaidName),
+            aggregateRaidStatistics(username, userTag, raidsWithMasterMode)
+                .collectSortedList(byRaidName))
+        .map(statistics -> {
+          boolean matches = statistics.getT1().equals(statistics.getT2());
+          if (!matches) {
+            log.warn("Materialized raid statistics of user [{}] do not match, materialized: [{}], "
+                     + "aggregated: [{}]", username + "#" + userTag, statistics.getT1(),
+                statistics.getT2());
+          }
+          return matches;
+        });
+  }
+
+  /**
+   * Aggregate the raid statistics of a user from all their raids. Raids are matched on the indexed
+   * user fields of their collection, but this still goes through every raid the user has played,
+   * so it is only used to check the materialized statistics
+   *
+   * @param username            The username of the player
+   * @param userTag             The userTag of the player
+   * @param raidsWithMasterMode Names of the raids that have a master mode
+   * @return Flux of {@link RaidStatistics}, one per raid
+   */
+  public Flux<RaidStatistics> aggregateRaidStatistics(String username, String userTag,
+      Set<String> raidsWithMasterMode) {
+    return reactiveMongoTemplate.aggregate(
+        statsAggregationPipeline(username, userTag, raidsWithMasterMode),
+        reactiveMongoTemplate.getCollectionName(UserRaidInstance.class), RaidStatistics.class);
+  }
+
+  private static Query userRaidQuery(String username, String userTag) {
+    return new Query(UserRaidInstanceService.userCriteria(username, userTag));
+  }
+
+  private static int valueOf(Integer value) {
+    return Objects.isNull(value) ? 0 : value;
+  }
+
+  private static Aggregation statsAggregationPipeline(String username, String userTag,
+      Set<String> raidsWithMasterMode) {
+    // Match the raids of the user on the indexed user fields
+    MatchOperation userMatch = Aggregation.match(
+        UserRaidInstanceService.userCriteria(username, userTag));
+
+    // All other calculations below for grouping up
+    Criteria fastestTimeCriteria = new Criteria();
+    fastestTimeCriteria.andOperator(
+        Criteria.where(FROM_BEGINNING).is(true),
+        Criteria.where(IS_COMPLETED).is(true)
+    );
+
+    Criteria normalModeClearsCriteria = new Criteria();
+    normalModeClearsCriteria.andOperator(
+        Criteria.where(RAID_NAME_FIELD).in(raidsWithMasterMode),
+        Criteria.where(IS_COMPLETED).is(true),
+        Criteria.where(RAID_DIFFICULTY).is(RaidDifficulty.NORMAL.name())
+    );
+
+    Criteria masterModeClearsCriteria = new Criteria();
+    masterModeClearsCriteria.andOperator(
+        Criteria.where(RAID_NAME_FIELD).in(raidsWithMasterMode),
+        Criteria.where(IS_COMPLETED).is(true),
+        Criteria.where(RAID_DIFFICULTY).is(RaidDifficulty.MASTER.name())
+    );
+
+    Criteria raidClearCriteria = Criteria.where(IS_COMPLETED).is(true);
+
+    Criteria fullRaidClearCriteria = new Criteria();
+    fullRaidClearCriteria.andOperator(
+        Criteria.where(IS_COMPLETED).is(true),
+        Criteria.where(FROM_BEGINNING).is(true)
+    );
+
+    Criteria partialRaidClearCriteria = new Criteria();
+    partialRaidClearCriteria.andOperator(
+        Criteria.where(IS_COMPLETED).is(true),
+        Criteria.where(FROM_BEGINNING).is(false)
+    );
+    GroupOperation groupByRaidName = Aggregation.group(RAID_NAME_FIELD)
+        .sum(TOTAL_KILLS).as("totalKills")
+        .sum(TOTAL_DEATHS).as("totalDeaths")
+        .min(ConditionalOperators
+            .when(fastestTimeCriteria)
+            .then("$durationSeconds")
+            .otherwise("0")).as("fastestTime")
+        .sum(ConditionalOperators
+            .when(raidClearCriteria)
+            .then(1)
+            .otherwise(0)).as("totalClears")
+        .sum(ConditionalOperators
+            .when(partialRaidClearCriteria)
+            .then(1)
+            .otherwise(0)).as("partialClears")
+        .sum(ConditionalOperators
+            .when(fullRaidClearCriteria)
+            .then(1)
+            .otherwise(0)).as("fullClears")
+        .sum(ConditionalOperators
+            .when(normalModeClearsCriteria)
+            .then(1)
+            .otherwise(0)).as("normalClears")
+        .sum(ConditionalOperators
+            .when(masterModeClearsCriteria)
+            .then(1)
+            .otherwise(0)).as("masterClears");
+
+    return Aggregation.newAggregation(userMatch, groupByRaidName);
+  }
+}
@@ -21,9 +21,12 @@ import reactor.core.publisher.Mono;
 public class WeeklyActivitiesService {
 
   private final BungieAPIService bungieAPIService;
+  private final ManifestService manifestService;
 
-  public WeeklyActivitiesService(BungieAPIService bungieAPIService) {
+  public WeeklyActivitiesService(BungieAPIService bungieAPIService,
+      ManifestService manifestService) {
     this.bungieAPIService = bungieAPIService;
+    this.manifestService = manifestService;
   }
 
   /**
@@ -45,7 +48,7 @@ public class WeeklyActivitiesService {
   }
 
   private Mono<WeeklyActivity> createWeeklyActivity(MilestoneEntry milestoneEntry) {
-    return bungieAPIService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION,
+    return manifestService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION,
             milestoneEntry.getMilestoneHash())
         .map(ManifestResponseFields::getDisplayProperties)
         .map(displayProperties ->
@@ -62,10 +65,10 @@ public class WeeklyActivitiesService {
       return Mono.just(false);
     }
     return Flux.fromIterable(entry.getActivities())
-        .flatMap(activity -> bungieAPIService.getManifestEntity(
+        .flatMap(activity -> manifestService.getManifestEntity(
             ManifestEntity.ACTIVITY_DEFINITION, activity.getActivityHash()))
         .filter(activity -> activity.getActivityTypeHash() != null)
-        .flatMap(activityDefinition -> bungieAPIService.getManifestEntity(
+        .flatMap(activityDefinition -> manifestService.getManifestEntity(
             ManifestEntity.ACTIVITY_TYPE_DEFINITION, activityDefinition.getActivityTypeHash()))
         .filter(activityType -> activityType != null &&
                                 activityType.getDisplayProperties() != null)
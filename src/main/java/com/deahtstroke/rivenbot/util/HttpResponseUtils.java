@@ -3,7 +3,9 @@ package com.deahtstroke.rivenbot.util;
 import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
 import com.deahtstroke.rivenbot.exception.ImageRetrievalException;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Objects;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.springframework.core.io.Resource;
@@ -61,6 +63,25 @@ public class HttpResponseUtils {
     });
   }
 
+  /**
+   * Read the 'Retry-After' header of a response, only the delay in seconds form is supported since
+   * it is the only one used by Bungie
+   *
+   * @param headers The headers of the response
+   * @return the time to wait before retrying, zero if the header is absent or not a number
+   */
+  public static Duration retryAfter(HttpHeaders headers) {
+    String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+    if (Objects.isNull(retryAfter)) {
+      return Duration.ZERO;
+    }
+    try {
+      return Duration.ofSeconds(Math.max(0, Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException e) {
+      return Duration.ZERO;
+    }
+  }
+
   private static void buildJson(InteractionResponse interactionResponse,
       MultipartBodyBuilder builder) {
     builder.part(JSON_PAYLOAD_HEADER, interactionResponse)
@@ -0,0 +1,12 @@
+-- Extends a lease only if it's still held with the given token, the script runs atomically so a
+-- lease that expired and was taken by somebody else is never extended
+--
+-- KEYS[1]: key of the lease
+-- ARGV[1]: token of the holder
+-- ARGV[2]: time to live of the lease in milliseconds
+--
+-- Returns 1 if the lease was extended, 0 otherwise
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+  return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return 0
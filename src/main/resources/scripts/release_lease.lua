@@ -0,0 +1,11 @@
+-- Releases a lease only if it's still held with the given token, the script runs atomically so a
+-- lease that expired and was taken by somebody else is never released
+--
+-- KEYS[1]: key of the lease
+-- ARGV[1]: token of the holder
+--
+-- Returns 1 if the lease was released, 0 otherwise
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+  return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,44 @@
+-- Token bucket shared by every instance of the application, the script runs atomically so there
+-- is no race between reading and updating the bucket
+--
+-- KEYS[1]: key of the bucket
+-- ARGV[1]: capacity of the bucket, which is also the amount of tokens refilled every period
+-- ARGV[2]: refill period in milliseconds
+-- ARGV[3]: amount of tokens requested
+-- ARGV[4]: amount of tokens that can not be granted to this request, kept for other requests
+--
+-- Returns the amount of tokens granted, between 1 and the requested amount, or if no token could be
+-- granted the negated amount of milliseconds to wait until the next token is available
+redis.replicate_commands()
+
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local reserved = tonumber(ARGV[4]) or 0
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'timestamp')
+local tokens = tonumber(bucket[1])
+local timestamp = tonumber(bucket[2])
+if tokens == nil or timestamp == nil then
+  tokens = capacity
+  timestamp = now
+end
+
+local elapsed = math.max(0, now - timestamp)
+tokens = math.min(capacity, tokens + elapsed * capacity / period)
+
+local result
+local granted = math.min(requested, math.floor(tokens - reserved))
+if granted > 0 then
+  tokens = tokens - granted
+  result = granted
+else
+  result = -math.ceil((1 + reserved - tokens) * period / capacity)
+end
+
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'timestamp', tostring(now))
+redis.call('PEXPIRE', KEYS[1], period * 2)
+return result
@@ -0,0 +1,33 @@
+-- Give tokens back to a token bucket shared by every instance of the application, e.g., tokens
+-- taken for a request that was rejected afterwards for another reason. The bucket never holds
+-- more tokens than its capacity
+--
+-- KEYS[1]: key of the bucket
+-- ARGV[1]: capacity of the bucket, which is also the amount of tokens refilled every period
+-- ARGV[2]: refill period in milliseconds
+-- ARGV[3]: amount of tokens to give back
+--
+-- Returns the amount of tokens in the bucket
+redis.replicate_commands()
+
+local capacity = tonumber(ARGV[1])
+local period = tonumber(ARGV[2])
+local refunded = tonumber(ARGV[3])
+
+local time = redis.call('TIME')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'timestamp')
+local tokens = tonumber(bucket[1])
+local timestamp = tonumber(bucket[2])
+if tokens == nil or timestamp == nil then
+  -- the bucket expired, so it is already full
+  return capacity
+end
+
+local elapsed = math.max(0, now - timestamp)
+tokens = math.min(capacity, tokens + elapsed * capacity / period + refunded)
+
+redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'timestamp', tostring(now))
+redis.call('PEXPIRE', KEYS[1], period * 2)
+return math.floor(tokens)
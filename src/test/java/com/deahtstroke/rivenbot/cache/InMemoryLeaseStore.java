@@ -0,0 +1,49 @@
+package com.deahtstroke.rivenbot.cache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-process stand-in for Redis that holds leases the same way as {@link RedisLeaseStore}. Leases
+ * never expire, tests release them explicitly
+ */
+public class InMemoryLeaseStore implements LeaseStore {
+
+  private final Map<String, String> leases = new HashMap<>();
+
+  @Override
+  public Mono<Boolean> acquire(String key, String token, Duration ttl) {
+    return Mono.fromCallable(() -> take(key, token));
+  }
+
+  @Override
+  public Mono<Boolean> extend(String key, String token, Duration ttl) {
+    return Mono.fromCallable(() -> token.equals(holder(key)));
+  }
+
+  @Override
+  public Mono<Void> release(String key, String token) {
+    return Mono.fromRunnable(() -> give(key, token));
+  }
+
+  public synchronized String holder(String key) {
+    return leases.get(key);
+  }
+
+  public synchronized void put(String key, String token) {
+    leases.put(key, token);
+  }
+
+  public synchronized void give(String key, String token) {
+    if (Objects.equals(leases.get(key), token)) {
+      leases.remove(key);
+    }
+  }
+
+  private synchronized boolean take(String key, String token) {
+    return Objects.isNull(leases.putIfAbsent(key, token));
+  }
+}
@@ -0,0 +1,115 @@
+package com.deahtstroke.rivenbot.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class ReactiveCacheTest {
+
+  private static final String CACHE_NAME = "manifestEntity";
+
+  ConcurrentMapCacheManager sharedCacheManager;
+
+  SimpleMeterRegistry meterRegistry;
+
+  ReactiveCache sut;
+
+  @BeforeEach
+  void setup() {
+    sharedCacheManager = new ConcurrentMapCacheManager();
+    meterRegistry = new SimpleMeterRegistry();
+    sut = new ReactiveCache(sharedCacheManager, Map.of(CACHE_NAME, 60L), meterRegistry);
+  }
+
+  @Test
+  @DisplayName("Resolved values are cached locally and in the shared cache")
+  void shouldCacheResolvedValues() {
+    // given: a loader that counts its subscriptions
+    AtomicInteger subscriptions = new AtomicInteger();
+    Mono<String> loader = Mono.fromCallable(() -> {
+      subscriptions.incrementAndGet();
+      return "Garden of Salvation";
+    });
+
+    // when: the same key is requested twice
+    StepVerifier.create(sut.get(CACHE_NAME, "key", () -> loader)
+            .then(sut.get(CACHE_NAME, "key", () -> loader)))
+        .expectNext("Garden of Salvation")
+        .verifyComplete();
+
+    // then: the loader is only subscribed once and the value lives in the shared cache
+    assertThat(subscriptions.get()).isEqualTo(1);
+    assertThat(sharedCacheManager.getCache(CACHE_NAME).get("key").get())
+        .isEqualTo("Garden of Salvation");
+    assertThat(meterRegistry.get("rivenbot.cache.gets").tag("result", "miss").counter().count())
+        .isEqualTo(1.0);
+    assertThat(meterRegistry.get("rivenbot.cache.gets").tag("result", "hit").tag("tier", "local")
+        .counter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("Values present in the shared cache are not loaded again")
+  void shouldUseSharedCache() {
+    // given: a value that was cached by another instance
+    sharedCacheManager.getCache(CACHE_NAME).put("key", "Vault of Glass");
+
+    // when: the key is requested
+    StepVerifier.create(sut.get(CACHE_NAME, "key",
+            () -> Mono.error(new IllegalStateException("Loader should not be called"))))
+        .expectNext("Vault of Glass")
+        .verifyComplete();
+
+    // then: the lookup counts as a shared hit
+    assertThat(meterRegistry.get("rivenbot.cache.gets").tag("tier", "shared").counter().count())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("Concurrent misses for the same key are coalesced into one load")
+  void shouldCoalesceConcurrentMisses() {
+    // given: a slow loader that counts its subscriptions
+    AtomicInteger subscriptions = new AtomicInteger();
+    Mono<String> loader = Mono.defer(() -> {
+      subscriptions.incrementAndGet();
+      return Mono.just("King's Fall").delayElement(Duration.ofMillis(200));
+    });
+
+    // when: the same key is requested concurrently
+    StepVerifier.create(Flux.range(0, 10)
+            .flatMap(i -> sut.get(CACHE_NAME, "key", () -> loader)))
+        .expectNextCount(10)
+        .verifyComplete();
+
+    // then: the loader was only subscribed once
+    assertThat(subscriptions.get()).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Errors from the loader are not cached")
+  void shouldNotCacheErrors() {
+    // given: a loader that fails the first time
+    AtomicInteger subscriptions = new AtomicInteger();
+    Mono<String> loader = Mono.defer(() -> subscriptions.incrementAndGet() == 1 ?
+        Mono.error(new IllegalStateException("Bungie is down")) : Mono.just("Last Wish"));
+
+    // when: the key is requested after the first failure
+    StepVerifier.create(sut.get(CACHE_NAME, "key", () -> loader))
+        .verifyError(IllegalStateException.class);
+
+    // then: the value is loaded again
+    StepVerifier.create(sut.get(CACHE_NAME, "key", () -> loader))
+        .expectNext("Last Wish")
+        .verifyComplete();
+    assertThat(subscriptions.get()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,118 @@
+package com.deahtstroke.rivenbot.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class SingleFlightTest {
+
+  private static final String KEY = "raid-stats:4611686018467284386";
+  private static final String LEASE_KEY = "rivenbot:lease:" + KEY;
+
+  InMemoryLeaseStore leaseStore;
+
+  SingleFlight sut;
+
+  @BeforeEach
+  void setup() {
+    leaseStore = new InMemoryLeaseStore();
+    sut = new SingleFlight(leaseStore, Duration.ofMinutes(1), Duration.ofMillis(10),
+        Duration.ofSeconds(5));
+  }
+
+  @Test
+  @DisplayName("Concurrent executions of the same key only run the work once")
+  void shouldCoalesceConcurrentExecutions() {
+    // given: work that counts its subscriptions and holds the lease while it runs
+    AtomicInteger subscriptions = new AtomicInteger();
+    AtomicReference<String> holder = new AtomicReference<>();
+    Mono<Void> work = Mono.delay(Duration.ofMillis(50))
+        .doOnSubscribe(subscription -> subscriptions.incrementAndGet())
+        .doOnNext(tick -> holder.set(leaseStore.holder(LEASE_KEY)))
+        .then();
+
+    // when: the same key is executed three times at once
+    StepVerifier.create(Mono.when(
+            sut.execute(KEY, () -> work),
+            sut.execute(KEY, () -> work),
+            sut.execute(KEY, () -> work)))
+        .verifyComplete();
+
+    // then: the work ran once while holding the lease, which is released once it is done
+    assertThat(subscriptions.get()).isEqualTo(1);
+    assertThat(holder.get()).isNotNull();
+    assertThat(leaseStore.holder(LEASE_KEY)).isNull();
+
+    // and: a later execution runs the work again
+    StepVerifier.create(sut.execute(KEY, () -> work)).verifyComplete();
+    assertThat(subscriptions.get()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("The work waits for the lease taken by another instance to be released")
+  void shouldWaitForLeaseOfAnotherInstance() {
+    // given: another instance holds the lease and releases it after a while
+    leaseStore.put(LEASE_KEY, "other-instance");
+    Mono<Void> otherInstance = Mono.delay(Duration.ofMillis(50))
+        .doOnNext(tick -> leaseStore.give(LEASE_KEY, "other-instance"))
+        .then();
+    AtomicReference<String> holder = new AtomicReference<>();
+    Mono<Void> work = Mono.fromRunnable(() -> holder.set(leaseStore.holder(LEASE_KEY)));
+
+    // when: the key is executed while the other instance holds the lease
+    StepVerifier.create(Mono.when(sut.execute(KEY, () -> work), otherInstance))
+        .verifyComplete();
+
+    // then: the work only ran once this instance took the lease
+    assertThat(holder.get()).isNotNull().isNotEqualTo("other-instance");
+    assertThat(leaseStore.holder(LEASE_KEY)).isNull();
+  }
+
+  @Test
+  @DisplayName("The work runs without the lease once the max wait is over")
+  void shouldRunWithoutLeaseAfterMaxWait() {
+    // given: another instance holds the lease and never releases it
+    leaseStore.put(LEASE_KEY, "other-instance");
+    sut = new SingleFlight(leaseStore, Duration.ofMinutes(1), Duration.ofMillis(10),
+        Duration.ofMillis(50));
+    AtomicInteger subscriptions = new AtomicInteger();
+    Mono<Void> work = Mono.fromRunnable(subscriptions::incrementAndGet);
+
+    // when: the key is executed
+    StepVerifier.create(sut.execute(KEY, () -> work))
+        .verifyComplete();
+
+    // then: the work ran anyway and the lease of the other instance is left alone
+    assertThat(subscriptions.get()).isEqualTo(1);
+    assertThat(leaseStore.holder(LEASE_KEY)).isEqualTo("other-instance");
+  }
+
+  @Test
+  @DisplayName("Callers joining the same execution share its state")
+  void shouldShareStateWithFollowers() {
+    // given: work that publishes how far it has gone to the state of its execution
+    AtomicInteger states = new AtomicInteger();
+
+    // when: the same key is joined twice before the execution completes
+    SingleFlight.Flight<AtomicInteger> leader = sut.join(KEY, () -> {
+      states.incrementAndGet();
+      return new AtomicInteger();
+    }, progress -> Mono.fromRunnable(progress::incrementAndGet));
+    SingleFlight.Flight<AtomicInteger> follower = sut.join(KEY, AtomicInteger::new,
+        progress -> Mono.error(new IllegalStateException("followers do not run the work")));
+    StepVerifier.create(Mono.when(leader.execution(), follower.execution()))
+        .verifyComplete();
+
+    // then: the follower sees the progress published by the work of the leader
+    assertThat(states.get()).isEqualTo(1);
+    assertThat(follower.state()).isSameAs(leader.state());
+    assertThat(follower.state().get()).isEqualTo(1);
+  }
+}
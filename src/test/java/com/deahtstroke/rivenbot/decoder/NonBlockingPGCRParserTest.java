@@ -0,0 +1,78 @@
+package com.deahtstroke.rivenbot.decoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
+import com.deahtstroke.rivenbot.entity.PGCRDetails;
+import com.deahtstroke.rivenbot.mapper.PGCRMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mapstruct.factory.Mappers;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+class NonBlockingPGCRParserTest {
+
+  JsonFactory jsonFactory = new JsonFactory();
+
+  PGCRMapper mapper = Mappers.getMapper(PGCRMapper.class);
+
+  private static List<DataBuffer> split(byte[] json, int chunkSize) {
+    List<DataBuffer> chunks = new ArrayList<>();
+    for (int start = 0; start < json.length; start += chunkSize) {
+      byte[] chunk = Arrays.copyOfRange(json, start, Math.min(json.length, start + chunkSize));
+      chunks.add(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+    }
+    return chunks;
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {1, 7, 512, 8192})
+  @DisplayName("Decoding a PGCR in chunks is the same as decoding it all at once")
+  void shouldDecodeInChunks(int chunkSize) throws IOException {
+    // given: a PGCR split into chunks, some of them split tokens in half
+    byte[] json = PGCRDecoderTest.getJson("__files/bungie/big-pgcr.json");
+    PGCRDetails expected = mapper.dtoToEntity(PGCRDecoderTest.decode(json).getResponse(), 1L);
+
+    // when: the chunks are fed one by one
+    BungieResponse<PostGameCarnageReport> result;
+    try (NonBlockingPGCRParser sut = new NonBlockingPGCRParser(jsonFactory)) {
+      for (DataBuffer chunk : split(json, chunkSize)) {
+        sut.feed(chunk);
+      }
+      result = sut.finish();
+    }
+
+    // then: the decoded PGCR is the same
+    PGCRDetails actual = mapper.dtoToEntity(result.getResponse(), 1L);
+    assertThat(result.getErrorCode()).isEqualTo(1);
+    assertThat(actual.getFromBeginning()).isEqualTo(expected.getFromBeginning());
+    assertThat(actual.getPlayers()).containsExactlyElementsOf(expected.getPlayers());
+  }
+
+  @Test
+  @DisplayName("A body that ends before the PGCR is complete fails to decode")
+  void shouldFailOnTruncatedBody() throws IOException {
+    // given: a PGCR missing its last half
+    byte[] json = PGCRDecoderTest.getJson("__files/bungie/small-pgcr.json");
+    byte[] truncated = Arrays.copyOf(json, json.length / 2);
+
+    // when: the body is fed and finished
+    try (NonBlockingPGCRParser sut = new NonBlockingPGCRParser(jsonFactory)) {
+      sut.feed(DefaultDataBufferFactory.sharedInstance.wrap(truncated));
+
+      // then: the parser fails
+      assertThatThrownBy(sut::finish).isInstanceOf(JsonParseException.class);
+    }
+  }
+}
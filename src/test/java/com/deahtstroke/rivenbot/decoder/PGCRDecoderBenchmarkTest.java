@@ -0,0 +1,133 @@
+package com.deahtstroke.rivenbot.decoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
+import com.deahtstroke.rivenbot.entity.PGCRDetails;
+import com.deahtstroke.rivenbot.mapper.PGCRMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mapstruct.factory.Mappers;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+/**
+ * Compares the streaming {@link PGCRDecoder}, fed by a blocking parser and by
+ * {@link NonBlockingPGCRParser} in network sized chunks, against binding the whole PGCR with
+ * Jackson, which is what PGCRService used to do. Run it with './gradlew benchmark', it is excluded
+ * from the regular test task.
+ */
+@Tag("benchmark")
+class PGCRDecoderBenchmarkTest {
+
+  private static final int WARMUP_ITERATIONS = 2_000;
+  private static final int MEASURED_ITERATIONS = 10_000;
+  private static final int CHUNK_SIZE = 8192;
+
+  static ObjectMapper objectMapper = new JsonMapper();
+
+  static com.sun.management.ThreadMXBean threadMXBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  PGCRMapper mapper = Mappers.getMapper(PGCRMapper.class);
+
+  @BeforeAll
+  static void initialize() {
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    objectMapper.registerModule(new JavaTimeModule());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"__files/bungie/small-pgcr.json", "__files/bungie/big-pgcr.json"})
+  @DisplayName("Streaming decoder is faster and allocates less than binding the whole PGCR")
+  void benchmarkDecoder(String path) throws IOException {
+    // given: the bytes of a PGCR
+    byte[] json = PGCRDecoderTest.getJson(path);
+
+    // when: both decoding strategies are measured
+    Result binding = measure(() -> bindWholeReport(json));
+    Result decoder = measure(() -> decodeReport(json));
+    Result nonBlocking = measure(() -> decodeReportNonBlocking(json));
+
+    // then: the results are reported and the decoder allocates less memory
+    System.out.printf("%s (%d bytes)%n", path, json.length);
+    System.out.printf("  full binding: %,10.0f ops/s %,10d bytes/op%n", binding.opsPerSecond(),
+        binding.bytesPerOp());
+    System.out.printf("  decoder:      %,10.0f ops/s %,10d bytes/op%n", decoder.opsPerSecond(),
+        decoder.bytesPerOp());
+    System.out.printf("  non-blocking: %,10.0f ops/s %,10d bytes/op%n",
+        nonBlocking.opsPerSecond(), nonBlocking.bytesPerOp());
+    assertThat(decoder.bytesPerOp()).isLessThan(binding.bytesPerOp());
+    assertThat(nonBlocking.bytesPerOp()).isLessThan(binding.bytesPerOp());
+  }
+
+  private PGCRDetails bindWholeReport(byte[] json) throws IOException {
+    var type = new TypeReference<BungieResponse<PostGameCarnageReport>>() {
+    };
+    return mapper.dtoToEntity(objectMapper.readValue(json, type).getResponse(), 1L);
+  }
+
+  private PGCRDetails decodeReport(byte[] json) throws IOException {
+    PGCRDecoder decoder = new PGCRDecoder();
+    try (InputStream inputStream = new ByteArrayInputStream(json);
+        JsonParser parser = objectMapper.getFactory().createParser(inputStream)) {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        decoder.accept(token, parser);
+      }
+    }
+    return mapper.dtoToEntity(decoder.result().getResponse(), 1L);
+  }
+
+  private PGCRDetails decodeReportNonBlocking(byte[] json) throws IOException {
+    try (NonBlockingPGCRParser parser = new NonBlockingPGCRParser(objectMapper.getFactory())) {
+      for (int start = 0; start < json.length; start += CHUNK_SIZE) {
+        int length = Math.min(CHUNK_SIZE, json.length - start);
+        parser.feed(DefaultDataBufferFactory.sharedInstance.wrap(
+            ByteBuffer.wrap(json, start, length)));
+      }
+      return mapper.dtoToEntity(parser.finish().getResponse(), 1L);
+    }
+  }
+
+  private Result measure(Operation operation) throws IOException {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      operation.run();
+    }
+    long threadId = Thread.currentThread().threadId();
+    long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+      operation.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    return new Result(MEASURED_ITERATIONS / (elapsed / 1_000_000_000.0),
+        allocated / MEASURED_ITERATIONS);
+  }
+
+  @FunctionalInterface
+  private interface Operation {
+
+    PGCRDetails run() throws IOException;
+  }
+
+  private record Result(double opsPerSecond, long bytesPerOp) {
+
+  }
+}
@@ -0,0 +1,151 @@
+package com.deahtstroke.rivenbot.decoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
+import com.deahtstroke.rivenbot.entity.PGCRDetails;
+import com.deahtstroke.rivenbot.mapper.PGCRMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mapstruct.factory.Mappers;
+
+class PGCRDecoderTest {
+
+  static ObjectMapper objectMapper = new JsonMapper();
+
+  PGCRMapper mapper = Mappers.getMapper(PGCRMapper.class);
+
+  @BeforeAll
+  static void initialize() {
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    objectMapper.registerModule(new JavaTimeModule());
+  }
+
+  static BungieResponse<PostGameCarnageReport> decode(byte[] json) throws IOException {
+    PGCRDecoder decoder = new PGCRDecoder();
+    try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        decoder.accept(token, parser);
+      }
+    }
+    assertThat(decoder.isComplete()).isTrue();
+    return decoder.result();
+  }
+
+  static byte[] getJson(String path) {
+    try (InputStream jsonStream = PGCRDecoderTest.class.getClassLoader()
+        .getResourceAsStream(path)) {
+      assert jsonStream != null;
+      return jsonStream.readAllBytes();
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"__files/bungie/small-pgcr.json", "__files/bungie/big-pgcr.json"})
+  @DisplayName("Decoding a PGCR maps to the same entity as binding the whole PGCR")
+  void shouldDecodeSameAsFullBinding(String path) throws IOException {
+    // given: a PGCR and its fully bound version
+    byte[] json = getJson(path);
+    Long instanceId = 1L;
+    BungieResponse<PostGameCarnageReport> bound = objectMapper.readValue(json,
+        new TypeReference<>() {
+        });
+    PGCRDetails expected = mapper.dtoToEntity(bound.getResponse(), instanceId);
+
+    // when: the PGCR is decoded
+    BungieResponse<PostGameCarnageReport> decoded = decode(json);
+
+    // then: the resulting entity is the same
+    PGCRDetails actual = mapper.dtoToEntity(decoded.getResponse(), instanceId);
+    assertThat(decoded.getErrorCode()).isEqualTo(1);
+    assertThat(actual.getFromBeginning()).isEqualTo(expected.getFromBeginning());
+    assertThat(actual.getPlayers()).containsExactlyElementsOf(expected.getPlayers());
+  }
+
+  @Test
+  @DisplayName("Decoding an error response does not return a PGCR")
+  void shouldDecodeErrorResponse() throws IOException {
+    // given: an error response from Bungie
+    byte[] json = """
+        {
+          "ErrorCode": 51,
+          "ThrottleSeconds": 5,
+          "ErrorStatus": "PerEndpointRequestThrottleExceeded",
+          "Message": "Too many requests",
+          "MessageData": {"detail": ["throttled"]}
+        }
+        """.getBytes(StandardCharsets.UTF_8);
+
+    // when: the response is decoded
+    PGCRDecoder decoder = new PGCRDecoder();
+    try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+      JsonToken token;
+      while ((token = parser.nextToken()) != null) {
+        decoder.accept(token, parser);
+      }
+    }
+
+    // then: there is no PGCR but the error fields are decoded
+    assertThat(decoder.result().getResponse()).isNull();
+    assertThat(decoder.result().getErrorCode()).isEqualTo(51);
+    assertThat(decoder.getThrottleSeconds()).isEqualTo(5);
+  }
+
+  @Test
+  @DisplayName("Players without kills or deaths values default to zero")
+  void shouldDefaultMissingValues() throws IOException {
+    // given: a PGCR with an entry that has no values
+    byte[] json = """
+        {
+          "Response": {
+            "activityWasStartedFromBeginning": true,
+            "entries": [
+              {
+                "player": {
+                  "destinyUserInfo": {
+                    "membershipId": "4611686018468622561",
+                    "membershipType": 3,
+                    "bungieGlobalDisplayName": "Deaht",
+                    "bungieGlobalDisplayNameCode": 7867,
+                    "applicableMembershipTypes": [3]
+                  }
+                },
+                "values": {}
+              }
+            ]
+          },
+          "ErrorCode": 1
+        }
+        """.getBytes(StandardCharsets.UTF_8);
+
+    // when: the PGCR is decoded
+    PGCRDetails details = mapper.dtoToEntity(decode(json).getResponse(), 1L);
+
+    // then: the player is decoded with zero kills and deaths
+    assertThat(details.getFromBeginning()).isTrue();
+    assertThat(details.getPlayers()).singleElement().satisfies(player -> {
+      assertThat(player.getPlayerName()).isEqualTo("Deaht");
+      assertThat(player.getPlayerTag()).isEqualTo(7867);
+      assertThat(player.getMembershipId()).isEqualTo(4611686018468622561L);
+      assertThat(player.getKills()).isZero();
+      assertThat(player.getDeaths()).isZero();
+    });
+  }
+}
@@ -0,0 +1,167 @@
+package com.deahtstroke.rivenbot.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.dto.discord.Interaction;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponse;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class AdaptiveDeferTest {
+
+  private static final Interaction INTERACTION = Interaction.builder().build();
+
+  private static final InteractionResponseData RESULT = InteractionResponseData.builder()
+      .content("result")
+      .build();
+
+  SimpleMeterRegistry meterRegistry;
+
+  AdaptiveDefer sut;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    sut = new AdaptiveDefer(meterRegistry, Duration.ofSeconds(2));
+  }
+
+  private static Mono<InteractionResponse> deferred() {
+    return Mono.just(InteractionResponse.builder()
+        .type(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType())
+        .data(new InteractionResponseData())
+        .build());
+  }
+
+  private static Interaction createdAt(Instant createdAt) {
+    long snowflake = (createdAt.toEpochMilli() - 1420070400000L) << 22;
+    return Interaction.builder().id(snowflake).build();
+  }
+
+  private long outcomes(String outcome) {
+    return meterRegistry.get("rivenbot.adaptive.defer")
+        .tag("command", "raid_stats")
+        .tag("outcome", outcome)
+        .timer()
+        .count();
+  }
+
+  @Test
+  @DisplayName("Results that arrive within the budget are sent inline")
+  void shouldAnswerInlineWithinBudget() {
+    // given: a result that takes one second
+    Mono<InteractionResponseData> result = Mono.just(RESULT).delayElement(Duration.ofSeconds(1));
+    AtomicBoolean deferred = new AtomicBoolean();
+
+    // when: the command is served
+    // then: the result is the response of the interaction and the command is not deferred
+    StepVerifier.withVirtualTime(() -> sut.serve(SlashCommand.RAID_STATS, INTERACTION, result,
+            () -> {
+              deferred.set(true);
+              return deferred();
+            }))
+        .thenAwait(Duration.ofSeconds(1))
+        .assertNext(response -> {
+          assertThat(response.getType())
+              .isEqualTo(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType());
+          assertThat(response.getData()).isEqualTo(RESULT);
+        })
+        .verifyComplete();
+    assertThat(deferred).isFalse();
+    assertThat(outcomes("inline")).isEqualTo(1L);
+  }
+
+  @Test
+  @DisplayName("Results that do not arrive within the budget are cancelled and deferred")
+  void shouldDeferOverBudget() {
+    // given: a result that takes five seconds
+    AtomicBoolean cancelled = new AtomicBoolean();
+    Mono<InteractionResponseData> result = Mono.just(RESULT)
+        .delayElement(Duration.ofSeconds(5))
+        .doOnCancel(() -> cancelled.set(true));
+
+    // when: the command is served
+    // then: the deferred response is sent once the budget runs out
+    StepVerifier.withVirtualTime(() -> sut.serve(SlashCommand.RAID_STATS, INTERACTION, result,
+            AdaptiveDeferTest::deferred))
+        .thenAwait(Duration.ofSeconds(2))
+        .assertNext(response -> assertThat(response.getType())
+            .isEqualTo(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType()))
+        .verifyComplete();
+
+    // and: the result is no longer waited for
+    assertThat(cancelled).isTrue();
+    assertThat(outcomes("deferred")).isEqualTo(1L);
+  }
+
+  @Test
+  @DisplayName("Commands without a result to send inline are deferred right away")
+  void shouldDeferRightAwayWithoutResult() {
+    // given: a command that can not be answered inline
+    // when: the command is served
+    // then: the deferred response is sent without waiting for the budget
+    StepVerifier.create(sut.serve(SlashCommand.RAID_STATS, INTERACTION, Mono.empty(),
+            AdaptiveDeferTest::deferred))
+        .assertNext(response -> assertThat(response.getType())
+            .isEqualTo(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType()))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("The creation time of an interaction is read from its snowflake ID")
+  void shouldReadCreationTimeFromSnowflake() {
+    // given: the interaction ID from the Discord documentation
+    Interaction interaction = Interaction.builder().id(175928847299117063L).build();
+
+    // when: its creation time is read
+    // then: it is the time the ID was generated
+    assertThat(AdaptiveDefer.createdAt(interaction))
+        .isEqualTo(Instant.ofEpochMilli(1462015105796L));
+  }
+
+  @Test
+  @DisplayName("The budget is counted from when the interaction was created")
+  void shouldCountBudgetFromCreation() {
+    // given: an interaction created one and a half seconds ago and a result that takes one second
+    Interaction interaction = createdAt(Instant.now().minusMillis(1500));
+    Mono<InteractionResponseData> result = Mono.just(RESULT).delayElement(Duration.ofSeconds(1));
+
+    // when: the command is served
+    // then: the deferred response is sent once the rest of the budget runs out
+    StepVerifier.withVirtualTime(() -> sut.serve(SlashCommand.RAID_STATS, interaction, result,
+            AdaptiveDeferTest::deferred))
+        .thenAwait(Duration.ofMillis(500))
+        .assertNext(response -> assertThat(response.getType())
+            .isEqualTo(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType()))
+        .verifyComplete();
+    assertThat(outcomes("deferred")).isEqualTo(1L);
+  }
+
+  @Test
+  @DisplayName("Interactions that already used up the budget are deferred right away")
+  void shouldDeferRightAwayOverBudget() {
+    // given: an interaction created three seconds ago
+    Interaction interaction = createdAt(Instant.now().minusSeconds(3));
+    AtomicBoolean subscribed = new AtomicBoolean();
+    Mono<InteractionResponseData> result = Mono.just(RESULT)
+        .doOnSubscribe(subscription -> subscribed.set(true));
+
+    // when: the command is served
+    // then: the deferred response is sent without waiting for the result
+    StepVerifier.create(sut.serve(SlashCommand.RAID_STATS, interaction, result,
+            AdaptiveDeferTest::deferred))
+        .assertNext(response -> assertThat(response.getType())
+            .isEqualTo(InteractionResponseType.DEFERRED_CHANNEL_MESSAGE_WITH_SOURCE.getType()))
+        .verifyComplete();
+    assertThat(subscribed).isFalse();
+  }
+}
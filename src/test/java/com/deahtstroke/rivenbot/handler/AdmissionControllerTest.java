@@ -0,0 +1,115 @@
+package com.deahtstroke.rivenbot.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.config.BungieConfiguration;
+import com.deahtstroke.rivenbot.config.RateLimiterConfiguration;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.processor.RaidStatsJobQueue;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControllerTest {
+
+  @Mock
+  RaidStatsJobQueue raidStatsJobQueue;
+
+  @Mock
+  AdaptiveRateController bungieRateController;
+
+  @Mock
+  BungieConfiguration bungieConfiguration;
+
+  SimpleMeterRegistry meterRegistry;
+
+  AdmissionController sut;
+
+  @BeforeEach
+  void setup() {
+    // a single API key whose rate limit is counted every second
+    RateLimiterConfiguration rateLimiterConfiguration = new RateLimiterConfiguration();
+    rateLimiterConfiguration.setLimitRefreshPeriod(Duration.ofSeconds(1));
+    when(bungieConfiguration.apiKeys()).thenReturn(List.of("key"));
+    meterRegistry = new SimpleMeterRegistry();
+    sut = new AdmissionController(raidStatsJobQueue, bungieRateController,
+        rateLimiterConfiguration, bungieConfiguration, meterRegistry, 40, Duration.ofMinutes(10));
+  }
+
+  private double decisions(String decision) {
+    return meterRegistry.get("rivenbot.admission.decisions")
+        .tag("command", "raid_stats")
+        .tag("decision", decision)
+        .counter()
+        .count();
+  }
+
+  @Test
+  @DisplayName("Commands are admitted when the jobs ahead of them complete within the budget")
+  void shouldAdmitCommandsWithinBudget() {
+    // given: 10 jobs queued and Bungie allowing 20 calls per second
+    when(raidStatsJobQueue.backlog()).thenReturn(Mono.just(10L));
+    when(bungieRateController.getRateLimit()).thenReturn(20.0);
+    when(bungieRateController.getLimitForPeriod()).thenReturn(25);
+
+    // when: a raid stats command arrives
+    // then: it is admitted, 11 jobs of 40 calls take 22 seconds
+    StepVerifier.create(sut.shed(SlashCommand.RAID_STATS))
+        .verifyComplete();
+    assertThat(decisions("admitted")).isEqualTo(1.0);
+    assertThat(meterRegistry.get("rivenbot.admission.estimate").timeGauge()
+        .value(TimeUnit.SECONDS)).isEqualTo(22.0);
+  }
+
+  @Test
+  @DisplayName("Commands are shed when the jobs ahead of them take longer than the budget")
+  void shouldShedCommandsOverBudget() {
+    // given: 999 jobs queued and Bungie allowing 100 calls per second, limited by the API key
+    // to 25 calls per second
+    when(raidStatsJobQueue.backlog()).thenReturn(Mono.just(999L));
+    when(bungieRateController.getRateLimit()).thenReturn(100.0);
+    when(bungieRateController.getLimitForPeriod()).thenReturn(25);
+
+    // when: a raid stats command arrives
+    // then: it is shed, 1000 jobs of 40 calls at 25 calls per second take 1600 seconds, which is
+    // 1000 seconds over the budget
+    StepVerifier.create(sut.shed(SlashCommand.RAID_STATS))
+        .expectNext(Duration.ofSeconds(1000))
+        .verifyComplete();
+    assertThat(decisions("shed")).isEqualTo(1.0);
+
+    // and: the user is told to try again in 17 minutes
+    var response = AdmissionController.busyResponse(Duration.ofSeconds(1000));
+    assertThat(response.getType())
+        .isEqualTo(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType());
+    assertThat(response.getData().getContent()).contains("try again in 17 minute(s)");
+  }
+
+  @Test
+  @DisplayName("Commands are admitted when the queue can not be read")
+  void shouldAdmitCommandsWhenQueueIsUnavailable() {
+    // given: the queue can not be read
+    when(raidStatsJobQueue.backlog())
+        .thenReturn(Mono.error(new RedisConnectionFailureException("Redis is down")));
+
+    // when: a raid stats command arrives
+    // then: it is admitted
+    StepVerifier.create(sut.shed(SlashCommand.RAID_STATS))
+        .verifyComplete();
+    assertThat(decisions("admitted")).isEqualTo(1.0);
+  }
+}
@@ -0,0 +1,167 @@
+package com.deahtstroke.rivenbot.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.config.QuotaConfiguration.Quota;
+import com.deahtstroke.rivenbot.dto.discord.DiscordUser;
+import com.deahtstroke.rivenbot.dto.discord.Interaction;
+import com.deahtstroke.rivenbot.dto.discord.Member;
+import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.ratelimit.InMemoryTokenBucketStore;
+import com.deahtstroke.rivenbot.ratelimit.LocalTokenBucketStore;
+import com.deahtstroke.rivenbot.util.MessageUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import reactor.test.StepVerifier;
+
+class CommandQuotasTest {
+
+  SimpleMeterRegistry meterRegistry;
+
+  Map<SlashCommand, Quota> quotas;
+
+  @BeforeEach
+  void setup() {
+    // /raid_stats can be used twice per user and three times per guild every 10 minutes
+    Quota quota = new Quota();
+    quota.setPerUser(2);
+    quota.setPerGuild(3);
+    quota.setPeriod(Duration.ofMinutes(10));
+    quotas = Map.of(SlashCommand.RAID_STATS, quota);
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  private static Interaction interaction(String userId, String guildId) {
+    return Interaction.builder()
+        .member(new Member(new DiscordUser(userId, "username")))
+        .guildId(guildId)
+        .build();
+  }
+
+  private double rejected(String scope) {
+    return meterRegistry.get("rivenbot.quotas.rejected")
+        .tag("command", "raid_stats")
+        .tag("scope", scope)
+        .counter()
+        .count();
+  }
+
+  @Test
+  @DisplayName("Users that go over their quota are told when they can use the command again")
+  void shouldRejectUsersOverQuota() {
+    // given: a user that already used /raid_stats twice
+    CommandQuotas sut = new CommandQuotas(quotas, new InMemoryTokenBucketStore(),
+        new LocalTokenBucketStore(Duration.ofMinutes(10)), meterRegistry);
+    Interaction interaction = interaction("1234", "guild");
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+
+    // when: the user uses it a third time
+    // then: the command is rejected with an ephemeral message telling when to try again
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction))
+        .assertNext(response -> {
+          assertThat(response.getType())
+              .isEqualTo(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType());
+          assertThat(response.getData().getFlags()).isEqualTo(MessageUtils.EPHEMERAL_BYTE);
+          assertThat(response.getData().getContent())
+              .startsWith("You have used /raid_stats too many times")
+              .containsPattern("<t:\\d+:R>");
+        })
+        .verifyComplete();
+    assertThat(rejected("user")).isEqualTo(1.0);
+
+    // and: other users of the same guild can still use it
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction("5678", "guild")))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Members of a guild share the quota of the guild")
+  void shouldRejectGuildsOverQuota() {
+    // given: three members of a guild that used /raid_stats once each
+    CommandQuotas sut = new CommandQuotas(quotas, new InMemoryTokenBucketStore(),
+        new LocalTokenBucketStore(Duration.ofMinutes(10)), meterRegistry);
+    for (String userId : new String[]{"1", "2", "3"}) {
+      StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction(userId, "guild")))
+          .verifyComplete();
+    }
+
+    // when: a fourth member uses it
+    // then: the command is rejected because of the guild quota
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction("4", "guild")))
+        .assertNext(response -> assertThat(response.getData().getContent())
+            .startsWith("This server has used /raid_stats too many times"))
+        .verifyComplete();
+    assertThat(rejected("guild")).isEqualTo(1.0);
+
+    // and: the rejected use did not count against the user, who can still use it twice from
+    // another guild
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction("4", "otherGuild")))
+        .verifyComplete();
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction("4", "otherGuild")))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Uses given back to the quotas can be used again")
+  void shouldRefundUses() {
+    // given: a user that already used /raid_stats twice
+    CommandQuotas sut = new CommandQuotas(quotas, new InMemoryTokenBucketStore(),
+        new LocalTokenBucketStore(Duration.ofMinutes(10)), meterRegistry);
+    Interaction interaction = interaction("1234", "guild");
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+
+    // when: the second use is given back because the command could not be served
+    StepVerifier.create(sut.refund(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+
+    // then: the user can use it once more
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+
+    // and: the guild got its use back as well, so another member can still use it
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction("5678", "guild")))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Quotas are kept by this instance when Redis is unavailable")
+  void shouldFallBackToLocalQuotas() {
+    // given: Redis being down
+    InMemoryTokenBucketStore redis = new InMemoryTokenBucketStore();
+    redis.failWith(new RedisConnectionFailureException("Redis is down"));
+    CommandQuotas sut = new CommandQuotas(quotas, redis,
+        new LocalTokenBucketStore(Duration.ofMinutes(10)), meterRegistry);
+    Interaction interaction = interaction("1234", null);
+
+    // when: a user uses /raid_stats three times
+    // then: the third use is rejected by the local quota
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction)).verifyComplete();
+    StepVerifier.create(sut.enforce(SlashCommand.RAID_STATS, interaction))
+        .expectNextCount(1)
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Commands without a quota are never rejected")
+  void shouldNotLimitCommandsWithoutQuota() {
+    // given: /weekly_raid has no quota
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    CommandQuotas sut = new CommandQuotas(quotas, store,
+        new LocalTokenBucketStore(Duration.ofMinutes(10)), meterRegistry);
+
+    // when: a user uses it many times
+    // then: it is never rejected and no quota is read
+    for (int i = 0; i < 10; i++) {
+      StepVerifier.create(sut.enforce(SlashCommand.WEEKLY_RAID, interaction("1234", "guild")))
+          .verifyComplete();
+    }
+    assertThat(store.getCalls()).isZero();
+  }
+}
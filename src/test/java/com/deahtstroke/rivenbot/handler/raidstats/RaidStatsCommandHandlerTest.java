@@ -1,19 +1,32 @@
 package com.deahtstroke.rivenbot.handler.raidstats;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.assertArg;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.deahtstroke.rivenbot.dto.discord.Interaction;
 import com.deahtstroke.rivenbot.dto.discord.InteractionData;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
 import com.deahtstroke.rivenbot.dto.discord.Option;
 import com.deahtstroke.rivenbot.enums.InteractionResponseType;
+import com.deahtstroke.rivenbot.enums.SlashCommand;
+import com.deahtstroke.rivenbot.handler.AdaptiveDefer;
+import com.deahtstroke.rivenbot.handler.AdmissionController;
+import com.deahtstroke.rivenbot.handler.CommandQuotas;
 import com.deahtstroke.rivenbot.processor.AsyncRaidsProcessor;
+import com.deahtstroke.rivenbot.processor.RaidStatsJob;
+import com.deahtstroke.rivenbot.processor.RaidStatsJobQueue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Mono;
@@ -22,12 +35,27 @@ import reactor.test.StepVerifier;
 @ExtendWith(MockitoExtension.class)
 class RaidStatsCommandHandlerTest {
 
+  @Mock
+  RaidStatsJobQueue raidStatsJobQueue;
+
   @Mock
   AsyncRaidsProcessor asyncRaidsProcessor;
 
-  @InjectMocks
+  @Mock
+  AdmissionController admissionController;
+
+  @Mock
+  CommandQuotas commandQuotas;
+
   RaidStatsCommandHandler sut;
 
+  @BeforeEach
+  void setup() {
+    sut = new RaidStatsCommandHandler(raidStatsJobQueue, asyncRaidsProcessor,
+        new AdaptiveDefer(new SimpleMeterRegistry(), Duration.ofSeconds(2)), admissionController,
+        commandQuotas);
+  }
+
   @Test
   @DisplayName("Serve should work successfully")
   void shouldServeRaidStatsSuccessfully() {
@@ -41,8 +69,15 @@ class RaidStatsCommandHandlerTest {
         .token("someToken")
         .build();
 
-    when(asyncRaidsProcessor.processRaidsAsync("Deaht", "3180", "someToken"))
-        .thenReturn(Mono.empty());
+    // and: the user is new, so their raid stats can not be answered inline
+    when(asyncRaidsProcessor.raidStats("Deaht", "3180")).thenReturn(Mono.empty());
+    when(admissionController.shed(SlashCommand.RAID_STATS)).thenReturn(Mono.empty());
+    when(commandQuotas.enforce(SlashCommand.RAID_STATS, interaction)).thenReturn(Mono.empty());
+    when(raidStatsJobQueue.enqueue(assertArg(job -> {
+      assertThat(job.username()).isEqualTo("Deaht");
+      assertThat(job.userTag()).isEqualTo("3180");
+      assertThat(job.interactionToken()).isEqualTo("someToken");
+    }))).thenReturn(Mono.just(true));
 
     // when: serve() is invoked
     StepVerifier.create(sut.serve(interaction))
@@ -52,4 +87,99 @@ class RaidStatsCommandHandlerTest {
           assertThat(response.getData()).isNotNull();
         }).verifyComplete();
   }
+
+  @Test
+  @DisplayName("Serve should answer right away when too many raid stats are queued")
+  void shouldAnswerBusyWhenJobIsRejected() {
+    // given: an interaction with a Bungie user
+    List<Option> options = List.of(
+        new Option("username", 1, "Deaht#3180", false, Collections.emptyList()));
+    Interaction interaction = Interaction.builder()
+        .data(InteractionData.builder()
+            .options(options)
+            .build())
+        .token("someToken")
+        .build();
+
+    // and: the user is new and the job is rejected
+    when(asyncRaidsProcessor.raidStats("Deaht", "3180")).thenReturn(Mono.empty());
+    when(admissionController.shed(SlashCommand.RAID_STATS)).thenReturn(Mono.empty());
+    when(commandQuotas.enforce(SlashCommand.RAID_STATS, interaction)).thenReturn(Mono.empty());
+    when(raidStatsJobQueue.enqueue(any(RaidStatsJob.class))).thenReturn(Mono.just(false));
+    when(commandQuotas.refund(SlashCommand.RAID_STATS, interaction)).thenReturn(Mono.empty());
+
+    // when: serve() is invoked
+    // then: the response is not deferred and tells the user to try again later
+    StepVerifier.create(sut.serve(interaction))
+        .assertNext(response -> {
+          assertThat(response.getType())
+              .isEqualTo(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType());
+          assertThat(response.getData().getContent()).contains("please try again");
+        }).verifyComplete();
+
+    // and: the use of the command is given back to the quotas of the user and guild
+    verify(commandQuotas).refund(SlashCommand.RAID_STATS, interaction);
+  }
+
+  @Test
+  @DisplayName("Serve should answer inline when the raid stats are ready within the budget")
+  void shouldAnswerInlineWhenRaidStatsAreReady() {
+    // given: an interaction with a Bungie user
+    List<Option> options = List.of(
+        new Option("username", 1, "Deaht#3180", false, Collections.emptyList()));
+    Interaction interaction = Interaction.builder()
+        .data(InteractionData.builder()
+            .options(options)
+            .build())
+        .token("someToken")
+        .build();
+
+    // and: the user is returning and their raid stats are ready right away
+    InteractionResponseData stats = InteractionResponseData.builder()
+        .content("raid stats")
+        .build();
+    when(asyncRaidsProcessor.raidStats("Deaht", "3180")).thenReturn(Mono.just(stats));
+
+    // when: serve() is invoked
+    // then: the raid stats are the response and no job is queued
+    StepVerifier.create(sut.serve(interaction))
+        .assertNext(response -> {
+          assertThat(response.getType())
+              .isEqualTo(InteractionResponseType.CHANNEL_MESSAGE_WITH_SOURCE.getType());
+          assertThat(response.getData()).isEqualTo(stats);
+        }).verifyComplete();
+    verifyNoInteractions(raidStatsJobQueue);
+
+    // and: the command was neither estimated by admission control nor counted against any quota
+    verifyNoInteractions(admissionController, commandQuotas);
+  }
+
+  @Test
+  @DisplayName("Serve should not use any quota nor queue a job when the command is shed")
+  void shouldShedBeforeTakingQuota() {
+    // given: an interaction with a Bungie user
+    List<Option> options = List.of(
+        new Option("username", 1, "Deaht#3180", false, Collections.emptyList()));
+    Interaction interaction = Interaction.builder()
+        .data(InteractionData.builder()
+            .options(options)
+            .build())
+        .token("someToken")
+        .build();
+
+    // and: the user is new and the jobs ahead would take too long
+    when(asyncRaidsProcessor.raidStats("Deaht", "3180")).thenReturn(Mono.empty());
+    when(admissionController.shed(SlashCommand.RAID_STATS))
+        .thenReturn(Mono.just(Duration.ofMinutes(5)));
+
+    // when: serve() is invoked
+    // then: the user is told to try again in 5 minutes
+    StepVerifier.create(sut.serve(interaction))
+        .assertNext(response -> assertThat(response.getData().getContent())
+            .contains("try again in 5 minute(s)"))
+        .verifyComplete();
+
+    // and: no quota was taken and no job was queued
+    verifyNoInteractions(commandQuotas, raidStatsJobQueue);
+  }
 }
@@ -0,0 +1,117 @@
+package com.deahtstroke.rivenbot.manifest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DisplayProperties;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class RaidActivityTableTest {
+
+  private static final long RAID_TYPE_HASH = 2043403989L;
+
+  private static ManifestResponseFields activity(String name, Integer mode, Long typeHash) {
+    return ManifestResponseFields.builder()
+        .displayProperties(new DisplayProperties("", name, "", "", false))
+        .directActivityModeType(mode)
+        .activityTypeHash(typeHash)
+        .build();
+  }
+
+  @Test
+  @DisplayName("Raid activities are resolved to their raid name and difficulty")
+  void shouldResolveRaidActivities() {
+    // given: a Manifest index with raids and non-raid activities
+    ManifestIndex manifestIndex = new ManifestIndex("version", Map.of(
+        ManifestEntity.ACTIVITY_DEFINITION, Map.of(
+            1374392663L, activity("King's Fall: Normal", 4, RAID_TYPE_HASH),
+            2964135793L, activity("King's Fall: Master", 4, RAID_TYPE_HASH),
+            2122313384L, activity("Last Wish: Level 55", 4, RAID_TYPE_HASH),
+            2659723068L, activity("Garden of Salvation", null, RAID_TYPE_HASH),
+            2823159265L, activity("Duality", 82, 608898761L))));
+
+    // when: the raid activity table is built
+    RaidActivityTable sut = RaidActivityTable.from(manifestIndex);
+
+    // then: only raids are present in the table
+    assertThat(sut.size()).isEqualTo(4);
+    assertThat(sut.find(2823159265L)).isEqualTo(RaidActivityTable.NOT_FOUND);
+    assertThat(sut.find(0L)).isEqualTo(RaidActivityTable.NOT_FOUND);
+
+    // and: raid name and difficulty are resolved correctly
+    int kingsFallMaster = sut.find(2964135793L);
+    assertThat(sut.raidName(kingsFallMaster)).isEqualTo("King's Fall");
+    assertThat(sut.raidDifficulty(kingsFallMaster)).isEqualTo(RaidDifficulty.MASTER);
+
+    int kingsFallNormal = sut.find(1374392663L);
+    assertThat(sut.raidName(kingsFallNormal)).isEqualTo("King's Fall");
+    assertThat(sut.raidDifficulty(kingsFallNormal)).isEqualTo(RaidDifficulty.NORMAL);
+
+    int lastWish = sut.find(2122313384L);
+    assertThat(sut.raidName(lastWish)).isEqualTo("Last Wish");
+    assertThat(sut.raidDifficulty(lastWish)).isNull();
+
+    int garden = sut.find(2659723068L);
+    assertThat(sut.raidName(garden)).isEqualTo("Garden of Salvation");
+    assertThat(sut.raidDifficulty(garden)).isNull();
+  }
+
+  @Test
+  @DisplayName("Raids with a master difficulty in the Manifest are part of the master mode set")
+  void shouldIncludeMasterRaidsFromManifest() {
+    // given: a Manifest index with a new raid that has a master difficulty
+    ManifestIndex manifestIndex = new ManifestIndex("version", Map.of(
+        ManifestEntity.ACTIVITY_DEFINITION, Map.of(
+            1L, activity("The Desert Perpetual: Master", 4, RAID_TYPE_HASH),
+            2L, activity("Last Wish: Level 55", 4, RAID_TYPE_HASH))));
+
+    // when: the raid activity table is built
+    RaidActivityTable sut = RaidActivityTable.from(manifestIndex);
+
+    // then: the new raid is part of the raids with master mode
+    assertThat(sut.raidsWithMasterMode())
+        .contains("The Desert Perpetual")
+        .containsAll(RaidActivityTable.DEFAULT_RAIDS_WITH_MASTER_MODE)
+        .doesNotContain("Last Wish");
+  }
+
+  @Test
+  @DisplayName("Lookups are correct for tables with many activities")
+  void shouldResolveWhenTableHasCollisions() {
+    // given: a Manifest index with many raid activities
+    Map<Long, ManifestResponseFields> activities = new HashMap<>();
+    for (long hash = 1; hash <= 1_000; hash++) {
+      activities.put(hash * 1024, activity("Raid " + hash + ": Normal", 4, RAID_TYPE_HASH));
+    }
+    ManifestIndex manifestIndex = new ManifestIndex("version",
+        Map.of(ManifestEntity.ACTIVITY_DEFINITION, activities));
+
+    // when: the raid activity table is built
+    RaidActivityTable sut = RaidActivityTable.from(manifestIndex);
+
+    // then: every activity is resolved to its own raid
+    assertThat(sut.size()).isEqualTo(1_000);
+    for (long hash = 1; hash <= 1_000; hash++) {
+      assertThat(sut.raidName(sut.find(hash * 1024))).isEqualTo("Raid " + hash);
+    }
+    assertThat(sut.find(1023L)).isEqualTo(RaidActivityTable.NOT_FOUND);
+  }
+
+  @Test
+  @DisplayName("An empty Manifest index results in an empty table")
+  void shouldBeEmptyWithoutManifest() {
+    // when: the raid activity table is built from an empty index
+    RaidActivityTable sut = ManifestIndex.EMPTY.getRaidActivityTable();
+
+    // then: no activity is found and the default master raids are used
+    assertThat(sut.size()).isZero();
+    assertThat(sut.find(2964135793L)).isEqualTo(RaidActivityTable.NOT_FOUND);
+    assertThat(sut.raidsWithMasterMode())
+        .isEqualTo(RaidActivityTable.DEFAULT_RAIDS_WITH_MASTER_MODE);
+  }
+}
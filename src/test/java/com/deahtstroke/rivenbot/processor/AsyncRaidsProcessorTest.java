@@ -1,8 +1,10 @@
 package com.deahtstroke.rivenbot.processor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.assertArg;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.deahtstroke.rivenbot.client.BungieClient;
@@ -12,19 +14,29 @@ import com.deahtstroke.rivenbot.dto.destiny.ExactUserSearchRequest;
 import com.deahtstroke.rivenbot.dto.destiny.ExactUserSearchResponse;
 import com.deahtstroke.rivenbot.dto.destiny.MembershipResponse;
 import com.deahtstroke.rivenbot.dto.discord.EmbeddedField;
+import com.deahtstroke.rivenbot.dto.discord.InteractionResponseData;
 import com.deahtstroke.rivenbot.entity.ButtonStyle;
 import com.deahtstroke.rivenbot.entity.RaidStatistics;
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
 import com.deahtstroke.rivenbot.enums.MessageComponentId;
+import com.deahtstroke.rivenbot.exception.IngestionInterruptedException;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
 import com.deahtstroke.rivenbot.service.DiscordAPIService;
+import com.deahtstroke.rivenbot.service.IngestionProgress;
 import com.deahtstroke.rivenbot.service.RaidStatsService;
+import com.deahtstroke.rivenbot.service.RaidStatsService.RaidStatsSync;
 import com.deahtstroke.rivenbot.util.MessageComponents;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import reactor.core.publisher.Flux;
@@ -40,12 +52,20 @@ class AsyncRaidsProcessorTest {
   @Mock
   BungieClient bungieClient;
 
+  @Mock
+  AdaptiveRateController bungieRateController;
+
   @Mock
   RaidStatsService raidStatsService;
 
-  @InjectMocks
   AsyncRaidsProcessor sut;
 
+  @BeforeEach
+  void setup() {
+    sut = new AsyncRaidsProcessor(discordAPIService, bungieClient, bungieRateController,
+        raidStatsService, Duration.ofMinutes(1), true, Duration.ofMinutes(1));
+  }
+
   @Test
   @DisplayName("Processing raids async should work as expected when nothing fails")
   void shouldWorkAsExpected() {
@@ -83,8 +103,12 @@ class AsyncRaidsProcessorTest {
     when(bungieClient.getMembershipInfoById(membershipId, membershipType))
         .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
 
-    when(raidStatsService.calculateRaidStats(username, userTag, membershipId, membershipType))
-        .thenReturn(Flux.just(stat1, stat2));
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.savedRaidStats(username, userTag)).thenReturn(Flux.empty());
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.just(stat1, stat2)));
 
     when(discordAPIService.editOriginalInteraction(eq(continuationToken), assertArg(data -> {
       assertThat(data.getEmbeds()).hasSize(1);
@@ -115,6 +139,46 @@ class AsyncRaidsProcessorTest {
         .verifyComplete();
   }
 
+  @Test
+  @DisplayName("Raid stats are synced with the name Bungie.net knows the user by")
+  void shouldSyncWithBungieName() {
+    // given: a user whose name is typed in a different case than their Bungie name
+    String username = "deaht";
+    String userTag = "5718";
+    String bungieName = "Deaht";
+    String continuationToken = "123123120319204109i32312";
+    Integer membershipType = 1;
+    String membershipId = "123812012012";
+
+    List<ExactUserSearchResponse> userResults = List.of(
+        new ExactUserSearchResponse(bungieName, Integer.parseInt(userTag), membershipType,
+            membershipId, userTag, true)
+    );
+    MembershipResponse membershipResponse = new MembershipResponse(null, null,
+        new BungieNetMembership(membershipId, bungieName + "#" + userTag, bungieName, false,
+            "en_US", "/some/profile/pic/path"));
+    RaidStatistics stats = new RaidStatistics("Last Wish", 102, 0, 139, 5, 10, 5, 2, 8);
+
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.just(BungieResponse.of(userResults)));
+    when(bungieClient.getMembershipInfoById(membershipId, membershipType))
+        .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
+    when(raidStatsService.lastSynced(bungieName, userTag, membershipId))
+        .thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.syncRaidStats(bungieName, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.just(stats)));
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), assertArg(data ->
+        assertThat(data.getEmbeds().getFirst().getAuthor().getName())
+            .isEqualTo(bungieName + "#" + userTag))))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    // then: the raids are synced and shown under the Bungie name of the user
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+  }
+
   @Test
   @DisplayName("Should throw an error if a user does not have any matching membership data")
   void shouldThrowErrorOnMissingMembershipData() {
@@ -123,6 +187,7 @@ class AsyncRaidsProcessorTest {
     String userTag = "5718";
     String continuationToken = "123123120319204109i32312";
 
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
     when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
         .thenReturn(Mono.just(BungieResponse.of(Collections.emptyList())));
 
@@ -139,6 +204,48 @@ class AsyncRaidsProcessorTest {
         .verifyComplete();
   }
 
+  @Test
+  @DisplayName("Users are told to try again when saving their raids is interrupted")
+  void shouldTellUserToRetryWhenIngestionIsInterrupted() {
+    // given: a user whose raids stop being saved because the application is shutting down
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+    Integer membershipType = 1;
+    String membershipId = "123812012012";
+
+    List<ExactUserSearchResponse> userResults = List.of(
+        new ExactUserSearchResponse(username, Integer.parseInt(userTag), membershipType,
+            membershipId, userTag, true)
+    );
+    MembershipResponse membershipResponse = new MembershipResponse(null, null,
+        new BungieNetMembership(membershipId, username + "#" + userTag, username, false, "en_US",
+            "/some/profile/pic/path"));
+    IngestionInterruptedException interrupted = new IngestionInterruptedException("interrupted",
+        InteractionResponseData.builder()
+            .content("The raids of Deaht#5718 are still being saved, please try again in a few "
+                     + "moments")
+            .build());
+
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.just(BungieResponse.of(userResults)));
+    when(bungieClient.getMembershipInfoById(membershipId, membershipType))
+        .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.error(interrupted)));
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), assertArg(data ->
+        assertThat(data.getContent()).contains("please try again in a few moments"))))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    // then: the user is told to try again instead of the interaction being left unanswered
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+  }
+
   @Test
   @DisplayName("Should throw an error if a user has privacy settings turned on")
   void shouldThrowErrorOnPrivacySettings() {
@@ -155,6 +262,7 @@ class AsyncRaidsProcessorTest {
             membershipId, userTag, false)
     );
 
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
     when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
         .thenReturn(Mono.just(BungieResponse.of(userResults)));
 
@@ -201,8 +309,12 @@ class AsyncRaidsProcessorTest {
     when(bungieClient.getMembershipInfoById(membershipId, membershipType))
         .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
 
-    when(raidStatsService.calculateRaidStats(username, userTag, membershipId, membershipType))
-        .thenReturn(Flux.empty());
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.just(Instant.now()));
+    when(raidStatsService.savedRaidStats(username, userTag)).thenReturn(Flux.empty());
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.empty()));
 
     when(discordAPIService.editOriginalInteraction(eq(continuationToken), assertArg(data -> {
       assertThat(data.getContent()).isEqualTo("""
@@ -217,4 +329,319 @@ class AsyncRaidsProcessorTest {
         .verifyComplete();
   }
 
+  @Test
+  @DisplayName("A new user gets a summary of their raids before the statistics of every raid")
+  void shouldSendSummaryBeforeRaidStatsForNewUsers() {
+    // given: a user whose raids were never saved
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+
+    Integer membershipType = 1;
+    String membershipId = "123812012012";
+
+    List<ExactUserSearchResponse> userResults = List.of(
+        new ExactUserSearchResponse(username, Integer.parseInt(userTag), membershipType,
+            membershipId, userTag, true)
+    );
+
+    MembershipResponse membershipResponse = new MembershipResponse(null, null,
+        new BungieNetMembership(membershipId, username + "#" + userTag, username, false, "en_US",
+            "/some/profile/pic/path"));
+
+    RaidStatistics summary = new RaidStatistics("Last Wish", 102, 0, 139, null, 10, null, 0, 0);
+    RaidStatistics stats = new RaidStatistics("Last Wish", 102, 0, 139, 5, 10, 5, 0, 0);
+
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.just(BungieResponse.of(userResults)));
+    when(bungieClient.getMembershipInfoById(membershipId, membershipType))
+        .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.empty());
+
+    // and: saving all of their raids takes longer than summarizing them
+    when(raidStatsService.summarizeRaidStats(membershipId, membershipType))
+        .thenReturn(Flux.just(summary));
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.just(stats).delaySubscription(Duration.ofMillis(100))));
+
+    ArgumentCaptor<InteractionResponseData> responses = ArgumentCaptor.forClass(
+        InteractionResponseData.class);
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), responses.capture()))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+
+    // then: the summary is sent first and then replaced with the statistics of every raid
+    assertThat(responses.getAllValues())
+        .extracting(data -> data.getEmbeds().getFirst().getFields().getFirst().getValue())
+        .containsExactly(summary.toDiscordField(), stats.toDiscordField());
+    assertThat(summary.toDiscordField()).doesNotContain("Full Clears");
+  }
+
+  @Test
+  @DisplayName("A new user gets the progress of their raids every interval until they are saved")
+  void shouldSendProgressWhileRaidsAreSaved() {
+    // given: a user whose raids were never saved and cannot be summarized
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+
+    Integer membershipType = 1;
+    String membershipId = "123812012012";
+
+    List<ExactUserSearchResponse> userResults = List.of(
+        new ExactUserSearchResponse(username, Integer.parseInt(userTag), membershipType,
+            membershipId, userTag, true)
+    );
+
+    MembershipResponse membershipResponse = new MembershipResponse(null, null,
+        new BungieNetMembership(membershipId, username + "#" + userTag, username, false, "en_US",
+            "/some/profile/pic/path"));
+
+    RaidStatistics stats = new RaidStatistics("Last Wish", 134, 0, 3600, 0, 1, 1, 0, 0);
+
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.just(BungieResponse.of(userResults)));
+    when(bungieClient.getMembershipInfoById(membershipId, membershipType))
+        .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.empty());
+    when(raidStatsService.summarizeRaidStats(membershipId, membershipType))
+        .thenReturn(Flux.empty());
+
+    // and: the first page of raids is saved while the second one is still being processed
+    IngestionProgress progress = new IngestionProgress();
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(new RaidStatsSync(progress, Flux.defer(() -> {
+          progress.pageDiscovered(2);
+          progress.pageDiscovered(1);
+          progress.pgcrProcessed();
+          progress.pgcrProcessed();
+          progress.pageProcessed(username, userTag, List.of(new UserRaidDetails("Last Wish", null,
+              6, true, 134, 0, 134.0, 3600, true, 1L, Instant.now())));
+          return Flux.just(stats).delaySubscription(Duration.ofMillis(200));
+        })));
+    when(raidStatsService.partialRaidStats(any(IngestionProgress.class)))
+        .thenAnswer(invocation -> Flux.fromIterable(
+            invocation.<IngestionProgress>getArgument(0).statistics(Set.of())));
+
+    ArgumentCaptor<InteractionResponseData> responses = ArgumentCaptor.forClass(
+        InteractionResponseData.class);
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), responses.capture()))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called with a short progress interval
+    sut = new AsyncRaidsProcessor(discordAPIService, bungieClient, bungieRateController,
+        raidStatsService, Duration.ofMillis(20), true, Duration.ofMinutes(1));
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+
+    // then: the progress and the raids saved so far are sent before the statistics of every raid
+    List<InteractionResponseData> sent = responses.getAllValues();
+    assertThat(sent).hasSizeGreaterThan(1);
+    var preview = sent.getFirst().getEmbeds().getFirst();
+    assertThat(preview.getDescription()).contains(
+        ":hourglass: 1/2 pages of activity history and 2/3 post game carnage reports processed");
+    assertThat(preview.getFields().getFirst().getValue()).contains("Kills: 134");
+
+    // and: the last message has the statistics of every raid
+    assertThat(sent.getLast().getEmbeds().getFirst().getFields().getFirst().getValue())
+        .isEqualTo(stats.toDiscordField());
+    assertThat(sent.getLast().getEmbeds().getFirst().getDescription())
+        .doesNotContain(":hourglass:");
+  }
+
+  @Test
+  @DisplayName("A returning user gets their saved raid stats and no edit if nothing changed")
+  void shouldSendSavedRaidStatsWithoutEditingUnchangedStats() {
+    // given: a returning user whose raid stats did not change since they were last synced
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+    String membershipId = "123812012012";
+    Instant lastSynced = Instant.now().minus(Duration.ofDays(1));
+
+    RaidStatistics saved = new RaidStatistics("Last Wish", 102, 0, 139, 5, 10, 5, 0, 0);
+    givenReturningUser(username, userTag, membershipId, lastSynced, saved, saved);
+
+    ArgumentCaptor<InteractionResponseData> responses = ArgumentCaptor.forClass(
+        InteractionResponseData.class);
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), responses.capture()))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+
+    // then: only the saved raid stats are sent, marked with when they were last synced
+    assertThat(responses.getAllValues()).hasSize(1);
+    var embed = responses.getValue().getEmbeds().getFirst();
+    assertThat(embed.getDescription()).contains("<t:%s:R>".formatted(lastSynced.getEpochSecond()));
+    assertThat(embed.getFields().getFirst().getValue()).isEqualTo(saved.toDiscordField());
+  }
+
+  @Test
+  @DisplayName("A returning user gets their saved raid stats even if Bungie.net can not be reached")
+  void shouldSendSavedRaidStatsWithoutBungie() {
+    // given: a returning user
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+    Instant lastSynced = Instant.now().minus(Duration.ofDays(1));
+    RaidStatistics saved = new RaidStatistics("Last Wish", 102, 0, 139, 5, 10, 5, 0, 0);
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.just(lastSynced));
+    when(raidStatsService.savedRaidStats(username, userTag)).thenReturn(Flux.just(saved));
+
+    // and: Bungie.net being down
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.error(new IllegalStateException("Bungie.net is down")));
+
+    ArgumentCaptor<InteractionResponseData> responses = ArgumentCaptor.forClass(
+        InteractionResponseData.class);
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), responses.capture()))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+
+    // then: the saved raid stats are sent from the database alone and left as they are
+    assertThat(responses.getAllValues()).hasSize(1);
+    var embed = responses.getValue().getEmbeds().getFirst();
+    assertThat(embed.getFields().getFirst().getValue()).isEqualTo(saved.toDiscordField());
+    assertThat(embed.getAuthor().getIconUrl()).isNull();
+  }
+
+  @Test
+  @DisplayName("A returning user gets their saved raid stats replaced once new raids change them")
+  void shouldReplaceSavedRaidStatsWhenTheyChange() {
+    // given: a returning user that cleared a raid since they were last synced
+    String username = "Deaht";
+    String userTag = "5718";
+    String continuationToken = "123123120319204109i32312";
+    String membershipId = "123812012012";
+    Instant lastSynced = Instant.now().minus(Duration.ofDays(1));
+
+    RaidStatistics saved = new RaidStatistics("Last Wish", 102, 0, 139, 5, 10, 5, 0, 0);
+    RaidStatistics stats = new RaidStatistics("Last Wish", 150, 0, 139, 6, 11, 5, 0, 0);
+    givenReturningUser(username, userTag, membershipId, lastSynced, saved, stats);
+
+    ArgumentCaptor<InteractionResponseData> responses = ArgumentCaptor.forClass(
+        InteractionResponseData.class);
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), responses.capture()))
+        .thenReturn(Mono.empty());
+
+    // when: process raids async is called
+    StepVerifier.create(sut.processRaidsAsync(username, userTag, continuationToken))
+        .verifyComplete();
+
+    // then: the saved raid stats are sent first and then replaced with the new ones
+    assertThat(responses.getAllValues())
+        .extracting(data -> data.getEmbeds().getFirst().getFields().getFirst().getValue())
+        .containsExactly(saved.toDiscordField(), stats.toDiscordField());
+  }
+
+  @Test
+  @DisplayName("A user synced moments ago gets their saved raid stats without asking Bungie.net")
+  void shouldReadRaidStatsOfRecentlySyncedUser() {
+    // given: a user that was synced a few seconds ago
+    String username = "Deaht";
+    String userTag = "5718";
+    RaidStatistics saved = new RaidStatistics("Last Wish", 150, 0, 139, 6, 11, 5, 0, 0);
+    when(raidStatsService.lastSynced(username, userTag))
+        .thenReturn(Mono.just(Instant.now().minus(Duration.ofSeconds(5))));
+    when(raidStatsService.savedRaidStats(username, userTag)).thenReturn(Flux.just(saved));
+
+    // when: raid stats are read
+    // then: the saved raid stats are returned and nothing is asked to Bungie.net or sent through
+    // Discord
+    StepVerifier.create(sut.raidStats(username, userTag))
+        .assertNext(data -> assertThat(
+            data.getEmbeds().getFirst().getFields().getFirst().getValue())
+            .isEqualTo(saved.toDiscordField()))
+        .verifyComplete();
+    verifyNoInteractions(bungieClient, discordAPIService);
+  }
+
+  @Test
+  @DisplayName("A user that was not synced lately gets no raid stats read")
+  void shouldNotReadRaidStatsOfUserNotSyncedLately() {
+    // given: a user that was synced a day ago
+    String username = "Deaht";
+    String userTag = "5718";
+    when(raidStatsService.lastSynced(username, userTag))
+        .thenReturn(Mono.just(Instant.now().minus(Duration.ofDays(1))));
+
+    // when: raid stats are read
+    // then: nothing is returned, so that their new raids are synced through a deferred response
+    StepVerifier.create(sut.raidStats(username, userTag))
+        .verifyComplete();
+    verifyNoInteractions(bungieClient, discordAPIService);
+  }
+
+  @Test
+  @DisplayName("A new user gets no raid stats read and nothing asked to Bungie.net")
+  void shouldNotReadRaidStatsOfNewUser() {
+    // given: a user whose raids were never saved
+    String username = "Deaht";
+    String userTag = "5718";
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.empty());
+
+    // when: raid stats are read
+    // then: nothing is returned, so that their raids are saved through a deferred response
+    StepVerifier.create(sut.raidStats(username, userTag))
+        .verifyComplete();
+    verifyNoInteractions(bungieClient, discordAPIService);
+  }
+
+  @Test
+  @DisplayName("A job that timed out replaces the original interaction with a timeout message")
+  void shouldTellUserWhenTimedOut() {
+    // given: a continuation token
+    String continuationToken = "123123120319204109i32312";
+    when(discordAPIService.editOriginalInteraction(eq(continuationToken), assertArg(data -> {
+      assertThat(data.getContent()).startsWith("Your raid stats are taking longer than expected");
+      assertThat(data.getEmbeds()).isEmpty();
+    }))).thenReturn(Mono.empty());
+
+    // when: the job timed out
+    // then: the original interaction is edited with the timeout message
+    StepVerifier.create(sut.timedOut(continuationToken))
+        .verifyComplete();
+  }
+
+  private void givenReturningUser(String username, String userTag, String membershipId,
+      Instant lastSynced, RaidStatistics saved, RaidStatistics stats) {
+    Integer membershipType = 1;
+    List<ExactUserSearchResponse> userResults = List.of(
+        new ExactUserSearchResponse(username, Integer.parseInt(userTag), membershipType,
+            membershipId, userTag, true)
+    );
+    MembershipResponse membershipResponse = new MembershipResponse(null, null,
+        new BungieNetMembership(membershipId, username + "#" + userTag, username, false, "en_US",
+            "/some/profile/pic/path"));
+
+    when(raidStatsService.lastSynced(username, userTag)).thenReturn(Mono.just(lastSynced));
+    when(raidStatsService.savedRaidStats(username, userTag)).thenReturn(Flux.just(saved));
+
+    // and: Bungie.net and syncing their new raids take longer than reading their saved raid stats
+    when(bungieClient.searchUserByExactNameAndCode(new ExactUserSearchRequest(username, userTag)))
+        .thenReturn(Mono.just(BungieResponse.of(userResults))
+            .delaySubscription(Duration.ofMillis(50)));
+    when(bungieClient.getMembershipInfoById(membershipId, membershipType))
+        .thenReturn(Mono.just(BungieResponse.of(membershipResponse)));
+    when(raidStatsService.lastSynced(username, userTag, membershipId))
+        .thenReturn(Mono.just(lastSynced));
+    when(raidStatsService.syncRaidStats(username, userTag, membershipId, membershipType))
+        .thenReturn(sync(Flux.just(stats).delaySubscription(Duration.ofMillis(100))));
+  }
+
+  private static RaidStatsSync sync(Flux<RaidStatistics> statistics) {
+    return new RaidStatsSync(new IngestionProgress(), statistics);
+  }
 }
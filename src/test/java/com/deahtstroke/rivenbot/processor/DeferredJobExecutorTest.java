@@ -0,0 +1,107 @@
+package com.deahtstroke.rivenbot.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class DeferredJobExecutorTest {
+
+  SimpleMeterRegistry meterRegistry;
+
+  DeferredJobExecutor sut;
+
+  @BeforeEach
+  void setup() {
+    meterRegistry = new SimpleMeterRegistry();
+    sut = new DeferredJobExecutor(meterRegistry, 2, 1, Duration.ofMinutes(14),
+        Duration.ofSeconds(5));
+  }
+
+  @AfterEach
+  void tearDown() {
+    sut.stop();
+  }
+
+  @Test
+  @DisplayName("Jobs run up to the worker concurrency and are rejected once the queue is full")
+  void shouldBoundRunningAndQueuedJobs() {
+    // given: jobs that run until they are released
+    Sinks.Empty<Void> release = Sinks.empty();
+    AtomicInteger started = new AtomicInteger();
+    Mono<Void> job = release.asMono().doOnSubscribe(subscription -> started.incrementAndGet());
+
+    // when: four jobs are submitted to two workers with room for one queued job
+    boolean first = sut.submit("first", job);
+    boolean second = sut.submit("second", job);
+    await().atMost(Duration.ofSeconds(1)).until(() -> started.get() == 2);
+    boolean third = sut.submit("third", job);
+    boolean fourth = sut.submit("fourth", job);
+
+    // then: two jobs run, one waits and the last one is rejected
+    assertThat(first).isTrue();
+    assertThat(second).isTrue();
+    assertThat(third).isTrue();
+    assertThat(fourth).isFalse();
+    assertThat(meterRegistry.get("rivenbot.deferred.jobs.active").gauge().value())
+        .isEqualTo(2.0);
+    assertThat(meterRegistry.get("rivenbot.deferred.jobs.queued").gauge().value())
+        .isEqualTo(1.0);
+    assertThat(meterRegistry.get("rivenbot.deferred.jobs.rejected").counter().count())
+        .isEqualTo(1.0);
+
+    // and: every accepted job runs once the workers are free
+    release.tryEmitEmpty();
+    await().atMost(Duration.ofSeconds(1)).until(() -> started.get() == 3);
+    await().atMost(Duration.ofSeconds(1)).until(() -> meterRegistry.get(
+        "rivenbot.deferred.jobs.latency").tag("outcome", "success").timer().count() == 3);
+  }
+
+  @Test
+  @DisplayName("Jobs that run past their timeout are cancelled and run their timeout action")
+  void shouldTimeOutJobs() {
+    // given: an executor whose jobs time out quickly
+    sut = new DeferredJobExecutor(meterRegistry, 2, 1, Duration.ofMillis(50),
+        Duration.ofSeconds(5));
+    AtomicInteger cancelled = new AtomicInteger();
+    AtomicInteger timedOut = new AtomicInteger();
+
+    // when: a job that never finishes is submitted
+    sut.submit("stuck", Instant.now(), Mono.<Void>never()
+        .doOnCancel(cancelled::incrementAndGet), Mono.fromRunnable(timedOut::incrementAndGet));
+
+    // then: the job is cancelled and recorded as timed out
+    await().atMost(Duration.ofSeconds(1)).until(() -> cancelled.get() == 1);
+    await().atMost(Duration.ofSeconds(1)).until(() -> meterRegistry.get(
+        "rivenbot.deferred.jobs.latency").tag("outcome", "timeout").timer().count() == 1);
+
+    // and: its timeout action ran once
+    await().atMost(Duration.ofSeconds(1)).until(() -> timedOut.get() == 1);
+  }
+
+  @Test
+  @DisplayName("Draining waits for queued jobs and rejects new ones")
+  void shouldDrainQueuedJobs() {
+    // given: a job that takes a while
+    AtomicInteger finished = new AtomicInteger();
+    sut.submit("slow", Mono.delay(Duration.ofMillis(100))
+        .doOnNext(tick -> finished.incrementAndGet())
+        .then());
+
+    // when: the executor is drained
+    sut.stop();
+
+    // then: the job finished and new jobs are rejected
+    assertThat(finished.get()).isEqualTo(1);
+    assertThat(sut.submit("late", Mono.empty())).isFalse();
+  }
+}
@@ -0,0 +1,244 @@
+package com.deahtstroke.rivenbot.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Range;
+import org.springframework.data.domain.Range.Bound;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class RaidStatsJobQueueTest {
+
+  private static final String STREAM_KEY = "rivenbot:raid-stats:jobs";
+  private static final String CONSUMER_GROUP = "raid-stats-workers";
+  private static final RecordId RECORD_ID = RecordId.of("1700000000000-0");
+
+  @Mock
+  ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+  @Mock
+  ReactiveRedisConnectionFactory reactiveRedisConnectionFactory;
+
+  @Mock
+  ReactiveStreamOperations<String, String, String> streamOperations;
+
+  @Mock
+  AsyncRaidsProcessor asyncRaidsProcessor;
+
+  @Mock
+  DeferredJobExecutor deferredJobExecutor;
+
+  @Captor
+  ArgumentCaptor<Range<?>> rangeCaptor;
+
+  RaidStatsJobQueue sut;
+
+  @BeforeEach
+  void setup() {
+    sut = new RaidStatsJobQueue(reactiveStringRedisTemplate, reactiveRedisConnectionFactory,
+        asyncRaidsProcessor, deferredJobExecutor, true, Duration.ofMinutes(14),
+        Duration.ofMinutes(1), Duration.ofSeconds(15));
+  }
+
+  private static MapRecord<String, String, String> record(RaidStatsJob job) {
+    return StreamRecords.newRecord()
+        .in(STREAM_KEY)
+        .withId(RECORD_ID)
+        .ofMap(job.toMap());
+  }
+
+  @Test
+  @DisplayName("Jobs are queued in the Redis stream")
+  void shouldQueueJobsInStream() {
+    // given: a raid stats job
+    RaidStatsJob job = new RaidStatsJob("Deaht", "3180", "someToken", "1234", Instant.now());
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.add(STREAM_KEY, job.toMap())).thenReturn(Mono.just(RECORD_ID));
+
+    // when: the job is queued
+    // then: the job is accepted and does not run on this instance right away
+    StepVerifier.create(sut.enqueue(job))
+        .expectNext(true)
+        .verifyComplete();
+    verifyNoInteractions(deferredJobExecutor);
+  }
+
+  @Test
+  @DisplayName("Jobs run on the instance that received them if the stream is unavailable")
+  void shouldRunJobsLocallyWhenStreamIsUnavailable() {
+    // given: a raid stats job and Redis being down
+    RaidStatsJob job = new RaidStatsJob("Deaht", "3180", "someToken", "1234", Instant.now());
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.add(STREAM_KEY, job.toMap()))
+        .thenReturn(Mono.error(new RedisConnectionFailureException("Redis is down")));
+    when(asyncRaidsProcessor.processRaidsAsync("Deaht", "3180", "someToken"))
+        .thenReturn(Mono.empty());
+    when(deferredJobExecutor.submit(eq(job.name()), eq(job.enqueuedAt()), any(), any()))
+        .thenReturn(true);
+
+    // when: the job is queued
+    // then: the job is handed to the local executor
+    StepVerifier.create(sut.enqueue(job))
+        .expectNext(true)
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Jobs read from the stream are acknowledged once they ran")
+  void shouldAcknowledgeJobsOnceTheyRan() {
+    // given: a job read from the stream
+    RaidStatsJob job = new RaidStatsJob("Deaht", "3180", "someToken", "1234", Instant.now());
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.acknowledge(STREAM_KEY, CONSUMER_GROUP, RECORD_ID))
+        .thenReturn(Mono.just(1L));
+    when(streamOperations.delete(STREAM_KEY, RECORD_ID)).thenReturn(Mono.just(1L));
+    when(asyncRaidsProcessor.processRaidsAsync("Deaht", "3180", "someToken"))
+        .thenReturn(Mono.empty());
+
+    // and: an executor that has room for it
+    AtomicReference<Mono<Void>> submitted = new AtomicReference<>();
+    when(deferredJobExecutor.submit(eq(job.name()), eq(job.enqueuedAt()), any(), any()))
+        .thenAnswer(invocation -> {
+          submitted.set(invocation.getArgument(2));
+          return true;
+        });
+
+    // when: the job is processed
+    StepVerifier.create(sut.process(record(job)))
+        .verifyComplete();
+
+    // then: the job is acknowledged and removed from the stream once it ran
+    assertThat(submitted.get()).isNotNull();
+    StepVerifier.create(submitted.get())
+        .verifyComplete();
+    verify(streamOperations).acknowledge(STREAM_KEY, CONSUMER_GROUP, RECORD_ID);
+    verify(streamOperations).delete(STREAM_KEY, RECORD_ID);
+  }
+
+  @Test
+  @DisplayName("Jobs whose interaction expired are discarded without running")
+  void shouldDiscardExpiredJobs() {
+    // given: a job queued longer ago than the lifetime of an interaction token
+    RaidStatsJob job = new RaidStatsJob("Deaht", "3180", "someToken", "1234",
+        Instant.now().minus(Duration.ofMinutes(20)));
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.acknowledge(STREAM_KEY, CONSUMER_GROUP, RECORD_ID))
+        .thenReturn(Mono.just(1L));
+    when(streamOperations.delete(STREAM_KEY, RECORD_ID)).thenReturn(Mono.just(1L));
+
+    // when: the job is processed
+    StepVerifier.create(sut.process(record(job)))
+        .verifyComplete();
+
+    // then: the job is acknowledged without running
+    verify(streamOperations).delete(STREAM_KEY, RECORD_ID);
+    verifyNoInteractions(asyncRaidsProcessor, deferredJobExecutor);
+  }
+
+  @Test
+  @DisplayName("Jobs read from the stream are acknowledged once they time out")
+  void shouldAcknowledgeJobsThatTimedOut() {
+    // given: a job read from the stream
+    RaidStatsJob job = new RaidStatsJob("Deaht", "3180", "someToken", "1234", Instant.now());
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.acknowledge(STREAM_KEY, CONSUMER_GROUP, RECORD_ID))
+        .thenReturn(Mono.just(1L));
+    when(streamOperations.delete(STREAM_KEY, RECORD_ID)).thenReturn(Mono.just(1L));
+    when(asyncRaidsProcessor.processRaidsAsync("Deaht", "3180", "someToken"))
+        .thenReturn(Mono.never());
+    when(asyncRaidsProcessor.timedOut("someToken")).thenReturn(Mono.empty());
+
+    // and: an executor that has room for it
+    AtomicReference<Mono<Void>> onTimeout = new AtomicReference<>();
+    when(deferredJobExecutor.submit(eq(job.name()), eq(job.enqueuedAt()), any(), any()))
+        .thenAnswer(invocation -> {
+          onTimeout.set(invocation.getArgument(3));
+          return true;
+        });
+
+    // when: the job is processed and the executor times it out
+    StepVerifier.create(sut.process(record(job)))
+        .verifyComplete();
+    StepVerifier.create(onTimeout.get())
+        .verifyComplete();
+
+    // then: the user is told and the job is acknowledged so it is not reclaimed again
+    verify(asyncRaidsProcessor).timedOut("someToken");
+    verify(streamOperations).acknowledge(STREAM_KEY, CONSUMER_GROUP, RECORD_ID);
+    verify(streamOperations).delete(STREAM_KEY, RECORD_ID);
+  }
+
+  @Test
+  @DisplayName("Idle jobs are reclaimed past the first page of pending jobs")
+  void shouldReclaimIdleJobsOfEveryPage() {
+    // given: a full page of jobs that are running on other instances
+    List<PendingMessage> running = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      running.add(pendingMessage(RecordId.of(1700000000000L, i), Duration.ofSeconds(5)));
+    }
+    RecordId lastRunning = running.get(running.size() - 1).getId();
+
+    // and: a job of an instance that died, past the first page
+    RecordId idle = RecordId.of(1700000000001L, 0);
+    when(reactiveStringRedisTemplate.<String, String>opsForStream()).thenReturn(streamOperations);
+    when(streamOperations.pending(eq(STREAM_KEY), eq(CONSUMER_GROUP), any(Range.class),
+        eq(100L)))
+        .thenReturn(Mono.just(new PendingMessages(CONSUMER_GROUP, running)))
+        .thenReturn(Mono.just(new PendingMessages(CONSUMER_GROUP,
+            List.of(pendingMessage(idle, Duration.ofMinutes(5))))));
+    when(streamOperations.claim(eq(STREAM_KEY), eq(CONSUMER_GROUP), anyString(),
+        any(XClaimOptions.class))).thenReturn(Flux.empty());
+
+    // when: jobs are reclaimed
+    StepVerifier.create(sut.reclaim())
+        .verifyComplete();
+
+    // then: the second page is read from the last job of the first one
+    verify(streamOperations, times(2)).pending(eq(STREAM_KEY), eq(CONSUMER_GROUP),
+        rangeCaptor.capture(), eq(100L));
+    assertThat(rangeCaptor.getAllValues().get(1).getLowerBound())
+        .isEqualTo(Bound.exclusive(lastRunning.getValue()));
+
+    // and: only the idle job is claimed
+    verify(streamOperations, times(1)).claim(eq(STREAM_KEY), eq(CONSUMER_GROUP), anyString(),
+        argThat(options -> options.getIds().equals(List.of(idle))));
+  }
+
+  private static PendingMessage pendingMessage(RecordId id, Duration idle) {
+    return new PendingMessage(id, Consumer.from(CONSUMER_GROUP, "another-instance"), idle, 1L);
+  }
+}
@@ -0,0 +1,218 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class AdaptiveRateControllerTest {
+
+  private static final ClientRequest REQUEST = ClientRequest.create(HttpMethod.GET,
+      URI.create("http://localhost/Platform/Destiny2/")).build();
+
+  private static AdaptiveRateController controller(int initialLimit, Duration latencyThreshold) {
+    return new AdaptiveRateController(initialLimit, 1, 100, 10, 1, 100, 0.5, latencyThreshold,
+        Map.of(), Map.of(), new SimpleMeterRegistry());
+  }
+
+  @Test
+  @DisplayName("Healthy responses grow the concurrency limit")
+  void shouldIncreaseLimitWhenHealthy() {
+    // given: a controller and Bungie responding fast and successfully
+    AdaptiveRateController sut = controller(4, Duration.ofSeconds(2));
+    ExchangeFunction exchange = request -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+
+    // when: many calls are made
+    StepVerifier.create(Flux.range(0, 40).concatMap(i -> consumed(sut.filter(REQUEST, exchange))))
+        .expectNextCount(40)
+        .verifyComplete();
+
+    // then: the limit grew
+    assertThat(sut.getLimit()).isGreaterThan(8.0);
+    assertThat(sut.getInFlight()).isZero();
+  }
+
+  @Test
+  @DisplayName("A 429 response halves the limit and pauses calls until Retry-After")
+  void shouldBackoffWhenThrottled() {
+    // given: a controller and Bungie throttling the first call
+    AtomicInteger calls = new AtomicInteger();
+    ExchangeFunction exchange = request -> Mono.fromCallable(() -> calls.incrementAndGet() == 1 ?
+        ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, "5")
+            .build() :
+        ClientResponse.create(HttpStatus.OK).build());
+
+    // when: two calls are made, one after the other
+    StepVerifier.withVirtualTime(() -> {
+          AdaptiveRateController sut = controller(10, Duration.ofSeconds(2));
+          return sut.filter(REQUEST, exchange)
+              .doOnNext(response -> assertThat(sut.getLimit()).isEqualTo(5.0))
+              .then(sut.filter(REQUEST, exchange));
+        })
+        // then: the second call waits for the Retry-After
+        .expectSubscription()
+        .thenAwait(Duration.ofSeconds(4))
+        .then(() -> assertThat(calls.get()).isEqualTo(1))
+        .thenAwait(Duration.ofSeconds(1))
+        .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Throttle error codes and ThrottleSeconds in a body back off the limit")
+  void shouldBackoffWhenBodyIsThrottled() {
+    // given: a controller
+    AdaptiveRateController sut = controller(16, Duration.ofSeconds(2));
+
+    // when: a throttled response is observed
+    sut.observe(new BungieResponse<>(null, 51, 0));
+
+    // then: the limit was halved
+    assertThat(sut.getLimit()).isEqualTo(8.0);
+
+    // and: a successful response does not change it
+    sut.observe(new BungieResponse<>(null, 1, 0));
+    assertThat(sut.getLimit()).isEqualTo(8.0);
+  }
+
+  @Test
+  @DisplayName("The rate limit grows with healthy responses and backs off within its bounds")
+  void shouldAdaptLimitForPeriod() {
+    // given: a controller allowing between 7 and 12 calls per period, starting at 10
+    AdaptiveRateController sut = new AdaptiveRateController(4, 1, 100, 10, 7, 12, 0.5,
+        Duration.ofSeconds(2), Map.of(), Map.of(), new SimpleMeterRegistry());
+    ExchangeFunction exchange = request -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+
+    // when: many healthy calls are made
+    StepVerifier.create(Flux.range(0, 100).concatMap(i -> consumed(sut.filter(REQUEST, exchange))))
+        .expectNextCount(100)
+        .verifyComplete();
+
+    // then: the rate limit grew up to its maximum
+    assertThat(sut.getLimitForPeriod()).isEqualTo(12);
+
+    // and: a throttled response backs it off no lower than its minimum
+    sut.observe(new BungieResponse<>(null, 51, 0));
+    assertThat(sut.getLimitForPeriod()).isEqualTo(7);
+  }
+
+  @Test
+  @DisplayName("No more calls than the limit are in flight at the same time")
+  void shouldBoundConcurrentCalls() {
+    // given: a controller whose limit can not grow and slow responses from Bungie
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    ExchangeFunction exchange = request -> Mono.defer(() -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          return Mono.delay(Duration.ofSeconds(1));
+        })
+        .map(tick -> {
+          inFlight.decrementAndGet();
+          return ClientResponse.create(HttpStatus.OK).build();
+        });
+
+    // when: many calls are made concurrently
+    StepVerifier.withVirtualTime(() -> {
+          AdaptiveRateController sut = controller(3, Duration.ZERO);
+          return Flux.range(0, 12).flatMap(i -> consumed(sut.filter(REQUEST, exchange)));
+        })
+        .thenAwait(Duration.ofSeconds(4))
+        .expectNextCount(12)
+        .verifyComplete();
+
+    // then: at most 3 calls were in flight at a time
+    assertThat(maxInFlight.get()).isEqualTo(3);
+  }
+
+  @Test
+  @DisplayName("Waiting calls of higher priority get a slot before bulk calls queued earlier")
+  void shouldServeHigherPriorityFirst() {
+    // given: a controller with a single slot and slow responses from Bungie
+    Queue<String> served = new ConcurrentLinkedQueue<>();
+    ExchangeFunction exchange = request -> {
+      served.add(request.url().getPath());
+      return Mono.delay(Duration.ofSeconds(1))
+          .map(tick -> ClientResponse.create(HttpStatus.OK).build());
+    };
+
+    // when: bulk calls are queued before an autocomplete call
+    StepVerifier.withVirtualTime(() -> {
+          AdaptiveRateController sut = controller(1, Duration.ZERO);
+          return Flux.merge(
+              call(sut, exchange, "/bulk-0", RequestPriority.BULK_PGCR),
+              call(sut, exchange, "/bulk-1", RequestPriority.BULK_PGCR),
+              call(sut, exchange, "/bulk-2", RequestPriority.BULK_PGCR),
+              call(sut, exchange, "/autocomplete", RequestPriority.AUTOCOMPLETE));
+        })
+        .thenAwait(Duration.ofSeconds(4))
+        .expectNextCount(4)
+        .verifyComplete();
+
+    // then: the autocomplete call went right after the call that was already in flight
+    assertThat(served).containsExactly("/bulk-0", "/autocomplete", "/bulk-1", "/bulk-2");
+  }
+
+  @Test
+  @DisplayName("A call holds its slot until the body of its response is consumed")
+  void shouldHoldSlotUntilBodyIsConsumed() {
+    // given: a controller and Bungie responding successfully
+    AdaptiveRateController sut = controller(4, Duration.ofSeconds(2));
+    ExchangeFunction exchange = request -> Mono.just(ClientResponse.create(HttpStatus.OK).build());
+
+    // when: a response arrives
+    ClientResponse response = sut.filter(REQUEST, exchange).block();
+
+    // then: the slot is held while the body has not been read
+    assertThat(sut.getInFlight()).isEqualTo(1);
+
+    // and: the slot is released once the body is consumed
+    StepVerifier.create(response.releaseBody()).verifyComplete();
+    assertThat(sut.getInFlight()).isZero();
+  }
+
+  @Test
+  @DisplayName("A call that fails before a response arrives releases its slot")
+  void shouldReleaseSlotWhenExchangeFails() {
+    // given: a controller and Bungie not being reachable
+    AdaptiveRateController sut = controller(4, Duration.ofSeconds(2));
+    ExchangeFunction exchange = request -> Mono.error(new IllegalStateException("unreachable"));
+
+    // when: a call is made
+    StepVerifier.create(sut.filter(REQUEST, exchange))
+        .verifyError(IllegalStateException.class);
+
+    // then: the slot was released
+    assertThat(sut.getInFlight()).isZero();
+  }
+
+  private static Mono<ClientResponse> consumed(Mono<ClientResponse> response) {
+    return response.flatMap(clientResponse -> clientResponse.releaseBody()
+        .thenReturn(clientResponse));
+  }
+
+  private static Mono<ClientResponse> call(AdaptiveRateController sut, ExchangeFunction exchange,
+      String path, RequestPriority priority) {
+    ClientRequest request = ClientRequest.create(HttpMethod.GET,
+        URI.create("http://localhost" + path)).build();
+    return consumed(sut.filter(request, exchange))
+        .contextWrite(BungieRequestContext.withPriority(priority));
+  }
+}
@@ -0,0 +1,122 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class ApiKeyPoolTest {
+
+  private static final ClientRequest REQUEST = ClientRequest.create(HttpMethod.GET,
+      URI.create("http://localhost/Platform/Destiny2/")).build();
+
+  private static ApiKeyPool pool(List<String> keys, MeterRegistry meterRegistry) {
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    return new ApiKeyPool(keys, alias -> new DistributedRateLimiter("bungie:" + alias, store,
+        () -> 100, Duration.ofSeconds(1), Duration.ofSeconds(30), 1, 0, Map.of(), Map.of(),
+        meterRegistry), meterRegistry);
+  }
+
+  @Test
+  @DisplayName("Concurrent calls are spread across every API key")
+  void shouldSpreadCallsAcrossKeys() {
+    // given: a pool with two keys and slow responses from Bungie
+    Queue<String> usedKeys = new ConcurrentLinkedQueue<>();
+    ExchangeFunction exchange = request -> {
+      usedKeys.add(request.headers().getFirst(ApiKeyPool.API_KEY_HEADER_NAME));
+      return Mono.delay(Duration.ofSeconds(1))
+          .map(tick -> ClientResponse.create(HttpStatus.OK).build());
+    };
+
+    // when: four calls are made at the same time
+    StepVerifier.withVirtualTime(() -> {
+          ApiKeyPool sut = pool(List.of("first", "second"), new SimpleMeterRegistry());
+          return Flux.range(0, 4).flatMap(i -> sut.filter(REQUEST, exchange));
+        })
+        .thenAwait(Duration.ofSeconds(1))
+        .expectNextCount(4)
+        .verifyComplete();
+
+    // then: each key served half the calls
+    assertThat(usedKeys).containsExactlyInAnyOrder("first", "second", "first", "second");
+  }
+
+  @Test
+  @DisplayName("A throttled key is skipped while the other keys keep serving calls")
+  void shouldSkipThrottledKey() {
+    // given: a pool with two keys and Bungie throttling the first key
+    Queue<String> usedKeys = new ConcurrentLinkedQueue<>();
+    ExchangeFunction exchange = request -> Mono.fromCallable(() -> {
+      String key = request.headers().getFirst(ApiKeyPool.API_KEY_HEADER_NAME);
+      usedKeys.add(key);
+      return "first".equals(key) ?
+          ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS)
+              .header(HttpHeaders.RETRY_AFTER, "30")
+              .build() :
+          ClientResponse.create(HttpStatus.OK).build();
+    });
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    ApiKeyPool sut = pool(List.of("first", "second"), meterRegistry);
+
+    // when: calls are made one after the other
+    StepVerifier.create(Flux.range(0, 6).concatMap(i -> sut.filter(REQUEST, exchange)))
+        .expectNextCount(6)
+        .verifyComplete();
+
+    // then: the first key was only used once, the rest of the calls used the second key
+    assertThat(usedKeys).filteredOn("first"::equals).hasSize(1);
+    assertThat(usedKeys).filteredOn("second"::equals).hasSize(5);
+    assertThat(sut.healthyKeys()).isEqualTo(1);
+
+    // and: the throttled call is visible in the metrics of the first key
+    assertThat(meterRegistry.get("rivenbot.bungie.api-key.rejections")
+        .tags("key", "key-0", "reason", "throttled").counter().count()).isEqualTo(1.0);
+    assertThat(meterRegistry.get("rivenbot.bungie.api-key.requests")
+        .tags("key", "key-1").counter().count()).isEqualTo(5.0);
+  }
+
+  @Test
+  @DisplayName("Calls wait when every key is throttled")
+  void shouldWaitWhenEveryKeyIsThrottled() {
+    // given: a pool with a single key that is throttled once
+    Queue<String> usedKeys = new ConcurrentLinkedQueue<>();
+    ExchangeFunction exchange = request -> Mono.fromCallable(() -> {
+      usedKeys.add(request.headers().getFirst(ApiKeyPool.API_KEY_HEADER_NAME));
+      return usedKeys.size() == 1 ?
+          ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE)
+              .header(HttpHeaders.RETRY_AFTER, "10")
+              .build() :
+          ClientResponse.create(HttpStatus.OK).build();
+    });
+
+    // when: two calls are made one after the other
+    StepVerifier.withVirtualTime(() -> {
+          ApiKeyPool sut = pool(List.of("only"), new SimpleMeterRegistry());
+          return sut.filter(REQUEST, exchange).then(sut.filter(REQUEST, exchange));
+        })
+        // then: the second call is only made after the Retry-After
+        .expectSubscription()
+        .thenAwait(Duration.ofSeconds(9))
+        .then(() -> assertThat(usedKeys).hasSize(1))
+        .thenAwait(Duration.ofSeconds(1))
+        .assertNext(response -> assertThat(response.statusCode()).isEqualTo(HttpStatus.OK))
+        .verifyComplete();
+  }
+}
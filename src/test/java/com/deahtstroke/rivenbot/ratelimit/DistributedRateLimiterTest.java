@@ -0,0 +1,201 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.exception.RateLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+class DistributedRateLimiterTest {
+
+  private static final Duration PERIOD = Duration.ofSeconds(1);
+  private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+  @Test
+  @DisplayName("Instances sharing a token bucket never exceed the limit together")
+  void shouldShareLimitBetweenInstances() {
+    // given: two instances of the application sharing the same token bucket
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    int limit = 4;
+    int requests = 20;
+
+    // when: both instances make requests concurrently
+    StepVerifier.withVirtualTime(() -> {
+          DistributedRateLimiter first = rateLimiter(store, () -> limit, PERIOD, TIMEOUT, 2, 0);
+          DistributedRateLimiter second = rateLimiter(store, () -> limit, PERIOD, TIMEOUT, 2, 0);
+          return Flux.range(0, requests)
+              .flatMap(i -> {
+                DistributedRateLimiter instance = i % 2 == 0 ? first : second;
+                return Mono.fromCallable(() -> Schedulers.parallel().now(TimeUnit.MILLISECONDS))
+                    .transformDeferred(DistributedRateLimiterOperator.of(instance));
+              })
+              .collectList();
+        })
+        .thenAwait(Duration.ofSeconds(10))
+        .assertNext(timestamps -> {
+          // then: at any point in time the permits granted are within the limit
+          assertThat(timestamps).hasSize(requests);
+          for (Long timestamp : timestamps) {
+            long grantedUntil = timestamps.stream().filter(t -> t <= timestamp).count();
+            long allowedUntil = limit + (timestamp * limit / PERIOD.toMillis());
+            assertThat(grantedUntil).isLessThanOrEqualTo(allowedUntil);
+          }
+        })
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Prefetched permits are used before calling the token bucket again")
+  void shouldUsePrefetchedPermits() {
+    // given: a rate limiter that prefetches 5 permits at a time
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    DistributedRateLimiter sut = rateLimiter(store, () -> 10, PERIOD, TIMEOUT, 5, 0);
+
+    // when: 10 permits are acquired
+    StepVerifier.create(Flux.range(0, 10).concatMap(i -> sut.acquirePermission()))
+        .verifyComplete();
+
+    // then: the token bucket was only called twice
+    assertThat(store.getCalls()).isEqualTo(2);
+  }
+
+  @Test
+  @DisplayName("Interactive calls overtake background calls waiting for tokens")
+  void shouldReserveTokensForInteractiveCalls() {
+    // given: a rate limiter with a token every half a second and one token reserved
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+
+    StepVerifier.withVirtualTime(() -> {
+          DistributedRateLimiter sut = rateLimiter(store, () -> 2, PERIOD, TIMEOUT, 1, 1);
+          // when: background calls drain the bucket and an interactive call comes after them
+          return Flux.merge(
+                  acquire(sut, RequestPriority.BULK_PGCR, "background-1"),
+                  acquire(sut, RequestPriority.BULK_PGCR, "background-2"),
+                  acquire(sut, RequestPriority.BACKGROUND, "background-3"),
+                  Mono.delay(Duration.ofMillis(100))
+                      .then(acquire(sut, RequestPriority.COMMAND_CRITICAL, "interactive")))
+              .collectList();
+        })
+        .thenAwait(Duration.ofSeconds(5))
+        .assertNext(granted -> {
+          // then: the interactive call is granted the reserved token before the background calls
+          // that were waiting
+          assertThat(granted).hasSize(4);
+          assertThat(granted).startsWith("background-1", "interactive");
+        })
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Permits are acquired locally when the token bucket is unavailable")
+  void shouldFallbackWhenStoreFails() {
+    // given: a token bucket that is not reachable
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    store.failWith(new IllegalStateException("Redis is down"));
+    DistributedRateLimiter sut = rateLimiter(store, () -> 10, PERIOD, TIMEOUT, 5, 0);
+
+    // when: a permit is acquired
+    Mono<List<Integer>> response = Mono.just(List.of(1, 2, 3))
+        .transformDeferred(DistributedRateLimiterOperator.of(sut));
+
+    // then: the permit is granted by the local limiter
+    StepVerifier.create(response)
+        .assertNext(list -> assertThat(list).containsExactly(1, 2, 3))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Acquiring a permit fails when none is available within the timeout")
+  void shouldFailWhenTimeoutIsExceeded() {
+    // given: a rate limiter with a single permit every minute
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+
+    // when: two permits are acquired
+    StepVerifier.withVirtualTime(() -> {
+          DistributedRateLimiter sut = rateLimiter(store, () -> 1, Duration.ofMinutes(1),
+              Duration.ofSeconds(5), 1, 0);
+          return sut.acquirePermission().then(sut.acquirePermission());
+        })
+        .thenAwait(Duration.ofSeconds(5))
+        // then: the second acquisition errors out
+        .verifyError(RateLimitExceededException.class);
+  }
+
+  @Test
+  @DisplayName("The token bucket follows the rate limit as it adapts")
+  void shouldFollowAdaptedLimit() {
+    // given: a rate limiter prefetching 5 permits whose limit was lowered to 1 every minute
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+    AtomicInteger limit = new AtomicInteger(5);
+
+    // when: two permits are acquired
+    StepVerifier.withVirtualTime(() -> {
+          DistributedRateLimiter sut = rateLimiter(store, limit::get, Duration.ofMinutes(1),
+              Duration.ofSeconds(5), 5, 0);
+          limit.set(1);
+          return sut.acquirePermission().then(sut.acquirePermission());
+        })
+        .thenAwait(Duration.ofSeconds(5))
+        // then: only one permit was granted by the lowered limit
+        .verifyError(RateLimitExceededException.class);
+  }
+
+  @Test
+  @DisplayName("Tokens are shared between requesters waiting for them by their weight")
+  void shouldServeWaitingRequestersByWeight() {
+    // given: a rate limiter with a token every second and a light user weighing twice as much
+    InMemoryTokenBucketStore store = new InMemoryTokenBucketStore();
+
+    StepVerifier.withVirtualTime(() -> {
+          DistributedRateLimiter sut = new DistributedRateLimiter("bungie", store, () -> 1, PERIOD,
+              TIMEOUT, 1, 0, Map.of(), Map.of("light", 2.0), new SimpleMeterRegistry());
+          // when: a heavy user queues 4 calls before the light user queues 2
+          return Flux.merge(
+                  acquire(sut, "heavy", "heavy-0"),
+                  acquire(sut, "heavy", "heavy-1"),
+                  acquire(sut, "heavy", "heavy-2"),
+                  acquire(sut, "heavy", "heavy-3"),
+                  acquire(sut, "light", "light-0"),
+                  acquire(sut, "light", "light-1"))
+              .collectList();
+        })
+        .thenAwait(Duration.ofSeconds(10))
+        // then: the light user did not wait for every call of the heavy user and got two tokens
+        // for every one of the heavy user once both were waiting
+        .assertNext(granted -> assertThat(granted).containsExactly("heavy-0", "heavy-1",
+            "light-0", "light-1", "heavy-2", "heavy-3"))
+        .verifyComplete();
+  }
+
+  private static DistributedRateLimiter rateLimiter(InMemoryTokenBucketStore store,
+      IntSupplier limitForPeriod, Duration limitRefreshPeriod, Duration timeout, int prefetch,
+      int reserved) {
+    return new DistributedRateLimiter("bungie", store, limitForPeriod, limitRefreshPeriod,
+        timeout, prefetch, reserved, Map.of(), Map.of(), new SimpleMeterRegistry());
+  }
+
+  private static Mono<String> acquire(DistributedRateLimiter rateLimiter, String requester,
+      String name) {
+    return rateLimiter.acquirePermission()
+        .thenReturn(name)
+        .contextWrite(BungieRequestContext.withRequester(requester));
+  }
+
+  private static Mono<String> acquire(DistributedRateLimiter rateLimiter,
+      RequestPriority priority, String name) {
+    return rateLimiter.acquirePermission()
+        .thenReturn(name)
+        .contextWrite(BungieRequestContext.withPriority(priority));
+  }
+}
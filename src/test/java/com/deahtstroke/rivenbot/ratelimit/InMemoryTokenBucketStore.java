@@ -0,0 +1,80 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * In-process stand-in for Redis that implements the same algorithms as 'scripts/token_bucket.lua'
+ * and 'scripts/token_bucket_refund.lua'. Time is read from Reactor's parallel scheduler so that
+ * tests can use virtual time, and the store can be made to fail like Redis being down
+ */
+public class InMemoryTokenBucketStore implements TokenBucketStore {
+
+  private final Map<String, double[]> buckets = new HashMap<>();
+  private final AtomicInteger calls = new AtomicInteger();
+
+  private volatile RuntimeException failure;
+
+  @Override
+  public Mono<Long> acquire(String key, int capacity, long refillPeriodMillis, int requested,
+      int reserved) {
+    return Mono.fromCallable(() -> take(key, capacity, refillPeriodMillis, requested, reserved));
+  }
+
+  @Override
+  public Mono<Void> refund(String key, int capacity, long refillPeriodMillis, int tokens) {
+    return Mono.fromRunnable(() -> giveBack(key, capacity, refillPeriodMillis, tokens));
+  }
+
+  public int getCalls() {
+    return calls.get();
+  }
+
+  public void failWith(RuntimeException failure) {
+    this.failure = failure;
+  }
+
+  private synchronized long take(String key, int capacity, long period, int requested,
+      int reserved) {
+    calls.incrementAndGet();
+    if (Objects.nonNull(failure)) {
+      throw failure;
+    }
+    long now = Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+    double[] bucket = buckets.computeIfAbsent(key, k -> new double[]{capacity, now});
+    double elapsed = Math.max(0, now - bucket[1]);
+    double tokens = Math.min(capacity, bucket[0] + elapsed * capacity / period);
+
+    long result;
+    long granted = Math.min(requested, (long) Math.floor(tokens - reserved));
+    if (granted > 0) {
+      tokens -= granted;
+      result = granted;
+    } else {
+      result = -(long) Math.ceil((1 + reserved - tokens) * period / capacity);
+    }
+    bucket[0] = tokens;
+    bucket[1] = now;
+    return result;
+  }
+
+  private synchronized void giveBack(String key, int capacity, long period, int tokens) {
+    calls.incrementAndGet();
+    if (Objects.nonNull(failure)) {
+      throw failure;
+    }
+    double[] bucket = buckets.get(key);
+    if (Objects.isNull(bucket)) {
+      return;
+    }
+    long now = Schedulers.parallel().now(TimeUnit.MILLISECONDS);
+    double elapsed = Math.max(0, now - bucket[1]);
+    bucket[0] = Math.min(capacity, bucket[0] + elapsed * capacity / period + tokens);
+    bucket[1] = now;
+  }
+}
@@ -0,0 +1,147 @@
+package com.deahtstroke.rivenbot.ratelimit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class PrioritySchedulerTest {
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private static List<String> drain(PriorityScheduler<String> sut) {
+    List<String> served = new ArrayList<>();
+    String next;
+    while ((next = sut.poll()) != null) {
+      served.add(next);
+    }
+    return served;
+  }
+
+  @Test
+  @DisplayName("Calls are served by priority regardless of the order they arrived in")
+  void shouldServeByPriority() {
+    // given: a scheduler with calls of every priority queued from lowest to highest
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test", Map.of(), Map.of(),
+        clock::get, new SimpleMeterRegistry());
+    sut.offer("background", RequestPriority.BACKGROUND, "system");
+    sut.offer("pgcr", RequestPriority.BULK_PGCR, "user");
+    sut.offer("command", RequestPriority.COMMAND_CRITICAL, "user");
+    sut.offer("autocomplete", RequestPriority.AUTOCOMPLETE, "user");
+
+    // when: every call is served
+    List<String> served = drain(sut);
+
+    // then: the highest priorities went first
+    assertThat(served).containsExactly("autocomplete", "command", "pgcr", "background");
+    assertThat(sut.isEmpty()).isTrue();
+  }
+
+  @Test
+  @DisplayName("Requesters of the same priority take turns")
+  void shouldServeRequestersFairly() {
+    // given: a user with many calls queued before another user queues theirs
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test", Map.of(), Map.of(),
+        clock::get, new SimpleMeterRegistry());
+    for (int i = 0; i < 4; i++) {
+      sut.offer("heavy-" + i, RequestPriority.BULK_PGCR, "heavy");
+    }
+    sut.offer("light-0", RequestPriority.BULK_PGCR, "light");
+    sut.offer("light-1", RequestPriority.BULK_PGCR, "light");
+
+    // when: every call is served
+    List<String> served = drain(sut);
+
+    // then: the second user did not wait for every call of the first one
+    assertThat(served).containsExactly("heavy-0", "light-0", "heavy-1", "light-1", "heavy-2",
+        "heavy-3");
+  }
+
+  @Test
+  @DisplayName("Requesters of the same priority are served in proportion to their weight")
+  void shouldServeRequestersByWeight() {
+    // given: a user weighing twice as much as another, both with many calls queued
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test", Map.of(),
+        Map.of("light", 2.0), clock::get, new SimpleMeterRegistry());
+    for (int i = 0; i < 4; i++) {
+      sut.offer("heavy-" + i, RequestPriority.BULK_PGCR, "heavy");
+    }
+    for (int i = 0; i < 4; i++) {
+      sut.offer("light-" + i, RequestPriority.BULK_PGCR, "light");
+    }
+
+    // when: every call is served
+    List<String> served = drain(sut);
+
+    // then: the second user got two calls served for every call of the first one
+    assertThat(served).containsExactly("heavy-0", "light-0", "light-1", "heavy-1", "light-2",
+        "light-3", "heavy-2", "heavy-3");
+  }
+
+  @Test
+  @DisplayName("Peeking at the next call does not take it")
+  void shouldPeekWithoutTaking() {
+    // given: two queued calls
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test", Map.of(), Map.of(),
+        clock::get, new SimpleMeterRegistry());
+    sut.offer("pgcr", RequestPriority.BULK_PGCR, "user");
+    sut.offer("command", RequestPriority.COMMAND_CRITICAL, "user");
+
+    // when: the next call is peeked at
+    String next = sut.peek();
+
+    // then: it is the one served next
+    assertThat(next).isEqualTo("command");
+    assertThat(drain(sut)).containsExactly("command", "pgcr");
+  }
+
+  @Test
+  @DisplayName("Calls that waited longer than their max wait go ahead of higher priorities")
+  void shouldPromoteStarvingCalls() {
+    // given: a background call that has waited longer than its max wait
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test",
+        Map.of(RequestPriority.BACKGROUND, Duration.ofSeconds(30)), Map.of(), clock::get,
+        meterRegistry);
+    sut.offer("background", RequestPriority.BACKGROUND, "system");
+    clock.set(Duration.ofSeconds(31).toMillis());
+    sut.offer("command", RequestPriority.COMMAND_CRITICAL, "user");
+
+    // when: the next call is served
+    String served = sut.poll();
+
+    // then: the background call went first
+    assertThat(served).isEqualTo("background");
+    assertThat(meterRegistry.get("rivenbot.bungie.scheduler.wait")
+        .tag("priority", RequestPriority.BACKGROUND.name()).timer().max(TimeUnit.SECONDS))
+        .isEqualTo(31.0);
+    assertThat(meterRegistry.get("rivenbot.bungie.scheduler.queue")
+        .tag("priority", RequestPriority.COMMAND_CRITICAL.name()).gauge().value()).isEqualTo(1.0);
+  }
+
+  @Test
+  @DisplayName("Removed calls are never served")
+  void shouldNotServeRemovedCalls() {
+    // given: two queued calls
+    PriorityScheduler<String> sut = new PriorityScheduler<>("test", Map.of(), Map.of(),
+        clock::get, new SimpleMeterRegistry());
+    sut.offer("cancelled", RequestPriority.AUTOCOMPLETE, "user");
+    sut.offer("kept", RequestPriority.BULK_PGCR, "user");
+
+    // when: the first one is removed
+    boolean removed = sut.remove("cancelled");
+
+    // then: only the second one is served
+    assertThat(removed).isTrue();
+    assertThat(drain(sut)).containsExactly("kept");
+    assertThat(sut.remove("cancelled")).isFalse();
+  }
+}
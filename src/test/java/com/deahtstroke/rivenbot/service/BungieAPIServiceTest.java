@@ -1,12 +1,16 @@
 package com.deahtstroke.rivenbot.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.deahtstroke.rivenbot.cache.ReactiveCache;
 import com.deahtstroke.rivenbot.client.BungieClient;
 import com.deahtstroke.rivenbot.dto.destiny.ActivitiesResponse;
 import com.deahtstroke.rivenbot.dto.destiny.Activity;
 import com.deahtstroke.rivenbot.dto.destiny.ActivityDetails;
+import com.deahtstroke.rivenbot.dto.destiny.AggregateActivitiesResponse;
 import com.deahtstroke.rivenbot.dto.destiny.Basic;
 import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
 import com.deahtstroke.rivenbot.dto.destiny.SearchResult;
@@ -23,12 +27,15 @@ import com.deahtstroke.rivenbot.enums.ManifestEntity;
 import com.deahtstroke.rivenbot.exception.ManifestEntityNotFoundException;
 import com.deahtstroke.rivenbot.exception.NoCharactersFoundException;
 import com.deahtstroke.rivenbot.exception.ResourceNotFoundException;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZonedDateTime;
 import java.util.Collections;
@@ -49,6 +56,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -94,7 +102,11 @@ class BungieAPIServiceTest {
     WebClient webClient = WebClient.builder()
         .baseUrl("http://localhost:" + mockWebServer.getPort())
         .build();
-    this.sut = new BungieAPIService(this.bungieClient, webClient);
+    ReactiveCache reactiveCache = new ReactiveCache(new ConcurrentMapCacheManager(),
+        Map.of("manifestEntity", 60L, "playersPrefixSearch", 5L), new SimpleMeterRegistry());
+    AdaptiveRateController rateController = new AdaptiveRateController(20, 2, 100, 23, 6,
+        37, 0.5, Duration.ofSeconds(2), Map.of(), Map.of(), new SimpleMeterRegistry());
+    this.sut = new BungieAPIService(this.bungieClient, webClient, reactiveCache, rateController);
   }
 
   @Test
@@ -155,6 +167,25 @@ class BungieAPIServiceTest {
         .verifyComplete();
   }
 
+  @Test
+  @DisplayName("Get aggregate activity stats returns an empty list when there are no activities")
+  void shouldReturnEmptyAggregateActivityStats() {
+    // given: a character that has not played any activity
+    Integer membershipType = 3;
+    String membershipId = "12301312312";
+    String characterId = "801983071";
+
+    when(bungieClient.getAggregateActivityStats(membershipType, membershipId, characterId))
+        .thenReturn(Mono.just(BungieResponse.of(new AggregateActivitiesResponse(null))));
+
+    // when: getAggregateActivityStats is invoked
+    // then: the response is mapped to an empty list of activities
+    StepVerifier.create(
+            sut.getAggregateActivityStats(membershipType, membershipId, characterId))
+        .assertNext(activities -> assertThat(activities).isEmpty())
+        .verifyComplete();
+  }
+
   @Test
   @DisplayName("Get user characters should work successfully")
   void shouldWorkSuccessfully() {
@@ -264,6 +295,31 @@ class BungieAPIServiceTest {
         }).verifyComplete();
   }
 
+  @Test
+  @DisplayName("Get manifest entity only calls Bungie once for the same entity")
+  void shouldCacheManifestEntity() {
+    // given: manifest entity type and a hash
+    ManifestEntity entity = ManifestEntity.ACTIVITY_DEFINITION;
+    Long hash = 4897012345671L;
+
+    BungieResponse<ManifestResponseFields> response = BungieResponse.of(
+        ManifestResponseFields.builder()
+            .hash(hash)
+            .build());
+
+    when(bungieClient.getManifestEntity(entity.getId(), hash))
+        .thenReturn(Mono.just(response));
+
+    // when: getManifestEntity is called twice for the same entity
+    StepVerifier.create(sut.getManifestEntity(entity, hash)
+            .then(sut.getManifestEntity(entity, hash)))
+        .assertNext(fields -> assertThat(fields.getHash()).isEqualTo(hash))
+        .verifyComplete();
+
+    // then: Bungie was only called once
+    verify(bungieClient, times(1)).getManifestEntity(entity.getId(), hash);
+  }
+
   @Test
   @DisplayName("Get manifest throws an error when entity is empty")
   void shouldThrowExceptionIfManifestResponseIsEmpty() {
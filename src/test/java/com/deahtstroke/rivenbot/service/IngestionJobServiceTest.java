@@ -0,0 +1,122 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.entity.IngestionCheckpoint;
+import com.deahtstroke.rivenbot.entity.IngestionJob;
+import com.deahtstroke.rivenbot.exception.IngestionInterruptedException;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class IngestionJobServiceTest {
+
+  @Mock
+  ReactiveMongoTemplate reactiveMongoTemplate;
+
+  IngestionJobService sut;
+
+  IngestionJob newJob = IngestionJob.start("12345", "Deaht", "8080", Instant.now(), null);
+
+  @BeforeEach
+  void setup() {
+    sut = new IngestionJobService(reactiveMongoTemplate, Duration.ofSeconds(1),
+        Duration.ofDays(7));
+  }
+
+  @Test
+  @DisplayName("A user without a job gets a new one that is removed once it completes")
+  void shouldRemoveCompletedJob() {
+    // given: a user without a job
+    when(reactiveMongoTemplate.findById("12345", IngestionJob.class)).thenReturn(Mono.empty());
+    when(reactiveMongoTemplate.insert(newJob)).thenReturn(Mono.just(newJob));
+    when(reactiveMongoTemplate.remove(any(Query.class), eq(IngestionJob.class)))
+        .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+    AtomicReference<IngestionJob> ranJob = new AtomicReference<>();
+
+    // when: the job runs
+    StepVerifier.create(sut.run(newJob, job -> Mono.fromRunnable(() -> ranJob.set(job))))
+        .verifyComplete();
+
+    // then: the new job is the one that ran and it is removed
+    assertThat(ranJob.get()).isSameAs(newJob);
+    verify(reactiveMongoTemplate, times(1)).remove(any(Query.class), eq(IngestionJob.class));
+  }
+
+  @Test
+  @DisplayName("An existing job is resumed and kept if it fails again")
+  void shouldResumeAndKeepFailedJob() {
+    // given: a user whose last job was interrupted
+    IngestionJob interruptedJob = IngestionJob.start("12345", "Deaht", "8080",
+        Instant.now().minusSeconds(60), null);
+    interruptedJob.getCheckpoints().put("1", new IngestionCheckpoint(3, 749L, false, null));
+    when(reactiveMongoTemplate.findById("12345", IngestionJob.class))
+        .thenReturn(Mono.just(interruptedJob));
+    AtomicReference<IngestionJob> ranJob = new AtomicReference<>();
+
+    // when: the job runs and fails
+    StepVerifier.create(sut.run(newJob, job -> {
+          ranJob.set(job);
+          return Mono.error(new IllegalStateException("Bungie is down"));
+        }))
+        .verifyError(IllegalStateException.class);
+
+    // then: the interrupted job is the one that ran and it is kept to be resumed later
+    assertThat(ranJob.get()).isSameAs(interruptedJob);
+    assertThat(ranJob.get().isResumed()).isTrue();
+    verify(reactiveMongoTemplate, times(0)).remove(any(Query.class), eq(IngestionJob.class));
+  }
+
+  @Test
+  @DisplayName("Jobs stop right after their next checkpoint once the application shuts down")
+  void shouldInterruptJobsAfterCheckpointWhenDraining() {
+    // given: the application is shutting down
+    when(reactiveMongoTemplate.updateFirst(any(Query.class), any(Update.class),
+        eq(IngestionJob.class))).thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+    sut.stop();
+
+    // when: a running job checkpoints a page
+    var checkpoint = sut.checkpoint(newJob, "1", new IngestionCheckpoint(1, 249L, false, null));
+
+    // then: the checkpoint is saved and the job is interrupted
+    StepVerifier.create(checkpoint)
+        .verifyError(IngestionInterruptedException.class);
+    verify(reactiveMongoTemplate, times(1)).updateFirst(any(Query.class), any(Update.class),
+        eq(IngestionJob.class));
+  }
+
+  @Test
+  @DisplayName("No job is started once the application shuts down")
+  void shouldNotStartJobsWhenDraining() {
+    // given: the application is shutting down
+    sut.stop();
+
+    // when: a job is started
+    var run = sut.run(newJob, job -> Mono.empty());
+
+    // then: it is interrupted before reaching the database
+    StepVerifier.create(run)
+        .verifyError(IngestionInterruptedException.class);
+    verifyNoInteractions(reactiveMongoTemplate);
+  }
+}
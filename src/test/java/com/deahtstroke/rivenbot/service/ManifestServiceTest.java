@@ -0,0 +1,220 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.client.BungieClient;
+import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DestinyManifest;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DisplayProperties;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class ManifestServiceTest {
+
+  private static final String CONTENT_PATH = "/common/destiny2_content/json/en/";
+
+  static MockWebServer mockWebServer;
+
+  static ObjectMapper objectMapper = new JsonMapper();
+
+  @Mock
+  BungieClient bungieClient;
+
+  @Mock
+  BungieAPIService bungieAPIService;
+
+  @Mock
+  AdaptiveRateController bungieRateController;
+
+  ManifestService sut;
+
+  @AfterAll
+  static void tearDown() throws IOException {
+    mockWebServer.shutdown();
+  }
+
+  @BeforeAll
+  public static void initialize() throws IOException {
+    objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    mockWebServer = new MockWebServer();
+    mockWebServer.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(RecordedRequest recordedRequest) {
+        String path = recordedRequest.getPath();
+        if (path == null || !path.startsWith(CONTENT_PATH)) {
+          return new MockResponse().setResponseCode(404);
+        }
+        return new MockResponse()
+            .setResponseCode(200)
+            .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .setChunkedBody(getJson("__files/bungie/manifest/" +
+                                    path.substring(CONTENT_PATH.length())), 1024);
+      }
+    });
+    mockWebServer.start();
+  }
+
+  @BeforeEach
+  public void setup() {
+    WebClient webClient = WebClient.builder()
+        .baseUrl("http://localhost:" + mockWebServer.getPort())
+        .build();
+    sut = new ManifestService(bungieClient, bungieAPIService, bungieRateController,
+        webClient, objectMapper, Duration.ofHours(1));
+  }
+
+  @Test
+  @DisplayName("Loading the Manifest indexes all supported tables")
+  void shouldIndexManifestTables() {
+    // given: a Manifest version with content paths for all indexed tables
+    when(bungieClient.getManifest()).thenReturn(Mono.just(manifestResponse()));
+
+    // when: the manifest is refreshed
+    StepVerifier.create(sut.refresh())
+        .assertNext(index -> {
+          assertThat(index.getVersion()).isEqualTo("227813.24.10.07.1900-1-bnet.57229");
+          assertThat(index.table(ManifestEntity.ACTIVITY_DEFINITION)).hasSize(7);
+          assertThat(index.table(ManifestEntity.ACTIVITY_TYPE_DEFINITION)).hasSize(2);
+          assertThat(index.table(ManifestEntity.MILESTONE_DEFINITION)).hasSize(1);
+          assertThat(index.table(ManifestEntity.ITEM_INVENTORY_DEFINITION)).isEmpty();
+        })
+        .verifyComplete();
+
+    // then: the new index is the one used by the service
+    assertThat(sut.currentIndex().size()).isEqualTo(10);
+  }
+
+  @Test
+  @DisplayName("Indexed entities are resolved without calling the Manifest API")
+  void shouldResolveIndexedEntitiesLocally() {
+    // given: a loaded Manifest index
+    when(bungieClient.getManifest()).thenReturn(Mono.just(manifestResponse()));
+    sut.refresh().block();
+
+    // when: getManifestEntity is called for an indexed activity
+    StepVerifier.create(sut.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1374392663L))
+        .assertNext(entity -> {
+          assertThat(entity.getDisplayProperties().getName()).isEqualTo("King's Fall: Normal");
+          assertThat(entity.getActivityTypeHash()).isEqualTo(2043403989L);
+          assertThat(entity.getDirectActivityModeType()).isEqualTo(4);
+        })
+        .verifyComplete();
+
+    // then: the Manifest API was never called
+    verify(bungieAPIService, times(0)).getManifestEntity(any(), anyLong());
+  }
+
+  @Test
+  @DisplayName("Entities missing from the index fall back to the Manifest API")
+  void shouldFallbackWhenEntityIsNotIndexed() {
+    // given: an empty index and a manifest entity returned by the Manifest API
+    Long hash = 1L;
+    ManifestResponseFields fallback = ManifestResponseFields.builder()
+        .displayProperties(
+            new DisplayProperties(null, "Salvation's Edge: Normal", null, null, false))
+        .build();
+    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, hash))
+        .thenReturn(Mono.just(fallback));
+
+    // when: getManifestEntity is called
+    StepVerifier.create(sut.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, hash))
+        .assertNext(entity -> assertThat(entity.getDisplayProperties().getName())
+            .isEqualTo("Salvation's Edge: Normal"))
+        .verifyComplete();
+
+    // then: the Manifest API was called exactly once
+    verify(bungieAPIService, times(1)).getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, hash);
+  }
+
+  @Test
+  @DisplayName("Refreshing the same Manifest version does not download the tables again")
+  void shouldNotReloadSameVersion() {
+    // given: a loaded Manifest index
+    when(bungieClient.getManifest()).thenReturn(Mono.just(manifestResponse()));
+    var initialIndex = sut.refresh().block();
+    int requestCount = mockWebServer.getRequestCount();
+
+    // when: the Manifest is refreshed with the same version
+    StepVerifier.create(sut.refresh())
+        .verifyComplete();
+
+    // then: no tables were downloaded and the index is still the same
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(requestCount);
+    assertThat(sut.currentIndex()).isSameAs(initialIndex);
+  }
+
+  @Test
+  @DisplayName("A new Manifest version swaps the index")
+  void shouldSwapIndexOnNewVersion() {
+    // given: a loaded Manifest index
+    BungieResponse<DestinyManifest> initial = manifestResponse();
+    BungieResponse<DestinyManifest> updated = manifestResponse();
+    updated.getResponse().setVersion("227813.24.10.14.1900-1-bnet.57300");
+    when(bungieClient.getManifest())
+        .thenReturn(Mono.just(initial))
+        .thenReturn(Mono.just(updated));
+    var initialIndex = sut.refresh().block();
+
+    // when: the Manifest is refreshed with a new version
+    StepVerifier.create(sut.refresh())
+        .assertNext(index -> assertThat(index.getVersion())
+            .isEqualTo("227813.24.10.14.1900-1-bnet.57300"))
+        .verifyComplete();
+
+    // then: the service uses the new index
+    assertThat(sut.currentIndex()).isNotSameAs(initialIndex);
+    assertThat(sut.currentIndex().getVersion()).isEqualTo("227813.24.10.14.1900-1-bnet.57300");
+  }
+
+  private static BungieResponse<DestinyManifest> manifestResponse() {
+    try {
+      return objectMapper.readValue(getJson("__files/bungie/manifest-response.json"),
+          new TypeReference<>() {
+          });
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String getJson(String path) {
+    try {
+      InputStream jsonStream = ManifestServiceTest.class.getClassLoader()
+          .getResourceAsStream(path);
+      assert jsonStream != null;
+      return new String(jsonStream.readAllBytes());
+    } catch (IOException ex) {
+      throw new RuntimeException(ex);
+    }
+  }
+}
@@ -1,13 +1,19 @@
 package com.deahtstroke.rivenbot.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.assertArg;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.deahtstroke.rivenbot.dto.destiny.BungieResponse;
 import com.deahtstroke.rivenbot.dto.destiny.PostGameCarnageReport;
 import com.deahtstroke.rivenbot.entity.PGCRDetails;
+import com.deahtstroke.rivenbot.exception.ResourceNotFoundException;
 import com.deahtstroke.rivenbot.mapper.PGCRMapper;
+import com.deahtstroke.rivenbot.ratelimit.AdaptiveRateController;
 import com.deahtstroke.rivenbot.repository.PGCRRepository;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -15,8 +21,12 @@ import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterAll;
@@ -28,9 +38,12 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mapstruct.factory.Mappers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -46,6 +59,9 @@ class PGCRServiceTest {
   @Mock
   PGCRRepository pgcrRepository;
 
+  @Mock
+  ReactiveMongoTemplate reactiveMongoTemplate;
+
   PGCRService sut;
 
   @AfterAll
@@ -67,12 +83,14 @@ class PGCRServiceTest {
     WebClient webClient = WebClient.builder()
         .baseUrl("http://localhost:" + mockWebServer.getPort())
         .build();
-    sut = new PGCRService(webClient, mapper, pgcrRepository, objectMapper);
+    sut = new PGCRService(webClient, mapper, pgcrRepository, objectMapper,
+        reactiveMongoTemplate, new AdaptiveRateController(20, 2, 100, 23, 6, 37,
+            0.5, Duration.ofSeconds(2), Map.of(), Map.of(), new SimpleMeterRegistry()));
   }
 
   @Test
-  @DisplayName("Retrieving a PGCR saves correct data when response is too big")
-  void shouldSaveWhenFailedPGCR() {
+  @DisplayName("Retrieving a PGCR saves correct data when response is bigger than 32 KB")
+  void shouldSaveWhenBigPGCR() {
     // given: the activity instanceID of a PGCR
     Long activityID = 123182391L;
     mockWebServer.enqueue(
@@ -81,18 +99,19 @@ class PGCRServiceTest {
             .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
             .setChunkedBody(getJson("__files/bungie/big-pgcr.json"), 2048)
     );
-    PGCRDetails mockPGCRDetails = new PGCRDetails(String.valueOf(activityID), false, null);
-    when(pgcrRepository.existsById(activityID)).thenReturn(Mono.just(false));
+    when(reactiveMongoTemplate.find(any(Query.class), eq(PGCRDetails.class)))
+        .thenReturn(Flux.empty());
     when(pgcrRepository.save(
-        argThat(pgcr -> pgcr.getFromBeginning().equals(false) && pgcr.getInstanceId()
-            .equals(String.valueOf(activityID))))).thenReturn(
-        Mono.just(mockPGCRDetails));
+        argThat(pgcr -> pgcr.getInstanceId().equals(String.valueOf(activityID)))))
+        .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
 
-    // when: getPGCR is called, no exception is thrown and the response is saved
+    // when: getPGCR is called
+    // then: the PGCR is fully decoded instead of being replaced by an empty one
     StepVerifier.create(sut.retrievePGCR(activityID))
         .assertNext(pgcrDetails -> {
-          assertThat(pgcrDetails.getFromBeginning()).isFalse();
+          assertThat(pgcrDetails.getFromBeginning()).isTrue();
           assertThat(pgcrDetails.getInstanceId()).isEqualTo(String.valueOf(activityID));
+          assertThat(pgcrDetails.getPlayers()).hasSize(11);
         }).verifyComplete();
   }
 
@@ -115,7 +134,8 @@ class PGCRServiceTest {
     var pgcrDetails = mapper.dtoToEntity(details.getResponse(), activityId);
     var pgcrPlayerEntry = pgcrDetails.getPlayers().stream()
         .filter(ped -> ped.getPlayerName().equals("Deaht")).findFirst().orElse(null);
-    when(pgcrRepository.existsById(activityId)).thenReturn(Mono.just(false));
+    when(reactiveMongoTemplate.find(any(Query.class), eq(PGCRDetails.class)))
+        .thenReturn(Flux.empty());
     when(pgcrRepository.save(argThat(pgcr ->
         pgcr.getInstanceId().equals(pgcrDetails.getInstanceId()))
     )).thenReturn(Mono.just(pgcrDetails));
@@ -142,8 +162,8 @@ class PGCRServiceTest {
     var details = objectMapper.readValue(getJson(filePath), bungieResponse);
     var pgcrDetails = mapper.dtoToEntity(details.getResponse(), activityId);
 
-    when(pgcrRepository.existsById(activityId)).thenReturn(Mono.just(true));
-    when(pgcrRepository.findById(activityId)).thenReturn(Mono.just(pgcrDetails));
+    when(reactiveMongoTemplate.find(any(Query.class), eq(PGCRDetails.class)))
+        .thenReturn(Flux.just(pgcrDetails));
 
     // when: retrievePGCR is called
     // then: the database is called to retrieve a PGCR instead
@@ -156,6 +176,66 @@ class PGCRServiceTest {
         .verifyComplete();
   }
 
+  @Test
+  @DisplayName("Retrieving a batch of PGCRs only calls Bungie for the ones missing in the DB")
+  void shouldOnlyRetrieveMissingPGCRsFromBungie() {
+    // given: a batch of instanceIds where only one is saved in the DB
+    Long savedId = 8231900504L;
+    Long missingId = 123182391L;
+    PGCRDetails savedPGCR = new PGCRDetails(String.valueOf(savedId), true, null);
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setResponseCode(200)
+            .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .setChunkedBody(getJson("__files/bungie/small-pgcr.json"), 2048)
+    );
+    int requestCount = mockWebServer.getRequestCount();
+
+    when(reactiveMongoTemplate.find(assertArg(query -> {
+      assertThat(query.getQueryObject().toJson()).contains("$in");
+      assertThat(query.getFieldsObject().keySet()).containsExactly("fromBeginning");
+    }), eq(PGCRDetails.class))).thenReturn(Flux.just(savedPGCR));
+    when(pgcrRepository.save(argThat(pgcr -> pgcr.getInstanceId()
+        .equals(String.valueOf(missingId))))).thenAnswer(
+        invocation -> Mono.just(invocation.getArgument(0)));
+
+    // when: retrievePGCRs is called
+    // then: the saved PGCR is returned first and only the missing one is requested to Bungie
+    StepVerifier.create(sut.retrievePGCRs(List.of(savedId, missingId)))
+        .assertNext(pgcr -> assertThat(pgcr.getInstanceId()).isEqualTo(String.valueOf(savedId)))
+        .assertNext(pgcr -> assertThat(pgcr.getInstanceId()).isEqualTo(String.valueOf(missingId)))
+        .verifyComplete();
+    assertThat(mockWebServer.getRequestCount() - requestCount).isEqualTo(1);
+  }
+
+  @Test
+  @DisplayName("Retrieving a PGCR Bungie answers without a report fails instead of skipping it")
+  void shouldFailWhenPGCRHasNoResponse() {
+    // given: Bungie throttling the request for a PGCR
+    Long activityId = 123182391L;
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setResponseCode(200)
+            .setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+            .setBody("""
+                {
+                  "ErrorCode": 36,
+                  "ThrottleSeconds": 0,
+                  "ErrorStatus": "ThrottleLimitExceededMomentarily",
+                  "Message": "Please wait a moment before trying again"
+                }""")
+    );
+    when(reactiveMongoTemplate.find(any(Query.class), eq(PGCRDetails.class)))
+        .thenReturn(Flux.empty());
+
+    // when: retrieve PGCR is called
+    // then: it errors so that the raid is retried, and nothing is saved
+    StepVerifier.create(sut.retrievePGCR(activityId))
+        .expectError(ResourceNotFoundException.class)
+        .verify();
+    verifyNoInteractions(pgcrRepository);
+  }
+
   private String getJson(String path) {
     try {
       InputStream jsonStream = this.getClass().getClassLoader().getResourceAsStream(path);
@@ -0,0 +1,131 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.dto.destiny.AggregateActivity;
+import com.deahtstroke.rivenbot.dto.destiny.Basic;
+import com.deahtstroke.rivenbot.dto.destiny.ValueEntry;
+import com.deahtstroke.rivenbot.dto.destiny.characters.UserCharacter;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.DisplayProperties;
+import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.entity.RaidStatistics;
+import com.deahtstroke.rivenbot.enums.ManifestEntity;
+import com.deahtstroke.rivenbot.manifest.ManifestIndex;
+import com.deahtstroke.rivenbot.manifest.RaidActivityTable;
+import com.deahtstroke.rivenbot.repository.UserDetailsRepository;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class RaidStatsServiceTest {
+
+  private static final long RAID_TYPE_HASH = 2043403989L;
+
+  @Mock
+  PlayerRaidDetailsService playerRaidDetailsService;
+
+  @Mock
+  UserRaidStatisticsService userRaidStatisticsService;
+
+  @Mock
+  UserDetailsRepository userDetailsRepository;
+
+  @Mock
+  ManifestService manifestService;
+
+  @Mock
+  BungieAPIService bungieAPIService;
+
+  @InjectMocks
+  RaidStatsService sut;
+
+  private static ManifestResponseFields raid(String name) {
+    return ManifestResponseFields.builder()
+        .displayProperties(new DisplayProperties("", name, "", "", false))
+        .directActivityModeType(4)
+        .activityTypeHash(RAID_TYPE_HASH)
+        .build();
+  }
+
+  private static AggregateActivity aggregate(long activityHash, int completions, int kills,
+      int deaths, int fastestSeconds) {
+    return new AggregateActivity(activityHash, Map.of(
+        "activityCompletions", value("activityCompletions", completions),
+        "activityKills", value("activityKills", kills),
+        "activityDeaths", value("activityDeaths", deaths),
+        "fastestCompletionMsForActivity",
+        value("fastestCompletionMsForActivity", fastestSeconds * 1000)));
+  }
+
+  private static ValueEntry value(String statId, int value) {
+    return new ValueEntry(statId, new Basic((double) value, String.valueOf(value)));
+  }
+
+  @Test
+  @DisplayName("Raid statistics are summarized from the aggregated stats of every character")
+  void shouldSummarizeRaidStatsFromAggregateStats() {
+    // given: a user with two characters that played King's Fall and a non-raid activity
+    String membershipId = "12345";
+    Integer membershipType = 3;
+    RaidActivityTable raidActivityTable = RaidActivityTable.from(new ManifestIndex("version",
+        Map.of(ManifestEntity.ACTIVITY_DEFINITION, Map.of(
+            1374392663L, raid("King's Fall: Normal"),
+            2964135793L, raid("King's Fall: Master")))));
+    when(manifestService.raidActivityTable()).thenReturn(raidActivityTable);
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter(), "2", new UserCharacter())));
+    when(bungieAPIService.getAggregateActivityStats(membershipType, membershipId, "1"))
+        .thenReturn(Mono.just(List.of(
+            aggregate(1374392663L, 10, 1000, 20, 3000),
+            aggregate(2823159265L, 50, 5000, 100, 600))));
+    when(bungieAPIService.getAggregateActivityStats(membershipType, membershipId, "2"))
+        .thenReturn(Mono.just(List.of(
+            aggregate(1374392663L, 5, 500, 10, 2400),
+            aggregate(2964135793L, 2, 300, 30, 4000))));
+
+    // when: the raid statistics are summarized
+    var summary = sut.summarizeRaidStats(membershipId, membershipType)
+        .collectMap(RaidStatistics::getRaidName, Function.identity());
+
+    // then: the stats of every character are added up per raid and non-raid activities are left
+    // out
+    StepVerifier.create(summary)
+        .assertNext(statistics -> {
+          assertThat(statistics).containsOnlyKeys("King's Fall");
+          RaidStatistics kingsFall = statistics.get("King's Fall");
+          assertThat(kingsFall.getTotalClears()).isEqualTo(17);
+          assertThat(kingsFall.getNormalClears()).isEqualTo(15);
+          assertThat(kingsFall.getMasterClears()).isEqualTo(2);
+          assertThat(kingsFall.getTotalKills()).isEqualTo(1800);
+          assertThat(kingsFall.getTotalDeaths()).isEqualTo(60);
+          assertThat(kingsFall.getFastestTime()).isEqualTo(2400);
+
+          // and: full and partial clears are not known from aggregated stats
+          assertThat(kingsFall.getFullClears()).isNull();
+          assertThat(kingsFall.getPartialClears()).isNull();
+          assertThat(kingsFall.toDiscordField()).doesNotContain("Full Clears");
+        })
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Summarizing aggregated stats without raids returns no statistics")
+  void shouldNotSummarizeNonRaidActivities() {
+    // when: only non-raid activities are summarized
+    var statistics = RaidStatsService.summarize(RaidActivityTable.EMPTY,
+        List.of(aggregate(2823159265L, 50, 5000, 100, 600)));
+
+    // then: there are no raid statistics
+    assertThat(statistics).isEmpty();
+  }
+}
@@ -0,0 +1,156 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.deahtstroke.rivenbot.entity.UserDetails;
+import com.mongodb.ExplainVerbosity;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Measures looking up a user in 'user_details' as the collection grows, using the same query as
+ * {@link com.deahtstroke.rivenbot.repository.UserDetailsRepository} and the indexes created by
+ * {@link PlayerRaidDetailsService}. Run it with './gradlew benchmark', it is excluded from the
+ * regular test task.
+ */
+@Tag("benchmark")
+@Testcontainers
+class UserDetailsLookupBenchmarkTest {
+
+  private static final int[] COLLECTION_SIZES = {1_000, 10_000, 100_000};
+  private static final int BATCH_SIZE = 5_000;
+  private static final int LOOKUPS = 500;
+
+  @Container
+  static final GenericContainer<?> mongo = new GenericContainer<>("mongo:7.0")
+      .withExposedPorts(27017);
+
+  static MongoClient mongoClient;
+
+  static ReactiveMongoTemplate reactiveMongoTemplate;
+
+  @BeforeAll
+  static void initialize() {
+    mongoClient = MongoClients.create(
+        "mongodb://" + mongo.getHost() + ":" + mongo.getFirstMappedPort());
+    reactiveMongoTemplate = new ReactiveMongoTemplate(mongoClient, "riven_bot_benchmark");
+    var indexOps = reactiveMongoTemplate.indexOps(UserDetails.class);
+    Flux.fromIterable(PlayerRaidDetailsService.userDetailsIndexes())
+        .concatMap(indexOps::ensureIndex)
+        .blockLast();
+  }
+
+  @AfterAll
+  static void close() {
+    mongoClient.close();
+  }
+
+  @Test
+  @DisplayName("Looking up a user costs the same regardless of the size of the collection")
+  void benchmarkUserLookup() {
+    int saved = 0;
+    for (int size : COLLECTION_SIZES) {
+      // given: a collection of users of the given size
+      saveUsers(saved, size);
+      saved = size;
+
+      // when: random users are looked up, both users with a membershipId and legacy users
+      Result byMembershipId = measure(size, false, UserDetailsLookupBenchmarkTest::userQuery);
+      Result byName = measure(size, true, UserDetailsLookupBenchmarkTest::userQuery);
+      Result regex = measure(size, false, id -> new Query(Criteria.where("username")
+          .regex("Guardian" + id + "$", "i")));
+
+      // then: the results are reported and indexed lookups examine the same amount of keys and
+      // documents regardless of the size of the collection
+      System.out.printf("%,d users%n", size);
+      report("membershipId", byMembershipId);
+      report("username/userTag", byName);
+      report("regex", regex);
+      assertThat(byMembershipId.keysExamined()).isLessThanOrEqualTo(2);
+      assertThat(byMembershipId.docsExamined()).isLessThanOrEqualTo(2);
+      assertThat(byName.keysExamined()).isLessThanOrEqualTo(2);
+      assertThat(byName.docsExamined()).isLessThanOrEqualTo(2);
+    }
+  }
+
+  /**
+   * The query of {@link com.deahtstroke.rivenbot.repository.UserDetailsRepository#USER_QUERY} for
+   * the user with the given id
+   */
+  private static Query userQuery(int id) {
+    return new Query(new Criteria().orOperator(
+        Criteria.where("membershipId").is("membership-" + id),
+        Criteria.where("username").is("Guardian" + id).and("userTag").is("0" + id)
+            .and("membershipId").is(null)));
+  }
+
+  private static void report(String lookup, Result result) {
+    System.out.printf("  %-17s %8.3f ms/op %,8d keys examined %,8d docs examined%n", lookup + ":",
+        result.millisPerOp(), result.keysExamined(), result.docsExamined());
+  }
+
+  private static void saveUsers(int from, int to) {
+    Flux.range(from, to - from)
+        .map(id -> UserDetails.builder()
+            .username("Guardian" + id)
+            .userTag("0" + id)
+            .lastRequestDateTime(Instant.now())
+            .raidStatisticsMaterialized(true)
+            // odd users are saved as legacy users, without a membershipId
+            .membershipId(id % 2 == 0 ? "membership-" + id : null)
+            .build())
+        .buffer(BATCH_SIZE)
+        .concatMap(users -> reactiveMongoTemplate.insertAll(users))
+        .blockLast();
+  }
+
+  private Result measure(int size, boolean legacy, QueryFactory queryFactory) {
+    List<Query> queries = new ArrayList<>(LOOKUPS);
+    for (int i = 0; i < LOOKUPS; i++) {
+      int id = ThreadLocalRandom.current().nextInt(size / 2) * 2 + (legacy ? 1 : 0);
+      queries.add(queryFactory.create(id));
+    }
+    long start = System.nanoTime();
+    for (Query query : queries) {
+      reactiveMongoTemplate.findOne(query, UserDetails.class).block();
+    }
+    long elapsed = System.nanoTime() - start;
+
+    Document explain = Mono.from(reactiveMongoTemplate.getCollection("user_details")
+            .flatMapMany(collection -> collection.find(queries.get(0).getQueryObject())
+                .explain(ExplainVerbosity.EXECUTION_STATS)))
+        .block();
+    Document executionStats = explain.get("executionStats", Document.class);
+    return new Result(elapsed / 1_000_000.0 / LOOKUPS,
+        executionStats.get("totalKeysExamined", Number.class).longValue(),
+        executionStats.get("totalDocsExamined", Number.class).longValue());
+  }
+
+  @FunctionalInterface
+  private interface QueryFactory {
+
+    Query create(int id);
+  }
+
+  private record Result(double millisPerOp, long keysExamined, long docsExamined) {
+
+  }
+}
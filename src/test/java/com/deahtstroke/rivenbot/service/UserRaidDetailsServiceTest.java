@@ -1,11 +1,17 @@
 package com.deahtstroke.rivenbot.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.atMost;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.deahtstroke.rivenbot.dto.destiny.ActivitiesResponse;
@@ -16,26 +22,38 @@ import com.deahtstroke.rivenbot.dto.destiny.ValueEntry;
 import com.deahtstroke.rivenbot.dto.destiny.characters.UserCharacter;
 import com.deahtstroke.rivenbot.dto.destiny.manifest.DisplayProperties;
 import com.deahtstroke.rivenbot.dto.destiny.manifest.ManifestResponseFields;
+import com.deahtstroke.rivenbot.entity.CharacterWatermark;
+import com.deahtstroke.rivenbot.entity.IngestionCheckpoint;
+import com.deahtstroke.rivenbot.entity.IngestionJob;
 import com.deahtstroke.rivenbot.entity.PGCRDetails;
 import com.deahtstroke.rivenbot.entity.UserDetails;
 import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidStatistics;
 import com.deahtstroke.rivenbot.enums.ManifestEntity;
 import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import com.deahtstroke.rivenbot.manifest.ManifestIndex;
+import com.deahtstroke.rivenbot.manifest.RaidActivityTable;
 import com.deahtstroke.rivenbot.repository.UserDetailsRepository;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
@@ -51,6 +69,27 @@ class UserRaidDetailsServiceTest {
   @Mock
   PGCRService postGameCarnageService;
 
+  @Mock
+  ManifestService manifestService;
+
+  @Mock
+  UserRaidStatisticsService userRaidStatisticsService;
+
+  @Mock
+  UserRaidInstanceService userRaidInstanceService;
+
+  @Mock
+  ReactiveMongoTemplate reactiveMongoTemplate;
+
+  @Mock
+  IngestionJobService ingestionJobService;
+
+  @Captor
+  ArgumentCaptor<Collection<UserRaidDetails>> raidDetailsCaptor;
+
+  @Captor
+  ArgumentCaptor<Collection<UserRaidStatistics>> statisticsCaptor;
+
   @InjectMocks
   PlayerRaidDetailsService sut;
 
@@ -219,21 +258,26 @@ class UserRaidDetailsServiceTest {
     ManifestResponseFields firstActivity = ManifestResponseFields.builder()
         .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
         .build();
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
         .thenReturn(Mono.just(firstActivity));
 
     ManifestResponseFields secondActivity = ManifestResponseFields.builder()
         .displayProperties(new DisplayProperties("", "King's Fall: Master", "", "", false))
         .build();
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2L))
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2L))
         .thenReturn(Mono.just(secondActivity));
 
-    PGCRDetails pgcr = new PGCRDetails(null, true, null);
-    when(postGameCarnageService.retrievePGCR(any(Long.class)))
-        .thenReturn(Mono.just((pgcr)));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
 
+    givenIngestionJob(null);
     when(userDetailsRepository.save(any(UserDetails.class)))
         .thenReturn(Mono.empty());
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
 
     // when: create user details is called
     var response = StepVerifier.create(
@@ -244,23 +288,28 @@ class UserRaidDetailsServiceTest {
 
     // and: the correct interactions occur
     verify(bungieAPIService, times(1)).getUserCharacters(membershipType, membershipId);
-    verify(bungieAPIService, times(5)).getManifestEntity(any(), anyLong());
-    verify(postGameCarnageService, atMost(5)).retrievePGCR(anyLong());
+    verify(manifestService, times(5)).getManifestEntity(any(), anyLong());
+    verify(postGameCarnageService, times(1)).retrievePGCRs(anyCollection());
     verify(userDetailsRepository, times(1)).save(argumentCaptor.capture());
+    verify(userRaidInstanceService, times(1)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
 
     UserDetails userDetails = argumentCaptor.getValue();
-    UserRaidDetails lastWish = userDetails.getUserRaidDetails().stream()
+    Collection<UserRaidDetails> raids = raidDetailsCaptor.getValue();
+    UserRaidDetails lastWish = raids.stream()
         .filter(raid -> raid.getInstanceId() == 789120L)
         .findFirst().orElse(null);
 
-    UserRaidDetails kingsFall = userDetails.getUserRaidDetails().stream()
+    UserRaidDetails kingsFall = raids.stream()
         .filter(raid -> raid.getInstanceId() == 789124L)
         .findFirst().orElse(null);
 
     assertThat(userDetails.getUsername()).isEqualTo(username);
     assertThat(userDetails.getUserTag()).isEqualTo(userTag);
     assertThat(userDetails.getLastRequestDateTime()).isEqualTo(creationInstant);
-    assertThat(userDetails.getUserRaidDetails()).hasSize(5);
+    assertThat(userDetails.getMembershipId()).isEqualTo(membershipId);
+    assertThat(userDetails.getUserRaidDetails()).isNull();
+    assertThat(raids).hasSize(5);
 
     assertThat(lastWish).isNotNull();
     assertThat(lastWish.getRaidName()).isEqualTo("Last Wish");
@@ -275,6 +324,70 @@ class UserRaidDetailsServiceTest {
     assertThat(kingsFall.getRaidDifficulty()).isEqualTo(RaidDifficulty.MASTER);
   }
 
+  @Test
+  @DisplayName("Raids present in the raid activity table are resolved without calling the Manifest")
+  void createUserDetailsWithRaidActivityTable() {
+    // given: parsed data for user details
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+    ArgumentCaptor<UserDetails> argumentCaptor = ArgumentCaptor.forClass(UserDetails.class);
+    Instant creationInstant = Instant.now();
+
+    Map<String, UserCharacter> data = Map.of("1", new UserCharacter());
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(data));
+
+    List<Activity> activities = List.of(
+        new Activity(Instant.now(), new ActivityDetails(1L, 789120L, 4), Collections.emptyMap()),
+        new Activity(Instant.now(), new ActivityDetails(2L, 789121L, 4), Collections.emptyMap())
+    );
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 0))
+        .thenReturn(Mono.just(new ActivitiesResponse(activities)));
+
+    ManifestIndex manifestIndex = new ManifestIndex("version", Map.of(
+        ManifestEntity.ACTIVITY_DEFINITION, Map.of(
+            1L, ManifestResponseFields.builder()
+                .displayProperties(new DisplayProperties("", "Last Wish: Level 55", "", "", false))
+                .directActivityModeType(4)
+                .build(),
+            2L, ManifestResponseFields.builder()
+                .displayProperties(new DisplayProperties("", "King's Fall: Master", "", "", false))
+                .directActivityModeType(4)
+                .build())));
+    when(manifestService.raidActivityTable()).thenReturn(manifestIndex.getRaidActivityTable());
+
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
+
+    givenIngestionJob(null);
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
+
+    // when: create user details is called
+    var response = StepVerifier.create(
+        sut.createUserDetails(creationInstant, username, userTag, membershipId, membershipType));
+
+    // then: the saved entity is saved correctly
+    response.verifyComplete();
+
+    // and: the Manifest is never called
+    verify(manifestService, times(0)).getManifestEntity(any(), anyLong());
+    verify(userDetailsRepository, times(1)).save(argumentCaptor.capture());
+
+    verify(userRaidInstanceService, times(1)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
+    assertThat(raidDetailsCaptor.getValue())
+        .extracting(UserRaidDetails::getRaidName, UserRaidDetails::getRaidDifficulty)
+        .containsExactlyInAnyOrder(
+            tuple("Last Wish", null),
+            tuple("King's Fall", RaidDifficulty.MASTER));
+  }
+
   @Test
   @DisplayName("Raids missing attributes such as deaths, kills, etc. should be defaulted to zero")
   void createUserDetailsRaidStatsDefaultValues() {
@@ -305,20 +418,25 @@ class UserRaidDetailsServiceTest {
     ManifestResponseFields firstActivity = ManifestResponseFields.builder()
         .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
         .build();
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
         .thenReturn(Mono.just(firstActivity));
 
     ManifestResponseFields secondActivity = ManifestResponseFields.builder()
         .displayProperties(new DisplayProperties("", "King's Fall: Master", "", "", false))
         .build();
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2L))
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2L))
         .thenReturn(Mono.just(secondActivity));
 
-    PGCRDetails pgcr = new PGCRDetails(null, true, null);
-    when(postGameCarnageService.retrievePGCR(any(Long.class)))
-        .thenReturn(Mono.just((pgcr)));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
 
+    givenIngestionJob(null);
     when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
 
     // when: create user details is called
     var response = StepVerifier.create(
@@ -329,23 +447,28 @@ class UserRaidDetailsServiceTest {
 
     // and: the correct interactions occur
     verify(bungieAPIService, times(1)).getUserCharacters(membershipType, membershipId);
-    verify(bungieAPIService, times(5)).getManifestEntity(any(), anyLong());
-    verify(postGameCarnageService, atMost(5)).retrievePGCR(anyLong());
+    verify(manifestService, times(5)).getManifestEntity(any(), anyLong());
+    verify(postGameCarnageService, times(1)).retrievePGCRs(anyCollection());
     verify(userDetailsRepository, times(1)).save(userDetailsArgumentCaptor.capture());
+    verify(userRaidInstanceService, times(1)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
 
     UserDetails userDetails = userDetailsArgumentCaptor.getValue();
-    UserRaidDetails lastWish = userDetails.getUserRaidDetails().stream()
+    Collection<UserRaidDetails> raids = raidDetailsCaptor.getValue();
+    UserRaidDetails lastWish = raids.stream()
         .filter(raid -> raid.getInstanceId() == 789120L)
         .findFirst().orElse(null);
 
-    UserRaidDetails kingsFall = userDetails.getUserRaidDetails().stream()
+    UserRaidDetails kingsFall = raids.stream()
         .filter(raid -> raid.getInstanceId() == 789124L)
         .findFirst().orElse(null);
 
     assertThat(userDetails.getUsername()).isEqualTo(username);
     assertThat(userDetails.getUserTag()).isEqualTo(userTag);
     assertThat(userDetails.getLastRequestDateTime()).isEqualTo(creationInstant);
-    assertThat(userDetails.getUserRaidDetails()).hasSize(5);
+    assertThat(userDetails.getMembershipId()).isEqualTo(membershipId);
+    assertThat(userDetails.getUserRaidDetails()).isNull();
+    assertThat(raids).hasSize(5);
 
     assertThat(lastWish).isNotNull();
     assertThat(lastWish.getRaidName()).isEqualTo("Last Wish");
@@ -360,6 +483,190 @@ class UserRaidDetailsServiceTest {
     assertThat(kingsFall.getRaidDifficulty()).isEqualTo(RaidDifficulty.MASTER);
   }
 
+  @Test
+  @DisplayName("Raids of a new user are saved and checkpointed page by page")
+  void createUserDetailsSavesRaidsInBatches() {
+    // given: a user with more raids than fit in a single batch
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter())));
+
+    List<Activity> firstPage = new ArrayList<>();
+    for (long i = 0; i < 250; i++) {
+      firstPage.add(new Activity(Instant.now(), new ActivityDetails(1L, i, 4),
+          Collections.emptyMap()));
+    }
+    List<Activity> secondPage = new ArrayList<>();
+    for (long i = 250; i < 300; i++) {
+      secondPage.add(new Activity(Instant.now(), new ActivityDetails(1L, i, 4),
+          Collections.emptyMap()));
+    }
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 0))
+        .thenReturn(Mono.just(new ActivitiesResponse(firstPage)));
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 1))
+        .thenReturn(Mono.just(new ActivitiesResponse(secondPage)));
+
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+        .thenReturn(Mono.just(ManifestResponseFields.builder()
+            .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
+            .build()));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
+
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    givenIngestionJob(null);
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
+
+    // when: create user details is called
+    StepVerifier.create(
+            sut.createUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: raids are saved in batches no bigger than a page of activities
+    verify(userRaidInstanceService, times(2)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
+    assertThat(raidDetailsCaptor.getAllValues())
+        .extracting(Collection::size)
+        .containsExactly(250, 50);
+
+    // and: every page is checkpointed once its raids are saved
+    ArgumentCaptor<IngestionCheckpoint> checkpoints = ArgumentCaptor.forClass(
+        IngestionCheckpoint.class);
+    verify(ingestionJobService, times(2)).checkpoint(any(IngestionJob.class), eq("1"),
+        checkpoints.capture());
+    assertThat(checkpoints.getAllValues())
+        .extracting(IngestionCheckpoint::getNextPage, IngestionCheckpoint::getLastInstanceId,
+            IngestionCheckpoint::getCompleted)
+        .containsExactly(tuple(1, 249L, false), tuple(2, 299L, true));
+
+    // and: the statistics of every page are recorded together
+    verify(userRaidStatisticsService, times(1)).record(argThat(statistics ->
+        statistics.size() == 1 && statistics.iterator().next().getTotalKills() == 0));
+  }
+
+  @Test
+  @DisplayName("Raids of a page that was already saved are not added to the statistics again")
+  void createUserDetailsTwiceDoesNotCountRaidsTwice() {
+    // given: a user with a single page of raids
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter())));
+    Map<String, ValueEntry> completed = Map.of(
+        "completed", new ValueEntry("completed", new Basic(1.0, "1.0")));
+    List<Activity> page = List.of(
+        new Activity(Instant.now(), new ActivityDetails(1L, 1L, 4), completed),
+        new Activity(Instant.now(), new ActivityDetails(1L, 2L, 4), completed));
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 0))
+        .thenReturn(Mono.just(new ActivitiesResponse(page)));
+
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+        .thenReturn(Mono.just(ManifestResponseFields.builder()
+            .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
+            .build()));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
+
+    // and: the raids are inserted the first time the page is saved and are already there the
+    // second time
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)))
+        .thenReturn(Flux.empty());
+    givenIngestionJob(null);
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
+
+    // when: the same page is ingested twice
+    StepVerifier.create(
+            sut.createUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+    StepVerifier.create(
+            sut.createUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: the raids are counted the first time only
+    verify(userRaidStatisticsService, times(2)).record(statisticsCaptor.capture());
+    assertThat(statisticsCaptor.getAllValues().get(0))
+        .extracting(UserRaidStatistics::getRaidName, UserRaidStatistics::getTotalClears)
+        .containsExactly(tuple("Last Wish", 2));
+    assertThat(statisticsCaptor.getAllValues().get(1)).isEmpty();
+  }
+
+  @Test
+  @DisplayName("An interrupted creation resumes from its checkpoint and rebuilds the statistics")
+  void createUserDetailsResumesFromCheckpoint() {
+    // given: a job that already saved the first page of the only character of a user
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+    Instant startedAt = Instant.now().minusSeconds(60);
+
+    IngestionJob resumedJob = IngestionJob.start(membershipId, username, userTag, startedAt,
+        null);
+    resumedJob.getCheckpoints().put("1", new IngestionCheckpoint(1, 249L, false, null));
+    givenIngestionJob(resumedJob);
+
+    // and: new raids pushed the last raids of the first page to the second one
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter())));
+    List<Activity> secondPage = List.of(
+        new Activity(startedAt, new ActivityDetails(1L, 248L, 4), Collections.emptyMap()),
+        new Activity(startedAt, new ActivityDetails(1L, 249L, 4), Collections.emptyMap()),
+        new Activity(startedAt, new ActivityDetails(1L, 250L, 4), Collections.emptyMap()));
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 1))
+        .thenReturn(Mono.just(new ActivitiesResponse(secondPage)));
+
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+        .thenReturn(Mono.just(ManifestResponseFields.builder()
+            .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
+            .build()));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
+
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidInstanceService.hasUnrecorded(username, userTag)).thenReturn(Mono.just(true));
+    when(userRaidStatisticsService.rebuild(username, userTag)).thenReturn(Mono.empty());
+    ArgumentCaptor<UserDetails> userDetailsCaptor = ArgumentCaptor.forClass(UserDetails.class);
+
+    // when: create user details is called again
+    StepVerifier.create(
+            sut.createUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: the activity history is read from the checkpoint on, skipping the saved raids
+    verify(bungieAPIService, times(0)).getRaidActivities(membershipType, membershipId, "1", 0);
+    verify(userRaidInstanceService, times(1)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
+    assertThat(raidDetailsCaptor.getValue())
+        .extracting(UserRaidDetails::getInstanceId)
+        .containsExactly(250L);
+
+    // and: the user is saved as requested when the job started
+    verify(userDetailsRepository, times(1)).save(userDetailsCaptor.capture());
+    assertThat(userDetailsCaptor.getValue().getLastRequestDateTime()).isEqualTo(startedAt);
+
+    // and: the statistics are rebuilt since the raids of the first page were never recorded
+    verify(userRaidStatisticsService, times(1)).rebuild(username, userTag);
+    verify(userRaidStatisticsService, times(0)).record(anyCollection());
+  }
+
   @Test
   @DisplayName("Get all characters activities until works for updating user raid details")
   void getCharacterActivitiesUntil() {
@@ -521,21 +828,21 @@ class UserRaidDetailsServiceTest {
     var threeDaysAgo = LocalDate.now().minusDays(3).atStartOfDay().toInstant(ZoneOffset.UTC);
     List<UserRaidDetails> existingData = new ArrayList<>();
     existingData.add(new UserRaidDetails("Last Wish", null, null, true, 1000, 3, 34.0,
-        3600, true, 1L));
+        3600, true, 1L, null));
     existingData.add(
         new UserRaidDetails("King's Fall", RaidDifficulty.NORMAL, null, true, 1000, 3, 34.0,
-            3600, true, 2L));
+            3600, true, 2L, null));
     existingData.add(
         new UserRaidDetails("King's Fall", RaidDifficulty.MASTER, null, true, 1000, 3, 34.0,
-            3600, true, 3L));
+            3600, true, 3L, null));
     existingData.add(
         new UserRaidDetails("Vow of the Disciple", RaidDifficulty.NORMAL, null, false, 0, 0, 31.1,
-            333, true, 4L));
+            333, true, 4L, null));
 
     // Last time this user was searched for was three days ago
     UserDetails existingUser = new UserDetails(userId, username, userTag, clanName, threeDaysAgo,
-        existingData);
-    when(userDetailsRepository.findUserDetailsByUsernameAndUserTag(username, userTag)).thenReturn(
+        existingData, true, null, null);
+    when(userDetailsRepository.findUser(membershipId, username, userTag)).thenReturn(
         Mono.just(existingUser));
 
     Map<String, UserCharacter> data = Map.of("1", new UserCharacter());
@@ -565,14 +872,19 @@ class UserRaidDetailsServiceTest {
     ManifestResponseFields firstActivity = ManifestResponseFields.builder()
         .displayProperties(new DisplayProperties("", "Last Wish: 50", "", "", false))
         .build();
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
+    when(manifestService.raidActivityTable()).thenReturn(RaidActivityTable.EMPTY);
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 1L))
         .thenReturn(Mono.just(firstActivity));
 
-    PGCRDetails pgcr = new PGCRDetails(null, true, null);
-    when(postGameCarnageService.retrievePGCR(any(Long.class)))
-        .thenReturn(Mono.just((pgcr)));
+    when(postGameCarnageService.retrievePGCRs(anyCollection()))
+        .thenAnswer(invocation -> fromBeginningPGCRs(invocation.getArgument(0)));
 
+    givenIngestionJob(null);
     when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), anyCollection()))
+        .thenAnswer(invocation -> Flux.fromIterable(invocation.getArgument(2)));
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
 
     // when: create user details is called
     var response = StepVerifier.create(
@@ -583,20 +895,29 @@ class UserRaidDetailsServiceTest {
 
     // and: the correct interactions occur
     verify(bungieAPIService, times(1)).getUserCharacters(membershipType, membershipId);
-    verify(bungieAPIService, times(1)).getManifestEntity(any(), anyLong());
-    verify(postGameCarnageService, atMost(1)).retrievePGCR(anyLong());
+    verify(manifestService, times(1)).getManifestEntity(any(), anyLong());
+    verify(postGameCarnageService, times(1)).retrievePGCRs(anyCollection());
     verify(userDetailsRepository, times(1)).save(argumentCaptor.capture());
 
     // and: the user details passed to save() are correct
     UserDetails userDetails = argumentCaptor.getValue();
-    UserRaidDetails lastWish = userDetails.getUserRaidDetails().stream()
-        .filter(raid -> raid.getInstanceId() == 5L)
-        .findFirst().orElse(null);
-
     assertThat(userDetails.getId()).isEqualTo(userId);
     assertThat(userDetails.getLastRequestDateTime()).isEqualTo(updatedInstant);
     assertThat(userDetails.getDestinyClanName()).isEqualTo(clanName);
-    assertThat(userDetails.getUserRaidDetails()).hasSize(5);
+    assertThat(userDetails.getMembershipId()).isEqualTo(membershipId);
+    assertThat(userDetails.getCharacterWatermarks())
+        .containsExactly(entry("1", new CharacterWatermark(5L, today)));
+
+    // and: the embedded raids are moved to their own collection before the new raid is saved
+    verify(userRaidInstanceService, times(2)).saveAll(eq(username), eq(userTag),
+        raidDetailsCaptor.capture());
+    assertThat(userDetails.getUserRaidDetails()).isNull();
+    assertThat(raidDetailsCaptor.getAllValues().get(0)).hasSize(4);
+    assertThat(raidDetailsCaptor.getAllValues().get(1)).hasSize(1);
+
+    UserRaidDetails lastWish = raidDetailsCaptor.getAllValues().get(1).stream()
+        .filter(raid -> raid.getInstanceId() == 5L)
+        .findFirst().orElse(null);
 
     assertThat(lastWish).isNotNull();
     assertThat(lastWish.getRaidName()).isEqualTo("Last Wish");
@@ -607,5 +928,189 @@ class UserRaidDetailsServiceTest {
     assertThat(lastWish).isNotNull();
     assertThat(lastWish.getTotalDeaths()).isZero();
     assertThat(lastWish.getDurationSeconds()).isEqualTo(3600);
+
+    // and: only the new raid was added to the materialized statistics
+    verify(userRaidStatisticsService, times(1)).record(argThat(statistics ->
+        statistics.size() == 1 && statistics.iterator().next().getTotalClears() == 1));
+  }
+
+  @Test
+  @DisplayName("A returning user without new raids costs one activity history call per character")
+  void updateUserDetailsStopsAtWatermark() {
+    // given: a returning user whose characters have a watermark
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+    Instant lastPlayed = Instant.now().minusSeconds(3600);
+
+    Map<String, CharacterWatermark> watermarks = Map.of(
+        "1", new CharacterWatermark(300L, lastPlayed),
+        "2", new CharacterWatermark(600L, lastPlayed));
+    UserDetails existingUser = UserDetails.builder()
+        .username(username)
+        .userTag(userTag)
+        .membershipId(membershipId)
+        .lastRequestDateTime(lastPlayed.minusSeconds(60))
+        .raidStatisticsMaterialized(true)
+        .characterWatermarks(watermarks)
+        .build();
+    when(userDetailsRepository.findUser(membershipId, username, userTag))
+        .thenReturn(Mono.just(existingUser));
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter(), "2", new UserCharacter())));
+
+    // and: the newest raid of each character is its watermark, followed by a full page of older
+    // raids
+    for (String characterId : List.of("1", "2")) {
+      long newestInstanceId = watermarks.get(characterId).getInstanceId();
+      List<Activity> firstPage = new ArrayList<>();
+      for (long i = 0; i < 250; i++) {
+        firstPage.add(new Activity(lastPlayed.minusSeconds(i * 3600),
+            new ActivityDetails(1L, newestInstanceId - i, 4), Collections.emptyMap()));
+      }
+      when(bungieAPIService.getRaidActivities(membershipType, membershipId, characterId, 0))
+          .thenReturn(Mono.just(new ActivitiesResponse(firstPage)));
+    }
+
+    when(postGameCarnageService.retrievePGCRs(anyCollection())).thenReturn(Flux.empty());
+    givenIngestionJob(null);
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), any()))
+        .thenReturn(Flux.empty());
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidStatisticsService.record(anyCollection())).thenReturn(Mono.empty());
+    givenRecordedRaids(username, userTag);
+    ArgumentCaptor<UserDetails> userDetailsCaptor = ArgumentCaptor.forClass(UserDetails.class);
+
+    // when: update user details is called
+    StepVerifier.create(
+            sut.updateUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: only the first page of each character is requested
+    verify(bungieAPIService, times(1)).getRaidActivities(membershipType, membershipId, "1", 0);
+    verify(bungieAPIService, times(1)).getRaidActivities(membershipType, membershipId, "2", 0);
+    verify(bungieAPIService, times(0)).getRaidActivities(membershipType, membershipId, "1", 1);
+    verify(bungieAPIService, times(0)).getRaidActivities(membershipType, membershipId, "2", 1);
+
+    // and: no raids are built and the watermarks are kept
+    verifyNoInteractions(manifestService);
+    verify(userDetailsRepository, times(1)).save(userDetailsCaptor.capture());
+    assertThat(userDetailsCaptor.getValue().getCharacterWatermarks()).isEqualTo(watermarks);
+  }
+
+  @Test
+  @DisplayName("Statistics that missed raids saved by a failed update are rebuilt")
+  void updateUserDetailsRebuildsUnrecordedStatistics() {
+    // given: a returning user whose last update saved raids but failed before recording them
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+    Instant lastPlayed = Instant.now().minusSeconds(3600);
+
+    UserDetails existingUser = UserDetails.builder()
+        .username(username)
+        .userTag(userTag)
+        .membershipId(membershipId)
+        .lastRequestDateTime(lastPlayed)
+        .raidStatisticsMaterialized(true)
+        .build();
+    when(userDetailsRepository.findUser(membershipId, username, userTag))
+        .thenReturn(Mono.just(existingUser));
+    when(userRaidInstanceService.hasUnrecorded(username, userTag)).thenReturn(Mono.just(true));
+
+    // and: no raids were played since
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter())));
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 0))
+        .thenReturn(Mono.just(new ActivitiesResponse(List.of())));
+    when(postGameCarnageService.retrievePGCRs(anyCollection())).thenReturn(Flux.empty());
+    givenIngestionJob(null);
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), any()))
+        .thenReturn(Flux.empty());
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidStatisticsService.rebuild(username, userTag)).thenReturn(Mono.empty());
+
+    // when: update user details is called
+    StepVerifier.create(
+            sut.updateUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: the statistics are rebuilt from every raid instead of only adding the new ones
+    verify(userRaidStatisticsService, times(1)).rebuild(username, userTag);
+    verify(userRaidStatisticsService, times(0)).record(anyCollection());
+  }
+
+  @Test
+  @DisplayName("The raids and statistics of a user that changed their name follow the new name")
+  void updateUserDetailsMovesRaidsOfRenamedUser() {
+    // given: a user saved with the name they had before changing it
+    String username = "Deaht";
+    String userTag = "8080";
+    String membershipId = "12345";
+    Integer membershipType = 3;
+
+    UserDetails existingUser = UserDetails.builder()
+        .username("Riven")
+        .userTag("1234")
+        .membershipId(membershipId)
+        .lastRequestDateTime(Instant.now().minusSeconds(3600))
+        .raidStatisticsMaterialized(true)
+        .build();
+    when(userDetailsRepository.findUser(membershipId, username, userTag))
+        .thenReturn(Mono.just(existingUser));
+    when(userRaidInstanceService.rename("Riven", "1234", username, userTag))
+        .thenReturn(Mono.empty());
+    when(userRaidStatisticsService.remove("Riven", "1234")).thenReturn(Mono.empty());
+
+    // and: the moved raids are not recorded in the statistics of the new name
+    when(userRaidInstanceService.hasUnrecorded(username, userTag)).thenReturn(Mono.just(true));
+
+    when(bungieAPIService.getUserCharacters(membershipType, membershipId))
+        .thenReturn(Mono.just(Map.of("1", new UserCharacter())));
+    when(bungieAPIService.getRaidActivities(membershipType, membershipId, "1", 0))
+        .thenReturn(Mono.just(new ActivitiesResponse(List.of())));
+    when(postGameCarnageService.retrievePGCRs(anyCollection())).thenReturn(Flux.empty());
+    givenIngestionJob(null);
+    when(userRaidInstanceService.saveAll(eq(username), eq(userTag), any()))
+        .thenReturn(Flux.empty());
+    when(userDetailsRepository.save(any(UserDetails.class))).thenReturn(Mono.empty());
+    when(userRaidStatisticsService.rebuild(username, userTag)).thenReturn(Mono.empty());
+    ArgumentCaptor<UserDetails> userDetailsCaptor = ArgumentCaptor.forClass(UserDetails.class);
+
+    // when: the user is updated with their new name
+    StepVerifier.create(
+            sut.updateUserDetails(Instant.now(), username, userTag, membershipId, membershipType))
+        .verifyComplete();
+
+    // then: the raids are moved to the new name and the statistics of the old name removed
+    verify(userRaidInstanceService, times(1)).rename("Riven", "1234", username, userTag);
+    verify(userRaidStatisticsService, times(1)).remove("Riven", "1234");
+
+    // and: the user is saved with the new name and their statistics rebuilt under it
+    verify(userDetailsRepository, times(1)).save(userDetailsCaptor.capture());
+    assertThat(userDetailsCaptor.getValue().getUsername()).isEqualTo(username);
+    assertThat(userDetailsCaptor.getValue().getUserTag()).isEqualTo(userTag);
+    verify(userRaidStatisticsService, times(1)).rebuild(username, userTag);
+  }
+
+  private void givenIngestionJob(IngestionJob ingestionJob) {
+    when(ingestionJobService.run(any(IngestionJob.class), any())).thenAnswer(invocation -> {
+      IngestionJob job = Objects.isNull(ingestionJob) ? invocation.getArgument(0) : ingestionJob;
+      return invocation.<Function<IngestionJob, Mono<Void>>>getArgument(1).apply(job);
+    });
+    when(ingestionJobService.checkpoint(any(IngestionJob.class), anyString(),
+        any(IngestionCheckpoint.class))).thenReturn(Mono.empty());
+  }
+
+  private void givenRecordedRaids(String username, String userTag) {
+    when(userRaidInstanceService.hasUnrecorded(username, userTag)).thenReturn(Mono.just(false));
+    when(userRaidInstanceService.markRecorded(username, userTag)).thenReturn(Mono.empty());
+  }
+
+  private static Flux<PGCRDetails> fromBeginningPGCRs(Collection<Long> instanceIds) {
+    return Flux.fromIterable(instanceIds)
+        .map(instanceId -> new PGCRDetails(String.valueOf(instanceId), true, null));
   }
 }
@@ -0,0 +1,205 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidInstance;
+import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class UserRaidInstanceServiceTest {
+
+  @Mock
+  ReactiveMongoTemplate reactiveMongoTemplate;
+
+  @Mock
+  ReactiveBulkOperations bulkOperations;
+
+  @InjectMocks
+  UserRaidInstanceService sut;
+
+  @Test
+  @DisplayName("Raids are inserted by user and instanceId with a single unordered bulk write")
+  void shouldUpsertRaidsInOneBulkWrite() {
+    // given: two raids played by a user
+    List<UserRaidDetails> raids = List.of(
+        new UserRaidDetails("Last Wish", null, 6, true, 134, 0, 134.0, 3600, true, 1L,
+            Instant.now()),
+        new UserRaidDetails("King's Fall", RaidDifficulty.MASTER, 6, true, 80, 4, 20.0, 2400,
+            true, 2L, Instant.now()));
+    givenBulkWrite(BulkWriteResult.acknowledged(0, 0, 0, 0,
+        List.of(new BulkWriteUpsert(0, new BsonString("Deaht#8080:1")),
+            new BulkWriteUpsert(1, new BsonString("Deaht#8080:2"))),
+        List.of()));
+    ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+
+    // when: the raids are saved
+    StepVerifier.create(sut.saveAll("Deaht", "8080", raids))
+        .expectNextSequence(raids)
+        .verifyComplete();
+
+    // then: every raid is upserted by an id made up of the user and the instanceId
+    verify(bulkOperations, times(2)).upsert(queries.capture(), updates.capture());
+    assertThat(queries.getAllValues())
+        .extracting(query -> query.getQueryObject().get("_id"))
+        .containsExactly("Deaht#8080:1", "Deaht#8080:2");
+
+    // and: raids that are already saved are not rewritten, new ones are not recorded yet
+    assertThat(updates.getAllValues())
+        .extracting(update -> update.getUpdateObject().keySet())
+        .containsOnly(Set.of("$setOnInsert"));
+    assertThat(updates.getValue().getUpdateObject().get("$setOnInsert", Document.class))
+        .containsEntry("username", "Deaht")
+        .containsEntry("userTag", "8080")
+        .containsEntry("instanceId", 2L)
+        .containsEntry("statisticsRecorded", false)
+        .doesNotContainKey("_id");
+
+    // and: the bulk write is executed once
+    verify(bulkOperations, times(1)).execute();
+  }
+
+  @Test
+  @DisplayName("Raids that were already saved are not returned as new")
+  void shouldOnlyReturnInsertedRaids() {
+    // given: a page of two raids where the first one was already saved
+    List<UserRaidDetails> raids = List.of(
+        new UserRaidDetails("Last Wish", null, 6, true, 134, 0, 134.0, 3600, true, 1L,
+            Instant.now()),
+        new UserRaidDetails("Last Wish", null, 6, true, 90, 1, 91.0, 2900, true, 2L,
+            Instant.now()));
+    givenBulkWrite(BulkWriteResult.acknowledged(0, 1, 0, 0,
+        List.of(new BulkWriteUpsert(1, new BsonString("Deaht#8080:2"))), List.of()));
+
+    // when: the raids are saved
+    // then: only the raid that was inserted is returned
+    StepVerifier.create(sut.saveAll("Deaht", "8080", raids))
+        .expectNext(raids.get(1))
+        .verifyComplete();
+  }
+
+  @Test
+  @DisplayName("Saving no raids does not reach the database")
+  void shouldNotWriteEmptyRaids() {
+    // when: no raids are saved
+    StepVerifier.create(sut.saveAll("Deaht", "8080", List.of()))
+        .verifyComplete();
+
+    // then: mongo is never called
+    verifyNoInteractions(reactiveMongoTemplate);
+  }
+
+  @Test
+  @DisplayName("Raids of a user are read with a match on the indexed user fields")
+  void shouldFindRaidsOfUser() {
+    // given: a raid saved for a user
+    UserRaidDetails raid = new UserRaidDetails("Last Wish", null, 6, true, 134, 0, 134.0, 3600,
+        true, 1L, Instant.now());
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    when(reactiveMongoTemplate.find(query.capture(), eq(UserRaidInstance.class)))
+        .thenReturn(Flux.just(UserRaidInstance.of("Deaht", "8080", raid)));
+
+    // when: the raids of the user are read
+    StepVerifier.create(sut.findAll("Deaht", "8080"))
+        .expectNext(raid)
+        .verifyComplete();
+
+    // then: only the user fields are matched
+    assertThat(query.getValue().getQueryObject())
+        .containsEntry("username", "Deaht")
+        .containsEntry("userTag", "8080");
+  }
+
+  @Test
+  @DisplayName("Only the raids of a user that were not recorded yet are marked as recorded")
+  void shouldMarkUnrecordedRaids() {
+    // given: mongo updates the raids
+    ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+    when(reactiveMongoTemplate.updateMulti(query.capture(), update.capture(),
+        eq(UserRaidInstance.class))).thenReturn(Mono.just(UpdateResult.acknowledged(2, 2L, null)));
+
+    // when: the raids of the user are marked as recorded
+    StepVerifier.create(sut.markRecorded("Deaht", "8080"))
+        .verifyComplete();
+
+    // then: only the unrecorded raids of the user are matched
+    assertThat(query.getValue().getQueryObject())
+        .containsEntry("username", "Deaht")
+        .containsEntry("userTag", "8080")
+        .containsEntry("statisticsRecorded", false);
+    assertThat(update.getValue().getUpdateObject().get("$set", Document.class))
+        .containsEntry("statisticsRecorded", true);
+  }
+
+  @Test
+  @DisplayName("Raids of a renamed user are saved under the new name and removed from the old one")
+  void shouldMoveRaidsToNewName() {
+    // given: a raid saved with the old name of a user
+    UserRaidDetails raid = new UserRaidDetails("Last Wish", null, 6, true, 134, 0, 134.0, 3600,
+        true, 1L, Instant.now());
+    when(reactiveMongoTemplate.find(any(Query.class), eq(UserRaidInstance.class)))
+        .thenReturn(Flux.just(UserRaidInstance.of("Riven", "1234", raid)));
+    givenBulkWrite(BulkWriteResult.acknowledged(0, 0, 0, 0,
+        List.of(new BulkWriteUpsert(0, new BsonString("Deaht#8080:1"))), List.of()));
+    ArgumentCaptor<Query> removed = ArgumentCaptor.forClass(Query.class);
+    when(reactiveMongoTemplate.remove(removed.capture(), eq(UserRaidInstance.class)))
+        .thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+    // when: the raids are moved to the new name
+    StepVerifier.create(sut.rename("Riven", "1234", "Deaht", "8080"))
+        .verifyComplete();
+
+    // then: the raid is saved under the new name
+    ArgumentCaptor<Query> upserted = ArgumentCaptor.forClass(Query.class);
+    verify(bulkOperations, times(1)).upsert(upserted.capture(), any(Update.class));
+    assertThat(upserted.getValue().getQueryObject()).containsEntry("_id", "Deaht#8080:1");
+
+    // and: the raids of the old name are removed
+    assertThat(removed.getValue().getQueryObject())
+        .containsEntry("username", "Riven")
+        .containsEntry("userTag", "1234");
+  }
+
+  private void givenBulkWrite(BulkWriteResult result) {
+    when(reactiveMongoTemplate.bulkOps(BulkMode.UNORDERED, UserRaidInstance.class))
+        .thenReturn(bulkOperations);
+    when(reactiveMongoTemplate.getConverter()).thenReturn(
+        new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext()));
+    when(bulkOperations.execute()).thenReturn(Mono.just(result));
+  }
+}
@@ -0,0 +1,154 @@
+package com.deahtstroke.rivenbot.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.deahtstroke.rivenbot.entity.RaidStatistics;
+import com.deahtstroke.rivenbot.entity.UserRaidDetails;
+import com.deahtstroke.rivenbot.entity.UserRaidStatistics;
+import com.deahtstroke.rivenbot.enums.RaidDifficulty;
+import com.mongodb.client.result.UpdateResult;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bson.Document;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(MockitoExtension.class)
+class UserRaidStatisticsServiceTest {
+
+  private static final List<UserRaidDetails> RAID_DETAILS = List.of(
+      new UserRaidDetails("King's Fall", RaidDifficulty.NORMAL, 6, true, 100, 2, 50.0, 3600, true,
+          1L, null),
+      new UserRaidDetails("King's Fall", RaidDifficulty.MASTER, 6, true, 80, 4, 20.0, 2400, true,
+          2L, null),
+      new UserRaidDetails("King's Fall", RaidDifficulty.NORMAL, 6, true, 40, 1, 40.0, 1200, false,
+          3L, null),
+      new UserRaidDetails("King's Fall", RaidDifficulty.NORMAL, 6, false, 10, 5, 2.0, 600, true,
+          4L, null),
+      new UserRaidDetails("Last Wish", null, 6, true, 134, 0, 134.0, 3000, null, 5L, null));
+
+  @Mock
+  ReactiveMongoTemplate reactiveMongoTemplate;
+
+  @Mock
+  UserRaidInstanceService userRaidInstanceService;
+
+  @InjectMocks
+  UserRaidStatisticsService sut;
+
+  @Test
+  @DisplayName("Raid details are summarized into the statistics of each raid")
+  void shouldSummarizeRaidDetails() {
+    // when: raid details of two raids are summarized
+    Map<String, UserRaidStatistics> statistics = UserRaidStatisticsService.summarize("Deaht",
+        "8080", RAID_DETAILS);
+
+    // then: every raid has its own statistics
+    assertThat(statistics).containsOnlyKeys("King's Fall", "Last Wish");
+
+    UserRaidStatistics kingsFall = statistics.get("King's Fall");
+    assertThat(kingsFall.getTotalKills()).isEqualTo(230);
+    assertThat(kingsFall.getTotalDeaths()).isEqualTo(12);
+    assertThat(kingsFall.getTotalClears()).isEqualTo(3);
+    assertThat(kingsFall.getFullClears()).isEqualTo(2);
+    assertThat(kingsFall.getPartialClears()).isEqualTo(1);
+    assertThat(kingsFall.getNormalClears()).isEqualTo(2);
+    assertThat(kingsFall.getMasterClears()).isEqualTo(1);
+    assertThat(kingsFall.getFastestTime()).isEqualTo(2400);
+
+    // and: clears without a PGCR are neither full nor partial clears
+    UserRaidStatistics lastWish = statistics.get("Last Wish");
+    assertThat(lastWish.getTotalClears()).isEqualTo(1);
+    assertThat(lastWish.getFullClears()).isZero();
+    assertThat(lastWish.getPartialClears()).isZero();
+    assertThat(lastWish.getFastestTime()).isNull();
+  }
+
+  @Test
+  @DisplayName("New raids are recorded with one atomic update per raid")
+  void shouldRecordNewRaidsIncrementally() {
+    // given: mongo accepting the updates
+    when(reactiveMongoTemplate.upsert(any(Query.class), any(Update.class),
+        eq(UserRaidStatistics.class)))
+        .thenReturn(Mono.just(UpdateResult.acknowledged(1, 1L, null)));
+    ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+    ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+
+    // when: new raids are recorded
+    StepVerifier.create(sut.record(
+            UserRaidStatisticsService.summarize("Deaht", "8080", RAID_DETAILS).values()))
+        .verifyComplete();
+
+    // then: there was one update per raid
+    verify(reactiveMongoTemplate, times(2)).upsert(queries.capture(), updates.capture(),
+        eq(UserRaidStatistics.class));
+    assertThat(queries.getAllValues().get(0).getQueryObject())
+        .containsEntry("username", "Deaht")
+        .containsEntry("userTag", "8080")
+        .containsEntry("raidName", "King's Fall");
+
+    // and: counters are incremented and the fastest time only replaced when it is faster
+    Document kingsFall = updates.getAllValues().get(0).getUpdateObject();
+    assertThat(kingsFall.get("$inc", Document.class))
+        .containsEntry("totalKills", 230)
+        .containsEntry("totalClears", 3)
+        .containsEntry("masterClears", 1);
+    assertThat(kingsFall.get("$min", Document.class)).containsEntry("fastestTime", 2400);
+
+    // and: raids that were never fully cleared do not touch the fastest time
+    Document lastWish = updates.getAllValues().get(1).getUpdateObject();
+    assertThat(lastWish).doesNotContainKey("$min");
+  }
+
+  @Test
+  @DisplayName("Raid details summarized in batches add up to the same statistics")
+  void shouldSummarizeRaidDetailsInBatches() {
+    // given: statistics summarized from the first raid details
+    Map<String, UserRaidStatistics> statistics = new LinkedHashMap<>();
+    UserRaidStatisticsService.summarize(statistics, "Deaht", "8080", RAID_DETAILS.subList(0, 2));
+
+    // when: the rest of the raid details are added
+    UserRaidStatisticsService.summarize(statistics, "Deaht", "8080",
+        RAID_DETAILS.subList(2, RAID_DETAILS.size()));
+
+    // then: they are the same as summarizing every raid detail at once
+    assertThat(statistics).isEqualTo(
+        UserRaidStatisticsService.summarize("Deaht", "8080", RAID_DETAILS));
+  }
+
+  @Test
+  @DisplayName("Normal and master clears are only shown for raids with a master mode")
+  void shouldHideDifficultyClearsOfRaidsWithoutMasterMode() {
+    // given: statistics of a raid that has normal clears
+    UserRaidStatistics statistics = UserRaidStatisticsService.summarize("Deaht", "8080",
+        RAID_DETAILS).get("King's Fall");
+
+    // when: they are converted for raids with and without a master mode
+    RaidStatistics withMasterMode = statistics.toRaidStatistics(Set.of("King's Fall"));
+    RaidStatistics withoutMasterMode = statistics.toRaidStatistics(Set.of());
+
+    // then: difficulty clears are only kept when the raid has a master mode
+    assertThat(withMasterMode.getNormalClears()).isEqualTo(2);
+    assertThat(withMasterMode.getMasterClears()).isEqualTo(1);
+    assertThat(withoutMasterMode.getNormalClears()).isZero();
+    assertThat(withoutMasterMode.getMasterClears()).isZero();
+    assertThat(withoutMasterMode.getTotalClears()).isEqualTo(3);
+  }
+}
@@ -29,6 +29,9 @@ public class WeeklyActivitiesServiceTest {
   @Mock
   BungieAPIService bungieAPIService;
 
+  @Mock
+  ManifestService manifestService;
+
   @InjectMocks
   private WeeklyActivitiesService sut;
 
@@ -60,14 +63,14 @@ public class WeeklyActivitiesServiceTest {
     activityWithType.setActivityTypeHash(608898761L);
 
     when(
-        bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2823159265L))
+        manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2823159265L))
         .thenReturn(Mono.just(activityWithType));
 
     var raidResponseFields = new ManifestResponseFields();
     raidResponseFields.setDisplayProperties(
         new DisplayProperties("someDescription", "Raid", null, null, false));
 
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_TYPE_DEFINITION,
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_TYPE_DEFINITION,
         608898761L))
         .thenReturn(Mono.just(raidResponseFields));
 
@@ -77,7 +80,7 @@ public class WeeklyActivitiesServiceTest {
     milestoneResponseFields.setDisplayProperties(lastWishDisplayProperties);
 
     when(
-        bungieAPIService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION, 3618845105L))
+        manifestService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION, 3618845105L))
         .thenReturn(Mono.just(milestoneResponseFields));
 
     WeeklyActivity expectedResponse = new WeeklyActivity("The Last Wish",
@@ -119,14 +122,14 @@ public class WeeklyActivitiesServiceTest {
     var activityWithType = new ManifestResponseFields();
     activityWithType.setActivityTypeHash(608898761L);
 
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2823159265L))
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_DEFINITION, 2823159265L))
         .thenReturn(Mono.just(activityWithType));
 
     var dungeonResponseFields = new ManifestResponseFields();
     dungeonResponseFields.setDisplayProperties(
         new DisplayProperties("someDescription", "Dungeon", null, null, false));
 
-    when(bungieAPIService.getManifestEntity(ManifestEntity.ACTIVITY_TYPE_DEFINITION,
+    when(manifestService.getManifestEntity(ManifestEntity.ACTIVITY_TYPE_DEFINITION,
         608898761L))
         .thenReturn(Mono.just(dungeonResponseFields));
 
@@ -135,7 +138,7 @@ public class WeeklyActivitiesServiceTest {
         "Duality", null, null, false);
     milestoneResponseFields.setDisplayProperties(dualityDisplayProperties);
 
-    when(bungieAPIService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION, 3618845105L))
+    when(manifestService.getManifestEntity(ManifestEntity.MILESTONE_DEFINITION, 3618845105L))
         .thenReturn(Mono.just(milestoneResponseFields));
 
     WeeklyActivity expectedResponse = new WeeklyActivity(dualityDisplayProperties.getName(),